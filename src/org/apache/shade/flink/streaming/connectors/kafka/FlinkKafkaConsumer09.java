@@ -82,6 +82,63 @@ public class FlinkKafkaConsumer09<T> extends FlinkKafkaConsumerBase<T> {
 	 * available. If 0, returns immediately with any records that are available now. */
 	public static final long DEFAULT_POLL_TIMEOUT = 100L;
 
+	/** Configuration key for the maximum age of topic metadata that partition discoverers of the
+	 * same TaskManager share, instead of each fetching the metadata themselves. **/
+	public static final String KEY_PARTITION_DISCOVERY_METADATA_MAX_AGE_MILLIS = "flink.partition-discovery.metadata-max-age-millis";
+
+	/** The default maximum age of shared topic metadata, in milliseconds. */
+	public static final long DEFAULT_PARTITION_DISCOVERY_METADATA_MAX_AGE_MILLIS = 5000L;
+
+	/** Boolean configuration key to control whether newly discovered partitions are added to the consumer
+	 * without re-seeking the already assigned partitions (enabled by default). **/
+	public static final String KEY_INCREMENTAL_PARTITION_ASSIGNMENT = "flink.partition-assignment.incremental";
+
+	/** Configuration key for the time, in milliseconds, after which a partition without records is considered
+	 * idle and no longer holds back the watermark (disabled by default). Only applies to periodic watermarks. **/
+	public static final String KEY_PARTITION_IDLE_TIMEOUT_MILLIS = "flink.partition-idle-timeout-millis";
+
+	/** Configuration key for the maximum amount, in milliseconds, that the watermark of a partition may be ahead
+	 * of the watermark of the source before fetching the partition is paused (disabled by default). Only
+	 * applies to periodic watermarks. **/
+	public static final String KEY_WATERMARK_ALIGNMENT_MAX_DRIFT_MILLIS = "flink.watermark-alignment.max-drift-millis";
+
+	/** Configuration key for the number of fetched but not yet emitted bytes of a partition at which fetching
+	 * the partition is paused (disabled by default). **/
+	public static final String KEY_FLOW_CONTROL_HIGH_WATERMARK_BYTES = "flink.flow-control.buffered-bytes.high";
+
+	/** Configuration key for the number of fetched but not yet emitted bytes of a paused partition at which
+	 * fetching the partition is resumed (half of the high watermark by default). **/
+	public static final String KEY_FLOW_CONTROL_LOW_WATERMARK_BYTES = "flink.flow-control.buffered-bytes.low";
+
+	/** Configuration key for the maximum rate, in bytes per second, at which the consumer of a subtask fetches
+	 * records. Partitions are paused while the rate is exceeded (unlimited by default). **/
+	public static final String KEY_RATE_LIMIT_BYTES_PER_SECOND = "flink.rate-limit.bytes-per-second";
+
+	/** Configuration key for the maximum rate, in bytes per second, at which each partition is fetched. **/
+	public static final String KEY_RATE_LIMIT_PARTITION_BYTES_PER_SECOND = "flink.rate-limit.partition.bytes-per-second";
+
+	/** Prefix and suffix of the configuration keys for the maximum rate, in bytes per second, at which a topic
+	 * is fetched, e.g. {@code flink.rate-limit.topic.my-topic.bytes-per-second}. **/
+	public static final String KEY_RATE_LIMIT_TOPIC_PREFIX = "flink.rate-limit.topic.";
+	public static final String KEY_RATE_LIMIT_TOPIC_BYTES_PER_SECOND_SUFFIX = ".bytes-per-second";
+
+	/** Configuration key for the time, in milliseconds, for which unused rate accumulates as burst credit. **/
+	public static final String KEY_RATE_LIMIT_BURST_MILLIS = "flink.rate-limit.burst-millis";
+
+	/** The default time for which unused rate accumulates as burst credit. */
+	public static final long DEFAULT_RATE_LIMIT_BURST_MILLIS = 1000L;
+
+	/** Configuration key for the name of a budget that the consumer and topic rate limits are shared under, by
+	 * all subtasks in the same TaskManager that use the same name (not shared by default). **/
+	public static final String KEY_RATE_LIMIT_SHARED_BUDGET = "flink.rate-limit.shared-budget";
+
+	/** Configuration key for the maximum number of asynchronous offset commits that are sent to Kafka but not
+	 * completed yet. Offsets of later checkpoints are merged per partition until a commit completes. **/
+	public static final String KEY_COMMIT_MAX_IN_FLIGHT = "flink.commit.max-in-flight";
+
+	/** The default maximum number of offset commits in flight. */
+	public static final int DEFAULT_COMMIT_MAX_IN_FLIGHT = 2;
+
 	// ------------------------------------------------------------------------
 
 	/** User-supplied properties for Kafka. **/
@@ -279,7 +336,12 @@ public class FlinkKafkaConsumer09<T> extends FlinkKafkaConsumerBase<T> {
 			int indexOfThisSubtask,
 			int numParallelSubtasks) {
 
-		return new Kafka09PartitionDiscoverer(topicsDescriptor, indexOfThisSubtask, numParallelSubtasks, properties);
+		return new Kafka09PartitionDiscoverer(
+				topicsDescriptor,
+				indexOfThisSubtask,
+				numParallelSubtasks,
+				getPartitionAssignmentStrategy(),
+				properties);
 	}
 
 	@Override
@@ -26,6 +26,7 @@ import org.apache.flink.api.common.state.OperatorStateStore;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.common.typeutils.TypeSerializer;
 import org.apache.flink.api.common.typeutils.base.LongSerializer;
+import org.apache.flink.api.common.typeutils.base.array.BytePrimitiveArraySerializer;
 import org.apache.flink.api.java.ClosureCleaner;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.typeutils.ResultTypeQueryable;
@@ -48,20 +49,26 @@ import org.apache.shade.flink.streaming.connectors.kafka.config.StartupMode;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.AbstractFetcher;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.AbstractPartitionDiscoverer;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaCommitCallback;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaPartitionOffsetsCodec;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaPendingOffsetCommits;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartition;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartitionAssigner;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartitionAssignmentStrategy;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartitionOffsetsSnapshot;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartitionStateSentinel;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicsDescriptor;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.WeightedKafkaTopicPartitionAssigner;
 import org.apache.flink.util.ExceptionUtils;
 import org.apache.flink.util.SerializedValue;
 
-import org.apache.commons.collections.map.LinkedMap;
 import org.apache.shade.kafka.clients.consumer.ConsumerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -121,6 +128,11 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
      */
     private static final String OFFSETS_STATE_NAME = "topic-partition-offset-states";
 
+    /**
+     * State name of the consumer's compact partition offset states, holding one entry per subtask.
+     */
+    private static final String SUBTASK_OFFSETS_STATE_NAME = "topic-partition-offset-states-per-subtask";
+
     // ------------------------------------------------------------------------
     //  configuration state, set on the client relevant for all subtasks
     // ------------------------------------------------------------------------
@@ -165,6 +177,12 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
      */
     private boolean filterRestoredPartitionsWithCurrentTopicsDescriptor = true;
 
+    /**
+     * The strategy that determines which partitions are read by which subtask
+     * (default is the round-robin {@link KafkaTopicPartitionAssigner#ROUND_ROBIN}).
+     */
+    private KafkaTopicPartitionAssignmentStrategy partitionAssignmentStrategy = KafkaTopicPartitionAssigner.ROUND_ROBIN;
+
     /**
      * The offset commit mode for the consumer.
      * The value of this can only be determined in {@link FlinkKafkaConsumerBase#open(Configuration)} since it depends
@@ -197,9 +215,9 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
     // ------------------------------------------------------------------------
 
     /**
-     * Data for pending but uncommitted offsets.
+     * Data for pending but uncommitted offsets, kept as deltas to the last committed offsets.
      */
-    private final LinkedMap pendingOffsetsToCommit = new LinkedMap();
+    private transient KafkaPendingOffsetCommits pendingOffsetsToCommit;
 
     /**
      * The fetcher implements the connections to the Kafka brokers.
@@ -223,9 +241,16 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
 
     /**
      * Accessor for state in the operator state backend.
+     * Only read on restore, to migrate state written with one entry per partition.
      */
     private transient ListState<Tuple2<KafkaTopicPartition, Long>> unionOffsetStates;
 
+    /**
+     * Accessor for the compact per-subtask offset state in the operator state backend.
+     * Each subtask writes a single entry, see {@link KafkaPartitionOffsetsCodec}.
+     */
+    private transient ListState<byte[]> subtaskOffsetStates;
+
     /**
      * Flag indicating whether the consumer is restored from older state written with Flink 1.1 or 1.2.
      * When the current run is restored from older state, partition discovery is disabled.
@@ -530,6 +555,27 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
         return this;
     }
 
+    /**
+     * Specifies weights of partitions, to balance the total weight of the partitions read by each subtask
+     * instead of the number of partitions. A weight would typically be the byte rate of a partition as
+     * observed in earlier runs, optionally increased by the partition's current lag.
+     *
+     * <p>Partitions are only moved away from the subtask that the default round-robin assignment picks
+     * for them if that is necessary to balance the load, see {@link WeightedKafkaTopicPartitionAssigner}.
+     * Partitions without a weight, including partitions that are discovered later on, are assigned
+     * round-robin.
+     *
+     * <p>When restoring from a checkpoint or savepoint with different weights, the partitions are
+     * re-assigned according to the new weights.
+     *
+     * @param partitionWeights the non-negative weights of the partitions
+     * @return The consumer object, to allow function chaining.
+     */
+    public FlinkKafkaConsumerBase<T> setPartitionWeights(Map<KafkaTopicPartition, Long> partitionWeights) {
+        this.partitionAssignmentStrategy = new WeightedKafkaTopicPartitionAssigner(checkNotNull(partitionWeights));
+        return this;
+    }
+
     // ------------------------------------------------------------------------
     //  Work methods
     // ------------------------------------------------------------------------
@@ -562,7 +608,7 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
                 if (!restoredFromOldState) {
                     // seed the partition discoverer with the union state while filtering out
                     // restored partitions that should not be subscribed by this subtask
-                    if (KafkaTopicPartitionAssigner.assign(
+                    if (partitionAssignmentStrategy.assign(
                             restoredStateEntry.getKey(), getRuntimeContext().getNumberOfParallelSubtasks())
                             == getRuntimeContext().getIndexOfThisSubtask()) {
                         subscribedPartitionsToStartOffsets.put(restoredStateEntry.getKey(), restoredStateEntry.getValue());
@@ -900,32 +946,35 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
 
         OperatorStateStore stateStore = context.getOperatorStateStore();
 
-        ListState<Tuple2<KafkaTopicPartition, Long>> oldRoundRobinListState = null;//cfbber
-//			stateStore.getSerializableListState(DefaultOperatorStateBackend.DEFAULT_OPERATOR_STATE_NAME);
-        System.err.println("特性丢失 ++++ old");
+        this.pendingOffsetsToCommit = new KafkaPendingOffsetCommits(MAX_NUM_PENDING_CHECKPOINTS);
 
         this.unionOffsetStates = stateStore.getUnionListState(new ListStateDescriptor<>(OFFSETS_STATE_NAME,
                 createStateSerializer(getRuntimeContext().getExecutionConfig())));
 
+        // the per-subtask entries are still distributed as union state, so that all offsets are
+        // available if the parallelism changed; otherwise only the own entry is decoded
+        this.subtaskOffsetStates = stateStore.getUnionListState(new ListStateDescriptor<>(SUBTASK_OFFSETS_STATE_NAME,
+                BytePrimitiveArraySerializer.INSTANCE));
+
         if (context.isRestored() && !restoredFromOldState) {
             restoredState = new TreeMap<>(new KafkaTopicPartition.Comparator());
 
-            // migrate from 1.2 state, if there is any
-            System.err.println("特性丢失--->oldRoundRobinListState");
-            for (Tuple2<KafkaTopicPartition, Long> kafkaOffset : oldRoundRobinListState.get()) {
-                restoredFromOldState = true;
-                unionOffsetStates.add(kafkaOffset);
-            }
-            oldRoundRobinListState.clear();
-
-            if (restoredFromOldState && discoveryIntervalMillis != PARTITION_DISCOVERY_DISABLED) {
-                throw new IllegalArgumentException(
-                        "Topic / partition discovery cannot be enabled if the job is restored from a savepoint from Flink 1.2.x.");
+            // migrate from state written with one entry per partition, if there is any
+            for (Tuple2<KafkaTopicPartition, Long> kafkaOffset : unionOffsetStates.get()) {
+                restoredState.put(kafkaOffset.f0, kafkaOffset.f1);
             }
+            unionOffsetStates.clear();
 
             // populate actual holder for restored state
-            for (Tuple2<KafkaTopicPartition, Long> kafkaOffset : unionOffsetStates.get()) {
-                restoredState.put(kafkaOffset.f0, kafkaOffset.f1);
+            final int indexOfThisSubtask = getRuntimeContext().getIndexOfThisSubtask();
+            final int numParallelSubtasks = getRuntimeContext().getNumberOfParallelSubtasks();
+            for (byte[] serializedOffsets : subtaskOffsetStates.get()) {
+                KafkaPartitionOffsetsCodec.deserialize(
+                        serializedOffsets,
+                        indexOfThisSubtask,
+                        numParallelSubtasks,
+                        partitionAssignmentStrategy.getAssignmentId(),
+                        restoredState);
             }
 
             LOG.info("Consumer subtask {} restored state: {}.", getRuntimeContext().getIndexOfThisSubtask(), restoredState);
@@ -939,41 +988,35 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
         if (!running) {
             LOG.debug("snapshotState() called on closed source");
         } else {
-            unionOffsetStates.clear();
+            subtaskOffsetStates.clear();
 
             final AbstractFetcher<?, ?> fetcher = this.kafkaFetcher;
             if (fetcher == null) {
                 // the fetcher has not yet been initialized, which means we need to return the
                 // originally restored offsets or the assigned partitions
-                for (Map.Entry<KafkaTopicPartition, Long> subscribedPartition : subscribedPartitionsToStartOffsets.entrySet()) {
-                    unionOffsetStates.add(Tuple2.of(subscribedPartition.getKey(), subscribedPartition.getValue()));
-                }
+                subtaskOffsetStates.add(serializeSubtaskOffsets(
+                        KafkaTopicPartitionOffsetsSnapshot.of(subscribedPartitionsToStartOffsets)));
 
                 if (offsetCommitMode == OffsetCommitMode.ON_CHECKPOINTS) {
-                    // the map cannot be asynchronously updated, because only one checkpoint call can happen
+                    // the pending offsets cannot be asynchronously updated, because only one checkpoint call can happen
                     // on this function at a time: either snapshotState() or notifyCheckpointComplete()
-                    pendingOffsetsToCommit.put(context.getCheckpointId(), restoredState);
+                    pendingOffsetsToCommit.add(
+                            context.getCheckpointId(),
+                            KafkaTopicPartitionOffsetsSnapshot.of(
+                                    restoredState != null ? restoredState : Collections.emptyMap()));
                 }
             } else {
-                HashMap<KafkaTopicPartition, Long> currentOffsets = fetcher.snapshotCurrentState();
+                // the snapshot is reused by the fetcher, and is only valid until the next checkpoint
+                KafkaTopicPartitionOffsetsSnapshot currentOffsets = fetcher.snapshotCurrentState();
 
                 if (offsetCommitMode == OffsetCommitMode.ON_CHECKPOINTS) {
-                    // the map cannot be asynchronously updated, because only one checkpoint call can happen
-                    // on this function at a time: either snapshotState() or notifyCheckpointComplete()
-                    pendingOffsetsToCommit.put(context.getCheckpointId(), currentOffsets);
+                    // the pending offsets cannot be asynchronously updated, because only one checkpoint call can happen
+                    // on this function at a time: either snapshotState() or notifyCheckpointComplete();
+                    // this also truncates the pending offsets to commit, to prevent infinite growth
+                    pendingOffsetsToCommit.add(context.getCheckpointId(), currentOffsets);
                 }
 
-                for (Map.Entry<KafkaTopicPartition, Long> kafkaTopicPartitionLongEntry : currentOffsets.entrySet()) {
-                    unionOffsetStates.add(
-                            Tuple2.of(kafkaTopicPartitionLongEntry.getKey(), kafkaTopicPartitionLongEntry.getValue()));
-                }
-            }
-
-            if (offsetCommitMode == OffsetCommitMode.ON_CHECKPOINTS) {
-                // truncate the map of pending offsets to commit, to prevent infinite growth
-                while (pendingOffsetsToCommit.size() > MAX_NUM_PENDING_CHECKPOINTS) {
-                    pendingOffsetsToCommit.remove(0);
-                }
+                subtaskOffsetStates.add(serializeSubtaskOffsets(currentOffsets));
             }
         }
     }
@@ -999,23 +1042,15 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
             }
 
             try {
-                final int posInMap = pendingOffsetsToCommit.indexOf(checkpointId);
-                if (posInMap == -1) {
+                // this also removes older checkpoints from the pending offsets
+                final Map<KafkaTopicPartition, Long> offsets = pendingOffsetsToCommit.commit(checkpointId);
+                if (offsets == null) {
                     LOG.warn("Consumer subtask {} received confirmation for unknown checkpoint id {}",
                             getRuntimeContext().getIndexOfThisSubtask(), checkpointId);
                     return;
                 }
 
-                @SuppressWarnings("unchecked")
-                Map<KafkaTopicPartition, Long> offsets =
-                        (Map<KafkaTopicPartition, Long>) pendingOffsetsToCommit.remove(posInMap);
-
-                // remove older checkpoints in map
-                for (int i = 0; i < posInMap; i++) {
-                    pendingOffsetsToCommit.remove(0);
-                }
-
-                if (offsets == null || offsets.size() == 0) {
+                if (offsets.size() == 0) {
                     LOG.debug("Consumer subtask {} has empty checkpoint state.", getRuntimeContext().getIndexOfThisSubtask());
                     return;
                 }
@@ -1030,6 +1065,14 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
         }
     }
 
+    private byte[] serializeSubtaskOffsets(KafkaTopicPartitionOffsetsSnapshot offsets) throws IOException {
+        return KafkaPartitionOffsetsCodec.serialize(
+                getRuntimeContext().getIndexOfThisSubtask(),
+                getRuntimeContext().getNumberOfParallelSubtasks(),
+                partitionAssignmentStrategy.getAssignmentId(),
+                offsets);
+    }
+
     // ------------------------------------------------------------------------
     //  Kafka Consumer specific methods
     // ------------------------------------------------------------------------
@@ -1071,6 +1114,15 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
 
     protected abstract boolean getIsAutoCommitEnabled();
 
+    /**
+     * Gets the strategy that determines which partitions are read by which subtask.
+     * Partition discoverers created by {@link #createPartitionDiscoverer(KafkaTopicsDescriptor, int, int)}
+     * must use this strategy.
+     */
+    protected KafkaTopicPartitionAssignmentStrategy getPartitionAssignmentStrategy() {
+        return partitionAssignmentStrategy;
+    }
+
     protected abstract Map<KafkaTopicPartition, Long> fetchOffsetsWithTimestamp(
             Collection<KafkaTopicPartition> partitions,
             long timestamp);
@@ -1104,7 +1156,7 @@ public abstract class FlinkKafkaConsumerBase<T> extends RichParallelSourceFuncti
     }
 
     @VisibleForTesting
-    LinkedMap getPendingOffsetsToCommit() {
+    KafkaPendingOffsetCommits getPendingOffsetsToCommit() {
         return pendingOffsetsToCommit;
     }
 
@@ -24,23 +24,29 @@ import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.streaming.api.functions.AssignerWithPeriodicWatermarks;
 import org.apache.flink.streaming.api.functions.AssignerWithPunctuatedWatermarks;
 import org.apache.flink.streaming.api.functions.source.SourceFunction.SourceContext;
+import org.apache.shade.flink.streaming.connectors.kafka.FlinkKafkaConsumer09;
 import org.apache.shade.flink.streaming.connectors.kafka.KafkaDeserializationSchema;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.AbstractFetcher;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaCommitCallback;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartition;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartitionState;
 import org.apache.flink.streaming.runtime.tasks.ProcessingTimeService;
+import org.apache.flink.util.PropertiesUtil;
 import org.apache.flink.util.SerializedValue;
 
+import org.apache.shade.kafka.clients.consumer.ConsumerConfig;
 import org.apache.shade.kafka.clients.consumer.ConsumerRecord;
 import org.apache.shade.kafka.clients.consumer.ConsumerRecords;
 import org.apache.shade.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.shade.kafka.clients.consumer.RecordTrace;
 import org.apache.shade.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -69,9 +75,19 @@ public class Kafka09Fetcher<T> extends AbstractFetcher<T, TopicPartition> {
 	/** The thread that runs the actual KafkaConsumer and hand the record batches to this fetcher. */
 	private final KafkaConsumerThread consumerThread;
 
+	/** The tracer of the records sampled by the Kafka consumer, or {@code null} if tracing is off. */
+	@Nullable
+	private final KafkaRecordTracer recordTracer;
+
 	/** Flag to mark the main work loop as alive. */
 	private volatile boolean running = true;
 
+	/** The subscribed partition states, by their handle, to find the states of the partitions in a polled batch. */
+	private final Map<TopicPartition, KafkaTopicPartitionState<TopicPartition>> partitionStatesByHandle = new HashMap<>();
+
+	/** The number of subscribed partition states that are contained in {@link #partitionStatesByHandle}. */
+	private int numIndexedPartitionStates;
+
 	// ------------------------------------------------------------------------
 
 	public Kafka09Fetcher(
@@ -97,12 +113,18 @@ public class Kafka09Fetcher<T> extends AbstractFetcher<T, TopicPartition> {
 				watermarksPunctuated,
 				processingTimeProvider,
 				autoWatermarkInterval,
+				PropertiesUtil.getLong(kafkaProperties, FlinkKafkaConsumer09.KEY_PARTITION_IDLE_TIMEOUT_MILLIS, DISABLED),
+				PropertiesUtil.getLong(kafkaProperties, FlinkKafkaConsumer09.KEY_WATERMARK_ALIGNMENT_MAX_DRIFT_MILLIS, DISABLED),
 				userCodeClassLoader,
 				consumerMetricGroup,
 				useMetrics);
 
 		this.deserializer = deserializer;
 		this.handover = new Handover();
+		this.recordTracer =
+			useMetrics && PropertiesUtil.getInt(kafkaProperties, ConsumerConfig.RECORD_TRACE_SAMPLE_INTERVAL_CONFIG, 0) > 0
+				? new KafkaRecordTracer(consumerMetricGroup)
+				: null;
 
 		this.consumerThread = new KafkaConsumerThread(
 				LOG,
@@ -126,24 +148,42 @@ public class Kafka09Fetcher<T> extends AbstractFetcher<T, TopicPartition> {
 	public void runFetchLoop() throws Exception {
 		try {
 			final Handover handover = this.handover;
+			final KafkaRecordTracer recordTracer = this.recordTracer;
 
-			// kick off the actual Kafka consumer
+			// kick off the actual Kafka consumer, and the watermark emitter now that the
+			// consumer thread it pauses partitions on is assigned
 			consumerThread.start();
+			startPeriodicWatermarkEmitter();
 
 			while (running) {
 				// this blocks until we get the next records
 				// it automatically re-throws exceptions encountered in the consumer thread
 				final ConsumerRecords<byte[], byte[]> records = handover.pollNext();
 
-				// get the records for each topic partition
-				for (KafkaTopicPartitionState<TopicPartition> partition : subscribedPartitionStates()) {
+				// get the records for each topic partition that has records in the batch, instead of
+				// looking up every subscribed partition in the records
+				for (TopicPartition topicPartition : records.partitions()) {
+					final KafkaTopicPartitionState<TopicPartition> partition = getPartitionState(topicPartition);
+					if (partition == null) {
+						continue;
+					}
 
-					List<ConsumerRecord<byte[], byte[]>> partitionRecords =
-							records.records(partition.getKafkaPartitionHandle());
+					List<ConsumerRecord<byte[], byte[]>> partitionRecords = records.records(topicPartition);
+					if (partitionRecords.isEmpty()) {
+						continue;
+					}
 
+					// the consumer thread pauses partitions whose fetched bytes are not emitted fast enough
+					long emittedBytes = 0;
 					for (ConsumerRecord<byte[], byte[]> record : partitionRecords) {
+						emittedBytes += KafkaConsumerThread.getRecordSize(record);
+
+						// only the records sampled by the consumer carry a trace
+						final RecordTrace trace = recordTracer != null ? record.trace() : null;
+						final long processingTimeNanos = trace != null ? System.nanoTime() : 0L;
 
 						final T value = deserializer.deserialize(record);
+						final long deserializedTimeNanos = trace != null ? System.nanoTime() : 0L;
 
 						if (deserializer.isEndOfStream(value)) {
 							// end of stream signaled
@@ -154,7 +194,13 @@ public class Kafka09Fetcher<T> extends AbstractFetcher<T, TopicPartition> {
 						// emit the actual record. this also updates offset state atomically
 						// and deals with timestamps and watermark generation
 						emitRecord(value, partition, record.offset(), record);
+
+						if (trace != null) {
+							recordTracer.record(
+								topicPartition, trace, processingTimeNanos, deserializedTimeNanos, System.nanoTime());
+						}
 					}
+					partition.addEmittedBytes(emittedBytes);
 				}
 			}
 		}
@@ -174,6 +220,30 @@ public class Kafka09Fetcher<T> extends AbstractFetcher<T, TopicPartition> {
 		}
 	}
 
+	/**
+	 * Gets the state of a subscribed partition by its handle, indexing newly subscribed
+	 * partitions first if necessary.
+	 */
+	private KafkaTopicPartitionState<TopicPartition> getPartitionState(TopicPartition topicPartition) {
+		final KafkaTopicPartitionState<TopicPartition> partitionState = partitionStatesByHandle.get(topicPartition);
+		if (partitionState != null) {
+			return partitionState;
+		}
+		indexPartitionStates();
+		return partitionStatesByHandle.get(topicPartition);
+	}
+
+	private void indexPartitionStates() {
+		final List<KafkaTopicPartitionState<TopicPartition>> partitionStates = subscribedPartitionStates();
+
+		// the subscribed partition states are only ever appended to
+		for (int i = numIndexedPartitionStates; i < partitionStates.size(); i++) {
+			final KafkaTopicPartitionState<TopicPartition> partitionState = partitionStates.get(i);
+			partitionStatesByHandle.put(partitionState.getKafkaPartitionHandle(), partitionState);
+		}
+		numIndexedPartitionStates = partitionStates.size();
+	}
+
 	@Override
 	public void cancel() {
 		// flag the main thread to exit. A thread interrupt will come anyways.
@@ -217,6 +287,15 @@ public class Kafka09Fetcher<T> extends AbstractFetcher<T, TopicPartition> {
 		return new TopicPartition(partition.getTopic(), partition.getPartition());
 	}
 
+	@Override
+	protected void setPartitionsPausedForAlignment(List<KafkaTopicPartitionState<TopicPartition>> pausedPartitions) {
+		List<TopicPartition> partitions = new ArrayList<>(pausedPartitions.size());
+		for (KafkaTopicPartitionState<TopicPartition> partition : pausedPartitions) {
+			partitions.add(partition.getKafkaPartitionHandle());
+		}
+		consumerThread.setPartitionsPausedForAlignment(partitions);
+	}
+
 	@Override
 	protected void doCommitInternalOffsetsToKafka(
 			Map<KafkaTopicPartition, Long> offsets,
@@ -18,50 +18,82 @@
 package org.apache.shade.flink.streaming.connectors.kafka.internal;
 
 import org.apache.flink.annotation.Internal;
+import org.apache.shade.flink.streaming.connectors.kafka.FlinkKafkaConsumer09;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.AbstractPartitionDiscoverer;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartition;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartitionAssigner;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartitionAssignmentStrategy;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicsDescriptor;
 
 import org.apache.shade.kafka.clients.consumer.KafkaConsumer;
 import org.apache.shade.kafka.common.PartitionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+import static org.apache.flink.util.PropertiesUtil.getLong;
 import static org.apache.flink.util.Preconditions.checkNotNull;
 
 /**
  * A partition discoverer that can be used to discover topics and partitions metadata
  * from Kafka brokers via the Kafka 0.9 high-level consumer API.
+ *
+ * <p>The metadata of all topics is fetched with a single request, and shared with the other
+ * discoverers in the same JVM through a {@link Kafka09TopicMetadataCache}.
  */
 @Internal
 public class Kafka09PartitionDiscoverer extends AbstractPartitionDiscoverer {
 
+	private static final Logger LOG = LoggerFactory.getLogger(Kafka09PartitionDiscoverer.class);
+
 	private final Properties kafkaProperties;
 
+	/** The maximum age of shared topic metadata that is still used for discovery, in milliseconds. */
+	private final long metadataMaxAgeMillis;
+
 	private KafkaConsumer<?, ?> kafkaConsumer;
 
+	private Kafka09TopicMetadataCache metadataCache;
+
 	public Kafka09PartitionDiscoverer(
 			KafkaTopicsDescriptor topicsDescriptor,
 			int indexOfThisSubtask,
 			int numParallelSubtasks,
 			Properties kafkaProperties) {
 
-		super(topicsDescriptor, indexOfThisSubtask, numParallelSubtasks);
+		this(topicsDescriptor, indexOfThisSubtask, numParallelSubtasks, KafkaTopicPartitionAssigner.ROUND_ROBIN, kafkaProperties);
+	}
+
+	public Kafka09PartitionDiscoverer(
+			KafkaTopicsDescriptor topicsDescriptor,
+			int indexOfThisSubtask,
+			int numParallelSubtasks,
+			KafkaTopicPartitionAssignmentStrategy assignmentStrategy,
+			Properties kafkaProperties) {
+
+		super(topicsDescriptor, indexOfThisSubtask, numParallelSubtasks, assignmentStrategy);
 		this.kafkaProperties = checkNotNull(kafkaProperties);
+		this.metadataMaxAgeMillis = getLong(
+			kafkaProperties,
+			FlinkKafkaConsumer09.KEY_PARTITION_DISCOVERY_METADATA_MAX_AGE_MILLIS,
+			FlinkKafkaConsumer09.DEFAULT_PARTITION_DISCOVERY_METADATA_MAX_AGE_MILLIS,
+			LOG);
 	}
 
 	@Override
 	protected void initializeConnections() {
 		this.kafkaConsumer = new KafkaConsumer<>(kafkaProperties);
+		this.metadataCache = Kafka09TopicMetadataCache.acquire(kafkaProperties);
 	}
 
 	@Override
 	protected List<String> getAllTopics() throws WakeupException {
 		try {
-			return new ArrayList<>(kafkaConsumer.listTopics().keySet());
+			return new ArrayList<>(metadataCache.getTopicPartitions(kafkaConsumer, metadataMaxAgeMillis).keySet());
 		} catch (org.apache.shade.kafka.common.errors.WakeupException e) {
 			// rethrow our own wakeup exception
 			throw new WakeupException();
@@ -70,14 +102,24 @@ public class Kafka09PartitionDiscoverer extends AbstractPartitionDiscoverer {
 
 	@Override
 	protected List<KafkaTopicPartition> getAllPartitionsForTopics(List<String> topics) throws WakeupException, RuntimeException {
-		List<KafkaTopicPartition> partitions = new LinkedList<>();
+		List<KafkaTopicPartition> partitions = new ArrayList<>();
 
 		try {
+			final Map<String, List<KafkaTopicPartition>> topicPartitions =
+				metadataCache.getTopicPartitions(kafkaConsumer, metadataMaxAgeMillis);
+
 			for (String topic : topics) {
+				final List<KafkaTopicPartition> cachedPartitions = topicPartitions.get(topic);
+				if (cachedPartitions != null) {
+					partitions.addAll(cachedPartitions);
+					continue;
+				}
+
+				// the topic may have been created after the metadata was fetched
 				final List<PartitionInfo> kafkaPartitions = kafkaConsumer.partitionsFor(topic);
 
 				if (kafkaPartitions == null) {
-					throw new RuntimeException("Could not fetch partitions for %s. Make sure that the topic exists.".format(topic));
+					throw new RuntimeException(String.format("Could not fetch partitions for %s. Make sure that the topic exists.", topic));
 				}
 
 				for (PartitionInfo partitionInfo : kafkaPartitions) {
@@ -94,13 +136,24 @@ public class Kafka09PartitionDiscoverer extends AbstractPartitionDiscoverer {
 
 	@Override
 	protected void wakeupConnections() {
-		if (this.kafkaConsumer != null) {
-			this.kafkaConsumer.wakeup();
+		final KafkaConsumer<?, ?> kafkaConsumer = this.kafkaConsumer;
+		final Kafka09TopicMetadataCache metadataCache = this.metadataCache;
+		if (kafkaConsumer != null) {
+			kafkaConsumer.wakeup();
+			// the discoverer may be waiting for the metadata fetch of another discoverer
+			if (metadataCache != null) {
+				metadataCache.wakeup(kafkaConsumer);
+			}
 		}
 	}
 
 	@Override
 	protected void closeConnections() throws Exception {
+		if (this.metadataCache != null) {
+			this.metadataCache.release(this.kafkaConsumer);
+			this.metadataCache = null;
+		}
+
 		if (this.kafkaConsumer != null) {
 			this.kafkaConsumer.close();
 
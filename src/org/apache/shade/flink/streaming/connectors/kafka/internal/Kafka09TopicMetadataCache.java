@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartition;
+
+import org.apache.shade.kafka.clients.consumer.KafkaConsumer;
+import org.apache.shade.kafka.common.PartitionInfo;
+import org.apache.shade.kafka.common.errors.InterruptException;
+import org.apache.shade.kafka.common.errors.WakeupException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.apache.flink.util.Preconditions.checkState;
+
+/**
+ * Topic metadata that is shared by all partition discoverers in the same JVM (i.e. TaskManager)
+ * that connect with the same Kafka properties.
+ *
+ * <p>The metadata of all topics is fetched with a single request. If another discoverer already
+ * fetched the metadata less than the maximum age ago, it is reused instead of fetching it again,
+ * so that a discovery round of all subtasks on a TaskManager results in only one metadata request.
+ *
+ * <p>The metadata is fetched by one discoverer at a time, without holding a lock. Discoverers that
+ * need the metadata meanwhile wait for that fetch, and can be woken up with {@link #wakeup(KafkaConsumer)}
+ * like from a blocking call of their own consumer. If the fetch fails, one of them fetches it again.
+ *
+ * <p>The partition lists of topics whose partition count did not change are kept across fetches,
+ * so that only new topics and partitions result in new {@link KafkaTopicPartition} instances.
+ */
+@Internal
+public final class Kafka09TopicMetadataCache {
+
+	/** The caches of this JVM, by the Kafka properties they were created for. */
+	private static final Map<Map<String, String>, Kafka09TopicMetadataCache> CACHES = new HashMap<>();
+
+	/** The key of this cache in {@link #CACHES}. */
+	private final Map<String, String> key;
+
+	/** The number of discoverers that use this cache. Guarded by {@link #CACHES}. */
+	private int referenceCount;
+
+	/** The partitions of all topics, as of the last fetch. Guarded by {@code this}. */
+	private Map<String, List<KafkaTopicPartition>> topicPartitions = Collections.emptyMap();
+
+	/** The time of the last fetch, or {@code -1} if the metadata was never fetched. Guarded by {@code this}. */
+	private long lastFetchTimeMillis = -1L;
+
+	/** The fetch in progress, or {@code null} if there is none. Guarded by {@code this}. */
+	private CompletableFuture<Map<String, List<KafkaTopicPartition>>> ongoingFetch;
+
+	/** The waits for the ongoing fetch, by the consumer of the waiting discoverer. Guarded by {@code this}. */
+	private final Map<KafkaConsumer<?, ?>, CompletableFuture<Map<String, List<KafkaTopicPartition>>>> waits =
+		new IdentityHashMap<>();
+
+	/** The consumers that were woken up while their discoverer was not waiting. Guarded by {@code this}. */
+	private final Map<KafkaConsumer<?, ?>, Boolean> pendingWakeups = new IdentityHashMap<>();
+
+	private Kafka09TopicMetadataCache(Map<String, String> key) {
+		this.key = key;
+	}
+
+	/**
+	 * Gets the shared cache for the given Kafka properties. Each call must be matched by
+	 * a call to {@link #release(KafkaConsumer)}.
+	 */
+	public static Kafka09TopicMetadataCache acquire(Properties kafkaProperties) {
+		// the property names include the defaults of the properties
+		final Map<String, String> key = new HashMap<>();
+		for (String name : kafkaProperties.stringPropertyNames()) {
+			key.put(name, kafkaProperties.getProperty(name));
+		}
+
+		synchronized (CACHES) {
+			Kafka09TopicMetadataCache cache = CACHES.get(key);
+			if (cache == null) {
+				cache = new Kafka09TopicMetadataCache(key);
+				CACHES.put(key, cache);
+			}
+			cache.referenceCount++;
+			return cache;
+		}
+	}
+
+	/**
+	 * Releases this cache. The cache is dropped once it was released by all discoverers.
+	 *
+	 * @param kafkaConsumer the consumer that the releasing discoverer used with this cache
+	 */
+	public void release(KafkaConsumer<?, ?> kafkaConsumer) {
+		synchronized (this) {
+			pendingWakeups.remove(kafkaConsumer);
+		}
+		synchronized (CACHES) {
+			checkState(referenceCount > 0, "The topic metadata cache was already released.");
+			if (--referenceCount == 0) {
+				CACHES.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Gets the partitions of all topics, fetching the metadata with the given consumer if the cached
+	 * metadata is older than the given maximum age.
+	 *
+	 * <p>Concurrent callers wait for an ongoing fetch, and use its result.
+	 *
+	 * @param kafkaConsumer the consumer to fetch the metadata with, owned by the calling discoverer
+	 * @param maxAgeMillis the maximum age of the cached metadata, in milliseconds
+	 *
+	 * @return the partitions of all topics, by topic
+	 *
+	 * @throws WakeupException if the consumer was woken up while fetching or waiting for the metadata
+	 * @throws InterruptException if the calling thread was interrupted while waiting for the metadata
+	 */
+	public Map<String, List<KafkaTopicPartition>> getTopicPartitions(
+			KafkaConsumer<?, ?> kafkaConsumer,
+			long maxAgeMillis) {
+
+		while (true) {
+			final CompletableFuture<Map<String, List<KafkaTopicPartition>>> fetch;
+			final CompletableFuture<Map<String, List<KafkaTopicPartition>>> wait;
+			synchronized (this) {
+				// a wakeup of the consumer itself interrupts the fetch of the caller, if it is the one to fetch
+				final boolean wokenUp = pendingWakeups.remove(kafkaConsumer) != null;
+
+				final long now = System.currentTimeMillis();
+				if (lastFetchTimeMillis >= 0 && now - lastFetchTimeMillis <= maxAgeMillis) {
+					return topicPartitions;
+				}
+
+				if (ongoingFetch == null) {
+					ongoingFetch = new CompletableFuture<>();
+					fetch = ongoingFetch;
+					wait = null;
+				} else if (wokenUp) {
+					throw new WakeupException();
+				} else {
+					fetch = null;
+					wait = ongoingFetch.thenApply(partitions -> partitions);
+					waits.put(kafkaConsumer, wait);
+				}
+			}
+
+			if (fetch != null) {
+				return fetch(kafkaConsumer, fetch);
+			}
+
+			try {
+				return wait.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof WakeupException) {
+					throw (WakeupException) e.getCause();
+				}
+				// the fetch of the other discoverer failed, so try to fetch the metadata again
+			} finally {
+				synchronized (this) {
+					waits.remove(kafkaConsumer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wakes up the discoverer of the given consumer, if it waits for the fetch of another discoverer.
+	 * Otherwise, its next wait is woken up immediately. This method may be called from any thread, along
+	 * with {@link KafkaConsumer#wakeup()}, which wakes up a fetch of the discoverer itself.
+	 */
+	public void wakeup(KafkaConsumer<?, ?> kafkaConsumer) {
+		synchronized (this) {
+			final CompletableFuture<Map<String, List<KafkaTopicPartition>>> wait = waits.get(kafkaConsumer);
+			if (wait != null) {
+				wait.completeExceptionally(new WakeupException());
+			} else {
+				pendingWakeups.put(kafkaConsumer, Boolean.TRUE);
+			}
+		}
+	}
+
+	private Map<String, List<KafkaTopicPartition>> fetch(
+			KafkaConsumer<?, ?> kafkaConsumer,
+			CompletableFuture<Map<String, List<KafkaTopicPartition>>> fetch) {
+
+		final long fetchTimeMillis = System.currentTimeMillis();
+		final Map<String, List<PartitionInfo>> topics;
+		try {
+			topics = kafkaConsumer.listTopics();
+		} catch (Throwable t) {
+			synchronized (this) {
+				ongoingFetch = null;
+			}
+			fetch.completeExceptionally(t);
+			throw t;
+		}
+
+		final Map<String, List<KafkaTopicPartition>> result;
+		synchronized (this) {
+			final Map<String, List<KafkaTopicPartition>> previousTopicPartitions = topicPartitions;
+			final Map<String, List<KafkaTopicPartition>> newTopicPartitions = new HashMap<>(topics.size());
+
+			for (Map.Entry<String, List<PartitionInfo>> topic : topics.entrySet()) {
+				final List<PartitionInfo> partitionInfos = topic.getValue();
+				List<KafkaTopicPartition> partitions = previousTopicPartitions.get(topic.getKey());
+
+				// partitions can only be added to a topic, so an unchanged count means unchanged partitions
+				if (partitions == null || partitions.size() != partitionInfos.size()) {
+					final List<KafkaTopicPartition> newPartitions = new ArrayList<>(partitionInfos.size());
+					for (PartitionInfo partitionInfo : partitionInfos) {
+						newPartitions.add(new KafkaTopicPartition(partitionInfo.topic(), partitionInfo.partition()));
+					}
+					partitions = Collections.unmodifiableList(newPartitions);
+				}
+				newTopicPartitions.put(topic.getKey(), partitions);
+			}
+
+			topicPartitions = Collections.unmodifiableMap(newTopicPartitions);
+			lastFetchTimeMillis = fetchTimeMillis;
+			ongoingFetch = null;
+			result = topicPartitions;
+		}
+
+		fetch.complete(result);
+		return result;
+	}
+}
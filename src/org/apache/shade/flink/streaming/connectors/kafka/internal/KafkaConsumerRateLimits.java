@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.util.PropertiesUtil;
+import org.apache.shade.flink.streaming.connectors.kafka.FlinkKafkaConsumer09;
+
+import org.apache.shade.kafka.common.TopicPartition;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.apache.flink.util.Preconditions.checkState;
+
+/**
+ * The byte rate limits of a {@link KafkaConsumerThread}, as {@link TokenBucket token buckets} for the whole
+ * consumer, for each topic with a configured budget, and for each partition.
+ *
+ * <p>A partition is throttled while any of the buckets it draws from is exhausted. The consumer
+ * thread pauses throttled partitions before it polls, so that records are not fetched beyond the
+ * budget in the first place, and charges the bytes of the fetched records to the buckets afterwards.
+ *
+ * <p>If a shared budget name is configured, the consumer and topic buckets are shared by all consumers
+ * in the same JVM (i.e. TaskManager) with the same budget name, and limit their combined rate.
+ *
+ * <p>Apart from the shared buckets, this class is only accessed by the consumer thread.
+ */
+@Internal
+public final class KafkaConsumerRateLimits {
+
+	/** The shared buckets of this JVM, by budget name and scope. */
+	private static final Map<String, SharedBucket> SHARED_BUCKETS = new HashMap<>();
+
+	private static final String TOPIC_RATE_PREFIX = FlinkKafkaConsumer09.KEY_RATE_LIMIT_TOPIC_PREFIX;
+	private static final String TOPIC_RATE_SUFFIX = FlinkKafkaConsumer09.KEY_RATE_LIMIT_TOPIC_BYTES_PER_SECOND_SUFFIX;
+
+	/** The bucket of the whole consumer, or {@code null} if it is not limited. */
+	@Nullable
+	private final TokenBucket consumerBucket;
+
+	/** The buckets of the topics with a budget. */
+	private final Map<String, TokenBucket> topicBuckets;
+
+	/** The rate of each partition, or {@code -1} if partitions are not limited. */
+	private final long partitionBytesPerSecond;
+
+	/** The buckets of the partitions, created when a partition is first fetched. */
+	private final Map<TopicPartition, TokenBucket> partitionBuckets;
+
+	/** The burst credit, as the time of unused rate that buckets accumulate at most. */
+	private final long burstMillis;
+
+	/** The keys of the shared buckets that this instance acquired. */
+	private final List<String> sharedBucketKeys;
+
+	private KafkaConsumerRateLimits(Properties kafkaProperties, long nowNanos) {
+		this.burstMillis = PropertiesUtil.getLong(
+			kafkaProperties, FlinkKafkaConsumer09.KEY_RATE_LIMIT_BURST_MILLIS, FlinkKafkaConsumer09.DEFAULT_RATE_LIMIT_BURST_MILLIS);
+		this.partitionBytesPerSecond = PropertiesUtil.getLong(
+			kafkaProperties, FlinkKafkaConsumer09.KEY_RATE_LIMIT_PARTITION_BYTES_PER_SECOND, -1L);
+		this.partitionBuckets = new HashMap<>();
+		this.sharedBucketKeys = new ArrayList<>();
+
+		final String sharedBudget = kafkaProperties.getProperty(FlinkKafkaConsumer09.KEY_RATE_LIMIT_SHARED_BUDGET);
+
+		final long consumerBytesPerSecond = PropertiesUtil.getLong(
+			kafkaProperties, FlinkKafkaConsumer09.KEY_RATE_LIMIT_BYTES_PER_SECOND, -1L);
+		this.consumerBucket = consumerBytesPerSecond > 0
+			? createBucket(sharedBudget, "", consumerBytesPerSecond, nowNanos)
+			: null;
+
+		this.topicBuckets = new HashMap<>();
+		for (String key : kafkaProperties.stringPropertyNames()) {
+			if (key.startsWith(TOPIC_RATE_PREFIX) && key.endsWith(TOPIC_RATE_SUFFIX)
+					&& key.length() > TOPIC_RATE_PREFIX.length() + TOPIC_RATE_SUFFIX.length()) {
+				final String topic = key.substring(TOPIC_RATE_PREFIX.length(), key.length() - TOPIC_RATE_SUFFIX.length());
+				final long topicBytesPerSecond = PropertiesUtil.getLong(kafkaProperties, key, -1L);
+				if (topicBytesPerSecond > 0) {
+					topicBuckets.put(topic, createBucket(sharedBudget, topic, topicBytesPerSecond, nowNanos));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the rate limits configured in the given properties.
+	 *
+	 * @return The rate limits, or {@code null} if no rate is limited.
+	 */
+	@Nullable
+	public static KafkaConsumerRateLimits create(Properties kafkaProperties, long nowNanos) {
+		final KafkaConsumerRateLimits rateLimits = new KafkaConsumerRateLimits(kafkaProperties, nowNanos);
+		if (rateLimits.consumerBucket == null && rateLimits.topicBuckets.isEmpty() && rateLimits.partitionBytesPerSecond <= 0) {
+			return null;
+		}
+		return rateLimits;
+	}
+
+	/**
+	 * Checks whether fetching the partition exceeded any of its budgets.
+	 */
+	public boolean isThrottled(TopicPartition partition, long nowNanos) {
+		if (consumerBucket != null && !consumerBucket.hasTokens(nowNanos)) {
+			return true;
+		}
+		final TokenBucket topicBucket = topicBuckets.get(partition.topic());
+		if (topicBucket != null && !topicBucket.hasTokens(nowNanos)) {
+			return true;
+		}
+		final TokenBucket partitionBucket = partitionBuckets.get(partition);
+		return partitionBucket != null && !partitionBucket.hasTokens(nowNanos);
+	}
+
+	/**
+	 * Charges the bytes fetched from the partition to all of its budgets.
+	 */
+	public void recordFetchedBytes(TopicPartition partition, long bytes, long nowNanos) {
+		if (consumerBucket != null) {
+			consumerBucket.consume(bytes, nowNanos);
+		}
+		final TokenBucket topicBucket = topicBuckets.get(partition.topic());
+		if (topicBucket != null) {
+			topicBucket.consume(bytes, nowNanos);
+		}
+		if (partitionBytesPerSecond > 0) {
+			TokenBucket partitionBucket = partitionBuckets.get(partition);
+			if (partitionBucket == null) {
+				partitionBucket = new TokenBucket(partitionBytesPerSecond, burstCapacity(partitionBytesPerSecond), nowNanos);
+				partitionBuckets.put(partition, partitionBucket);
+			}
+			partitionBucket.consume(bytes, nowNanos);
+		}
+	}
+
+	/**
+	 * Releases the shared buckets. The shared buckets are dropped once they were released by all consumers.
+	 */
+	public void close() {
+		synchronized (SHARED_BUCKETS) {
+			for (String key : sharedBucketKeys) {
+				final SharedBucket shared = SHARED_BUCKETS.get(key);
+				checkState(shared != null && shared.referenceCount > 0, "The shared rate limit budget was already released.");
+				if (--shared.referenceCount == 0) {
+					SHARED_BUCKETS.remove(key);
+				}
+			}
+			sharedBucketKeys.clear();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	private TokenBucket createBucket(@Nullable String sharedBudget, String scope, long bytesPerSecond, long nowNanos) {
+		if (sharedBudget == null) {
+			return new TokenBucket(bytesPerSecond, burstCapacity(bytesPerSecond), nowNanos);
+		}
+
+		// the first consumer that uses a shared budget determines its rate
+		final String key = sharedBudget + '/' + scope;
+		synchronized (SHARED_BUCKETS) {
+			SharedBucket shared = SHARED_BUCKETS.get(key);
+			if (shared == null) {
+				shared = new SharedBucket(new TokenBucket(bytesPerSecond, burstCapacity(bytesPerSecond), nowNanos));
+				SHARED_BUCKETS.put(key, shared);
+			}
+			shared.referenceCount++;
+			sharedBucketKeys.add(key);
+			return shared.bucket;
+		}
+	}
+
+	private long burstCapacity(long bytesPerSecond) {
+		return Math.max(1L, bytesPerSecond * burstMillis / 1000);
+	}
+
+	/**
+	 * A bucket that is shared between consumers. Guarded by {@link #SHARED_BUCKETS}.
+	 */
+	private static final class SharedBucket {
+
+		final TokenBucket bucket;
+
+		int referenceCount;
+
+		SharedBucket(TokenBucket bucket) {
+			this.bucket = bucket;
+		}
+	}
+}
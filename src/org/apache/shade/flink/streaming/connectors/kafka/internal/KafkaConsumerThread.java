@@ -21,19 +21,21 @@ package org.apache.shade.flink.streaming.connectors.kafka.internal;
 import org.apache.flink.annotation.Internal;
 import org.apache.flink.annotation.VisibleForTesting;
 import org.apache.flink.api.common.io.ratelimiting.FlinkConnectorRateLimiter;
-import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.runtime.metrics.DescriptiveStatisticsHistogram;
+import org.apache.flink.util.PropertiesUtil;
+import org.apache.shade.flink.streaming.connectors.kafka.FlinkKafkaConsumer09;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.ClosableBlockingQueue;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaCommitCallback;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartitionState;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartitionStateSentinel;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.metrics.KafkaConsumerMetricConstants;
 import org.apache.shade.flink.streaming.connectors.kafka.internals.metrics.KafkaMetricWrapper;
 
 import org.apache.shade.kafka.clients.consumer.ConsumerRecord;
 import org.apache.shade.kafka.clients.consumer.ConsumerRecords;
 import org.apache.shade.kafka.clients.consumer.KafkaConsumer;
 import org.apache.shade.kafka.clients.consumer.OffsetAndMetadata;
-import org.apache.shade.kafka.clients.consumer.OffsetCommitCallback;
 import org.apache.shade.kafka.common.Metric;
 import org.apache.shade.kafka.common.MetricName;
 import org.apache.shade.kafka.common.TopicPartition;
@@ -44,11 +46,14 @@ import javax.annotation.Nonnull;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static org.apache.flink.util.Preconditions.checkArgument;
 import static org.apache.flink.util.Preconditions.checkNotNull;
 
 /**
@@ -67,14 +72,32 @@ import static org.apache.flink.util.Preconditions.checkNotNull;
 @Internal
 public class KafkaConsumerThread extends Thread {
 
+	/** The number of recent commits whose latency is reported. */
+	private static final int COMMIT_LATENCY_HISTOGRAM_SIZE = 100;
+
 	/** Logger for this consumer. */
 	private final Logger log;
 
 	/** The handover of data and exceptions between the consumer thread and the task thread. */
 	private final Handover handover;
 
-	/** The next offsets that the main thread should commit and the commit callback. */
-	private final AtomicReference<Tuple2<Map<TopicPartition, OffsetAndMetadata>, KafkaCommitCallback>> nextOffsetsToCommit;
+	/** The offsets that the main thread requested to commit, and the commits that are in flight. */
+	private final KafkaOffsetCommitter offsetCommitter;
+
+	/** The partitions that the main thread requested to pause for watermark alignment, if changed. */
+	private final AtomicReference<List<TopicPartition>> nextPartitionsPausedForAlignment;
+
+	/** The partitions that are currently paused, with the reasons for which they are paused. */
+	private final KafkaPartitionPauses partitionPauses;
+
+	/** The states of the partitions that are assigned to the consumer, to track their buffered bytes. */
+	private final Map<TopicPartition, KafkaTopicPartitionState<TopicPartition>> assignedPartitionStates;
+
+	/** The buffered bytes of a partition at which fetching it is paused, or -1 if flow control is disabled. */
+	private final long flowControlHighWatermarkBytes;
+
+	/** The buffered bytes of a paused partition at which fetching it is resumed. */
+	private final long flowControlLowWatermarkBytes;
 
 	/** The configuration for the Kafka consumer. */
 	private final Properties kafkaProperties;
@@ -91,6 +114,12 @@ public class KafkaConsumerThread extends Thread {
 	/** Flag whether to add Kafka's metrics to the Flink metrics. */
 	private final boolean useMetrics;
 
+	/**
+	 * Flag whether new partitions are added to the assignment without touching the already assigned
+	 * partitions, instead of re-seeking all partitions to their previous position.
+	 */
+	private final boolean incrementalPartitionAssignment;
+
 	/**
 	 * @deprecated We should only be publishing to the {{@link #consumerMetricGroup}}.
 	 *             This is kept to retain compatibility for metrics.
@@ -111,20 +140,20 @@ public class KafkaConsumerThread extends Thread {
 	private boolean hasAssignedPartitions;
 
 	/**
-	 * Flag to indicate whether an external operation ({@link #setOffsetsToCommit(Map, KafkaCommitCallback)}
-	 * or {@link #shutdown()}) had attempted to wakeup the consumer while it was isolated for partition reassignment.
+	 * Flag to indicate whether an external operation ({@link #shutdown()}) had attempted to wakeup
+	 * the consumer while it was isolated for partition reassignment.
 	 */
 	private volatile boolean hasBufferedWakeup;
 
 	/** Flag to mark the main work loop as alive. */
 	private volatile boolean running;
 
-	/** Flag tracking whether the latest commit request has completed. */
-	private volatile boolean commitInProgress;
-
 	/** Ratelimiter. */
 	private FlinkConnectorRateLimiter rateLimiter;
 
+	/** The byte rate budgets of the partitions, or {@code null} if they are not limited. */
+	private KafkaConsumerRateLimits rateLimits;
+
 	public KafkaConsumerThread(
 			Logger log,
 			Handover handover,
@@ -152,9 +181,37 @@ public class KafkaConsumerThread extends Thread {
 
 		this.pollTimeout = pollTimeout;
 		this.useMetrics = useMetrics;
+		this.incrementalPartitionAssignment = PropertiesUtil.getBoolean(
+			kafkaProperties,
+			FlinkKafkaConsumer09.KEY_INCREMENTAL_PARTITION_ASSIGNMENT,
+			true);
 
 		this.consumerReassignmentLock = new Object();
-		this.nextOffsetsToCommit = new AtomicReference<>();
+		this.offsetCommitter = new KafkaOffsetCommitter(
+			log,
+			PropertiesUtil.getInt(
+				kafkaProperties,
+				FlinkKafkaConsumer09.KEY_COMMIT_MAX_IN_FLIGHT,
+				FlinkKafkaConsumer09.DEFAULT_COMMIT_MAX_IN_FLIGHT),
+			useMetrics
+				? consumerMetricGroup.histogram(
+					KafkaConsumerMetricConstants.COMMIT_LATENCY_METRICS_HISTOGRAM,
+					new DescriptiveStatisticsHistogram(COMMIT_LATENCY_HISTOGRAM_SIZE))
+				: null);
+		this.nextPartitionsPausedForAlignment = new AtomicReference<>();
+		this.partitionPauses = new KafkaPartitionPauses(log);
+		this.assignedPartitionStates = new HashMap<>();
+
+		this.flowControlHighWatermarkBytes = PropertiesUtil.getLong(
+			kafkaProperties,
+			FlinkKafkaConsumer09.KEY_FLOW_CONTROL_HIGH_WATERMARK_BYTES,
+			-1L);
+		this.flowControlLowWatermarkBytes = PropertiesUtil.getLong(
+			kafkaProperties,
+			FlinkKafkaConsumer09.KEY_FLOW_CONTROL_LOW_WATERMARK_BYTES,
+			flowControlHighWatermarkBytes / 2);
+		checkArgument(flowControlHighWatermarkBytes < 0 || flowControlLowWatermarkBytes <= flowControlHighWatermarkBytes,
+			"The flow control low watermark must not be larger than the high watermark.");
 		this.running = true;
 
 		if (rateLimiter != null) {
@@ -178,9 +235,13 @@ public class KafkaConsumerThread extends Thread {
 		// This is important, because the consumer has multi-threading issues,
 		// including concurrent 'close()' calls.
 		try {
+			this.rateLimits = KafkaConsumerRateLimits.create(kafkaProperties, System.nanoTime());
 			this.consumer = getConsumer(kafkaProperties);
 		}
 		catch (Throwable t) {
+			if (rateLimits != null) {
+				rateLimits.close();
+			}
 			handover.reportError(t);
 			return;
 		}
@@ -222,21 +283,8 @@ public class KafkaConsumerThread extends Thread {
 			// main fetch loop
 			while (running) {
 
-				// check if there is something to commit
-				if (!commitInProgress) {
-					// get and reset the work-to-be committed, so we don't repeatedly commit the same
-					final Tuple2<Map<TopicPartition, OffsetAndMetadata>, KafkaCommitCallback> commitOffsetsAndCallback =
-							nextOffsetsToCommit.getAndSet(null);
-
-					if (commitOffsetsAndCallback != null) {
-						log.debug("Sending async offset commit request to Kafka broker");
-
-						// also record that a commit is already in progress
-						// the order here matters! first set the flag, then send the commit command.
-						commitInProgress = true;
-						consumer.commitAsync(commitOffsetsAndCallback.f0, new CommitCallback(commitOffsetsAndCallback.f1));
-					}
-				}
+				// check if there is something to commit; the commit is sent with the next poll
+				offsetCommitter.maybeCommit(consumer);
 
 				try {
 					if (hasAssignedPartitions) {
@@ -261,10 +309,23 @@ public class KafkaConsumerThread extends Thread {
 					continue;
 				}
 
+				// check if the partitions to pause for watermark alignment changed
+				final List<TopicPartition> pausedPartitions = nextPartitionsPausedForAlignment.getAndSet(null);
+				if (pausedPartitions != null) {
+					updatePartitionsPausedForAlignment(pausedPartitions);
+				}
+
 				// get the next batch of records, unless we did not manage to hand the old batch over
 				if (records == null) {
+					if (flowControlHighWatermarkBytes >= 0) {
+						updatePartitionsPausedForFlowControl();
+					}
+					if (rateLimits != null) {
+						updatePartitionsPausedForRateLimit();
+					}
 					try {
 						records = getRecordsFromKafka();
+						addFetchedBytes(records);
 					}
 					catch (WakeupException we) {
 						continue;
@@ -295,6 +356,9 @@ public class KafkaConsumerThread extends Thread {
 			if (rateLimiter != null) {
 				rateLimiter.close();
 			}
+			if (rateLimits != null) {
+				rateLimits.close();
+			}
 
 			// make sure the KafkaConsumer is closed
 			try {
@@ -342,9 +406,10 @@ public class KafkaConsumerThread extends Thread {
 	 * Tells this thread to commit a set of offsets. This method does not block, the committing
 	 * operation will happen asynchronously.
 	 *
-	 * <p>Only one commit operation may be pending at any time. If the committing takes longer than
-	 * the frequency with which this method is called, then some commits may be skipped due to being
-	 * superseded by newer ones.
+	 * <p>The offsets are sent with the next poll of the consumer, which is not woken up for that,
+	 * so that the records it is fetching are not discarded. If the committing takes longer than the
+	 * frequency with which this method is called, the offsets are merged with the offsets of the
+	 * previous calls that are not sent yet, and committed together once a commit slot is free.
 	 *
 	 * @param offsetsToCommit The offsets to commit
 	 * @param commitCallback callback when Kafka commit completes
@@ -353,28 +418,96 @@ public class KafkaConsumerThread extends Thread {
 			Map<TopicPartition, OffsetAndMetadata> offsetsToCommit,
 			@Nonnull KafkaCommitCallback commitCallback) {
 
-		// record the work to be committed by the main consumer thread and make sure the consumer notices that
-		if (nextOffsetsToCommit.getAndSet(Tuple2.of(offsetsToCommit, commitCallback)) != null) {
+		// record the work to be committed by the main consumer thread
+		if (offsetCommitter.add(offsetsToCommit, commitCallback)) {
 			log.warn("Committing offsets to Kafka takes longer than the checkpoint interval. " +
-					"Skipping commit of previous offsets because newer complete checkpoint offsets are available. " +
+					"Merging the previous offsets into the commit of the newer complete checkpoint offsets. " +
 					"This does not compromise Flink's checkpoint integrity.");
 		}
 
-		// if the consumer is blocked in a poll() or handover operation, wake it up to commit soon
+		// if the consumer is blocked in a handover operation, wake it up to commit soon;
+		// a blocking poll() returns within the poll timeout anyways
 		handover.wakeupProducer();
+	}
 
-		synchronized (consumerReassignmentLock) {
-			if (consumer != null) {
-				consumer.wakeup();
-			} else {
-				// the consumer is currently isolated for partition reassignment;
-				// set this flag so that the wakeup state is restored once the reassignment is complete
-				hasBufferedWakeup = true;
+	/**
+	 * Tells this thread to pause fetching the given partitions, and to resume all other partitions
+	 * that it paused before. This method does not block, the partitions are paused before the next poll.
+	 *
+	 * @param pausedPartitions The partitions whose watermark is too far ahead
+	 */
+	void setPartitionsPausedForAlignment(List<TopicPartition> pausedPartitions) {
+		nextPartitionsPausedForAlignment.set(pausedPartitions);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private void updatePartitionsPausedForAlignment(List<TopicPartition> pausedPartitions) {
+		final Set<TopicPartition> paused = new HashSet<>(pausedPartitions);
+		for (TopicPartition partition : partitionPauses.getPartitionsPausedFor(KafkaPartitionPauses.ALIGNMENT)) {
+			if (!paused.contains(partition)) {
+				partitionPauses.setPaused(partition, KafkaPartitionPauses.ALIGNMENT, false);
 			}
 		}
+
+		final Set<TopicPartition> assignment = consumer.assignment();
+		for (TopicPartition partition : paused) {
+			if (assignment.contains(partition)) {
+				partitionPauses.setPaused(partition, KafkaPartitionPauses.ALIGNMENT, true);
+			}
+		}
+
+		partitionPauses.apply(consumer, "their watermark alignment changed");
 	}
 
-	// ------------------------------------------------------------------------
+	/**
+	 * Pauses the partitions whose buffered bytes reached the high watermark, and resumes the paused
+	 * partitions whose buffered bytes dropped to the low watermark, so that partitions whose records
+	 * are emitted slowly do not take up the fetched batches of the other partitions.
+	 */
+	private void updatePartitionsPausedForFlowControl() {
+		for (Map.Entry<TopicPartition, KafkaTopicPartitionState<TopicPartition>> entry : assignedPartitionStates.entrySet()) {
+			final long bufferedBytes = entry.getValue().getBufferedBytes();
+
+			if (bufferedBytes >= flowControlHighWatermarkBytes) {
+				partitionPauses.setPaused(entry.getKey(), KafkaPartitionPauses.FLOW_CONTROL, true);
+			} else if (bufferedBytes <= flowControlLowWatermarkBytes) {
+				partitionPauses.setPaused(entry.getKey(), KafkaPartitionPauses.FLOW_CONTROL, false);
+			}
+		}
+
+		partitionPauses.apply(consumer, "of their buffered bytes");
+	}
+
+	/**
+	 * Pauses the partitions that exceeded one of their byte rate budgets, and resumes the paused
+	 * partitions whose budgets were refilled.
+	 */
+	private void updatePartitionsPausedForRateLimit() {
+		final long now = System.nanoTime();
+		for (TopicPartition partition : assignedPartitionStates.keySet()) {
+			partitionPauses.setPaused(partition, KafkaPartitionPauses.RATE_LIMIT, rateLimits.isThrottled(partition, now));
+		}
+
+		partitionPauses.apply(consumer, "of their rate limit");
+	}
+
+	private void addFetchedBytes(ConsumerRecords<byte[], byte[]> records) {
+		final long now = System.nanoTime();
+		for (TopicPartition partition : records.partitions()) {
+			final KafkaTopicPartitionState<TopicPartition> partitionState = assignedPartitionStates.get(partition);
+			if (partitionState != null) {
+				long bytes = 0;
+				for (ConsumerRecord<byte[], byte[]> record : records.records(partition)) {
+					bytes += getRecordSize(record);
+				}
+				partitionState.addFetchedBytes(bytes);
+				if (rateLimits != null) {
+					rateLimits.recordFetchedBytes(partition, bytes, now);
+				}
+			}
+		}
+	}
 
 	/**
 	 * Reestablishes the assigned partitions for the consumer.
@@ -391,6 +524,11 @@ public class KafkaConsumerThread extends Thread {
 	 * to wakeup the consumer during the reassignment, the wakeup call is "buffered"
 	 * until the reassignment completes.
 	 *
+	 * <p>With incremental partition assignment, the already assigned partitions keep their fetch
+	 * positions and the records that were already fetched for them, since the Kafka consumer retains the
+	 * state of partitions that stay assigned. Otherwise, their positions are read before the reassignment
+	 * and all of them are seeked back to that position afterwards.
+	 *
 	 * <p>This method is exposed for testing purposes.
 	 */
 	@VisibleForTesting
@@ -402,7 +540,7 @@ public class KafkaConsumerThread extends Thread {
 		boolean reassignmentStarted = false;
 
 		// since the reassignment may introduce several Kafka blocking calls that cannot be interrupted,
-		// the consumer needs to be isolated from external wakeup calls in setOffsetsToCommit() and shutdown()
+		// the consumer needs to be isolated from external wakeup calls in shutdown()
 		// until the reassignment is complete.
 		final KafkaConsumer<byte[], byte[]> consumerTmp;
 		synchronized (consumerReassignmentLock) {
@@ -410,22 +548,27 @@ public class KafkaConsumerThread extends Thread {
 			this.consumer = null;
 		}
 
+		final List<TopicPartition> oldPartitionAssignments = new ArrayList<>(consumerTmp.assignment());
+
+		// only populated without incremental assignment
 		final Map<TopicPartition, Long> oldPartitionAssignmentsToPosition = new HashMap<>();
 		try {
-			for (TopicPartition oldPartition : consumerTmp.assignment()) {
-				oldPartitionAssignmentsToPosition.put(oldPartition, consumerTmp.position(oldPartition));
+			if (!incrementalPartitionAssignment) {
+				for (TopicPartition oldPartition : oldPartitionAssignments) {
+					oldPartitionAssignmentsToPosition.put(oldPartition, consumerTmp.position(oldPartition));
+				}
 			}
 
 			final List<TopicPartition> newPartitionAssignments =
-				new ArrayList<>(newPartitions.size() + oldPartitionAssignmentsToPosition.size());
-			newPartitionAssignments.addAll(oldPartitionAssignmentsToPosition.keySet());
+				new ArrayList<>(newPartitions.size() + oldPartitionAssignments.size());
+			newPartitionAssignments.addAll(oldPartitionAssignments);
 			newPartitionAssignments.addAll(convertKafkaPartitions(newPartitions));
 
 			// reassign with the new partitions
 			consumerCallBridge.assignPartitions(consumerTmp, newPartitionAssignments);
 			reassignmentStarted = true;
 
-			// old partitions should be seeked to their previous position
+			// old partitions should be seeked to their previous position, unless they were left untouched
 			for (Map.Entry<TopicPartition, Long> oldPartitionToPosition : oldPartitionAssignmentsToPosition.entrySet()) {
 				consumerTmp.seek(oldPartitionToPosition.getKey(), oldPartitionToPosition.getValue());
 			}
@@ -463,8 +606,7 @@ public class KafkaConsumerThread extends Thread {
 				// if reassignment had already started and affected the consumer,
 				// we do a full roll back so that it is as if it was left untouched
 				if (reassignmentStarted) {
-					consumerCallBridge.assignPartitions(
-							this.consumer, new ArrayList<>(oldPartitionAssignmentsToPosition.keySet()));
+					consumerCallBridge.assignPartitions(this.consumer, oldPartitionAssignments);
 
 					for (Map.Entry<TopicPartition, Long> oldPartitionToPosition : oldPartitionAssignmentsToPosition.entrySet()) {
 						this.consumer.seek(oldPartitionToPosition.getKey(), oldPartitionToPosition.getValue());
@@ -485,6 +627,10 @@ public class KafkaConsumerThread extends Thread {
 			}
 		}
 
+		for (KafkaTopicPartitionState<TopicPartition> newPartitionState : newPartitions) {
+			assignedPartitionStates.put(newPartitionState.getKafkaPartitionHandle(), newPartitionState);
+		}
+
 		// reassignment complete; expose the reassigned consumer
 		synchronized (consumerReassignmentLock) {
 			this.consumer = consumerTmp;
@@ -519,16 +665,23 @@ public class KafkaConsumerThread extends Thread {
 	private int getRecordBatchSize(ConsumerRecords<byte[], byte[]> records) {
 		int recordBatchSizeBytes = 0;
 		for (ConsumerRecord<byte[], byte[]> record: records) {
-			// Null is an allowed value for the key
-			if (record.key() != null) {
-				recordBatchSizeBytes += record.key().length;
-			}
-			recordBatchSizeBytes += record.value().length;
-
+			recordBatchSizeBytes += getRecordSize(record);
 		}
 		return recordBatchSizeBytes;
 	}
 
+	/**
+	 * @return The size of the record in bytes, including key and value.
+	 */
+	static int getRecordSize(ConsumerRecord<byte[], byte[]> record) {
+		// Null is an allowed value for the key
+		int size = record.key() != null ? record.key().length : 0;
+		if (record.value() != null) {
+			size += record.value().length;
+		}
+		return size;
+	}
+
 	/**
 	 * Get records from Kafka. If the rate-limiting feature is turned on, this method is called at
 	 * a rate specified by the {@link #rateLimiter}.
@@ -557,27 +710,6 @@ public class KafkaConsumerThread extends Thread {
 		return result;
 	}
 
-	private class CommitCallback implements OffsetCommitCallback {
-
-		private final KafkaCommitCallback internalCommitCallback;
-
-		CommitCallback(KafkaCommitCallback internalCommitCallback) {
-			this.internalCommitCallback = checkNotNull(internalCommitCallback);
-		}
-
-		@Override
-		public void onComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception ex) {
-			commitInProgress = false;
-
-			if (ex != null) {
-				log.warn("Committing offsets to Kafka failed. This does not compromise Flink's checkpoints.", ex);
-				internalCommitCallback.onException(ex);
-			} else {
-				internalCommitCallback.onSuccess();
-			}
-		}
-	}
-
 	/**
 	 * Utility exception that serves as a signal for the main loop to continue through the loop
 	 * if a reassignment attempt was aborted due to an pre-reassignment wakeup call on the consumer.
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.metrics.Histogram;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaCommitCallback;
+
+import org.apache.shade.kafka.clients.consumer.Consumer;
+import org.apache.shade.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.shade.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.shade.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * The offset commits of a {@link KafkaConsumerThread}, pipelined so that a slow commit neither
+ * holds back nor drops the offsets of the following checkpoints.
+ *
+ * <p>Offsets that the task thread adds while earlier offsets are still waiting to be sent are
+ * coalesced per partition, so that every partition is committed with its latest offset, and the
+ * callbacks of all coalesced requests complete with the commit that carries their offsets. Up to
+ * a configured number of commits are in flight at the same time. Since they are all sent to the
+ * group coordinator over the same connection, the broker applies them in the order they were sent,
+ * and their callbacks are completed in that order as well, even if the client reports a failed
+ * commit before an earlier one.
+ *
+ * <p>Apart from {@link #add(Map, KafkaCommitCallback)}, this class is only accessed by the consumer
+ * thread, which also runs the Kafka commit callbacks.
+ */
+@Internal
+final class KafkaOffsetCommitter {
+
+	private final Logger log;
+
+	/** The maximum number of commits that are sent but not completed. */
+	private final int maxCommitsInFlight;
+
+	/** The commit latencies in milliseconds, or {@code null} if they are not reported. */
+	@Nullable
+	private final Histogram commitLatency;
+
+	/** The lock for the offsets and callbacks that were added but not sent yet. */
+	private final Object pendingLock;
+
+	/** The offsets to send with the next commit, coalesced per partition. */
+	private Map<TopicPartition, OffsetAndMetadata> pendingOffsets;
+
+	/** The callbacks of the requests whose offsets are in the next commit. */
+	private List<KafkaCommitCallback> pendingCallbacks;
+
+	/** The commits that were sent but whose callbacks were not completed yet, in the order they were sent. */
+	private final ArrayDeque<Commit> inFlightCommits;
+
+	KafkaOffsetCommitter(Logger log, int maxCommitsInFlight, @Nullable Histogram commitLatency) {
+		checkArgument(maxCommitsInFlight > 0, "The maximum number of commits in flight must be positive.");
+
+		this.log = checkNotNull(log);
+		this.maxCommitsInFlight = maxCommitsInFlight;
+		this.commitLatency = commitLatency;
+		this.pendingLock = new Object();
+		this.pendingOffsets = new HashMap<>();
+		this.pendingCallbacks = new ArrayList<>();
+		this.inFlightCommits = new ArrayDeque<>();
+	}
+
+	/**
+	 * Adds offsets to commit, merging them into the offsets that are not sent yet.
+	 * This method may be called from any thread.
+	 *
+	 * @return True, if offsets of an earlier request were still waiting to be sent
+	 */
+	boolean add(Map<TopicPartition, OffsetAndMetadata> offsets, KafkaCommitCallback commitCallback) {
+		synchronized (pendingLock) {
+			final boolean coalesced = !pendingCallbacks.isEmpty();
+			pendingOffsets.putAll(offsets);
+			pendingCallbacks.add(checkNotNull(commitCallback));
+			return coalesced;
+		}
+	}
+
+	/**
+	 * Sends the pending offsets as an asynchronous commit, unless there are none or the maximum
+	 * number of commits is already in flight.
+	 */
+	void maybeCommit(Consumer<byte[], byte[]> consumer) {
+		if (inFlightCommits.size() >= maxCommitsInFlight) {
+			return;
+		}
+
+		final Map<TopicPartition, OffsetAndMetadata> offsets;
+		final List<KafkaCommitCallback> callbacks;
+		synchronized (pendingLock) {
+			if (pendingCallbacks.isEmpty()) {
+				return;
+			}
+			offsets = pendingOffsets;
+			callbacks = pendingCallbacks;
+			pendingOffsets = new HashMap<>();
+			pendingCallbacks = new ArrayList<>();
+		}
+
+		log.debug("Sending async offset commit request to Kafka broker");
+
+		final Commit commit = new Commit(callbacks, System.nanoTime());
+		inFlightCommits.add(commit);
+		consumer.commitAsync(offsets, commit);
+	}
+
+	/** Gets the number of commits that were sent but not completed yet. */
+	int getNumCommitsInFlight() {
+		return inFlightCommits.size();
+	}
+
+	private void completeCommits() {
+		while (!inFlightCommits.isEmpty() && inFlightCommits.peek().completed) {
+			final Commit commit = inFlightCommits.poll();
+			for (KafkaCommitCallback callback : commit.callbacks) {
+				if (commit.exception != null) {
+					callback.onException(commit.exception);
+				} else {
+					callback.onSuccess();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A commit that was sent, with the callbacks of the requests whose offsets it carries.
+	 */
+	private final class Commit implements OffsetCommitCallback {
+
+		private final List<KafkaCommitCallback> callbacks;
+
+		private final long sendTimeNanos;
+
+		private boolean completed;
+
+		@Nullable
+		private Exception exception;
+
+		Commit(List<KafkaCommitCallback> callbacks, long sendTimeNanos) {
+			this.callbacks = callbacks;
+			this.sendTimeNanos = sendTimeNanos;
+		}
+
+		@Override
+		public void onComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception ex) {
+			if (commitLatency != null) {
+				commitLatency.update((System.nanoTime() - sendTimeNanos) / 1_000_000L);
+			}
+			if (ex != null) {
+				log.warn("Committing offsets to Kafka failed. This does not compromise Flink's checkpoints.", ex);
+			}
+
+			completed = true;
+			exception = ex;
+			completeCommits();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.apache.flink.annotation.Internal;
+
+import org.apache.shade.kafka.clients.consumer.Consumer;
+import org.apache.shade.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * The partitions that a {@link KafkaConsumerThread} paused, with the reasons for which they are
+ * paused. A partition is paused when it gets its first reason, and only resumed once there is no
+ * reason left, so that for example a refilled rate limit budget does not resume a partition whose
+ * watermark is still too far ahead.
+ *
+ * <p>This class is only accessed by the consumer thread.
+ */
+@Internal
+final class KafkaPartitionPauses {
+
+	/** The watermark of the partition is too far ahead of the watermark of the source. */
+	static final int ALIGNMENT = 1;
+
+	/** Too many bytes of the partition are fetched, but not emitted yet. */
+	static final int FLOW_CONTROL = 2;
+
+	/** Fetching the partition exceeded one of its byte rate budgets. */
+	static final int RATE_LIMIT = 4;
+
+	private final Logger log;
+
+	/** The reasons for which partitions are currently paused, as a bit set of the reason flags. */
+	private final Map<TopicPartition, Integer> reasons;
+
+	/** Reused lists of the partitions to pause and resume when the changes are applied. */
+	private final List<TopicPartition> partitionsToPause;
+	private final List<TopicPartition> partitionsToResume;
+
+	KafkaPartitionPauses(Logger log) {
+		this.log = checkNotNull(log);
+		this.reasons = new HashMap<>();
+		this.partitionsToPause = new ArrayList<>();
+		this.partitionsToResume = new ArrayList<>();
+	}
+
+	/**
+	 * Adds or removes a reason for pausing the partition, and records whether fetching the
+	 * partition has to be paused or resumed because of that.
+	 */
+	void setPaused(TopicPartition partition, int reason, boolean paused) {
+		final Integer oldReasonsOrNull = reasons.get(partition);
+		final int oldReasons = oldReasonsOrNull == null ? 0 : oldReasonsOrNull;
+		final int newReasons = paused ? oldReasons | reason : oldReasons & ~reason;
+
+		if (newReasons == oldReasons) {
+			return;
+		}
+		if (newReasons == 0) {
+			reasons.remove(partition);
+			partitionsToResume.add(partition);
+		} else {
+			reasons.put(partition, newReasons);
+			if (oldReasons == 0) {
+				partitionsToPause.add(partition);
+			}
+		}
+	}
+
+	/** Checks whether the partition is paused for the given reason. */
+	boolean isPaused(TopicPartition partition, int reason) {
+		final Integer partitionReasons = reasons.get(partition);
+		return partitionReasons != null && (partitionReasons & reason) != 0;
+	}
+
+	/** Gets the partitions that are paused for the given reason. */
+	List<TopicPartition> getPartitionsPausedFor(int reason) {
+		final List<TopicPartition> partitions = new ArrayList<>();
+		for (Map.Entry<TopicPartition, Integer> entry : reasons.entrySet()) {
+			if ((entry.getValue() & reason) != 0) {
+				partitions.add(entry.getKey());
+			}
+		}
+		return partitions;
+	}
+
+	/**
+	 * Pauses and resumes the partitions whose reasons changed since the last call.
+	 *
+	 * @param cause The cause of the changes, for logging
+	 */
+	void apply(Consumer<?, ?> consumer, String cause) {
+		if (!partitionsToResume.isEmpty()) {
+			log.debug("Resuming partitions {} because {}", partitionsToResume, cause);
+			consumer.resume(partitionsToResume.toArray(new TopicPartition[partitionsToResume.size()]));
+			partitionsToResume.clear();
+		}
+		if (!partitionsToPause.isEmpty()) {
+			log.debug("Pausing partitions {} because {}", partitionsToPause, cause);
+			consumer.pause(partitionsToPause.toArray(new TopicPartition[partitionsToPause.size()]));
+			partitionsToPause.clear();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.runtime.metrics.DescriptiveStatisticsHistogram;
+import org.apache.shade.flink.streaming.connectors.kafka.internals.metrics.KafkaConsumerMetricConstants;
+
+import org.apache.shade.kafka.clients.consumer.RecordTrace;
+import org.apache.shade.kafka.common.TopicPartition;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * Aggregates the traces of the records that the Kafka consumer samples into per-partition latency
+ * histograms of the stages a record passes until it is emitted by the {@link Kafka09Fetcher}.
+ *
+ * <p>The stages are, in microseconds:
+ * <ul>
+ *     <li>{@code fetch}: from receiving the fetch response until its record set is buffered,</li>
+ *     <li>{@code buffer}: from buffering the record set until the record is returned by a poll,</li>
+ *     <li>{@code handover}: from the poll until the fetcher starts processing the record, including
+ *     the time spent processing the earlier records of the handed over batch,</li>
+ *     <li>{@code deserialize}: deserializing the record,</li>
+ *     <li>{@code emit}: emitting the record, including its timestamp and watermark handling,</li>
+ *     <li>{@code total}: from receiving the fetch response until the record is emitted.</li>
+ * </ul>
+ *
+ * <p>The histograms of a partition are registered when its first sampled record is emitted. This
+ * class is only accessed by the fetcher thread.
+ */
+@Internal
+final class KafkaRecordTracer {
+
+	/** The number of recent samples per partition and stage whose latency is reported. */
+	private static final int TRACE_LATENCY_HISTOGRAM_SIZE = 100;
+
+	private final MetricGroup consumerMetricGroup;
+
+	private final Map<TopicPartition, StageLatencies> latenciesByPartition;
+
+	KafkaRecordTracer(MetricGroup consumerMetricGroup) {
+		this.consumerMetricGroup = checkNotNull(consumerMetricGroup);
+		this.latenciesByPartition = new HashMap<>();
+	}
+
+	/**
+	 * Records the stage latencies of a sampled record.
+	 *
+	 * @param partition The partition of the record
+	 * @param trace The times at which the record passed the stages of the Kafka consumer
+	 * @param processingTimeNanos The time at which the fetcher started processing the record
+	 * @param deserializedTimeNanos The time at which the record was deserialized
+	 * @param emittedTimeNanos The time at which the record was emitted
+	 */
+	void record(
+			TopicPartition partition,
+			RecordTrace trace,
+			long processingTimeNanos,
+			long deserializedTimeNanos,
+			long emittedTimeNanos) {
+
+		StageLatencies latencies = latenciesByPartition.get(partition);
+		if (latencies == null) {
+			latencies = new StageLatencies(consumerMetricGroup
+				.addGroup(KafkaConsumerMetricConstants.OFFSETS_BY_TOPIC_METRICS_GROUP, partition.topic())
+				.addGroup(KafkaConsumerMetricConstants.OFFSETS_BY_PARTITION_METRICS_GROUP, Integer.toString(partition.partition()))
+				.addGroup(KafkaConsumerMetricConstants.RECORD_LATENCY_METRICS_GROUP));
+			latenciesByPartition.put(partition, latencies);
+		}
+
+		update(latencies.fetch, trace.receivedTimeNanos(), trace.fetchedTimeNanos());
+		update(latencies.buffer, trace.fetchedTimeNanos(), trace.polledTimeNanos());
+		update(latencies.handover, trace.polledTimeNanos(), processingTimeNanos);
+		update(latencies.deserialize, processingTimeNanos, deserializedTimeNanos);
+		update(latencies.emit, deserializedTimeNanos, emittedTimeNanos);
+		update(latencies.total, trace.receivedTimeNanos(), emittedTimeNanos);
+	}
+
+	private static void update(Histogram histogram, long startTimeNanos, long endTimeNanos) {
+		histogram.update((endTimeNanos - startTimeNanos) / 1_000L);
+	}
+
+	/**
+	 * The latency histograms of the stages of a partition.
+	 */
+	private static final class StageLatencies {
+
+		private final Histogram fetch;
+		private final Histogram buffer;
+		private final Histogram handover;
+		private final Histogram deserialize;
+		private final Histogram emit;
+		private final Histogram total;
+
+		StageLatencies(MetricGroup group) {
+			this.fetch = register(group, KafkaConsumerMetricConstants.FETCH_LATENCY_METRICS_HISTOGRAM);
+			this.buffer = register(group, KafkaConsumerMetricConstants.BUFFER_LATENCY_METRICS_HISTOGRAM);
+			this.handover = register(group, KafkaConsumerMetricConstants.HANDOVER_LATENCY_METRICS_HISTOGRAM);
+			this.deserialize = register(group, KafkaConsumerMetricConstants.DESERIALIZE_LATENCY_METRICS_HISTOGRAM);
+			this.emit = register(group, KafkaConsumerMetricConstants.EMIT_LATENCY_METRICS_HISTOGRAM);
+			this.total = register(group, KafkaConsumerMetricConstants.TOTAL_LATENCY_METRICS_HISTOGRAM);
+		}
+
+		private static Histogram register(MetricGroup group, String name) {
+			return group.histogram(name, new DescriptiveStatisticsHistogram(TRACE_LATENCY_HISTOGRAM_SIZE));
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.apache.flink.annotation.Internal;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * A token bucket of bytes, which is refilled at a fixed rate up to its capacity.
+ *
+ * <p>Tokens are consumed after records are fetched, since the size of a fetch is only known
+ * afterwards. The bucket may therefore go into debt, and is exhausted until it is refilled
+ * above zero. Tokens that are not used accumulate up to the capacity, which allows bursts after
+ * quiet periods.
+ *
+ * <p>This class is thread-safe, so a bucket can be shared between consumers.
+ */
+@Internal
+public final class TokenBucket {
+
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+	private final long bytesPerSecond;
+
+	private final long capacity;
+
+	private double tokens;
+
+	private long lastRefillNanos;
+
+	public TokenBucket(long bytesPerSecond, long capacity, long nowNanos) {
+		checkArgument(bytesPerSecond > 0, "The rate of a token bucket must be positive.");
+		checkArgument(capacity > 0, "The capacity of a token bucket must be positive.");
+
+		this.bytesPerSecond = bytesPerSecond;
+		this.capacity = capacity;
+		this.tokens = capacity;
+		this.lastRefillNanos = nowNanos;
+	}
+
+	/**
+	 * Checks whether there are tokens left, after refilling the bucket.
+	 */
+	public synchronized boolean hasTokens(long nowNanos) {
+		refill(nowNanos);
+		return tokens > 0;
+	}
+
+	/**
+	 * Takes the given number of tokens, possibly going into debt.
+	 */
+	public synchronized void consume(long bytes, long nowNanos) {
+		refill(nowNanos);
+		tokens -= bytes;
+	}
+
+	public long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	private void refill(long nowNanos) {
+		final long elapsedNanos = nowNanos - lastRefillNanos;
+		if (elapsedNanos > 0) {
+			tokens = Math.min(capacity, tokens + (double) elapsedNanos * bytesPerSecond / NANOS_PER_SECOND);
+			lastRefillNanos = nowNanos;
+		}
+	}
+}
@@ -20,7 +20,10 @@ package org.apache.shade.flink.streaming.connectors.kafka.internals;
 
 import org.apache.flink.annotation.Internal;
 import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.Meter;
+import org.apache.flink.metrics.MeterView;
 import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.View;
 import org.apache.flink.streaming.api.functions.AssignerWithPeriodicWatermarks;
 import org.apache.flink.streaming.api.functions.AssignerWithPunctuatedWatermarks;
 import org.apache.flink.streaming.api.functions.source.SourceFunction.SourceContext;
@@ -32,12 +35,16 @@ import org.apache.flink.streaming.runtime.tasks.ProcessingTimeService;
 import org.apache.flink.util.SerializedValue;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static org.apache.flink.util.Preconditions.checkNotNull;
@@ -60,6 +67,12 @@ public abstract class AbstractFetcher<T, KPH> {
 	private static final int PERIODIC_WATERMARKS = 1;
 	private static final int PUNCTUATED_WATERMARKS = 2;
 
+	/** Value for the partition idle timeout and the maximum watermark drift that disables the feature. */
+	public static final long DISABLED = -1L;
+
+	/** The time span over which the emitted bytes rate of a partition is computed, in seconds. */
+	static final int EMITTED_BYTES_RATE_TIME_SPAN_SECONDS = 60;
+
 	// ------------------------------------------------------------------------
 
 	/** The source context to emit records and watermarks to. */
@@ -103,9 +116,29 @@ public abstract class AbstractFetcher<T, KPH> {
 	/** User class loader used to deserialize watermark assigners. */
 	private final ClassLoader userCodeClassLoader;
 
+	/** The snapshot of partition offsets, reused across checkpoints. */
+	private final KafkaTopicPartitionOffsetsSnapshot offsetsSnapshot = new KafkaTopicPartitionOffsetsSnapshot();
+
 	/** Only relevant for punctuated watermarks: The current cross partition watermark. */
 	private volatile long maxWatermarkSoFar = Long.MIN_VALUE;
 
+	/**
+	 * The current watermarks of all subscribed partitions, if watermarks are generated. The index of a
+	 * partition in the heap is its index in {@link #subscribedPartitionStates}.
+	 */
+	private final PartitionWatermarkHeap partitionWatermarks = new PartitionWatermarkHeap();
+
+	/** Only relevant for periodic watermarks: The partitions that emitted records since their watermark was last queried. */
+	private final ConcurrentLinkedQueue<KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?>> updatedPeriodicPartitions =
+			new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Only relevant for periodic watermarks: The emitter of the watermarks, which is started by
+	 * {@link #startPeriodicWatermarkEmitter()} once the fetcher is fully constructed.
+	 */
+	@Nullable
+	private final PeriodicWatermarkEmitter<KPH> periodicEmitter;
+
 	// ------------------------------------------------------------------------
 	//  Metrics
 	// ------------------------------------------------------------------------
@@ -136,6 +169,8 @@ public abstract class AbstractFetcher<T, KPH> {
 			SerializedValue<AssignerWithPunctuatedWatermarks<T>> watermarksPunctuated,
 			ProcessingTimeService processingTimeProvider,
 			long autoWatermarkInterval,
+			long partitionIdleTimeout,
+			long maxWatermarkDrift,
 			ClassLoader userCodeClassLoader,
 			MetricGroup consumerMetricGroup,
 			boolean useMetrics) throws Exception {
@@ -186,6 +221,7 @@ public abstract class AbstractFetcher<T, KPH> {
 
 		// all seed partitions are not assigned yet, so should be added to the unassigned partitions queue
 		for (KafkaTopicPartitionState<KPH> partition : subscribedPartitionStates) {
+			addToPartitionWatermarks(partition);
 			unassignedPartitionsQueue.add(partition);
 		}
 
@@ -194,16 +230,21 @@ public abstract class AbstractFetcher<T, KPH> {
 			registerOffsetMetrics(consumerMetricGroup, subscribedPartitionStates);
 		}
 
-		// if we have periodic watermarks, kick off the interval scheduler
+		// if we have periodic watermarks, create the interval scheduler. it is only started by the fetch
+		// loop, since it calls back into the subclass from the timer thread
 		if (timestampWatermarkMode == PERIODIC_WATERMARKS) {
-			@SuppressWarnings("unchecked")
-			PeriodicWatermarkEmitter periodicEmitter = new PeriodicWatermarkEmitter(
+			this.periodicEmitter = new PeriodicWatermarkEmitter<>(
 					subscribedPartitionStates,
+					partitionWatermarks,
+					updatedPeriodicPartitions,
 					sourceContext,
 					processingTimeProvider,
-					autoWatermarkInterval);
-
-			periodicEmitter.start();
+					autoWatermarkInterval,
+					partitionIdleTimeout,
+					maxWatermarkDrift,
+					this::setPartitionsPausedForAlignment);
+		} else {
+			this.periodicEmitter = null;
 		}
 	}
 
@@ -237,6 +278,7 @@ public abstract class AbstractFetcher<T, KPH> {
 			// the ordering is crucial here; first register the state holder, then
 			// push it to the partitions queue to be read
 			subscribedPartitionStates.add(newPartitionState);
+			addToPartitionWatermarks(newPartitionState);
 			unassignedPartitionsQueue.add(newPartitionState);
 		}
 	}
@@ -258,8 +300,23 @@ public abstract class AbstractFetcher<T, KPH> {
 	//  Core fetcher work methods
 	// ------------------------------------------------------------------------
 
+	/**
+	 * Runs the loop that fetches and emits the records. Implementations must call
+	 * {@link #startPeriodicWatermarkEmitter()} before fetching.
+	 */
 	public abstract void runFetchLoop() throws Exception;
 
+	/**
+	 * Starts the periodic emission of watermarks, if the fetcher uses periodic watermarks. This is not
+	 * done by the constructor, because the emitter calls {@link #setPartitionsPausedForAlignment(List)}
+	 * from the timer thread, which must not happen before the subclass fields are assigned.
+	 */
+	protected final void startPeriodicWatermarkEmitter() {
+		if (periodicEmitter != null) {
+			periodicEmitter.start();
+		}
+	}
+
 	public abstract void cancel();
 
 	// ------------------------------------------------------------------------
@@ -308,6 +365,17 @@ public abstract class AbstractFetcher<T, KPH> {
 	 */
 	protected abstract KPH createKafkaPartitionHandle(KafkaTopicPartition partition);
 
+	/**
+	 * Sets the partitions whose fetching should be paused, because their watermark is too far ahead
+	 * of the watermark across all partitions. All other partitions should be fetched. This is only
+	 * called with periodic watermarks and a maximum watermark drift.
+	 *
+	 * <p>The default implementation does not pause any partitions.
+	 *
+	 * @param pausedPartitions The partitions to pause.
+	 */
+	protected void setPartitionsPausedForAlignment(List<KafkaTopicPartitionState<KPH>> pausedPartitions) {}
+
 	// ------------------------------------------------------------------------
 	//  snapshot and restore the state
 	// ------------------------------------------------------------------------
@@ -317,17 +385,16 @@ public abstract class AbstractFetcher<T, KPH> {
 	 *
 	 * <p>Important: This method must be called under the checkpoint lock.
 	 *
-	 * @return A map from partition to current offset.
+	 * <p>The returned snapshot is reused across calls, and is only valid until the next snapshot is taken.
+	 *
+	 * @return The current offsets of all subscribed partitions.
 	 */
-	public HashMap<KafkaTopicPartition, Long> snapshotCurrentState() {
+	public KafkaTopicPartitionOffsetsSnapshot snapshotCurrentState() {
 		// this method assumes that the checkpoint lock is held
 		assert Thread.holdsLock(checkpointLock);
 
-		HashMap<KafkaTopicPartition, Long> state = new HashMap<>(subscribedPartitionStates.size());
-		for (KafkaTopicPartitionState<KPH> partition : subscribedPartitionStates) {
-			state.put(partition.getKafkaTopicPartition(), partition.getOffset());
-		}
-		return state;
+		offsetsSnapshot.update(subscribedPartitionStates);
+		return offsetsSnapshot;
 	}
 
 	// ------------------------------------------------------------------------
@@ -424,6 +491,11 @@ public abstract class AbstractFetcher<T, KPH> {
 			timestamp = withWatermarksState.getTimestampForRecord(record, kafkaEventTimestamp);
 		}
 
+		// let the periodic emitter query the watermark of the partition in its next interval
+		if (withWatermarksState.markUpdated()) {
+			updatedPeriodicPartitions.add(withWatermarksState);
+		}
+
 		// emit the record with timestamp, using the usual checkpoint lock to guarantee
 		// atomicity of record emission and offset state update
 		synchronized (checkpointLock) {
@@ -457,32 +529,23 @@ public abstract class AbstractFetcher<T, KPH> {
 		// if we also have a new per-partition watermark, check if that is also a
 		// new cross-partition watermark
 		if (newWatermark != null) {
-			updateMinPunctuatedWatermark(newWatermark);
+			updateMinPunctuatedWatermark(withWatermarksState, newWatermark);
 		}
 	}
 
 	/**
-	 *Checks whether a new per-partition watermark is also a new cross-partition watermark.
+	 * Checks whether a new per-partition watermark is also a new cross-partition watermark.
 	 */
-	private void updateMinPunctuatedWatermark(Watermark nextWatermark) {
-		if (nextWatermark.getTimestamp() > maxWatermarkSoFar) {
-			long newMin = Long.MAX_VALUE;
-
-			for (KafkaTopicPartitionState<?> state : subscribedPartitionStates) {
-				@SuppressWarnings("unchecked")
-				final KafkaTopicPartitionStateWithPunctuatedWatermarks<T, KPH> withWatermarksState =
-						(KafkaTopicPartitionStateWithPunctuatedWatermarks<T, KPH>) state;
-
-				newMin = Math.min(newMin, withWatermarksState.getCurrentPartitionWatermark());
-			}
+	private void updateMinPunctuatedWatermark(
+			KafkaTopicPartitionStateWithPunctuatedWatermarks<T, KPH> partitionState, Watermark nextWatermark) {
+		final long newMin = partitionWatermarks.update(partitionState.getWatermarkIndex(), nextWatermark.getTimestamp());
 
-			// double-check locking pattern
-			if (newMin > maxWatermarkSoFar) {
-				synchronized (checkpointLock) {
-					if (newMin > maxWatermarkSoFar) {
-						maxWatermarkSoFar = newMin;
-						sourceContext.emitWatermark(new Watermark(newMin));
-					}
+		// double-check locking pattern
+		if (newMin > maxWatermarkSoFar) {
+			synchronized (checkpointLock) {
+				if (newMin > maxWatermarkSoFar) {
+					maxWatermarkSoFar = newMin;
+					sourceContext.emitWatermark(new Watermark(newMin));
 				}
 			}
 		}
@@ -492,6 +555,24 @@ public abstract class AbstractFetcher<T, KPH> {
 	//  Utilities
 	// ------------------------------------------------------------------------
 
+	/**
+	 * Adds a partition that was just appended to the subscribed partitions to the partition watermarks,
+	 * if watermarks are generated. Must be called before the partition is consumed.
+	 */
+	private void addToPartitionWatermarks(KafkaTopicPartitionState<KPH> partitionState) {
+		// partitions are only added by one thread at a time, and the index is set before the
+		// partition becomes visible to the periodic emitter through the heap
+		if (timestampWatermarkMode == PERIODIC_WATERMARKS) {
+			((KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?>) partitionState).setWatermarkIndex(
+					partitionWatermarks.size());
+			partitionWatermarks.add(Long.MIN_VALUE);
+		} else if (timestampWatermarkMode == PUNCTUATED_WATERMARKS) {
+			((KafkaTopicPartitionStateWithPunctuatedWatermarks<?, ?>) partitionState).setWatermarkIndex(
+					partitionWatermarks.size());
+			partitionWatermarks.add(Long.MIN_VALUE);
+		}
+	}
+
 	/**
 	 * Utility method that takes the topic partitions and creates the topic partition state
 	 * holders, depending on the timestamp / watermark mode.
@@ -598,7 +679,8 @@ public abstract class AbstractFetcher<T, KPH> {
 	// ------------------------- Metrics ----------------------------------
 
 	/**
-	 * For each partition, register a new metric group to expose current offsets and committed offsets.
+	 * For each partition, register a new metric group to expose current offsets and committed offsets,
+	 * as well as the bytes that are buffered and emitted.
 	 * Per-partition metric groups can be scoped by user variables {@link KafkaConsumerMetricConstants#OFFSETS_BY_TOPIC_METRICS_GROUP}
 	 * and {@link KafkaConsumerMetricConstants#OFFSETS_BY_PARTITION_METRICS_GROUP}.
 	 *
@@ -618,6 +700,8 @@ public abstract class AbstractFetcher<T, KPH> {
 
 			topicPartitionGroup.gauge(KafkaConsumerMetricConstants.CURRENT_OFFSETS_METRICS_GAUGE, new OffsetGauge(ktp, OffsetGaugeType.CURRENT_OFFSET));
 			topicPartitionGroup.gauge(KafkaConsumerMetricConstants.COMMITTED_OFFSETS_METRICS_GAUGE, new OffsetGauge(ktp, OffsetGaugeType.COMMITTED_OFFSET));
+			topicPartitionGroup.gauge(KafkaConsumerMetricConstants.BUFFERED_BYTES_METRICS_GAUGE, (Gauge<Long>) ktp::getBufferedBytes);
+			topicPartitionGroup.meter(KafkaConsumerMetricConstants.EMITTED_BYTES_RATE_METRICS_METER, new EmittedBytesMeter(ktp));
 
 			legacyCurrentOffsetsMetricGroup.gauge(getLegacyOffsetsMetricsGaugeName(ktp), new OffsetGauge(ktp, OffsetGaugeType.CURRENT_OFFSET));
 			legacyCommittedOffsetsMetricGroup.gauge(getLegacyOffsetsMetricsGaugeName(ktp), new OffsetGauge(ktp, OffsetGaugeType.COMMITTED_OFFSET));
@@ -661,35 +745,130 @@ public abstract class AbstractFetcher<T, KPH> {
 			}
 		}
 	}
+
+	/**
+	 * Meter of the bytes emitted from a KafkaTopicPartitionState. The bytes are counted by the partition
+	 * state, so the meter only derives the rate from them, in the same way as a {@link MeterView} over
+	 * {@link #EMITTED_BYTES_RATE_TIME_SPAN_SECONDS}.
+	 */
+	static final class EmittedBytesMeter implements Meter, View {
+
+		private final KafkaTopicPartitionState<?> ktp;
+
+		/** The emitted bytes at the last updates, as a ring buffer. */
+		private final long[] values;
+
+		/** The position of the last update in {@link #values}. */
+		private int time;
+
+		private volatile double currentRate;
+
+		EmittedBytesMeter(KafkaTopicPartitionState<?> ktp) {
+			this.ktp = checkNotNull(ktp);
+			this.values = new long[EMITTED_BYTES_RATE_TIME_SPAN_SECONDS / UPDATE_INTERVAL_SECONDS + 1];
+		}
+
+		@Override
+		public void markEvent() {
+			// the emitted bytes are added to the partition state by the fetcher
+		}
+
+		@Override
+		public void markEvent(long n) {
+			// the emitted bytes are added to the partition state by the fetcher
+		}
+
+		@Override
+		public double getRate() {
+			return currentRate;
+		}
+
+		@Override
+		public long getCount() {
+			return ktp.getEmittedBytes();
+		}
+
+		@Override
+		public void update() {
+			time = (time + 1) % values.length;
+			values[time] = ktp.getEmittedBytes();
+			currentRate = (double) (values[time] - values[(time + 1) % values.length]) / EMITTED_BYTES_RATE_TIME_SPAN_SECONDS;
+		}
+	}
+
  	// ------------------------------------------------------------------------
 
 	/**
-	 * The periodic watermark emitter. In its given interval, it checks all partitions for
-	 * the current event time watermark, and possibly emits the next watermark.
+	 * The periodic watermark emitter. In its given interval, it queries the current event time watermark
+	 * of the partitions that emitted records since the previous interval, and possibly emits the next watermark.
+	 *
+	 * <p>The watermark of a partition without records may still advance, for example with an assigner that
+	 * is based on processing time. The emitter therefore also queries the partition with the minimum watermark,
+	 * until the minimum is a watermark that was queried in the current interval. The watermarks of all other
+	 * partitions can only be larger, so the minimum is the same as if all partitions had been queried.
+	 *
+	 * <p>If a partition idle timeout is set, a partition with the minimum watermark that did not emit records
+	 * within the timeout is marked idle, and excluded from the minimum until it emits records again. If all
+	 * partitions are idle, the source is marked as temporarily idle.
+	 *
+	 * <p>If a maximum watermark drift is set, fetching of partitions whose watermark is more than the drift
+	 * ahead of the emitted watermark is paused, until the emitted watermark catches up.
 	 */
 	private static class PeriodicWatermarkEmitter<KPH> implements ProcessingTimeCallback {
 
 		private final List<KafkaTopicPartitionState<KPH>> allPartitions;
 
+		private final PartitionWatermarkHeap partitionWatermarks;
+
+		private final ConcurrentLinkedQueue<KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?>> updatedPartitions;
+
 		private final SourceContext<?> emitter;
 
 		private final ProcessingTimeService timerService;
 
 		private final long interval;
 
+		private final long idleTimeout;
+
+		private final long maxWatermarkDrift;
+
+		private final Consumer<List<KafkaTopicPartitionState<KPH>>> alignmentPauser;
+
+		/** The partitions whose watermark was queried in the current round. */
+		private final List<KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?>> queriedPartitions;
+
+		/** The partitions that are paused for watermark alignment. */
+		private final List<KafkaTopicPartitionState<KPH>> pausedPartitions;
+
 		private long lastWatermarkTimestamp;
 
+		private long round;
+
+		private boolean markedIdle;
+
 		//-------------------------------------------------
 
 		PeriodicWatermarkEmitter(
 				List<KafkaTopicPartitionState<KPH>> allPartitions,
+				PartitionWatermarkHeap partitionWatermarks,
+				ConcurrentLinkedQueue<KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?>> updatedPartitions,
 				SourceContext<?> emitter,
 				ProcessingTimeService timerService,
-				long autoWatermarkInterval) {
+				long autoWatermarkInterval,
+				long idleTimeout,
+				long maxWatermarkDrift,
+				Consumer<List<KafkaTopicPartitionState<KPH>>> alignmentPauser) {
 			this.allPartitions = checkNotNull(allPartitions);
+			this.partitionWatermarks = checkNotNull(partitionWatermarks);
+			this.updatedPartitions = checkNotNull(updatedPartitions);
 			this.emitter = checkNotNull(emitter);
 			this.timerService = checkNotNull(timerService);
 			this.interval = autoWatermarkInterval;
+			this.idleTimeout = idleTimeout;
+			this.maxWatermarkDrift = maxWatermarkDrift;
+			this.alignmentPauser = checkNotNull(alignmentPauser);
+			this.queriedPartitions = new ArrayList<>();
+			this.pausedPartitions = new ArrayList<>();
 			this.lastWatermarkTimestamp = Long.MIN_VALUE;
 		}
 
@@ -701,31 +880,116 @@ public abstract class AbstractFetcher<T, KPH> {
 
 		@Override
 		public void onProcessingTime(long timestamp) throws Exception {
+			round++;
+			queriedPartitions.clear();
+
+			KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?> state;
+			while ((state = updatedPartitions.poll()) != null) {
+				state.setLastActiveTime(timestamp);
+				state.setIdle(false);
+				updatePartitionWatermark(state, state.getWatermarkIndex());
+			}
 
-			long minAcrossAll = Long.MAX_VALUE;
-			boolean isEffectiveMinAggregation = false;
-			for (KafkaTopicPartitionState<?> state : allPartitions) {
-
-				// we access the current watermark for the periodic assigners under the state
-				// lock, to prevent concurrent modification to any internal variables
-				final long curr;
-				//noinspection SynchronizationOnLocalVariableOrMethodParameter
-				synchronized (state) {
-					curr = ((KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?>) state).getCurrentWatermarkTimestamp();
+			// the minimum is exact once it belongs to a partition that was queried in this round
+			int minPartition;
+			while ((minPartition = partitionWatermarks.getMinWatermarkPartition()) >= 0) {
+				state = (KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?>) allPartitions.get(minPartition);
+				if (state.getLastWatermarkRound() != round) {
+					updatePartitionWatermark(state, minPartition);
+				} else if (isIdle(state, timestamp)) {
+					state.setIdle(true);
+					partitionWatermarks.update(minPartition, Long.MAX_VALUE);
+				} else {
+					break;
 				}
-
-				minAcrossAll = Math.min(minAcrossAll, curr);
-				isEffectiveMinAggregation = true;
 			}
 
 			// emit next watermark, if there is one
-			if (isEffectiveMinAggregation && minAcrossAll > lastWatermarkTimestamp) {
-				lastWatermarkTimestamp = minAcrossAll;
-				emitter.emitWatermark(new Watermark(minAcrossAll));
+			if (minPartition >= 0) {
+				final long minAcrossAll = partitionWatermarks.getMinWatermark();
+				if (minAcrossAll == Long.MAX_VALUE) {
+					// all partitions are idle
+					if (!markedIdle) {
+						markedIdle = true;
+						emitter.markAsTemporarilyIdle();
+					}
+				} else {
+					markedIdle = false;
+					if (minAcrossAll > lastWatermarkTimestamp) {
+						lastWatermarkTimestamp = minAcrossAll;
+						emitter.emitWatermark(new Watermark(minAcrossAll));
+					}
+				}
+			}
+
+			if (maxWatermarkDrift != DISABLED) {
+				alignPartitions(timestamp);
 			}
 
 			// schedule the next watermark
 			timerService.registerTimer(timerService.getCurrentProcessingTime() + interval, this);
 		}
+
+		private void updatePartitionWatermark(KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?> state, int index) {
+			// clear the flag before querying, so that records emitted concurrently mark the partition again
+			state.clearUpdated();
+			state.setLastWatermarkRound(round);
+			queriedPartitions.add(state);
+
+			// we access the current watermark for the periodic assigners under the state
+			// lock, to prevent concurrent modification to any internal variables
+			final long curr;
+			//noinspection SynchronizationOnLocalVariableOrMethodParameter
+			synchronized (state) {
+				curr = state.getCurrentWatermarkTimestamp();
+			}
+			partitionWatermarks.update(index, state.isIdle() ? Long.MAX_VALUE : curr);
+		}
+
+		private boolean isIdle(KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?> state, long now) {
+			if (idleTimeout == DISABLED || state.isIdle() || state.isPausedForAlignment()) {
+				return false;
+			}
+			if (state.getLastActiveTime() < 0) {
+				// the partition was not seen before, so it starts its timeout now
+				state.setLastActiveTime(now);
+			}
+			return now - state.getLastActiveTime() >= idleTimeout;
+		}
+
+		/**
+		 * Pauses the partitions that became too far ahead in this round, and resumes the paused
+		 * partitions that the emitted watermark caught up with.
+		 */
+		private void alignPartitions(long now) {
+			final long maxWatermark = lastWatermarkTimestamp + maxWatermarkDrift;
+			boolean changed = false;
+
+			for (KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?> state : queriedPartitions) {
+				if (!state.isPausedForAlignment() && !state.isIdle()
+						&& lastWatermarkTimestamp != Long.MIN_VALUE
+						&& partitionWatermarks.getWatermark(state.getWatermarkIndex()) > maxWatermark) {
+					state.setPausedForAlignment(true);
+					pausedPartitions.add(allPartitions.get(state.getWatermarkIndex()));
+					changed = true;
+				}
+			}
+
+			for (int i = pausedPartitions.size() - 1; i >= 0; i--) {
+				final KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?> state =
+						(KafkaTopicPartitionStateWithPeriodicWatermarks<?, ?>) pausedPartitions.get(i);
+				if (partitionWatermarks.getWatermark(state.getWatermarkIndex()) <= maxWatermark) {
+					state.setPausedForAlignment(false);
+					// the partition did not emit records while paused, so its idle timeout restarts
+					state.setLastActiveTime(now);
+					pausedPartitions.remove(i);
+					changed = true;
+				}
+			}
+
+			if (changed) {
+				alignmentPauser.accept(new ArrayList<>(pausedPartitions));
+			}
+		}
 	}
 }
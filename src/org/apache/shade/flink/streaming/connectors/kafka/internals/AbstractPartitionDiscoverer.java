@@ -19,10 +19,11 @@ package org.apache.shade.flink.streaming.connectors.kafka.internals;
 
 import org.apache.flink.annotation.Internal;
 
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import static org.apache.flink.util.Preconditions.checkNotNull;
 
@@ -52,6 +53,9 @@ public abstract class AbstractPartitionDiscoverer {
 	/** The total number of consumer subtasks. */
 	private final int numParallelSubtasks;
 
+	/** The strategy that determines which partitions should be subscribed by which subtask. */
+	private final KafkaTopicPartitionAssignmentStrategy assignmentStrategy;
+
 	/** Flag to determine whether or not the discoverer is closed. */
 	private volatile boolean closed = true;
 
@@ -63,25 +67,41 @@ public abstract class AbstractPartitionDiscoverer {
 	private volatile boolean wakeup;
 
 	/**
-	 * Map of topics to they're largest discovered partition id seen by this subtask.
+	 * Map of topics to a bitmap of the partition ids discovered by this subtask.
 	 * This state may be updated whenever {@link AbstractPartitionDiscoverer#discoverPartitions()} or
 	 * {@link AbstractPartitionDiscoverer#setAndCheckDiscoveredPartition(KafkaTopicPartition)} is called.
 	 *
-	 * <p>This is used to remove old partitions from the fetched partition lists. It is sufficient
-	 * to keep track of only the largest partition id because Kafka partition numbers are only
-	 * allowed to be increased and has incremental ids.
+	 * <p>This is used to remove old partitions from the fetched partition lists. Since Kafka partition
+	 * ids are small, incremental numbers, a bitmap per topic is much more compact than a set of partitions.
 	 */
-	private Set<KafkaTopicPartition> discoveredPartitions;
+	private final Map<String, BitSet> discoveredPartitions;
+
+	/**
+	 * Map of topics to whether they match the topic pattern. Only used when discovering
+	 * partitions for a topic pattern, so that each topic is matched against the pattern only once.
+	 */
+	private final Map<String, Boolean> matchingTopics;
 
 	public AbstractPartitionDiscoverer(
 			KafkaTopicsDescriptor topicsDescriptor,
 			int indexOfThisSubtask,
 			int numParallelSubtasks) {
 
+		this(topicsDescriptor, indexOfThisSubtask, numParallelSubtasks, KafkaTopicPartitionAssigner.ROUND_ROBIN);
+	}
+
+	public AbstractPartitionDiscoverer(
+			KafkaTopicsDescriptor topicsDescriptor,
+			int indexOfThisSubtask,
+			int numParallelSubtasks,
+			KafkaTopicPartitionAssignmentStrategy assignmentStrategy) {
+
 		this.topicsDescriptor = checkNotNull(topicsDescriptor);
 		this.indexOfThisSubtask = indexOfThisSubtask;
 		this.numParallelSubtasks = numParallelSubtasks;
-		this.discoveredPartitions = new HashSet<>();
+		this.assignmentStrategy = checkNotNull(assignmentStrategy);
+		this.discoveredPartitions = new HashMap<>();
+		this.matchingTopics = new HashMap<>();
 	}
 
 	/**
@@ -124,41 +144,39 @@ public abstract class AbstractPartitionDiscoverer {
 	public List<KafkaTopicPartition> discoverPartitions() throws WakeupException, ClosedException {
 		if (!closed && !wakeup) {
 			try {
-				List<KafkaTopicPartition> newDiscoveredPartitions;
+				List<KafkaTopicPartition> allPartitions;
 
 				// (1) get all possible partitions, based on whether we are subscribed to fixed topics or a topic pattern
 				if (topicsDescriptor.isFixedTopics()) {
-					newDiscoveredPartitions = getAllPartitionsForTopics(topicsDescriptor.getFixedTopics());
+					allPartitions = getAllPartitionsForTopics(topicsDescriptor.getFixedTopics());
 				} else {
-					List<String> matchedTopics = getAllTopics();
+					List<String> allTopics = getAllTopics();
 
 					// retain topics that match the pattern
-					Iterator<String> iter = matchedTopics.iterator();
-					while (iter.hasNext()) {
-						if (!topicsDescriptor.isMatchingTopic(iter.next())) {
-							iter.remove();
+					List<String> matchedTopics = new ArrayList<>();
+					for (String topic : allTopics) {
+						if (isMatchingTopic(topic)) {
+							matchedTopics.add(topic);
 						}
 					}
 
 					if (matchedTopics.size() != 0) {
 						// get partitions only for matched topics
-						newDiscoveredPartitions = getAllPartitionsForTopics(matchedTopics);
+						allPartitions = getAllPartitionsForTopics(matchedTopics);
 					} else {
-						newDiscoveredPartitions = null;
+						allPartitions = null;
 					}
 				}
 
 				// (2) eliminate partition that are old partitions or should not be subscribed by this subtask
-				if (newDiscoveredPartitions == null || newDiscoveredPartitions.isEmpty()) {
+				if (allPartitions == null || allPartitions.isEmpty()) {
 					throw new RuntimeException("Unable to retrieve any partitions with KafkaTopicsDescriptor: " + topicsDescriptor);
-				} else {
-					Iterator<KafkaTopicPartition> iter = newDiscoveredPartitions.iterator();
-					KafkaTopicPartition nextPartition;
-					while (iter.hasNext()) {
-						nextPartition = iter.next();
-						if (!setAndCheckDiscoveredPartition(nextPartition)) {
-							iter.remove();
-						}
+				}
+
+				List<KafkaTopicPartition> newDiscoveredPartitions = new ArrayList<>();
+				for (KafkaTopicPartition partition : allPartitions) {
+					if (setAndCheckDiscoveredPartition(partition)) {
+						newDiscoveredPartitions.add(partition);
 					}
 				}
 
@@ -180,10 +198,7 @@ public abstract class AbstractPartitionDiscoverer {
 
 	/**
 	 * Sets a partition as discovered. Partitions are considered as new
-	 * if its partition id is larger than all partition ids previously
-	 * seen for the topic it belongs to. Therefore, for a set of
-	 * discovered partitions, the order that this method is invoked with
-	 * each partition is important.
+	 * if its partition id was not previously seen for the topic it belongs to.
 	 *
 	 * <p>If the partition is indeed newly discovered, this method also returns
 	 * whether the new partition should be subscribed by this subtask.
@@ -194,10 +209,16 @@ public abstract class AbstractPartitionDiscoverer {
 	 *         be subscribed by this subtask; {@code false} otherwise
 	 */
 	public boolean setAndCheckDiscoveredPartition(KafkaTopicPartition partition) {
-		if (isUndiscoveredPartition(partition)) {
-			discoveredPartitions.add(partition);
+		BitSet partitionIds = discoveredPartitions.get(partition.getTopic());
+		if (partitionIds == null) {
+			partitionIds = new BitSet();
+			discoveredPartitions.put(partition.getTopic(), partitionIds);
+		}
 
-			return KafkaTopicPartitionAssigner.assign(partition, numParallelSubtasks) == indexOfThisSubtask;
+		if (!partitionIds.get(partition.getPartition())) {
+			partitionIds.set(partition.getPartition());
+
+			return assignmentStrategy.assign(partition, numParallelSubtasks) == indexOfThisSubtask;
 		}
 
 		return false;
@@ -244,7 +265,12 @@ public abstract class AbstractPartitionDiscoverer {
 		private static final long serialVersionUID = 1L;
 	}
 
-	private boolean isUndiscoveredPartition(KafkaTopicPartition partition) {
-		return !discoveredPartitions.contains(partition);
+	private boolean isMatchingTopic(String topic) {
+		Boolean matching = matchingTopics.get(topic);
+		if (matching == null) {
+			matching = topicsDescriptor.isMatchingTopic(topic);
+			matchingTopics.put(topic, matching);
+		}
+		return matching;
 	}
 }
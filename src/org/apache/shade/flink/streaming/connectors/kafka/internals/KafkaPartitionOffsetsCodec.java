@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact binary format for the partition offsets owned by a single consumer subtask.
+ *
+ * <p>The whole snapshot of a subtask is written as one byte array, with a header that records the
+ * subtask index, the parallelism and the partition assignment it was taken with. Topic names are written once per topic,
+ * followed by the delta-encoded partition ids and the zig-zag varint encoded offsets of that topic.
+ *
+ * <p>On restore, a subtask only has to decode the snapshot that it wrote itself as long as neither the
+ * parallelism nor the {@link KafkaTopicPartitionAssignmentStrategy} changed, since the partitions are then
+ * still assigned to the same subtasks. Snapshots of other subtasks are skipped after reading their
+ * header. Otherwise, all snapshots are decoded and the partitions are re-assigned from the complete
+ * set of offsets.
+ */
+@Internal
+public final class KafkaPartitionOffsetsCodec {
+
+	/** The version of the format, written as the first byte of each snapshot. */
+	private static final int VERSION = 2;
+
+	/** The first version of the format, which does not record the assignment id. */
+	private static final int VERSION_WITHOUT_ASSIGNMENT_ID = 1;
+
+	private KafkaPartitionOffsetsCodec() {}
+
+	// ------------------------------------------------------------------------
+	//  Serialization
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Serializes the partition offsets of a subtask.
+	 *
+	 * @param indexOfThisSubtask the index of the subtask that owns the offsets
+	 * @param numParallelSubtasks the parallelism the snapshot is taken with
+	 * @param assignmentId the {@link KafkaTopicPartitionAssignmentStrategy#getAssignmentId() id} of the partition assignment
+	 * @param snapshot the offsets of all partitions owned by the subtask
+	 *
+	 * @return the serialized snapshot
+	 */
+	public static byte[] serialize(
+			int indexOfThisSubtask,
+			int numParallelSubtasks,
+			int assignmentId,
+			KafkaTopicPartitionOffsetsSnapshot snapshot) throws IOException {
+
+		final int size = snapshot.size();
+		final KafkaTopicPartition[] partitions = snapshot.getPartitions();
+		final long[] offsets = snapshot.getOffsets();
+
+		// group the partitions by topic, so that every topic name is written only once;
+		// topics are numbered in the order of their first appearance
+		final Map<String, Integer> topicIds = new LinkedHashMap<>();
+		final int[] partitionTopicIds = new int[size];
+		for (int i = 0; i < size; i++) {
+			Integer topicId = topicIds.get(partitions[i].getTopic());
+			if (topicId == null) {
+				topicId = topicIds.size();
+				topicIds.put(partitions[i].getTopic(), topicId);
+			}
+			partitionTopicIds[i] = topicId;
+		}
+
+		// counting sort of the partition indexes by topic, keeping the order within a topic
+		final int[] topicStarts = new int[topicIds.size() + 1];
+		for (int i = 0; i < size; i++) {
+			topicStarts[partitionTopicIds[i] + 1]++;
+		}
+		for (int t = 0; t < topicIds.size(); t++) {
+			topicStarts[t + 1] += topicStarts[t];
+		}
+		final int[] positions = Arrays.copyOf(topicStarts, topicIds.size());
+		final int[] indexesByTopic = new int[size];
+		for (int i = 0; i < size; i++) {
+			indexesByTopic[positions[partitionTopicIds[i]]++] = i;
+		}
+
+		final DataOutputSerializer out = new DataOutputSerializer(16 + size * 4);
+		out.writeByte(VERSION);
+		writeVarInt(out, numParallelSubtasks);
+		writeVarInt(out, indexOfThisSubtask);
+		out.writeInt(assignmentId);
+		writeVarInt(out, topicIds.size());
+
+		int topicId = 0;
+		for (String topic : topicIds.keySet()) {
+			out.writeUTF(topic);
+			writeVarInt(out, topicStarts[topicId + 1] - topicStarts[topicId]);
+
+			// partitions of a topic are usually ascending, which keeps the deltas small;
+			// a descending partition id is written as a large unsigned delta that wraps around
+			int previousPartition = 0;
+			for (int j = topicStarts[topicId]; j < topicStarts[topicId + 1]; j++) {
+				final int index = indexesByTopic[j];
+				writeVarInt(out, partitions[index].getPartition() - previousPartition);
+				writeVarLong(out, zigZag(offsets[index]));
+				previousPartition = partitions[index].getPartition();
+			}
+			topicId++;
+		}
+
+		return out.getCopyOfBuffer();
+	}
+
+	/**
+	 * Restores the offsets of a serialized subtask snapshot into the given map.
+	 *
+	 * <p>If the snapshot was taken with the same parallelism and partition assignment, only the snapshot
+	 * of the given subtask is decoded and the snapshots of all other subtasks are skipped. Otherwise all offsets are
+	 * decoded, and the caller is responsible for filtering out partitions that should not be
+	 * subscribed by the subtask.
+	 *
+	 * @param serialized the serialized snapshot
+	 * @param indexOfThisSubtask the index of the restoring subtask
+	 * @param numParallelSubtasks the current parallelism
+	 * @param assignmentId the id of the current partition assignment
+	 * @param target the map to add the restored offsets to
+	 *
+	 * @return {@code true}, if offsets of the snapshot were added to the map; {@code false} if it was skipped
+	 */
+	public static boolean deserialize(
+			byte[] serialized,
+			int indexOfThisSubtask,
+			int numParallelSubtasks,
+			int assignmentId,
+			Map<KafkaTopicPartition, Long> target) throws IOException {
+
+		final DataInputDeserializer in = new DataInputDeserializer(serialized);
+
+		final int version = in.readUnsignedByte();
+		if (version != VERSION && version != VERSION_WITHOUT_ASSIGNMENT_ID) {
+			throw new IOException("Unsupported Kafka partition offsets format version " + version);
+		}
+
+		final int snapshotParallelism = readVarInt(in);
+		final int snapshotSubtaskIndex = readVarInt(in);
+		// the first version was only written with the round-robin assignment
+		final int snapshotAssignmentId = version == VERSION ? in.readInt() : 0;
+		if (snapshotParallelism == numParallelSubtasks
+				&& snapshotAssignmentId == assignmentId
+				&& snapshotSubtaskIndex != indexOfThisSubtask) {
+			// the partitions of the snapshot are still owned by the subtask that wrote it
+			return false;
+		}
+
+		final int numTopics = readVarInt(in);
+		for (int i = 0; i < numTopics; i++) {
+			final String topic = in.readUTF();
+			final int numPartitions = readVarInt(in);
+
+			int partition = 0;
+			for (int j = 0; j < numPartitions; j++) {
+				partition += readVarInt(in);
+				target.put(new KafkaTopicPartition(topic, partition), unZigZag(readVarLong(in)));
+			}
+		}
+
+		return true;
+	}
+
+	// ------------------------------------------------------------------------
+	//  Utilities
+	// ------------------------------------------------------------------------
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarInt(DataOutputSerializer out, int value) throws IOException {
+		writeVarLong(out, value & 0xFFFFFFFFL);
+	}
+
+	private static void writeVarLong(DataOutputSerializer out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static int readVarInt(DataInputDeserializer in) throws IOException {
+		return (int) readVarLong(in);
+	}
+
+	private static long readVarLong(DataInputDeserializer in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift > 63) {
+				throw new IOException("Malformed varint in Kafka partition offsets");
+			}
+			b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
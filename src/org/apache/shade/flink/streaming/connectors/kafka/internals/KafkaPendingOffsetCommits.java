@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.flink.annotation.Internal;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * Tracks the offsets of checkpoints that are not yet committed to Kafka.
+ *
+ * <p>Instead of keeping a full copy of the offsets for every pending checkpoint, only the offsets that
+ * changed since the previous checkpoint are kept. The full offsets of a checkpoint are reconstructed
+ * by applying the pending deltas, in checkpoint order, on top of the offsets of the last committed
+ * checkpoint.
+ *
+ * <p>Deltas refer to partitions by their index in a {@link KafkaTopicPartitionOffsetsSnapshot}.
+ * If the partition at an already known index changes between two snapshots, the delta contains
+ * all partitions and replaces the committed offsets entirely.
+ *
+ * <p>This class is not thread-safe. Only one checkpoint call can happen on the consumer at a time.
+ */
+@Internal
+public final class KafkaPendingOffsetCommits {
+
+	/** The maximum number of pending checkpoints to track, to avoid memory leaks. */
+	private final int maxNumPendingCheckpoints;
+
+	/** The deltas of the pending checkpoints, in ascending checkpoint order. */
+	private final ArrayDeque<OffsetsDelta> pendingDeltas;
+
+	/** The partitions of the most recently added checkpoint, by index. */
+	private KafkaTopicPartition[] latestPartitions;
+
+	/** The offsets of the most recently added checkpoint, by index. */
+	private long[] latestOffsets;
+
+	private int latestSize;
+
+	/** The partitions of the last committed (or dropped) checkpoint, by index. */
+	private KafkaTopicPartition[] committedPartitions;
+
+	/** The offsets of the last committed (or dropped) checkpoint, by index. */
+	private long[] committedOffsets;
+
+	private int committedSize;
+
+	public KafkaPendingOffsetCommits(int maxNumPendingCheckpoints) {
+		checkArgument(maxNumPendingCheckpoints > 0, "The maximum number of pending checkpoints must be positive.");
+
+		this.maxNumPendingCheckpoints = maxNumPendingCheckpoints;
+		this.pendingDeltas = new ArrayDeque<>();
+		this.latestPartitions = new KafkaTopicPartition[0];
+		this.latestOffsets = new long[0];
+		this.committedPartitions = latestPartitions;
+		this.committedOffsets = new long[0];
+	}
+
+	/**
+	 * Adds the offsets of a checkpoint as pending. If more than the maximum number of checkpoints
+	 * are pending afterwards, the oldest ones are dropped without being committed.
+	 *
+	 * @param checkpointId the id of the checkpoint; must be larger than all previously added ids
+	 * @param snapshot the offsets of the checkpoint
+	 */
+	public void add(long checkpointId, KafkaTopicPartitionOffsetsSnapshot snapshot) {
+		final int size = snapshot.size();
+		final KafkaTopicPartition[] partitions = snapshot.getPartitions();
+		final long[] offsets = snapshot.getOffsets();
+
+		// partition indexes are stable as long as partitions are only appended
+		boolean reset = size < latestSize;
+		for (int i = 0; i < latestSize && !reset; i++) {
+			reset = !partitions[i].equals(latestPartitions[i]);
+		}
+
+		final int firstNewIndex = reset ? 0 : latestSize;
+		if (firstNewIndex < size) {
+			// deltas keep referencing the old array, so a new one is created
+			latestPartitions = Arrays.copyOf(partitions, size);
+		}
+		if (latestOffsets.length < size) {
+			latestOffsets = Arrays.copyOf(latestOffsets, size);
+		}
+
+		int numChanged = size - firstNewIndex;
+		for (int i = 0; i < firstNewIndex; i++) {
+			if (offsets[i] != latestOffsets[i]) {
+				numChanged++;
+			}
+		}
+
+		final int[] changedIndexes = new int[numChanged];
+		final long[] changedOffsets = new long[numChanged];
+		int pos = 0;
+		for (int i = 0; i < size; i++) {
+			if (i >= firstNewIndex || offsets[i] != latestOffsets[i]) {
+				changedIndexes[pos] = i;
+				changedOffsets[pos] = offsets[i];
+				pos++;
+				latestOffsets[i] = offsets[i];
+			}
+		}
+		latestSize = size;
+
+		pendingDeltas.addLast(new OffsetsDelta(checkpointId, latestPartitions, size, reset, changedIndexes, changedOffsets));
+
+		// truncate the pending checkpoints, to prevent infinite growth
+		while (pendingDeltas.size() > maxNumPendingCheckpoints) {
+			applyToCommitted(pendingDeltas.removeFirst());
+		}
+	}
+
+	/**
+	 * Marks the given checkpoint as committed, and returns its full offsets. All older pending
+	 * checkpoints are dropped.
+	 *
+	 * @param checkpointId the id of the checkpoint to commit
+	 * @return the offsets of the checkpoint, or {@code null} if the checkpoint is not pending
+	 */
+	@Nullable
+	public Map<KafkaTopicPartition, Long> commit(long checkpointId) {
+		if (!contains(checkpointId)) {
+			return null;
+		}
+
+		OffsetsDelta delta;
+		do {
+			delta = pendingDeltas.removeFirst();
+			applyToCommitted(delta);
+		} while (delta.checkpointId != checkpointId);
+
+		final HashMap<KafkaTopicPartition, Long> offsets = new HashMap<>(committedSize);
+		for (int i = 0; i < committedSize; i++) {
+			offsets.put(committedPartitions[i], committedOffsets[i]);
+		}
+		return offsets;
+	}
+
+	/**
+	 * Checks whether the given checkpoint is pending.
+	 */
+	public boolean contains(long checkpointId) {
+		for (Iterator<OffsetsDelta> it = pendingDeltas.descendingIterator(); it.hasNext(); ) {
+			final long pendingId = it.next().checkpointId;
+			if (pendingId == checkpointId) {
+				return true;
+			} else if (pendingId < checkpointId) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of pending checkpoints.
+	 */
+	public int size() {
+		return pendingDeltas.size();
+	}
+
+	// ------------------------------------------------------------------------
+
+	private void applyToCommitted(OffsetsDelta delta) {
+		if (delta.reset) {
+			committedOffsets = new long[delta.size];
+		} else if (committedOffsets.length < delta.size) {
+			committedOffsets = Arrays.copyOf(committedOffsets, delta.size);
+		}
+
+		for (int i = 0; i < delta.changedIndexes.length; i++) {
+			committedOffsets[delta.changedIndexes[i]] = delta.changedOffsets[i];
+		}
+		committedPartitions = delta.partitions;
+		committedSize = delta.size;
+	}
+
+	/**
+	 * The offsets that changed in a checkpoint, compared to the previous checkpoint.
+	 */
+	private static final class OffsetsDelta {
+
+		final long checkpointId;
+
+		/** The partitions by index; may be shared with other deltas and hold more than {@code size} entries. */
+		final KafkaTopicPartition[] partitions;
+
+		final int size;
+
+		/** Whether the delta contains all partitions, instead of building on the previous checkpoint. */
+		final boolean reset;
+
+		final int[] changedIndexes;
+
+		final long[] changedOffsets;
+
+		OffsetsDelta(
+				long checkpointId,
+				KafkaTopicPartition[] partitions,
+				int size,
+				boolean reset,
+				int[] changedIndexes,
+				long[] changedOffsets) {
+			this.checkpointId = checkpointId;
+			this.partitions = partitions;
+			this.size = size;
+			this.reset = reset;
+			this.changedIndexes = changedIndexes;
+			this.changedOffsets = changedOffsets;
+		}
+	}
+}
@@ -25,6 +25,11 @@ import org.apache.flink.annotation.Internal;
 @Internal
 public class KafkaTopicPartitionAssigner {
 
+	/**
+	 * The round-robin assignment of {@link #assign(KafkaTopicPartition, int)}, as an assignment strategy.
+	 */
+	public static final KafkaTopicPartitionAssignmentStrategy ROUND_ROBIN = RoundRobinAssignmentStrategy.INSTANCE;
+
 	/**
 	 * Returns the index of the target subtask that a specific Kafka partition should be
 	 * assigned to.
@@ -56,4 +61,19 @@ public class KafkaTopicPartitionAssigner {
 		return (startIndex + partition.getPartition()) % numParallelSubtasks;
 	}
 
+	// ------------------------------------------------------------------------
+
+	private enum RoundRobinAssignmentStrategy implements KafkaTopicPartitionAssignmentStrategy {
+		INSTANCE;
+
+		@Override
+		public int assign(KafkaTopicPartition partition, int numParallelSubtasks) {
+			return KafkaTopicPartitionAssigner.assign(partition, numParallelSubtasks);
+		}
+
+		@Override
+		public int getAssignmentId() {
+			return 0;
+		}
+	}
 }
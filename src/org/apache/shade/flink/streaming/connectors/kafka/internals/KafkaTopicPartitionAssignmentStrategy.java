@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.flink.annotation.Internal;
+
+import java.io.Serializable;
+
+/**
+ * Strategy for assigning Kafka partitions to consumer subtasks.
+ *
+ * <p>Consumer subtasks never coordinate about which partitions they read. Every subtask evaluates
+ * the strategy independently, and filters out partitions that are not assigned to itself. An
+ * implementation must therefore be deterministic: all subtasks must compute the same target
+ * subtask for a partition, regardless of when and in which order they discover partitions.
+ *
+ * @see KafkaTopicPartitionAssigner#ROUND_ROBIN
+ * @see WeightedKafkaTopicPartitionAssigner
+ */
+@Internal
+public interface KafkaTopicPartitionAssignmentStrategy extends Serializable {
+
+	/**
+	 * Returns the index of the target subtask that a specific Kafka partition should be
+	 * assigned to.
+	 *
+	 * @param partition the Kafka partition
+	 * @param numParallelSubtasks total number of parallel subtasks
+	 *
+	 * @return index of the target subtask that the Kafka partition should be assigned to.
+	 */
+	int assign(KafkaTopicPartition partition, int numParallelSubtasks);
+
+	/**
+	 * Returns an identifier of the assignment computed by this strategy. Two strategies with the
+	 * same identifier must assign all partitions to the same subtasks, given the same parallelism.
+	 *
+	 * <p>The identifier is stored with the checkpointed offsets, so that a restored subtask can tell
+	 * whether it still owns the same partitions. The round-robin assignment has the identifier {@code 0}.
+	 */
+	int getAssignmentId();
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.flink.annotation.Internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of partition offsets, held in primitive arrays.
+ *
+ * <p>Partitions are identified by a dense index, which is their position in the list of
+ * subscribed partition states of the fetcher. Since that list only ever grows, the index of a
+ * partition stays the same across snapshots, which allows computing deltas between snapshots
+ * by index (see {@link KafkaPendingOffsetCommits}).
+ *
+ * <p>The fetcher reuses a single instance across checkpoints, so the contents of a snapshot are
+ * only valid until the next snapshot is taken.
+ */
+@Internal
+public final class KafkaTopicPartitionOffsetsSnapshot {
+
+	private KafkaTopicPartition[] partitions;
+
+	private long[] offsets;
+
+	private int size;
+
+	public KafkaTopicPartitionOffsetsSnapshot() {
+		this.partitions = new KafkaTopicPartition[0];
+		this.offsets = new long[0];
+	}
+
+	/**
+	 * Creates a snapshot from a map of partition offsets.
+	 */
+	public static KafkaTopicPartitionOffsetsSnapshot of(Map<KafkaTopicPartition, Long> partitionOffsets) {
+		final KafkaTopicPartitionOffsetsSnapshot snapshot = new KafkaTopicPartitionOffsetsSnapshot();
+		snapshot.ensureCapacity(partitionOffsets.size());
+
+		for (Map.Entry<KafkaTopicPartition, Long> partitionOffset : partitionOffsets.entrySet()) {
+			snapshot.partitions[snapshot.size] = partitionOffset.getKey();
+			snapshot.offsets[snapshot.size] = partitionOffset.getValue();
+			snapshot.size++;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Overwrites this snapshot with the current offsets of the given partition states.
+	 */
+	void update(List<? extends KafkaTopicPartitionState<?>> partitionStates) {
+		// the list may grow concurrently when partitions are discovered, so we only
+		// snapshot the partitions that existed when the snapshot was started
+		final int numPartitions = partitionStates.size();
+		ensureCapacity(numPartitions);
+
+		for (int i = 0; i < numPartitions; i++) {
+			final KafkaTopicPartitionState<?> partitionState = partitionStates.get(i);
+			partitions[i] = partitionState.getKafkaTopicPartition();
+			offsets[i] = partitionState.getOffset();
+		}
+		size = numPartitions;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the number of partitions in this snapshot.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the partitions of this snapshot, by index. Only the first {@link #size()} entries are valid.
+	 */
+	public KafkaTopicPartition[] getPartitions() {
+		return partitions;
+	}
+
+	/**
+	 * Gets the offsets of this snapshot, by index. Only the first {@link #size()} entries are valid.
+	 */
+	public long[] getOffsets() {
+		return offsets;
+	}
+
+	/**
+	 * Copies this snapshot into a map from partition to offset.
+	 */
+	public HashMap<KafkaTopicPartition, Long> toMap() {
+		HashMap<KafkaTopicPartition, Long> map = new HashMap<>(size);
+		for (int i = 0; i < size; i++) {
+			map.put(partitions[i], offsets[i]);
+		}
+		return map;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (partitions.length < capacity) {
+			partitions = Arrays.copyOf(partitions, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			sb.append(partitions[i].getTopic()).append(":").append(partitions[i].getPartition())
+				.append("=").append(offsets[i]).append(", ");
+		}
+		return sb.toString();
+	}
+}
@@ -19,6 +19,8 @@ package org.apache.shade.flink.streaming.connectors.kafka.internals;
 
 import org.apache.flink.annotation.Internal;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * The state that the Flink Kafka Consumer holds for each Kafka partition.
  * Includes the Kafka descriptor for partitions.
@@ -46,6 +48,12 @@ public class KafkaTopicPartitionState<KPH> {
 	/** The offset of the Kafka partition that has been committed. */
 	private volatile long committedOffset;
 
+	/** The number of bytes that were fetched from the partition, but not emitted yet. */
+	private final AtomicLong bufferedBytes = new AtomicLong();
+
+	/** The number of bytes that were emitted from the partition. Only updated by the emitting thread. */
+	private volatile long emittedBytes;
+
 	// ------------------------------------------------------------------------
 
 	public KafkaTopicPartitionState(KafkaTopicPartition partition, KPH kafkaPartitionHandle) {
@@ -106,6 +114,32 @@ public class KafkaTopicPartitionState<KPH> {
 		return committedOffset;
 	}
 
+	/**
+	 * Records that the given number of bytes were fetched from the partition, to be emitted later.
+	 */
+	public final void addFetchedBytes(long bytes) {
+		bufferedBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Records that the given number of fetched bytes were emitted from the partition.
+	 */
+	public final void addEmittedBytes(long bytes) {
+		bufferedBytes.addAndGet(-bytes);
+		emittedBytes += bytes;
+	}
+
+	/**
+	 * The number of bytes that were fetched from the partition, but not emitted yet.
+	 */
+	public final long getBufferedBytes() {
+		return bufferedBytes.get();
+	}
+
+	public final long getEmittedBytes() {
+		return emittedBytes;
+	}
+
 	// ------------------------------------------------------------------------
 
 	@Override
@@ -21,6 +21,8 @@ import org.apache.flink.annotation.Internal;
 import org.apache.flink.streaming.api.functions.AssignerWithPeriodicWatermarks;
 import org.apache.flink.streaming.api.watermark.Watermark;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * A special version of the per-kafka-partition-state that additionally holds
  * a periodic watermark generator (and timestamp extractor) per partition.
@@ -37,6 +39,24 @@ public final class KafkaTopicPartitionStateWithPeriodicWatermarks<T, KPH> extend
 	/** The last watermark timestamp generated by this partition. */
 	private long partitionWatermark;
 
+	/** The index of the partition in the {@link PartitionWatermarkHeap} of the fetcher. */
+	private int watermarkIndex = -1;
+
+	/** Whether records were emitted since the watermark was last queried. */
+	private final AtomicBoolean updated = new AtomicBoolean();
+
+	/** The round of the periodic watermark emitter in which the watermark was last queried. */
+	private long lastWatermarkRound = -1L;
+
+	/** The processing time at which records were last emitted from this partition, or -1 if unknown. */
+	private long lastActiveTime = -1L;
+
+	/** Whether the partition is idle, and excluded from the watermark across partitions. */
+	private boolean idle;
+
+	/** Whether fetching the partition is paused, because its watermark is too far ahead. */
+	private boolean pausedForAlignment;
+
 	// ------------------------------------------------------------------------
 
 	public KafkaTopicPartitionStateWithPeriodicWatermarks(
@@ -62,11 +82,65 @@ public final class KafkaTopicPartitionStateWithPeriodicWatermarks<T, KPH> extend
 		return partitionWatermark;
 	}
 
+	int getWatermarkIndex() {
+		return watermarkIndex;
+	}
+
+	void setWatermarkIndex(int watermarkIndex) {
+		this.watermarkIndex = watermarkIndex;
+	}
+
+	/**
+	 * Marks that a record was emitted from this partition.
+	 *
+	 * @return {@code true}, if the partition was not marked as updated before
+	 */
+	boolean markUpdated() {
+		return !updated.get() && updated.compareAndSet(false, true);
+	}
+
+	void clearUpdated() {
+		updated.set(false);
+	}
+
+	long getLastWatermarkRound() {
+		return lastWatermarkRound;
+	}
+
+	void setLastWatermarkRound(long round) {
+		this.lastWatermarkRound = round;
+	}
+
+	long getLastActiveTime() {
+		return lastActiveTime;
+	}
+
+	void setLastActiveTime(long lastActiveTime) {
+		this.lastActiveTime = lastActiveTime;
+	}
+
+	boolean isIdle() {
+		return idle;
+	}
+
+	void setIdle(boolean idle) {
+		this.idle = idle;
+	}
+
+	boolean isPausedForAlignment() {
+		return pausedForAlignment;
+	}
+
+	void setPausedForAlignment(boolean pausedForAlignment) {
+		this.pausedForAlignment = pausedForAlignment;
+	}
+
 	// ------------------------------------------------------------------------
 
 	@Override
 	public String toString() {
 		return "KafkaTopicPartitionStateWithPeriodicWatermarks: partition=" + getKafkaTopicPartition()
-				+ ", offset=" + getOffset() + ", watermark=" + partitionWatermark;
+				+ ", offset=" + getOffset() + ", watermark=" + partitionWatermark + (idle ? ", idle" : "")
+				+ (pausedForAlignment ? ", paused" : "");
 	}
 }
@@ -42,6 +42,9 @@ public final class KafkaTopicPartitionStateWithPunctuatedWatermarks<T, KPH> exte
 	/** The last watermark timestamp generated by this partition. */
 	private volatile long partitionWatermark;
 
+	/** The index of the partition in the {@link PartitionWatermarkHeap} of the fetcher. */
+	private int watermarkIndex = -1;
+
 	// ------------------------------------------------------------------------
 
 	public KafkaTopicPartitionStateWithPunctuatedWatermarks(
@@ -75,6 +78,14 @@ public final class KafkaTopicPartitionStateWithPunctuatedWatermarks<T, KPH> exte
 		return partitionWatermark;
 	}
 
+	int getWatermarkIndex() {
+		return watermarkIndex;
+	}
+
+	void setWatermarkIndex(int watermarkIndex) {
+		this.watermarkIndex = watermarkIndex;
+	}
+
 	// ------------------------------------------------------------------------
 
 	@Override
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.flink.annotation.Internal;
+
+import java.util.Arrays;
+
+/**
+ * An indexed min-heap of the current watermarks of the partitions of a fetcher.
+ *
+ * <p>Partitions are identified by the index that {@link #add(long)} returned for them. Updating the
+ * watermark of a partition and looking up the minimum watermark across all partitions are O(log P)
+ * and O(1) respectively, instead of a scan over all partitions.
+ *
+ * <p>All methods are synchronized, since partitions are added by the partition discovery while
+ * watermarks are updated by the fetcher or the periodic watermark emitter.
+ */
+@Internal
+public final class PartitionWatermarkHeap {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The current watermark of each partition, by partition index. */
+	private long[] watermarks;
+
+	/** The partition indexes, ordered as a binary min-heap by their watermark. */
+	private int[] heap;
+
+	/** The position of each partition in the heap, by partition index. */
+	private int[] positions;
+
+	private int size;
+
+	public PartitionWatermarkHeap() {
+		this.watermarks = new long[INITIAL_CAPACITY];
+		this.heap = new int[INITIAL_CAPACITY];
+		this.positions = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Adds a partition with the given initial watermark.
+	 *
+	 * @return the index of the partition, which is the number of partitions added before it
+	 */
+	public synchronized int add(long watermark) {
+		if (size == heap.length) {
+			final int capacity = heap.length * 2;
+			watermarks = Arrays.copyOf(watermarks, capacity);
+			heap = Arrays.copyOf(heap, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+
+		final int index = size++;
+		watermarks[index] = watermark;
+		heap[index] = index;
+		positions[index] = index;
+		siftUp(index);
+		return index;
+	}
+
+	/**
+	 * Sets the watermark of a partition.
+	 *
+	 * @return the minimum watermark across all partitions after the update
+	 */
+	public synchronized long update(int index, long watermark) {
+		final long previous = watermarks[index];
+		watermarks[index] = watermark;
+		if (watermark > previous) {
+			siftDown(positions[index]);
+		} else if (watermark < previous) {
+			siftUp(positions[index]);
+		}
+		return watermarks[heap[0]];
+	}
+
+	/**
+	 * Gets the watermark of a partition.
+	 */
+	public synchronized long getWatermark(int index) {
+		return watermarks[index];
+	}
+
+	/**
+	 * Gets the minimum watermark across all partitions, or {@code Long.MAX_VALUE} if there are none.
+	 */
+	public synchronized long getMinWatermark() {
+		return size == 0 ? Long.MAX_VALUE : watermarks[heap[0]];
+	}
+
+	/**
+	 * Gets the index of a partition with the minimum watermark, or {@code -1} if there are none.
+	 */
+	public synchronized int getMinWatermarkPartition() {
+		return size == 0 ? -1 : heap[0];
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	// ------------------------------------------------------------------------
+
+	private void siftUp(int position) {
+		final int index = heap[position];
+		final long watermark = watermarks[index];
+		while (position > 0) {
+			final int parent = (position - 1) >>> 1;
+			if (watermarks[heap[parent]] <= watermark) {
+				break;
+			}
+			move(heap[parent], position);
+			position = parent;
+		}
+		move(index, position);
+	}
+
+	private void siftDown(int position) {
+		final int index = heap[position];
+		final long watermark = watermarks[index];
+		final int half = size >>> 1;
+		while (position < half) {
+			int child = 2 * position + 1;
+			if (child + 1 < size && watermarks[heap[child + 1]] < watermarks[heap[child]]) {
+				child++;
+			}
+			if (watermark <= watermarks[heap[child]]) {
+				break;
+			}
+			move(heap[child], position);
+			position = child;
+		}
+		move(index, position);
+	}
+
+	private void move(int index, int position) {
+		heap[position] = index;
+		positions[index] = position;
+	}
+}
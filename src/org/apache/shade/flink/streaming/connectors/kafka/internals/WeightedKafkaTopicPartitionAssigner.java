@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.flink.annotation.Internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * An assignment strategy that balances the weight of partitions across subtasks, for example the
+ * byte rate or lag of each partition observed in earlier runs.
+ *
+ * <p>The weights are part of the consumer's configuration, so that all subtasks compute the same
+ * assignment without coordinating. The assignment is computed as follows:
+ * <ol>
+ *     <li>Weighted partitions are processed in descending order of their weight. Each partition
+ *     stays at the subtask that the round-robin assignment ({@link KafkaTopicPartitionAssigner})
+ *     would pick for it, as long as that subtask's load stays within the allowed imbalance.</li>
+ *     <li>The remaining partitions are assigned, again in descending order of weight, to the
+ *     subtask with the lowest load.</li>
+ *     <li>Partitions without a weight, e.g. partitions that are discovered later on, are assigned
+ *     round-robin.</li>
+ * </ol>
+ *
+ * <p>Keeping partitions at their round-robin subtask where possible makes the assignment sticky:
+ * only as many partitions move as necessary to balance the load, and changing the weights of a few
+ * partitions only moves few partitions. Newly discovered partitions never move existing ones.
+ */
+@Internal
+public class WeightedKafkaTopicPartitionAssigner implements KafkaTopicPartitionAssignmentStrategy {
+
+	private static final long serialVersionUID = 5873436398470281093L;
+
+	/** The default fraction by which the load of a subtask may exceed the average load. */
+	public static final double DEFAULT_MAX_IMBALANCE = 0.1;
+
+	/**
+	 * The weights of the partitions. They are sorted by partition whenever they are iterated, so that
+	 * the assignment and its id are deterministic; the map itself is unsorted, since the partition
+	 * comparator is not serializable.
+	 */
+	private final HashMap<KafkaTopicPartition, Long> partitionWeights;
+
+	/** The fraction by which the load of a subtask may exceed the average load. */
+	private final double maxImbalance;
+
+	/** The parallelism that the cached assignment was computed for. */
+	private transient int assignmentParallelism;
+
+	/** The cached assignment of all weighted partitions. */
+	private transient Map<KafkaTopicPartition, Integer> assignment;
+
+	public WeightedKafkaTopicPartitionAssigner(Map<KafkaTopicPartition, Long> partitionWeights) {
+		this(partitionWeights, DEFAULT_MAX_IMBALANCE);
+	}
+
+	public WeightedKafkaTopicPartitionAssigner(Map<KafkaTopicPartition, Long> partitionWeights, double maxImbalance) {
+		checkNotNull(partitionWeights, "partitionWeights");
+		checkArgument(maxImbalance >= 0, "The maximum imbalance cannot be negative.");
+
+		this.partitionWeights = new HashMap<>();
+		for (Map.Entry<KafkaTopicPartition, Long> partitionWeight : partitionWeights.entrySet()) {
+			checkArgument(partitionWeight.getValue() != null && partitionWeight.getValue() >= 0,
+				"Invalid weight for partition %s.", partitionWeight.getKey());
+			this.partitionWeights.put(partitionWeight.getKey(), partitionWeight.getValue());
+		}
+		this.maxImbalance = maxImbalance;
+	}
+
+	@Override
+	public int assign(KafkaTopicPartition partition, int numParallelSubtasks) {
+		Integer subtask = getAssignment(numParallelSubtasks).get(partition);
+		return subtask != null ? subtask : KafkaTopicPartitionAssigner.assign(partition, numParallelSubtasks);
+	}
+
+	@Override
+	public int getAssignmentId() {
+		int id = Double.hashCode(maxImbalance);
+		for (Map.Entry<KafkaTopicPartition, Long> partitionWeight : sortedPartitionWeights()) {
+			id = 31 * id + partitionWeight.getKey().hashCode();
+			id = 31 * id + Long.hashCode(partitionWeight.getValue());
+		}
+		// 0 is reserved for the round-robin assignment
+		return id != 0 ? id : 1;
+	}
+
+	// ------------------------------------------------------------------------
+
+	private synchronized Map<KafkaTopicPartition, Integer> getAssignment(int numParallelSubtasks) {
+		// the discovery loop and the task thread may both look up assignments
+		if (assignment == null || assignmentParallelism != numParallelSubtasks) {
+			assignment = computeAssignment(numParallelSubtasks);
+			assignmentParallelism = numParallelSubtasks;
+		}
+		return assignment;
+	}
+
+	private Map<KafkaTopicPartition, Integer> computeAssignment(int numParallelSubtasks) {
+		final List<Map.Entry<KafkaTopicPartition, Long>> byWeight = sortedPartitionWeights();
+		// stable sort, so that partitions with equal weights keep the order of the partition comparator
+		byWeight.sort((w1, w2) -> Long.compare(w2.getValue(), w1.getValue()));
+
+		long totalWeight = 0;
+		for (Map.Entry<KafkaTopicPartition, Long> partitionWeight : byWeight) {
+			totalWeight += partitionWeight.getValue();
+		}
+		final double capacity = (double) totalWeight / numParallelSubtasks * (1 + maxImbalance);
+
+		final Map<KafkaTopicPartition, Integer> result = new HashMap<>(partitionWeights.size());
+		final long[] loads = new long[numParallelSubtasks];
+
+		// (1) keep partitions at their round-robin subtask, if it has capacity left;
+		//     a partition that exceeds the capacity on its own may stay at an otherwise idle subtask
+		final List<Map.Entry<KafkaTopicPartition, Long>> overflow = new ArrayList<>();
+		for (Map.Entry<KafkaTopicPartition, Long> partitionWeight : byWeight) {
+			final long weight = partitionWeight.getValue();
+			final int home = KafkaTopicPartitionAssigner.assign(partitionWeight.getKey(), numParallelSubtasks);
+			if (loads[home] + weight <= Math.max(capacity, weight)) {
+				loads[home] += weight;
+				result.put(partitionWeight.getKey(), home);
+			} else {
+				overflow.add(partitionWeight);
+			}
+		}
+
+		// (2) move the remaining partitions to the least loaded subtasks
+		for (Map.Entry<KafkaTopicPartition, Long> partitionWeight : overflow) {
+			int leastLoaded = 0;
+			for (int i = 1; i < numParallelSubtasks; i++) {
+				if (loads[i] < loads[leastLoaded]) {
+					leastLoaded = i;
+				}
+			}
+			loads[leastLoaded] += partitionWeight.getValue();
+			result.put(partitionWeight.getKey(), leastLoaded);
+		}
+
+		return result;
+	}
+
+	/** Gets the weights of the partitions, sorted by partition. */
+	private List<Map.Entry<KafkaTopicPartition, Long>> sortedPartitionWeights() {
+		final List<Map.Entry<KafkaTopicPartition, Long>> sorted = new ArrayList<>(partitionWeights.entrySet());
+		final KafkaTopicPartition.Comparator comparator = new KafkaTopicPartition.Comparator();
+		sorted.sort((w1, w2) -> comparator.compare(w1.getKey(), w2.getKey()));
+		return sorted;
+	}
+}
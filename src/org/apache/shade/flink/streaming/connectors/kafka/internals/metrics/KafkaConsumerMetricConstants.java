@@ -35,6 +35,7 @@ public class KafkaConsumerMetricConstants {
 
 	public static final String COMMITS_SUCCEEDED_METRICS_COUNTER = "commitsSucceeded";
 	public static final String COMMITS_FAILED_METRICS_COUNTER = "commitsFailed";
+	public static final String COMMIT_LATENCY_METRICS_HISTOGRAM = "commitLatency";
 
 	// ------------------------------------------------------------------------
 	//  Per-partition metrics
@@ -46,6 +47,18 @@ public class KafkaConsumerMetricConstants {
 	public static final String CURRENT_OFFSETS_METRICS_GAUGE = "currentOffsets";
 	public static final String COMMITTED_OFFSETS_METRICS_GAUGE = "committedOffsets";
 
+	public static final String BUFFERED_BYTES_METRICS_GAUGE = "bufferedBytes";
+	public static final String EMITTED_BYTES_RATE_METRICS_METER = "bytesEmittedPerSecond";
+
+	// the stage latencies of the records sampled for tracing, in microseconds
+	public static final String RECORD_LATENCY_METRICS_GROUP = "recordLatency";
+	public static final String FETCH_LATENCY_METRICS_HISTOGRAM = "fetch";
+	public static final String BUFFER_LATENCY_METRICS_HISTOGRAM = "buffer";
+	public static final String HANDOVER_LATENCY_METRICS_HISTOGRAM = "handover";
+	public static final String DESERIALIZE_LATENCY_METRICS_HISTOGRAM = "deserialize";
+	public static final String EMIT_LATENCY_METRICS_HISTOGRAM = "emit";
+	public static final String TOTAL_LATENCY_METRICS_HISTOGRAM = "total";
+
 	// ------------------------------------------------------------------------
 	//  Legacy metrics
 	// ------------------------------------------------------------------------
@@ -13,6 +13,7 @@
 package org.apache.shade.kafka.clients;
 
 import org.apache.shade.kafka.common.requests.RequestSend;
+import org.apache.shade.kafka.common.utils.TimingWheel;
 
 /**
  * A request being sent to the server. This holds both the network send as well as the client-level metadata.
@@ -25,6 +26,8 @@ public final class ClientRequest {
     private final RequestCompletionHandler callback;
     private final boolean isInitiatedByNetworkClient;
     private long sendTimeMs;
+    // the request timeout while the request is in flight, managed by InFlightRequests
+    TimingWheel.Timeout<ClientRequest> timeout;
 
     /**
      * @param createdTimeMs The unix timestamp in milliseconds for the time at which this request was created.
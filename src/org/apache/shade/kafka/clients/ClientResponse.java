@@ -12,18 +12,27 @@
  */
 package org.apache.shade.kafka.clients;
 
+import java.nio.ByteBuffer;
+
+import org.apache.shade.kafka.common.protocol.ProtoUtils;
 import org.apache.shade.kafka.common.protocol.types.Struct;
 
 /**
  * A response from the server. Contains both the body of the response as well as the correlated request that was
  * originally sent.
+ * <p>
+ * Responses received by the network client keep their serialized body. The hot response types are decoded from it
+ * directly with their own codecs (see {@link #responsePayload()}), while {@link #responseBody()} parses the generic
+ * struct on first access.
  */
 public class ClientResponse {
 
     private final long receivedTimeMs;
+    private final long receivedTimeNanos;
     private final boolean disconnected;
     private final org.apache.shade.kafka.clients.ClientRequest request;
-    private final org.apache.shade.kafka.common.protocol.types.Struct responseBody;
+    private org.apache.shade.kafka.common.protocol.types.Struct responseBody;
+    private final ByteBuffer responsePayload;
 
     /**
      * @param request The original request
@@ -34,15 +43,40 @@ public class ClientResponse {
     public ClientResponse(org.apache.shade.kafka.clients.ClientRequest request, long receivedTimeMs, boolean disconnected, org.apache.shade.kafka.common.protocol.types.Struct responseBody) {
         super();
         this.receivedTimeMs = receivedTimeMs;
+        this.receivedTimeNanos = 0;
         this.disconnected = disconnected;
         this.request = request;
         this.responseBody = responseBody;
+        this.responsePayload = null;
+    }
+
+    /**
+     * @param request The original request
+     * @param receivedTimeMs The unix timestamp when this response was received
+     * @param receivedTimeNanos The monotonic time in nanoseconds when this response was received
+     * @param responsePayload The serialized response body, following the response header
+     */
+    public ClientResponse(org.apache.shade.kafka.clients.ClientRequest request, long receivedTimeMs, long receivedTimeNanos, ByteBuffer responsePayload) {
+        this.receivedTimeMs = receivedTimeMs;
+        this.receivedTimeNanos = receivedTimeNanos;
+        this.disconnected = false;
+        this.request = request;
+        this.responseBody = null;
+        this.responsePayload = responsePayload;
     }
 
     public long receivedTimeMs() {
         return receivedTimeMs;
     }
 
+    /**
+     * The monotonic time in nanoseconds when this response was received, comparable to {@link System#nanoTime()}.
+     * This is 0 for responses that were not received from the network.
+     */
+    public long receivedTimeNanos() {
+        return receivedTimeNanos;
+    }
+
     public boolean wasDisconnected() {
         return disconnected;
     }
@@ -51,12 +85,36 @@ public class ClientResponse {
         return request;
     }
 
+    /**
+     * The version of the api that the request was sent with, and that the response is encoded in
+     */
+    public short apiVersion() {
+        return request.request().header().apiVersion();
+    }
+
     public Struct responseBody() {
+        if (responseBody == null && responsePayload != null)
+            responseBody = ProtoUtils.parseResponse(request.request().header().apiKey(), apiVersion(), responsePayload.duplicate());
         return responseBody;
     }
 
+    /**
+     * The serialized response body, to be decoded with the codec of the response type. The returned buffer is a view
+     * that the caller may consume. Responses that were created from a struct are serialized on each call.
+     */
+    public ByteBuffer responsePayload() {
+        if (responsePayload != null)
+            return responsePayload.duplicate();
+        if (responseBody == null)
+            return null;
+        ByteBuffer buffer = ByteBuffer.allocate(responseBody.sizeOf());
+        responseBody.writeTo(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
     public boolean hasResponse() {
-        return responseBody != null;
+        return responseBody != null || responsePayload != null;
     }
 
     public long requestLatencyMs() {
@@ -71,7 +129,7 @@ public class ClientResponse {
                ", request=" +
                request +
                ", responseBody=" +
-               responseBody +
+               responseBody() +
                ")";
     }
 
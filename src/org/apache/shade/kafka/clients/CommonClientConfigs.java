@@ -58,6 +58,9 @@ public class CommonClientConfigs {
     public static final String METRICS_NUM_SAMPLES_CONFIG = "metrics.num.samples";
     public static final String METRICS_NUM_SAMPLES_DOC = "The number of samples maintained to compute metrics.";
 
+    public static final String CLOCK_TICK_MS_CONFIG = "clock.tick.ms";
+    public static final String CLOCK_TICK_MS_DOC = "The interval at which a shared background thread updates the cached wall clock time that the client reads on its hot paths, or 0 to read the system clock on every call. Durations and the receive times of responses are always measured precisely, but other timestamps and timeouts may lag behind the system clock by up to this interval.";
+
     public static final String METRIC_REPORTER_CLASSES_CONFIG = "metric.reporters";
     public static final String METRIC_REPORTER_CLASSES_DOC = "A list of classes to use as metrics reporters. Implementing the <code>MetricReporter</code> interface allows plugging in classes that will be notified of new metric creation. The JmxReporter is always included to register JMX statistics.";
 
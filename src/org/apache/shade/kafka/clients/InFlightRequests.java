@@ -12,13 +12,17 @@
  */
 package org.apache.shade.kafka.clients;
 
+import org.apache.shade.kafka.common.utils.TimingWheel;
+
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The set of requests which have been sent or are being sent but haven't yet received a response
@@ -26,10 +30,15 @@ import java.util.Map;
 final class InFlightRequests {
 
     private final int maxInFlightRequestsPerConnection;
+    private final int requestTimeoutMs;
     private final Map<String, Deque<org.apache.shade.kafka.clients.ClientRequest>> requests = new HashMap<String, Deque<org.apache.shade.kafka.clients.ClientRequest>>();
+    // the request timeouts, created with the send time of the first request
+    private TimingWheel<ClientRequest> timeouts = null;
+    private final List<TimingWheel.Timeout<ClientRequest>> expired = new ArrayList<>();
 
-    public InFlightRequests(int maxInFlightRequestsPerConnection) {
+    public InFlightRequests(int maxInFlightRequestsPerConnection, int requestTimeoutMs) {
         this.maxInFlightRequestsPerConnection = maxInFlightRequestsPerConnection;
+        this.requestTimeoutMs = requestTimeoutMs;
     }
 
     /**
@@ -42,6 +51,19 @@ final class InFlightRequests {
             this.requests.put(request.request().destination(), reqs);
         }
         reqs.addFirst(request);
+
+        if (timeouts == null)
+            timeouts = new TimingWheel<>(request.sendTimeMs());
+        // a request times out once more than the request timeout has passed since it was sent
+        request.timeout = timeouts.schedule(request, request.sendTimeMs() + requestTimeoutMs + 1);
+    }
+
+    private ClientRequest completed(ClientRequest request) {
+        if (request != null && request.timeout != null) {
+            timeouts.cancel(request.timeout);
+            request.timeout = null;
+        }
+        return request;
     }
 
     /**
@@ -58,7 +80,7 @@ final class InFlightRequests {
      * Get the oldest request (the one that that will be completed next) for the given node
      */
     public org.apache.shade.kafka.clients.ClientRequest completeNext(String node) {
-        return requestQueue(node).pollLast();
+        return completed(requestQueue(node).pollLast());
     }
 
     /**
@@ -75,7 +97,7 @@ final class InFlightRequests {
      * @return The request
      */
     public org.apache.shade.kafka.clients.ClientRequest completeLastSent(String node) {
-        return requestQueue(node).pollFirst();
+        return completed(requestQueue(node).pollFirst());
     }
 
     /**
@@ -121,29 +143,34 @@ final class InFlightRequests {
         if (reqs == null) {
             return Collections.emptyList();
         } else {
+            for (ClientRequest request : reqs)
+                completed(request);
             return requests.remove(node);
         }
     }
 
     /**
-     * Returns a list of nodes with pending inflight request, that need to be timed out
+     * Returns a list of nodes with pending inflight request, that need to be timed out. The requests are
+     * tracked in a timing wheel, so only the requests which actually timed out are visited.
      *
      * @param now current time in milliseconds
-     * @param requestTimeout max time to wait for the request to be completed
      * @return list of nodes
      */
-    public List<String> getNodesWithTimedOutRequests(long now, int requestTimeout) {
-        List<String> nodeIds = new LinkedList<String>();
-        for (String nodeId : requests.keySet()) {
-            if (inFlightRequestCount(nodeId) > 0) {
-                ClientRequest request = requests.get(nodeId).peekLast();
-                long timeSinceSend = now - request.sendTimeMs();
-                if (timeSinceSend > requestTimeout) {
-                    nodeIds.add(nodeId);
-                }
-            }
-        }
+    public List<String> getNodesWithTimedOutRequests(long now) {
+        if (timeouts == null || timeouts.size() == 0)
+            return Collections.emptyList();
 
-        return nodeIds;
+        timeouts.advance(now, expired);
+        if (expired.isEmpty())
+            return Collections.emptyList();
+
+        Set<String> nodeIds = new LinkedHashSet<>();
+        for (TimingWheel.Timeout<ClientRequest> timeout : expired) {
+            ClientRequest request = timeout.item();
+            request.timeout = null;
+            nodeIds.add(request.request().destination());
+        }
+        expired.clear();
+        return new ArrayList<>(nodeIds);
     }
 }
@@ -14,7 +14,6 @@
 package org.apache.shade.kafka.clients;
 
 import org.apache.shade.kafka.common.Node;
-import org.apache.shade.kafka.common.protocol.types.Struct;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -65,7 +64,7 @@ public class ManualMetadataUpdater implements org.apache.shade.kafka.clients.Met
     }
 
     @Override
-    public boolean maybeHandleCompletedReceive(ClientRequest request, long now, Struct body) {
+    public boolean maybeHandleCompletedReceive(ClientRequest request, long now, ClientResponse response) {
         return false;
     }
 
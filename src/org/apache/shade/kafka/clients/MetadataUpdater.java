@@ -14,7 +14,6 @@
 package org.apache.shade.kafka.clients;
 
 import org.apache.shade.kafka.common.Node;
-import org.apache.shade.kafka.common.protocol.types.Struct;
 
 import java.util.List;
 
@@ -60,9 +59,10 @@ interface MetadataUpdater {
      * If `request` is a metadata request, handles it and returns `true`. Otherwise, returns `false`.
      *
      * This provides a mechanism for the `MetadataUpdater` implementation to use the NetworkClient instance for its own
-     * requests with special handling for completed receives of such requests.
+     * requests with special handling for completed receives of such requests. The body of the response is decoded
+     * lazily, so implementations should only access it for their own requests.
      */
-    boolean maybeHandleCompletedReceive(ClientRequest request, long now, Struct body);
+    boolean maybeHandleCompletedReceive(ClientRequest request, long now, ClientResponse response);
 
     /**
      * Schedules an update of the current cluster metadata info. A subsequent call to `maybeUpdate` would trigger the
@@ -18,7 +18,6 @@ import org.apache.shade.kafka.common.network.NetworkReceive;
 import org.apache.shade.kafka.common.network.Selectable;
 import org.apache.shade.kafka.common.network.Send;
 import org.apache.shade.kafka.common.protocol.ApiKeys;
-import org.apache.shade.kafka.common.protocol.ProtoUtils;
 import org.apache.shade.kafka.common.protocol.types.Struct;
 import org.apache.shade.kafka.common.requests.*;
 import org.apache.shade.kafka.common.utils.Time;
@@ -124,7 +123,7 @@ public class NetworkClient implements KafkaClient {
         }
         this.selector = selector;
         this.clientId = clientId;
-        this.inFlightRequests = new org.apache.shade.kafka.clients.InFlightRequests(maxInFlightRequestsPerConnection);
+        this.inFlightRequests = new org.apache.shade.kafka.clients.InFlightRequests(maxInFlightRequestsPerConnection, requestTimeoutMs);
         this.connectionStates = new org.apache.shade.kafka.clients.ClusterConnectionStates(reconnectBackoffMs);
         this.socketSendBuffer = socketSendBuffer;
         this.socketReceiveBuffer = socketReceiveBuffer;
@@ -388,7 +387,7 @@ public class NetworkClient implements KafkaClient {
      * @param now The current time
      */
     private void handleTimedOutRequests(List<org.apache.shade.kafka.clients.ClientResponse> responses, long now) {
-        List<String> nodeIds = this.inFlightRequests.getNodesWithTimedOutRequests(now, this.requestTimeoutMs);
+        List<String> nodeIds = this.inFlightRequests.getNodesWithTimedOutRequests(now);
         for (String nodeId : nodeIds) {
             // close connection to the node
             this.selector.close(nodeId);
@@ -425,17 +424,19 @@ public class NetworkClient implements KafkaClient {
      * @param now The current time
      */
     private void handleCompletedReceives(List<org.apache.shade.kafka.clients.ClientResponse> responses, long now) {
-        for (NetworkReceive receive : this.selector.completedReceives()) {
+        List<NetworkReceive> receives = this.selector.completedReceives();
+        // all responses of a poll share the monotonic receive time, used to trace the latency of sampled records
+        long nowNanos = receives.isEmpty() ? 0 : this.time.nanoseconds();
+        for (NetworkReceive receive : receives) {
             String source = receive.source();
             org.apache.shade.kafka.clients.ClientRequest req = inFlightRequests.completeNext(source);
             org.apache.shade.kafka.common.requests.ResponseHeader header = org.apache.shade.kafka.common.requests.ResponseHeader.parse(receive.payload());
-            // Always expect the response version id to be the same as the request version id
-            short apiKey = req.request().header().apiKey();
-            short apiVer = req.request().header().apiVersion();
-            org.apache.shade.kafka.common.protocol.types.Struct body = (org.apache.shade.kafka.common.protocol.types.Struct) ProtoUtils.responseSchema(apiKey, apiVer).read(receive.payload());
             correlate(req.request().header(), header);
-            if (!metadataUpdater.maybeHandleCompletedReceive(req, now, body))
-                responses.add(new org.apache.shade.kafka.clients.ClientResponse(req, now, false, body));
+            // Always expect the response version id to be the same as the request version id. The body is
+            // decoded by the receiver of the response, with the codec of its type
+            org.apache.shade.kafka.clients.ClientResponse response = new org.apache.shade.kafka.clients.ClientResponse(req, now, nowNanos, receive.payload().slice());
+            if (!metadataUpdater.maybeHandleCompletedReceive(req, now, response))
+                responses.add(response);
         }
     }
 
@@ -555,10 +556,10 @@ public class NetworkClient implements KafkaClient {
         }
 
         @Override
-        public boolean maybeHandleCompletedReceive(org.apache.shade.kafka.clients.ClientRequest req, long now, org.apache.shade.kafka.common.protocol.types.Struct body) {
+        public boolean maybeHandleCompletedReceive(org.apache.shade.kafka.clients.ClientRequest req, long now, org.apache.shade.kafka.clients.ClientResponse response) {
             short apiKey = req.request().header().apiKey();
             if (apiKey == org.apache.shade.kafka.common.protocol.ApiKeys.METADATA.id && req.isInitiatedByNetworkClient()) {
-                handleResponse(req.request().header(), body, now);
+                handleResponse(req.request().header(), response.responseBody(), now);
                 return true;
             }
             return false;
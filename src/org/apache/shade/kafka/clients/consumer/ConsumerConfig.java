@@ -55,6 +55,18 @@ public class ConsumerConfig extends AbstractConfig {
     public static final String HEARTBEAT_INTERVAL_MS_CONFIG = "heartbeat.interval.ms";
     private static final String HEARTBEAT_INTERVAL_MS_DOC = "The expected time between heartbeats to the consumer coordinator when using Kafka's group management facilities. Heartbeats are used to ensure that the consumer's session stays active and to facilitate rebalancing when new consumers join or leave the group. The value must be set lower than <code>session.timeout.ms</code>, but typically should be set no higher than 1/3 of that value. It can be adjusted even lower to control the expected time for normal rebalances.";
 
+    /**
+     * <code>heartbeat.thread.enable</code>
+     */
+    public static final String HEARTBEAT_THREAD_ENABLE_CONFIG = "heartbeat.thread.enable";
+    private static final String HEARTBEAT_THREAD_ENABLE_DOC = "If true the consumer also sends heartbeats from a background thread while the group is stable, so that the time spent processing records between calls to <code>poll()</code> is no longer bounded by <code>session.timeout.ms</code>. The background thread only keeps the session alive; rebalances and errors are still handled in <code>poll()</code>.";
+
+    /**
+     * <code>max.poll.interval.ms</code>
+     */
+    public static final String MAX_POLL_INTERVAL_MS_CONFIG = "max.poll.interval.ms";
+    private static final String MAX_POLL_INTERVAL_MS_DOC = "The maximum time between calls to <code>poll()</code> for which the background heartbeat thread keeps the session alive. If <code>poll()</code> is not called within this time, the background thread stops sending heartbeats so that the group can rebalance the partitions of the stuck consumer. Only used if <code>heartbeat.thread.enable</code> is true.";
+
     /**
      * <code>bootstrap.servers</code>
      */
@@ -105,6 +117,24 @@ public class ConsumerConfig extends AbstractConfig {
     public static final String MAX_PARTITION_FETCH_BYTES_CONFIG = "max.partition.fetch.bytes";
     private static final String MAX_PARTITION_FETCH_BYTES_DOC = "The maximum amount of data per-partition the server will return. The maximum total memory used for a request will be <code>#partitions * max.partition.fetch.bytes</code>. This size must be at least as large as the maximum message size the server allows or else it is possible for the producer to send messages larger than the consumer can fetch. If that happens, the consumer can get stuck trying to fetch a large message on a certain partition.";
 
+    /**
+     * <code>max.poll.records</code>
+     */
+    public static final String MAX_POLL_RECORDS_CONFIG = "max.poll.records";
+    private static final String MAX_POLL_RECORDS_DOC = "The maximum number of records returned in a single call to <code>poll()</code>. Fetched records beyond this limit stay buffered for the next calls, and the buffered partitions are drained round-robin so that a single partition cannot fill all polls.";
+
+    /**
+     * <code>max.poll.bytes</code>
+     */
+    public static final String MAX_POLL_BYTES_CONFIG = "max.poll.bytes";
+    private static final String MAX_POLL_BYTES_DOC = "The maximum total size of the records returned in a single call to <code>poll()</code>. A single record larger than this limit is still returned on its own, so that the consumer can make progress.";
+
+    /**
+     * <code>record.trace.sample.interval</code>
+     */
+    public static final String RECORD_TRACE_SAMPLE_INTERVAL_CONFIG = "record.trace.sample.interval";
+    private static final String RECORD_TRACE_SAMPLE_INTERVAL_DOC = "The interval, in fetched record sets of a partition, at which records are sampled for latency tracing. The first record of every n-th record set that the fetch responses return for a partition carries a <code>RecordTrace</code> with the times at which it passed the stages of the consumer. A value of 0 disables tracing.";
+
     /** <code>send.buffer.bytes</code> */
     public static final String SEND_BUFFER_CONFIG = CommonClientConfigs.SEND_BUFFER_CONFIG;
 
@@ -131,6 +161,11 @@ public class ConsumerConfig extends AbstractConfig {
      */
     public static final String METRICS_SAMPLE_WINDOW_MS_CONFIG = CommonClientConfigs.METRICS_SAMPLE_WINDOW_MS_CONFIG;
 
+    /**
+     * <code>clock.tick.ms</code>
+     */
+    public static final String CLOCK_TICK_MS_CONFIG = CommonClientConfigs.CLOCK_TICK_MS_CONFIG;
+
     /**
      * <code>metrics.num.samples</code>
      */
@@ -179,6 +214,17 @@ public class ConsumerConfig extends AbstractConfig {
                                         3000,
                                         Importance.HIGH,
                                         HEARTBEAT_INTERVAL_MS_DOC)
+                                .define(HEARTBEAT_THREAD_ENABLE_CONFIG,
+                                        Type.BOOLEAN,
+                                        false,
+                                        Importance.MEDIUM,
+                                        HEARTBEAT_THREAD_ENABLE_DOC)
+                                .define(MAX_POLL_INTERVAL_MS_CONFIG,
+                                        Type.LONG,
+                                        5 * 60 * 1000,
+                                        atLeast(1),
+                                        Importance.MEDIUM,
+                                        MAX_POLL_INTERVAL_MS_DOC)
                                 .define(PARTITION_ASSIGNMENT_STRATEGY_CONFIG,
                                         Type.LIST,
                                         RangeAssignor.class.getName(),
@@ -212,6 +258,24 @@ public class ConsumerConfig extends AbstractConfig {
                                         atLeast(0),
                                         Importance.HIGH,
                                         MAX_PARTITION_FETCH_BYTES_DOC)
+                                .define(MAX_POLL_RECORDS_CONFIG,
+                                        Type.INT,
+                                        Integer.MAX_VALUE,
+                                        atLeast(1),
+                                        Importance.MEDIUM,
+                                        MAX_POLL_RECORDS_DOC)
+                                .define(MAX_POLL_BYTES_CONFIG,
+                                        Type.INT,
+                                        Integer.MAX_VALUE,
+                                        atLeast(1),
+                                        Importance.MEDIUM,
+                                        MAX_POLL_BYTES_DOC)
+                                .define(RECORD_TRACE_SAMPLE_INTERVAL_CONFIG,
+                                        Type.INT,
+                                        0,
+                                        atLeast(0),
+                                        Importance.LOW,
+                                        RECORD_TRACE_SAMPLE_INTERVAL_DOC)
                                 .define(SEND_BUFFER_CONFIG,
                                         Type.INT,
                                         128 * 1024,
@@ -271,6 +335,12 @@ public class ConsumerConfig extends AbstractConfig {
                                         atLeast(1),
                                         Importance.LOW,
                                         CommonClientConfigs.METRICS_NUM_SAMPLES_DOC)
+                                .define(CLOCK_TICK_MS_CONFIG,
+                                        Type.LONG,
+                                        0,
+                                        atLeast(0),
+                                        Importance.LOW,
+                                        CommonClientConfigs.CLOCK_TICK_MS_DOC)
                                 .define(METRIC_REPORTER_CLASSES_CONFIG,
                                         Type.LIST,
                                         "",
@@ -22,6 +22,7 @@ public final class ConsumerRecord<K, V> {
     private final long offset;
     private final K key;
     private final V value;
+    private final RecordTrace trace;
 
     /**
      * Creates a record to be received from a specified topic and partition
@@ -33,6 +34,20 @@ public final class ConsumerRecord<K, V> {
      * @param value The record contents
      */
     public ConsumerRecord(String topic, int partition, long offset, K key, V value) {
+        this(topic, partition, offset, key, value, null);
+    }
+
+    /**
+     * Creates a record to be received from a specified topic and partition, with the trace of a sampled record
+     *
+     * @param topic The topic this record is received from
+     * @param partition The partition of the topic this record is received from
+     * @param offset The offset of this record in the corresponding Kafka partition
+     * @param key The key of the record, if one exists (null is allowed)
+     * @param value The record contents
+     * @param trace The times at which the record passed the stages of the consumer, or null if it is not sampled
+     */
+    public ConsumerRecord(String topic, int partition, long offset, K key, V value, RecordTrace trace) {
         if (topic == null)
             throw new IllegalArgumentException("Topic cannot be null");
         this.topic = topic;
@@ -40,6 +55,7 @@ public final class ConsumerRecord<K, V> {
         this.offset = offset;
         this.key = key;
         this.value = value;
+        this.trace = trace;
     }
 
     /**
@@ -77,6 +93,13 @@ public final class ConsumerRecord<K, V> {
         return offset;
     }
 
+    /**
+     * The times at which this record passed the stages of the consumer (or null if the record is not sampled)
+     */
+    public RecordTrace trace() {
+        return trace;
+    }
+
     @Override
     public String toString() {
         return "ConsumerRecord(topic = " + topic() + ", partition = " + partition() + ", offset = " + offset()
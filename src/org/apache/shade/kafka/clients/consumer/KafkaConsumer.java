@@ -34,6 +34,7 @@ import org.apache.shade.kafka.common.network.ChannelBuilder;
 import org.apache.shade.kafka.common.network.Selector;
 import org.apache.shade.kafka.common.serialization.Deserializer;
 import org.apache.shade.kafka.common.utils.AppInfoParser;
+import org.apache.shade.kafka.common.utils.CachedTime;
 import org.apache.shade.kafka.common.utils.SystemTime;
 import org.apache.shade.kafka.common.utils.Time;
 import org.apache.shade.kafka.common.utils.Utils;
@@ -464,6 +465,7 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
     private final org.apache.shade.kafka.clients.consumer.internals.Fetcher<K, V> fetcher;
 
     private final Time time;
+    private final CachedTime cachedTime;
     private final org.apache.shade.kafka.clients.consumer.internals.ConsumerNetworkClient client;
     private final Metrics metrics;
     private final org.apache.shade.kafka.clients.consumer.internals.SubscriptionState subscriptions;
@@ -553,7 +555,11 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
             int fetchMaxWaitMs = config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG);
             if (this.requestTimeoutMs <= sessionTimeOutMs || this.requestTimeoutMs <= fetchMaxWaitMs)
                 throw new ConfigException(org.apache.shade.kafka.clients.consumer.ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG + " should be greater than " + org.apache.shade.kafka.clients.consumer.ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG + " and " + org.apache.shade.kafka.clients.consumer.ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG);
-            this.time = new SystemTime();
+            long clockTickMs = config.getLong(org.apache.shade.kafka.clients.consumer.ConsumerConfig.CLOCK_TICK_MS_CONFIG);
+            this.cachedTime = clockTickMs > 0 ? CachedTime.acquire(clockTickMs) : null;
+            this.time = cachedTime != null ? cachedTime : new SystemTime();
+            // the receive times of responses are read precisely, so that request latencies are not quantized by the tick
+            Time preciseTime = cachedTime != null ? cachedTime.precise() : time;
 
             MetricConfig metricConfig = new MetricConfig().samples(config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.METRICS_NUM_SAMPLES_CONFIG))
                     .timeWindow(config.getLong(org.apache.shade.kafka.clients.consumer.ConsumerConfig.METRICS_SAMPLE_WINDOW_MS_CONFIG),
@@ -581,7 +587,7 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
                     config.getLong(org.apache.shade.kafka.clients.consumer.ConsumerConfig.RECONNECT_BACKOFF_MS_CONFIG),
                     config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.SEND_BUFFER_CONFIG),
                     config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.RECEIVE_BUFFER_CONFIG),
-                    config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG), time);
+                    config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG), preciseTime);
             this.client = new ConsumerNetworkClient(netClient, metadata, time, retryBackoffMs);
             OffsetResetStrategy offsetResetStrategy = OffsetResetStrategy.valueOf(config.getString(org.apache.shade.kafka.clients.consumer.ConsumerConfig.AUTO_OFFSET_RESET_CONFIG).toUpperCase());
             this.subscriptions = new SubscriptionState(offsetResetStrategy);
@@ -592,6 +598,8 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
                     config.getString(org.apache.shade.kafka.clients.consumer.ConsumerConfig.GROUP_ID_CONFIG),
                     config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG),
                     config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG),
+                    config.getBoolean(org.apache.shade.kafka.clients.consumer.ConsumerConfig.HEARTBEAT_THREAD_ENABLE_CONFIG),
+                    config.getLong(org.apache.shade.kafka.clients.consumer.ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG),
                     assignors,
                     this.metadata,
                     this.subscriptions,
@@ -623,6 +631,9 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
                     config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.FETCH_MIN_BYTES_CONFIG),
                     config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG),
                     config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG),
+                    config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.MAX_POLL_RECORDS_CONFIG),
+                    config.getInt(org.apache.shade.kafka.clients.consumer.ConsumerConfig.MAX_POLL_BYTES_CONFIG),
+                    config.getInt(ConsumerConfig.RECORD_TRACE_SAMPLE_INTERVAL_CONFIG),
                     config.getBoolean(ConsumerConfig.CHECK_CRCS_CONFIG),
                     this.keyDeserializer,
                     this.valueDeserializer,
@@ -881,6 +892,7 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
      */
     private Map<TopicPartition, List<org.apache.shade.kafka.clients.consumer.ConsumerRecord<K, V>>> pollOnce(long timeout) {
         // TODO: Sub-requests should take into account the poll timeout (KAFKA-1894)
+        coordinator.pollHeartbeat(time.milliseconds());
         coordinator.ensureCoordinatorKnown();
 
         // ensure we have partitions assigned if we expect to
@@ -1277,6 +1289,7 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
         ClientUtils.closeQuietly(client, "consumer network client", firstException);
         ClientUtils.closeQuietly(keyDeserializer, "consumer key deserializer", firstException);
         ClientUtils.closeQuietly(valueDeserializer, "consumer value deserializer", firstException);
+        ClientUtils.closeQuietly(cachedTime, "consumer clock", firstException);
         AppInfoParser.unregisterAppInfo(JMX_PREFIX, clientId);
         log.debug("The Kafka consumer has closed.");
         if (firstException.get() != null && !swallowException) {
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.clients.consumer;
+
+/**
+ * The monotonic times, comparable to {@link System#nanoTime()}, at which a sampled record passed the stages of the
+ * consumer. The consumer traces the first record of every <code>record.trace.sample.interval</code>th fetched batch of
+ * a partition, so that applications can break down the time between fetching such a record and processing it.
+ * <p>
+ * The trace starts when the fetch response carrying the record was received by the client. The message format does
+ * not carry a broker side timestamp, so the time spent on the broker and on the network is not included.
+ */
+public final class RecordTrace {
+
+    private final long receivedTimeNanos;
+    private final long fetchedTimeNanos;
+    private final long polledTimeNanos;
+
+    /**
+     * @param receivedTimeNanos The time when the fetch response carrying the record was received
+     * @param fetchedTimeNanos The time when the record set of the partition was taken from the fetch response
+     * @param polledTimeNanos The time when the record was parsed to be returned by <code>poll()</code>
+     */
+    public RecordTrace(long receivedTimeNanos, long fetchedTimeNanos, long polledTimeNanos) {
+        this.receivedTimeNanos = receivedTimeNanos;
+        this.fetchedTimeNanos = fetchedTimeNanos;
+        this.polledTimeNanos = polledTimeNanos;
+    }
+
+    /**
+     * The time when the fetch response carrying the record was received by the network client
+     */
+    public long receivedTimeNanos() {
+        return receivedTimeNanos;
+    }
+
+    /**
+     * The time when the record set of the partition was taken from the fetch response and buffered
+     */
+    public long fetchedTimeNanos() {
+        return fetchedTimeNanos;
+    }
+
+    /**
+     * The time when the record was parsed to be returned by <code>poll()</code>
+     */
+    public long polledTimeNanos() {
+        return polledTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordTrace(receivedTimeNanos = " + receivedTimeNanos + ", fetchedTimeNanos = " + fetchedTimeNanos
+                + ", polledTimeNanos = " + polledTimeNanos + ")";
+    }
+}
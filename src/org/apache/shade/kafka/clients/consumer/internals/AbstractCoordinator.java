@@ -43,6 +43,7 @@ import org.apache.shade.kafka.common.requests.LeaveGroupResponse;
 import org.apache.shade.kafka.common.requests.OffsetCommitRequest;
 import org.apache.shade.kafka.common.requests.SyncGroupRequest;
 import org.apache.shade.kafka.common.requests.SyncGroupResponse;
+import org.apache.shade.kafka.common.utils.KafkaThread;
 import org.apache.shade.kafka.common.utils.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,6 +77,11 @@ import java.util.concurrent.TimeUnit;
  * member for group registration in {@link #metadata()} and the format of the state assignment provided
  * by the leader in {@link #performAssignment(String, String, Map)} and becomes available to members in
  * {@link #onJoinComplete(int, String, String, ByteBuffer)}.
+ * <p>
+ * Heartbeats are normally sent by a delayed task, so they are only sent while the consumer's thread polls
+ * the network client. If enabled, a background heartbeat thread keeps sending heartbeats while the group is
+ * stable and the consumer's thread is busy between polls. Everything else, including the handling of the
+ * heartbeat responses, remains on the consumer's thread.
  */
 public abstract class AbstractCoordinator implements Closeable {
 
@@ -84,6 +90,8 @@ public abstract class AbstractCoordinator implements Closeable {
     private final Heartbeat heartbeat;
     private final HeartbeatTask heartbeatTask;
     private final int sessionTimeoutMs;
+    private final boolean heartbeatThreadEnabled;
+    private final long maxPollIntervalMs;
     private final GroupCoordinatorMetrics sensors;
     protected final String groupId;
     protected final ConsumerNetworkClient client;
@@ -92,6 +100,7 @@ public abstract class AbstractCoordinator implements Closeable {
 
     private boolean needsJoinPrepare = true;
     private boolean rejoinNeeded = true;
+    private HeartbeatThread heartbeatThread = null;
     protected Node coordinator;
     protected String memberId;
     protected String protocol;
@@ -104,6 +113,8 @@ public abstract class AbstractCoordinator implements Closeable {
                                String groupId,
                                int sessionTimeoutMs,
                                int heartbeatIntervalMs,
+                               boolean heartbeatThreadEnabled,
+                               long maxPollIntervalMs,
                                Metrics metrics,
                                String metricGrpPrefix,
                                Map<String, String> metricTags,
@@ -118,6 +129,8 @@ public abstract class AbstractCoordinator implements Closeable {
         this.sessionTimeoutMs = sessionTimeoutMs;
         this.heartbeat = new Heartbeat(this.sessionTimeoutMs, heartbeatIntervalMs, time.milliseconds());
         this.heartbeatTask = new HeartbeatTask();
+        this.heartbeatThreadEnabled = heartbeatThreadEnabled;
+        this.maxPollIntervalMs = maxPollIntervalMs;
         this.sensors = new GroupCoordinatorMetrics(metrics, metricGrpPrefix, metricTags);
         this.retryBackoffMs = retryBackoffMs;
     }
@@ -175,6 +188,15 @@ public abstract class AbstractCoordinator implements Closeable {
                                            String protocol,
                                            ByteBuffer memberAssignment);
 
+    /**
+     * Record a poll of the consumer. The background heartbeat thread stops sending heartbeats if the consumer
+     * has not been polled for longer than the max poll interval.
+     * @param now The current time
+     */
+    public void pollHeartbeat(long now) {
+        heartbeat.poll(now);
+    }
+
     /**
      * Block until the coordinator for this group is known.
      */
@@ -208,6 +230,9 @@ public abstract class AbstractCoordinator implements Closeable {
         if (!needRejoin())
             return;
 
+        // the heartbeat thread must not send heartbeats while the generation and member id change
+        disableHeartbeatThread();
+
         if (needsJoinPrepare) {
             onJoinPrepare(generation, memberId);
             needsJoinPrepare = false;
@@ -230,6 +255,7 @@ public abstract class AbstractCoordinator implements Closeable {
                 onJoinComplete(generation, memberId, protocol, future.value());
                 needsJoinPrepare = true;
                 heartbeatTask.reset();
+                enableHeartbeatThread();
             } else {
                 RuntimeException exception = future.exception();
                 if (exception instanceof UnknownMemberIdException ||
@@ -501,8 +527,10 @@ public abstract class AbstractCoordinator implements Closeable {
                 client.tryConnect(coordinator);
 
                 // start sending heartbeats only if we have a valid generation
-                if (generation > 0)
+                if (generation > 0) {
                     heartbeatTask.reset();
+                    enableHeartbeatThread();
+                }
                 future.complete(null);
             } else if (errorCode == Errors.GROUP_AUTHORIZATION_FAILED.code()) {
                 future.raise(new GroupAuthorizationException(groupId));
@@ -533,6 +561,7 @@ public abstract class AbstractCoordinator implements Closeable {
      * Mark the current coordinator as dead.
      */
     protected void coordinatorDead() {
+        disableHeartbeatThread();
         if (this.coordinator != null) {
             log.info("Marking the coordinator {} dead.", this.coordinator.id());
             this.coordinator = null;
@@ -544,6 +573,8 @@ public abstract class AbstractCoordinator implements Closeable {
      */
     @Override
     public void close() {
+        if (heartbeatThread != null)
+            heartbeatThread.close();
         // we do not need to re-enable wakeups since we are closing already
         client.disableWakeups();
         maybeLeaveGroup();
@@ -553,6 +584,7 @@ public abstract class AbstractCoordinator implements Closeable {
      * Leave the current group and reset local generation/memberId.
      */
     public void maybeLeaveGroup() {
+        disableHeartbeatThread();
         client.unschedule(heartbeatTask);
         if (!coordinatorUnknown() && generation > 0) {
             // this is a minimal effort attempt to leave the group. we do not
@@ -610,10 +642,184 @@ public abstract class AbstractCoordinator implements Closeable {
                 .compose(new HeartbeatCompletionHandler());
     }
 
+    /**
+     * Check whether the current thread is the background heartbeat thread. Callbacks which may be invoked by the
+     * network layer in the heartbeat thread, such as metadata listeners, must defer any work which is not
+     * thread-safe to the consumer's thread.
+     *
+     * @return true if called from the heartbeat thread
+     */
+    protected boolean inHeartbeatThread() {
+        return heartbeatThread != null && Thread.currentThread() == heartbeatThread.thread;
+    }
+
+    private void enableHeartbeatThread() {
+        if (!heartbeatThreadEnabled)
+            return;
+        if (heartbeatThread == null) {
+            heartbeatThread = new HeartbeatThread();
+            heartbeatThread.thread.start();
+        }
+        heartbeatThread.enable();
+    }
+
+    private void disableHeartbeatThread() {
+        if (heartbeatThread != null)
+            heartbeatThread.disable();
+    }
+
+    /**
+     * Sends heartbeats while the group is stable, independent of the polls of the consumer's thread. This keeps
+     * the session alive through long processing of fetched records or GC pauses of the consumer's thread.
+     * <p>
+     * The thread only uses the network client while the consumer's thread is not using it, and never completes
+     * any request futures: the responses of its heartbeats are handled by the consumer's thread on its next
+     * poll, just like those of the {@link HeartbeatTask}. The thread only peeks at the responses to track the
+     * liveness of the session, and pauses until the next join or coordinator discovery on any heartbeat error.
+     * It also stops heartbeating if the consumer has not been polled within the max poll interval, so that the
+     * partitions of a stuck consumer are still reassigned.
+     */
+    private class HeartbeatThread implements Runnable {
+
+        private final KafkaThread thread;
+        private final Object waitLock = new Object();
+        private volatile boolean enabled = false;
+        private volatile boolean closed = false;
+
+        // the last heartbeat sent by this thread, guarded by the network client
+        private ConsumerNetworkClient.RequestFutureCompletionHandler inFlight = null;
+
+        private HeartbeatThread() {
+            this.thread = new KafkaThread("kafka-coordinator-heartbeat-thread | " + groupId, this, true);
+        }
+
+        public void enable() {
+            synchronized (client) {
+                // a heartbeat of the previous generation is left to the consumer's thread
+                inFlight = null;
+                enabled = true;
+            }
+            synchronized (waitLock) {
+                waitLock.notify();
+            }
+        }
+
+        public void disable() {
+            enabled = false;
+        }
+
+        public void close() {
+            closed = true;
+            enabled = false;
+            synchronized (waitLock) {
+                waitLock.notify();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            log.debug("Heartbeat thread for group {} started", groupId);
+            try {
+                while (!closed) {
+                    long waitMs;
+                    synchronized (client) {
+                        waitMs = maybeHeartbeat(time.milliseconds());
+                    }
+                    synchronized (waitLock) {
+                        if (!closed && waitMs > 0)
+                            waitLock.wait(waitMs);
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.debug("Heartbeat thread for group {} was interrupted", groupId);
+            } catch (RuntimeException e) {
+                log.error("Heartbeat thread for group {} failed due to unexpected error", groupId, e);
+            }
+            log.debug("Heartbeat thread for group {} stopped", groupId);
+        }
+
+        /**
+         * Check the last heartbeat and send the next one if it is due. Must be called while holding the lock
+         * of the network client.
+         *
+         * @return The time to wait before the next check
+         */
+        private long maybeHeartbeat(long now) {
+            if (!enabled || rejoinNeeded || coordinator == null || client.connectionFailed(coordinator)) {
+                // the consumer's thread needs to rejoin the group or find the coordinator first
+                return heartbeat.interval();
+            }
+
+            if (inFlight != null && inFlight.hasCompleted()) {
+                ClientResponse response = inFlight.response();
+                inFlight = null;
+                if (!heartbeatSucceeded(response)) {
+                    log.debug("Pausing the heartbeat thread for group {} until the consumer handles the failed heartbeat", groupId);
+                    enabled = false;
+                    return heartbeat.interval();
+                }
+                heartbeat.receiveHeartbeat(now);
+            }
+
+            if (heartbeat.sessionTimeoutExpired(now)) {
+                // the consumer's thread marks the coordinator dead on its next poll
+                return heartbeat.interval();
+            }
+
+            if (heartbeat.timeSinceLastPoll(now) > maxPollIntervalMs) {
+                log.debug("The consumer of group {} has not been polled for more than {} ms, skipping background heartbeat",
+                        groupId, maxPollIntervalMs);
+                return heartbeat.interval();
+            }
+
+            if (inFlight == null && !heartbeatTask.requestInFlight && heartbeat.shouldHeartbeat(now)) {
+                heartbeat.sentHeartbeat(now);
+                inFlight = sendBackgroundHeartbeatRequest();
+            }
+            client.pollNoWakeup();
+
+            // check back soon for the response of an in-flight heartbeat, or for the completion of
+            // the heartbeat task's request if it is due but the task has one in flight
+            long timeToNextHeartbeat = heartbeat.timeToNextHeartbeat(time.milliseconds());
+            if (inFlight != null || timeToNextHeartbeat == 0)
+                return retryBackoffMs;
+            return timeToNextHeartbeat;
+        }
+
+        private ConsumerNetworkClient.RequestFutureCompletionHandler sendBackgroundHeartbeatRequest() {
+            HeartbeatRequest req = new HeartbeatRequest(groupId, generation, memberId);
+            RequestFuture<ClientResponse> request = client.send(coordinator, ApiKeys.HEARTBEAT, req);
+            request.compose(new HeartbeatCompletionHandler())
+                    .addListener(new RequestFutureListener<Void>() {
+                        @Override
+                        public void onSuccess(Void value) {
+                            heartbeat.receiveHeartbeat(time.milliseconds());
+                        }
+
+                        @Override
+                        public void onFailure(RuntimeException e) {
+                        }
+                    });
+            return (ConsumerNetworkClient.RequestFutureCompletionHandler) request;
+        }
+
+        private boolean heartbeatSucceeded(ClientResponse response) {
+            if (response == null || response.wasDisconnected())
+                return false;
+            HeartbeatResponse heartbeatResponse = HeartbeatResponse.parse(response.responsePayload(), response.apiVersion());
+            return heartbeatResponse.errorCode() == Errors.NONE.code();
+        }
+    }
+
     private class HeartbeatCompletionHandler extends CoordinatorResponseHandler<HeartbeatResponse, Void> {
         @Override
         public HeartbeatResponse parse(ClientResponse response) {
-            return new HeartbeatResponse(response.responseBody());
+            return HeartbeatResponse.parse(response.responsePayload(), response.apiVersion());
         }
 
         @Override
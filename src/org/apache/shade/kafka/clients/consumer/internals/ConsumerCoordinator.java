@@ -52,6 +52,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class manages the coordination process with the consumer coordinator.
@@ -68,6 +69,8 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
     private final OffsetCommitCallback defaultOffsetCommitCallback;
     private final boolean autoCommitEnabled;
     private final AutoCommitTask autoCommitTask;
+    // metadata update received by the heartbeat thread, which is handled on the next poll
+    private final AtomicReference<Cluster> deferredMetadataUpdate = new AtomicReference<>();
 
     /**
      * Initialize the coordination manager.
@@ -76,6 +79,8 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
                                String groupId,
                                int sessionTimeoutMs,
                                int heartbeatIntervalMs,
+                               boolean heartbeatThreadEnabled,
+                               long maxPollIntervalMs,
                                List<PartitionAssignor> assignors,
                                Metadata metadata,
                                SubscriptionState subscriptions,
@@ -91,6 +96,8 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
                 groupId,
                 sessionTimeoutMs,
                 heartbeatIntervalMs,
+                heartbeatThreadEnabled,
+                maxPollIntervalMs,
                 metrics,
                 metricGrpPrefix,
                 metricTags,
@@ -131,26 +138,46 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
         this.metadata.addListener(new Metadata.Listener() {
             @Override
             public void onMetadataUpdate(Cluster cluster) {
-                // if we encounter any unauthorized topics, raise an exception to the user
-                if (!cluster.unauthorizedTopics().isEmpty())
-                    throw new TopicAuthorizationException(new HashSet<>(cluster.unauthorizedTopics()));
+                // the subscriptions may only be changed by the consumer's thread
+                if (inHeartbeatThread())
+                    deferredMetadataUpdate.set(cluster);
+                else
+                    handleMetadataUpdate(cluster);
+            }
+        });
+    }
 
-                if (subscriptions.hasPatternSubscription()) {
-                    final List<String> topicsToSubscribe = new ArrayList<>();
+    private void handleMetadataUpdate(Cluster cluster) {
+        // if we encounter any unauthorized topics, raise an exception to the user
+        if (!cluster.unauthorizedTopics().isEmpty())
+            throw new TopicAuthorizationException(new HashSet<>(cluster.unauthorizedTopics()));
 
-                    for (String topic : cluster.topics())
-                        if (subscriptions.getSubscribedPattern().matcher(topic).matches())
-                            topicsToSubscribe.add(topic);
+        if (subscriptions.hasPatternSubscription()) {
+            final List<String> topicsToSubscribe = new ArrayList<>();
 
-                    subscriptions.changeSubscription(topicsToSubscribe);
-                    metadata.setTopics(subscriptions.groupSubscription());
-                }
+            for (String topic : cluster.topics())
+                if (subscriptions.getSubscribedPattern().matcher(topic).matches())
+                    topicsToSubscribe.add(topic);
 
-                // check if there are any changes to the metadata which should trigger a rebalance
-                if (metadataSnapshot.update(subscriptions, cluster) && subscriptions.partitionsAutoAssigned())
-                    subscriptions.needReassignment();
-            }
-        });
+            subscriptions.changeSubscription(topicsToSubscribe);
+            metadata.setTopics(subscriptions.groupSubscription());
+        }
+
+        // check if there are any changes to the metadata which should trigger a rebalance
+        if (metadataSnapshot.update(subscriptions, cluster) && subscriptions.partitionsAutoAssigned())
+            subscriptions.needReassignment();
+    }
+
+    /**
+     * Record a poll of the consumer and handle the last metadata update received by the heartbeat thread, if any.
+     * @param now The current time
+     */
+    @Override
+    public void pollHeartbeat(long now) {
+        super.pollHeartbeat(now);
+        Cluster cluster = deferredMetadataUpdate.getAndSet(null);
+        if (cluster != null)
+            handleMetadataUpdate(cluster);
     }
 
     private PartitionAssignor lookupAssignor(String name) {
@@ -499,7 +526,7 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
 
         @Override
         public OffsetCommitResponse parse(ClientResponse response) {
-            return new OffsetCommitResponse(response.responseBody());
+            return OffsetCommitResponse.parse(response.responsePayload(), response.apiVersion());
         }
 
         @Override
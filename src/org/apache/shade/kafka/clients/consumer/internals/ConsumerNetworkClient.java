@@ -35,11 +35,18 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Higher level consumer access to the network layer with basic support for futures and
- * task scheduling. NOT thread-safe!
+ * task scheduling.
+ * <p>
+ * The client is used by the consumer's thread and optionally by the background heartbeat thread of the
+ * coordinator, so access to the network layer is serialized on this instance. Request futures are only ever
+ * completed by the consumer's thread though: responses received in {@link #pollNoWakeup()} are queued and the
+ * futures are completed by the next {@link #poll(long)}, so that the callbacks of the fetcher and the
+ * coordinator need not be thread-safe.
  *
  * TODO: The current implementation is simplistic in that it provides a facility for queueing requests
  * prior to delivery, but it makes no effort to retry requests which cannot be sent at the time
@@ -52,8 +59,10 @@ public class ConsumerNetworkClient implements Closeable {
 
     private final KafkaClient client;
     private final AtomicBoolean wakeup = new AtomicBoolean(false);
-    private final DelayedTaskQueue delayedTasks = new DelayedTaskQueue();
+    private final DelayedTaskQueue delayedTasks;
     private final Map<Node, List<ClientRequest>> unsent = new HashMap<>();
+    // completed requests whose futures have not been completed yet
+    private final ConcurrentLinkedQueue<RequestFutureCompletionHandler> pendingCompletion = new ConcurrentLinkedQueue<>();
     private final Metadata metadata;
     private final Time time;
     private final long retryBackoffMs;
@@ -68,6 +77,7 @@ public class ConsumerNetworkClient implements Closeable {
         this.metadata = metadata;
         this.time = time;
         this.retryBackoffMs = retryBackoffMs;
+        this.delayedTasks = new DelayedTaskQueue(time.milliseconds());
     }
 
     /**
@@ -76,7 +86,7 @@ public class ConsumerNetworkClient implements Closeable {
      * @param task The task to be scheduled
      * @param at The time it should run
      */
-    public void schedule(org.apache.shade.kafka.clients.consumer.internals.DelayedTask task, long at) {
+    public synchronized void schedule(org.apache.shade.kafka.clients.consumer.internals.DelayedTask task, long at) {
         delayedTasks.add(task, at);
     }
 
@@ -85,7 +95,7 @@ public class ConsumerNetworkClient implements Closeable {
      * This is a no-op if the task is not scheduled.
      * @param task The task to be unscheduled.
      */
-    public void unschedule(DelayedTask task) {
+    public synchronized void unschedule(DelayedTask task) {
         delayedTasks.remove(task);
     }
 
@@ -101,13 +111,13 @@ public class ConsumerNetworkClient implements Closeable {
      * @param request The request payload
      * @return A future which indicates the result of the send.
      */
-    public RequestFuture<ClientResponse> send(Node node,
-                                              ApiKeys api,
-                                              AbstractRequest request) {
+    public synchronized RequestFuture<ClientResponse> send(Node node,
+                                                           ApiKeys api,
+                                                           AbstractRequest request) {
         long now = time.milliseconds();
-        RequestFutureCompletionHandler future = new RequestFutureCompletionHandler();
+        RequestFutureCompletionHandler future = new RequestFutureCompletionHandler(node);
         RequestHeader header = client.nextRequestHeader(api);
-        RequestSend send = new RequestSend(node.idString(), header, request.toStruct());
+        RequestSend send = new RequestSend(node.idString(), header, request);
         put(node, new ClientRequest(now, true, send, future));
         return future;
     }
@@ -121,7 +131,7 @@ public class ConsumerNetworkClient implements Closeable {
         nodeUnsent.add(request);
     }
 
-    public Node leastLoadedNode() {
+    public synchronized Node leastLoadedNode() {
         return client.leastLoadedNode(time.milliseconds());
     }
 
@@ -203,7 +213,25 @@ public class ConsumerNetworkClient implements Closeable {
         enableWakeups();
     }
 
-    private void poll(long timeout, long now, boolean executeDelayedTasks) {
+    /**
+     * Poll for network IO from the background heartbeat thread and return immediately. This will not trigger
+     * wakeups, execute any delayed tasks or complete any request futures. Completed requests are left for the
+     * next poll of the consumer's thread, as are requests which could not be sent.
+     */
+    public synchronized void pollNoWakeup() {
+        long now = time.milliseconds();
+        trySend(now);
+        client.poll(0, now);
+        checkDisconnects(time.milliseconds());
+        trySend(now);
+    }
+
+    private synchronized void poll(long timeout, long now, boolean executeDelayedTasks) {
+        // complete the requests which were received by the heartbeat thread. the awaited
+        // future may be among them, so do not block in that case
+        if (firePendingCompletedRequests())
+            timeout = 0;
+
         // send all the requests we can send now
         trySend(now);
 
@@ -217,6 +245,7 @@ public class ConsumerNetworkClient implements Closeable {
         // be checked immediately following poll since any subsequent call to client.ready()
         // will reset the disconnect status
         checkDisconnects(now);
+        firePendingCompletedRequests();
 
         // execute scheduled tasks
         if (executeDelayedTasks)
@@ -228,6 +257,17 @@ public class ConsumerNetworkClient implements Closeable {
 
         // fail all requests that couldn't be sent
         failUnsentRequests();
+        firePendingCompletedRequests();
+    }
+
+    private boolean firePendingCompletedRequests() {
+        boolean completed = false;
+        RequestFutureCompletionHandler handler;
+        while ((handler = pendingCompletion.poll()) != null) {
+            handler.fireCompletion();
+            completed = true;
+        }
+        return completed;
     }
 
     /**
@@ -245,10 +285,14 @@ public class ConsumerNetworkClient implements Closeable {
      * @param node The node in question
      * @return The number of pending requests
      */
-    public int pendingRequestCount(Node node) {
+    public synchronized int pendingRequestCount(Node node) {
         List<ClientRequest> pending = unsent.get(node);
         int unsentCount = pending == null ? 0 : pending.size();
-        return unsentCount + client.inFlightRequestCount(node.idString());
+        int uncompletedCount = 0;
+        for (RequestFutureCompletionHandler handler : pendingCompletion)
+            if (handler.node.equals(node))
+                uncompletedCount++;
+        return unsentCount + uncompletedCount + client.inFlightRequestCount(node.idString());
     }
 
     /**
@@ -256,8 +300,8 @@ public class ConsumerNetworkClient implements Closeable {
      * have been transmitted (i.e. in-flight requests) and those which are awaiting transmission.
      * @return The total count of pending requests
      */
-    public int pendingRequestCount() {
-        int total = 0;
+    public synchronized int pendingRequestCount() {
+        int total = pendingCompletion.size();
         for (List<ClientRequest> requests: unsent.values())
             total += requests.size();
         return total + client.inFlightRequestCount();
@@ -291,7 +335,7 @@ public class ConsumerNetworkClient implements Closeable {
                 ClientRequest request = iterator.next();
                 RequestFutureCompletionHandler handler =
                         (RequestFutureCompletionHandler) request.callback();
-                handler.raise(SendFailedException.INSTANCE);
+                handler.onFailure(SendFailedException.INSTANCE);
                 iterator.remove();
             }
         }
@@ -320,6 +364,7 @@ public class ConsumerNetworkClient implements Closeable {
         client.poll(timeout, now);
         if (wakeupsEnabled && wakeup.get()) {
             failUnsentRequests();
+            firePendingCompletedRequests();
             wakeup.set(false);
             throw new WakeupException();
         }
@@ -339,7 +384,7 @@ public class ConsumerNetworkClient implements Closeable {
     }
 
     @Override
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
         client.close();
     }
 
@@ -348,7 +393,7 @@ public class ConsumerNetworkClient implements Closeable {
      * {@link #tryConnect(Node)} or {@link #send(Node, ApiKeys, AbstractRequest)} has been called.
      * @param node Node to connect to if possible
      */
-    public boolean connectionFailed(Node node) {
+    public synchronized boolean connectionFailed(Node node) {
         return client.connectionFailed(node);
     }
 
@@ -358,17 +403,53 @@ public class ConsumerNetworkClient implements Closeable {
      * should be used.
      * @param node The node to connect to
      */
-    public void tryConnect(Node node) {
+    public synchronized void tryConnect(Node node) {
         client.ready(node, time.milliseconds());
     }
 
-    public static class RequestFutureCompletionHandler
+    public class RequestFutureCompletionHandler
             extends RequestFuture<ClientResponse>
             implements RequestCompletionHandler {
 
+        private final Node node;
+        private volatile ClientResponse response;
+        private volatile RuntimeException exception;
+
+        private RequestFutureCompletionHandler(Node node) {
+            this.node = node;
+        }
+
         @Override
         public void onComplete(ClientResponse response) {
-            if (response.wasDisconnected()) {
+            this.response = response;
+            pendingCompletion.add(this);
+        }
+
+        private void onFailure(RuntimeException e) {
+            this.exception = e;
+            pendingCompletion.add(this);
+        }
+
+        /**
+         * Check whether the request has completed, either with a response or a failure. The future itself
+         * is only completed by the next poll of the consumer's thread.
+         */
+        public boolean hasCompleted() {
+            return response != null || exception != null;
+        }
+
+        /**
+         * Get the response of the completed request, which may be a disconnect
+         * @return The response or null if the request has not completed or failed before it was sent
+         */
+        public ClientResponse response() {
+            return response;
+        }
+
+        private void fireCompletion() {
+            if (exception != null) {
+                raise(exception);
+            } else if (response.wasDisconnected()) {
                 ClientRequest request = response.request();
                 RequestSend send = request.request();
                 ApiKeys api = ApiKeys.forId(send.header().apiKey());
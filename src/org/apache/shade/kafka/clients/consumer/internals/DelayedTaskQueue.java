@@ -13,18 +13,26 @@
 
 package org.apache.shade.kafka.clients.consumer.internals;
 
-import java.util.Iterator;
-import java.util.PriorityQueue;
+import org.apache.shade.kafka.common.utils.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Tracks a set of tasks to be executed after a delay.
+ * Tracks a set of tasks to be executed after a delay. The tasks are kept in a {@link TimingWheel}, so that adding
+ * and removing a task take constant time regardless of the number of scheduled tasks.
  */
 public class DelayedTaskQueue {
 
-    private PriorityQueue<Entry> tasks;
+    private final TimingWheel<DelayedTask> tasks;
+    // the scheduled instances of each task, so that all of them can be removed
+    private final Map<DelayedTask, List<TimingWheel.Timeout<DelayedTask>>> timeouts;
 
-    public DelayedTaskQueue() {
-        tasks = new PriorityQueue<Entry>();
+    public DelayedTaskQueue(long now) {
+        tasks = new TimingWheel<>(now);
+        timeouts = new HashMap<>();
     }
 
     /**
@@ -34,7 +42,12 @@ public class DelayedTaskQueue {
      * @param at the time at which to
      */
     public void add(org.apache.shade.kafka.clients.consumer.internals.DelayedTask task, long at) {
-        tasks.add(new Entry(task, at));
+        List<TimingWheel.Timeout<DelayedTask>> scheduled = timeouts.get(task);
+        if (scheduled == null) {
+            scheduled = new ArrayList<>(1);
+            timeouts.put(task, scheduled);
+        }
+        scheduled.add(tasks.schedule(task, at));
     }
 
     /**
@@ -43,28 +56,27 @@ public class DelayedTaskQueue {
      * @returns true if a task was removed as a result of this call
      */
     public boolean remove(org.apache.shade.kafka.clients.consumer.internals.DelayedTask task) {
-        boolean wasRemoved = false;
-        Iterator<Entry> iterator = tasks.iterator();
-        while (iterator.hasNext()) {
-            Entry entry = iterator.next();
-            if (entry.task.equals(task)) {
-                iterator.remove();
-                wasRemoved = true;
-            }
-        }
-        return wasRemoved;
+        List<TimingWheel.Timeout<DelayedTask>> scheduled = timeouts.remove(task);
+        if (scheduled == null)
+            return false;
+        for (TimingWheel.Timeout<DelayedTask> timeout : scheduled)
+            tasks.cancel(timeout);
+        return true;
     }
 
     /**
      * Get amount of time in milliseconds until the next event. Returns Long.MAX_VALUE if no tasks are scheduled.
+     * The next event may also be the time at which the timing wheel needs to be advanced before the next task
+     * is due, so this may be earlier than the time of the next task.
      *
      * @return the remaining time in milliseconds
      */
     public long nextTimeout(long now) {
-        if (tasks.isEmpty())
+        long next = tasks.nextEventTime();
+        if (next == Long.MAX_VALUE)
             return Long.MAX_VALUE;
         else
-            return Math.max(tasks.peek().timeout - now, 0);
+            return Math.max(next - now, 0);
     }
 
     /**
@@ -73,24 +85,21 @@ public class DelayedTaskQueue {
      * @param now the current time
      */
     public void poll(long now) {
-        while (!tasks.isEmpty() && tasks.peek().timeout <= now) {
-            Entry entry = tasks.poll();
-            entry.task.run(now);
-        }
-    }
-
-    private static class Entry implements Comparable<Entry> {
-        org.apache.shade.kafka.clients.consumer.internals.DelayedTask task;
-        long timeout;
-
-        public Entry(DelayedTask task, long timeout) {
-            this.task = task;
-            this.timeout = timeout;
-        }
-
-        @Override
-        public int compareTo(Entry entry) {
-            return Long.compare(timeout, entry.timeout);
-        }
+        // tasks scheduled by the tasks which are run may be ready as well
+        List<TimingWheel.Timeout<DelayedTask>> expired = new ArrayList<>();
+        do {
+            expired.clear();
+            tasks.advance(now, expired);
+            for (TimingWheel.Timeout<DelayedTask> timeout : expired) {
+                // skip the tasks which were removed by a task which ran before
+                DelayedTask task = timeout.item();
+                List<TimingWheel.Timeout<DelayedTask>> scheduled = timeouts.get(task);
+                if (scheduled == null || !scheduled.remove(timeout))
+                    continue;
+                if (scheduled.isEmpty())
+                    timeouts.remove(task);
+                task.run(now);
+            }
+        } while (!expired.isEmpty());
     }
-}
\ No newline at end of file
+}
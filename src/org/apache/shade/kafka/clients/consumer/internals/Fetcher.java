@@ -19,6 +19,7 @@ import org.apache.shade.kafka.clients.consumer.ConsumerRecord;
 import org.apache.shade.kafka.clients.consumer.NoOffsetForPartitionException;
 import org.apache.shade.kafka.clients.consumer.OffsetOutOfRangeException;
 import org.apache.shade.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.shade.kafka.clients.consumer.RecordTrace;
 import org.apache.shade.kafka.common.Cluster;
 import org.apache.shade.kafka.common.KafkaException;
 import org.apache.shade.kafka.common.MetricName;
@@ -35,10 +36,13 @@ import org.apache.shade.kafka.common.metrics.Metrics;
 import org.apache.shade.kafka.common.metrics.Sensor;
 import org.apache.shade.kafka.common.metrics.stats.Avg;
 import org.apache.shade.kafka.common.metrics.stats.Count;
+import org.apache.shade.kafka.common.metrics.stats.HdrPercentiles;
 import org.apache.shade.kafka.common.metrics.stats.Max;
+import org.apache.shade.kafka.common.metrics.stats.Percentile;
 import org.apache.shade.kafka.common.metrics.stats.Rate;
 import org.apache.shade.kafka.common.protocol.ApiKeys;
 import org.apache.shade.kafka.common.protocol.Errors;
+import org.apache.shade.kafka.common.record.InvalidRecordException;
 import org.apache.shade.kafka.common.record.LogEntry;
 import org.apache.shade.kafka.common.record.MemoryRecords;
 import org.apache.shade.kafka.common.requests.FetchRequest;
@@ -54,11 +58,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -70,28 +76,41 @@ public class Fetcher<K, V> {
 
     private static final Logger log = LoggerFactory.getLogger(Fetcher.class);
 
+    /* the highest latency that the latency percentiles distinguish */
+    private static final long MAX_TRACKED_LATENCY_MS = 60 * 60 * 1000L;
+
     private final org.apache.shade.kafka.clients.consumer.internals.ConsumerNetworkClient client;
     private final Time time;
     private final int minBytes;
     private final int maxWaitMs;
     private final int fetchSize;
+    private final int maxPollRecords;
+    private final int maxPollBytes;
+    private final int traceSampleInterval;
     private final long retryBackoffMs;
     private final boolean checkCrcs;
     private final Metadata metadata;
     private final FetchManagerMetrics sensors;
     private final SubscriptionState subscriptions;
-    private final List<PartitionRecords<K, V>> records;
+    private final Deque<PartitionRecords> records;
     private final Deserializer<K> keyDeserializer;
     private final Deserializer<V> valueDeserializer;
 
     private final Map<TopicPartition, Long> offsetOutOfRangePartitions;
     private final Set<String> unauthorizedTopics;
     private final Map<TopicPartition, Long> recordTooLargePartitions;
+    // the failure to parse the records of a partition, deferred so that the records drained before it are returned
+    private KafkaException parseException;
+    // the number of record sets per partition which are still to be fetched before the next one is traced
+    private final Map<TopicPartition, Integer> recordSetsUntilTrace;
 
     public Fetcher(ConsumerNetworkClient client,
                    int minBytes,
                    int maxWaitMs,
                    int fetchSize,
+                   int maxPollRecords,
+                   int maxPollBytes,
+                   int traceSampleInterval,
                    boolean checkCrcs,
                    Deserializer<K> keyDeserializer,
                    Deserializer<V> valueDeserializer,
@@ -110,15 +129,19 @@ public class Fetcher<K, V> {
         this.minBytes = minBytes;
         this.maxWaitMs = maxWaitMs;
         this.fetchSize = fetchSize;
+        this.maxPollRecords = maxPollRecords;
+        this.maxPollBytes = maxPollBytes;
+        this.traceSampleInterval = traceSampleInterval;
         this.checkCrcs = checkCrcs;
 
         this.keyDeserializer = keyDeserializer;
         this.valueDeserializer = valueDeserializer;
 
-        this.records = new LinkedList<>();
+        this.records = new ArrayDeque<>();
         this.offsetOutOfRangePartitions = new HashMap<>();
         this.unauthorizedTopics = new HashSet<>();
         this.recordTooLargePartitions = new HashMap<>();
+        this.recordSetsUntilTrace = new HashMap<>();
 
         this.sensors = new FetchManagerMetrics(metrics, metricGrpPrefix, metricTags);
         this.retryBackoffMs = retryBackoffMs;
@@ -357,6 +380,18 @@ public class Fetcher<K, V> {
         }
     }
 
+    /**
+     * If the records of a partition failed to parse in the previous call to {@link #fetchedRecords()}, after other
+     * records had been drained, throw the deferred exception
+     */
+    private void throwIfParseFailed() {
+        KafkaException exception = this.parseException;
+        if (exception != null) {
+            this.parseException = null;
+            throw exception;
+        }
+    }
+
     /**
      * If any partition from previous fetchResponse gets a RecordTooLarge error, throw RecordTooLargeException
      *
@@ -377,13 +412,20 @@ public class Fetcher<K, V> {
     }
 
     /**
-     * Return the fetched records, empty the record buffer and update the consumed position.
+     * Return the fetched records and update the consumed position. At most max.poll.records records and about
+     * max.poll.bytes bytes are returned, the remaining records stay buffered for the next call.
+     *
+     * The buffered partitions are drained round-robin: each round gives every partition an equal share of the
+     * remaining records, and a partition with records left over is moved to the end of the buffer, so that the
+     * partitions which did not get their turn are drained first on the next call.
      *
      * NOTE: returning empty records guarantees the consumed position are NOT updated.
      *
      * @return The fetched records per partition
      * @throws OffsetOutOfRangeException If there is OffsetOutOfRange error in fetchResponse and
      *         the defaultResetPolicy is NONE
+     * @throws KafkaException If the records of a partition are corrupt or cannot be deserialized. If other records
+     *         were returned before the failure, the exception is thrown by the next call instead
      */
     public Map<TopicPartition, List<ConsumerRecord<K, V>>> fetchedRecords() {
         if (this.subscriptions.partitionAssignmentNeeded()) {
@@ -393,47 +435,100 @@ public class Fetcher<K, V> {
             throwIfOffsetOutOfRange();
             throwIfUnauthorizedTopics();
             throwIfRecordTooLarge();
+            throwIfParseFailed();
+
+            int totalCount = 0;
+            int recordsRemaining = this.maxPollRecords;
+            long bytesRemaining = this.maxPollBytes;
+            int roundCount = -1;
+            while (recordsRemaining > 0 && bytesRemaining > 0 && roundCount != 0 && !this.records.isEmpty()
+                    && this.parseException == null) {
+                int partitions = this.records.size();
+                int share = Math.max(1, recordsRemaining / partitions);
+                roundCount = 0;
+                for (int i = 0; i < partitions && recordsRemaining > 0 && bytesRemaining > 0 && this.parseException == null; i++) {
+                    PartitionRecords part = this.records.poll();
+                    if (!subscriptions.isAssigned(part.partition)) {
+                        // this can happen when a rebalance happened before fetched records are returned to the consumer's poll call
+                        log.debug("Not returning fetched records for partition {} since it is no longer assigned", part.partition);
+                        continue;
+                    }
 
-            for (PartitionRecords<K, V> part : this.records) {
-                if (!subscriptions.isAssigned(part.partition)) {
-                    // this can happen when a rebalance happened before fetched records are returned to the consumer's poll call
-                    log.debug("Not returning fetched records for partition {} since it is no longer assigned", part.partition);
-                    continue;
-                }
+                    // note that the consumed position should always be available
+                    // as long as the partition is still assigned
+                    long position = subscriptions.position(part.partition);
+                    if (!subscriptions.isFetchable(part.partition)) {
+                        // this can happen when a partition is paused before fetched records are returned to the consumer's poll call
+                        log.debug("Not returning fetched records for assigned partition {} since it is no longer fetchable", part.partition);
+                    } else if (part.fetchOffset == position) {
+                        // the records are only parsed and deserialized now that they are returned. a record
+                        // larger than max.poll.bytes is still returned if it is the first one of the poll
+                        List<ConsumerRecord<K, V>> parsed = new ArrayList<>();
+                        try {
+                            bytesRemaining -= parseRecords(part, Math.min(share, recordsRemaining), bytesRemaining,
+                                    totalCount == 0, parsed);
+                            if (part.hasNext())
+                                this.records.add(part);
+                        } catch (KafkaException e) {
+                            // the partition is dropped from the buffer and fetched again from the position after
+                            // the records that were parsed. if records were parsed, by this partition or an earlier
+                            // one whose position was already advanced, they are returned and the exception is
+                            // raised by the next call instead, so that they are not lost
+                            if (totalCount == 0 && parsed.isEmpty())
+                                throw e;
+                            log.debug("Returning the records parsed before the failure to parse the records of partition {}",
+                                    part.partition, e);
+                            this.parseException = e;
+                        }
+                        if (parsed.isEmpty())
+                            continue;
+
+                        totalCount += parsed.size();
+                        roundCount += parsed.size();
+                        recordsRemaining -= parsed.size();
+                        long nextOffset = parsed.get(parsed.size() - 1).offset() + 1;
+
+                        log.trace("Returning fetched records at offset {} for assigned partition {} and update " +
+                                "position to {}", position, part.partition, nextOffset);
 
-                // note that the consumed position should always be available
-                // as long as the partition is still assigned
-                long position = subscriptions.position(part.partition);
-                if (!subscriptions.isFetchable(part.partition)) {
-                    // this can happen when a partition is paused before fetched records are returned to the consumer's poll call
-                    log.debug("Not returning fetched records for assigned partition {} since it is no longer fetchable", part.partition);
-                } else if (part.fetchOffset == position) {
-                    long nextOffset = part.records.get(part.records.size() - 1).offset() + 1;
-
-                    log.trace("Returning fetched records at offset {} for assigned partition {} and update " +
-                            "position to {}", position, part.partition, nextOffset);
-
-                    List<ConsumerRecord<K, V>> records = drained.get(part.partition);
-                    if (records == null) {
-                        records = part.records;
-                        drained.put(part.partition, records);
+                        List<ConsumerRecord<K, V>> records = drained.get(part.partition);
+                        if (records == null) {
+                            records = parsed;
+                            drained.put(part.partition, records);
+                        } else {
+                            records.addAll(parsed);
+                        }
+
+                        part.fetchOffset = nextOffset;
+                        subscriptions.position(part.partition, nextOffset);
                     } else {
-                        records.addAll(part.records);
+                        // these records aren't next in line based on the last consumed position, ignore them
+                        // they must be from an obsolete request
+                        log.debug("Ignoring fetched records for {} at offset {} since the current position is {}",
+                                part.partition, part.fetchOffset, position);
                     }
-
-                    subscriptions.position(part.partition, nextOffset);
-                } else {
-                    // these records aren't next in line based on the last consumed position, ignore them
-                    // they must be from an obsolete request
-                    log.debug("Ignoring fetched records for {} at offset {} since the current position is {}",
-                            part.partition, part.fetchOffset, position);
                 }
             }
-            this.records.clear();
+            if (totalCount > 0)
+                this.sensors.recordsFetched.record(totalCount);
             return drained;
         }
     }
 
+    /**
+     * Get the partitions which still have buffered records at their current position. These are not fetched
+     * again until their records have been returned.
+     */
+    private Set<TopicPartition> bufferedPartitions() {
+        Set<TopicPartition> buffered = new HashSet<>();
+        for (PartitionRecords part : this.records) {
+            Long position = subscriptions.isAssigned(part.partition) ? subscriptions.position(part.partition) : null;
+            if (position != null && position == part.fetchOffset)
+                buffered.add(part.partition);
+        }
+        return buffered;
+    }
+
     /**
      * Fetch a single offset before the given timestamp for the partition.
      *
@@ -502,9 +597,13 @@ public class Fetcher<K, V> {
     private Map<Node, FetchRequest> createFetchRequests(Cluster cluster) {
         // create the fetch info
         Map<Node, Map<TopicPartition, FetchRequest.PartitionData>> fetchable = new HashMap<>();
+        Set<TopicPartition> buffered = bufferedPartitions();
         for (TopicPartition partition : subscriptions.fetchablePartitions()) {
             Node node = cluster.leaderFor(partition);
-            if (node == null) {
+            if (buffered.contains(partition)) {
+                // the records left over from the previous fetch are returned first
+                continue;
+            } else if (node == null) {
                 metadata.requestUpdate();
             } else if (this.client.pendingRequestCount(node) == 0) {
                 // if there is a leader and no in-flight requests, issue a new fetch
@@ -535,16 +634,17 @@ public class Fetcher<K, V> {
      */
     private void handleFetchResponse(ClientResponse resp, FetchRequest request) {
         int totalBytes = 0;
-        int totalCount = 0;
-        FetchResponse response = new FetchResponse(resp.responseBody());
-        for (Map.Entry<TopicPartition, FetchResponse.PartitionData> entry : response.responseData().entrySet()) {
-            TopicPartition tp = entry.getKey();
-            FetchResponse.PartitionData partition = entry.getValue();
+        // the partitions are decoded one at a time and only their record sets are kept, the records themselves are
+        // parsed when they are returned by fetchedRecords()
+        FetchResponse.Reader response = FetchResponse.reader(resp.responsePayload(), resp.apiVersion());
+        while (response.next()) {
+            TopicPartition tp = response.partition();
+            short errorCode = response.errorCode();
             if (!subscriptions.isFetchable(tp)) {
                 // this can happen when a rebalance happened or a partition consumption paused
                 // while fetch is still in-flight
                 log.debug("Ignoring fetched records for partition {} since it is no longer fetchable", tp);
-            } else if (partition.errorCode == Errors.NONE.code()) {
+            } else if (errorCode == Errors.NONE.code()) {
                 long fetchOffset = request.fetchData().get(tp).offset;
 
                 // we are interested in this fetch only if the beginning offset matches the
@@ -556,72 +656,120 @@ public class Fetcher<K, V> {
                     continue;
                 }
 
-                int bytes = 0;
-                ByteBuffer buffer = partition.recordSet;
+                ByteBuffer buffer = response.recordSet();
                 MemoryRecords records = MemoryRecords.readableRecords(buffer);
-                List<ConsumerRecord<K, V>> parsed = new ArrayList<>();
-                for (LogEntry logEntry : records) {
-                    // Skip the messages earlier than current position.
-                    if (logEntry.offset() >= position) {
-                        parsed.add(parseRecord(tp, logEntry));
-                        bytes += logEntry.size();
-                    }
-                }
-
-                if (!parsed.isEmpty()) {
-                    log.trace("Adding fetched record for partition {} with offset {} to buffered record list", tp, position);
-                    ConsumerRecord<K, V> record = parsed.get(parsed.size() - 1);
-                    this.records.add(new PartitionRecords<>(fetchOffset, tp, parsed));
-                    this.sensors.recordsFetchLag.record(partition.highWatermark - record.offset());
+                if (records.hasCompleteEntry()) {
+                    log.trace("Adding fetched records for partition {} with offset {} to buffered record list", tp, position);
+                    PartitionRecords part = new PartitionRecords(fetchOffset, tp, records, response.highWatermark());
+                    if (this.traceSampleInterval > 0 && sampleTrace(tp))
+                        part.trace(resp.receivedTimeNanos(), time.nanoseconds());
+                    this.records.add(part);
+                    totalBytes += buffer.limit();
                 } else if (buffer.limit() > 0) {
                     // we did not read a single message from a non-empty buffer
                     // because that message's size is larger than fetch size, in this case
                     // record this exception
                     this.recordTooLargePartitions.put(tp, fetchOffset);
                 }
-
-                this.sensors.recordTopicFetchMetrics(tp.topic(), bytes, parsed.size());
-                totalBytes += bytes;
-                totalCount += parsed.size();
-            } else if (partition.errorCode == Errors.NOT_LEADER_FOR_PARTITION.code()
-                || partition.errorCode == Errors.UNKNOWN_TOPIC_OR_PARTITION.code()) {
+            } else if (errorCode == Errors.NOT_LEADER_FOR_PARTITION.code()
+                || errorCode == Errors.UNKNOWN_TOPIC_OR_PARTITION.code()) {
                 this.metadata.requestUpdate();
-            } else if (partition.errorCode == Errors.OFFSET_OUT_OF_RANGE.code()) {
+            } else if (errorCode == Errors.OFFSET_OUT_OF_RANGE.code()) {
                 long fetchOffset = request.fetchData().get(tp).offset;
                 if (subscriptions.hasDefaultOffsetResetPolicy())
                     subscriptions.needOffsetReset(tp);
                 else
                     this.offsetOutOfRangePartitions.put(tp, fetchOffset);
                 log.info("Fetch offset {} is out of range, resetting offset", fetchOffset);
-            } else if (partition.errorCode == Errors.TOPIC_AUTHORIZATION_FAILED.code()) {
+            } else if (errorCode == Errors.TOPIC_AUTHORIZATION_FAILED.code()) {
                 log.warn("Not authorized to read from topic {}.", tp.topic());
                 unauthorizedTopics.add(tp.topic());
-            } else if (partition.errorCode == Errors.UNKNOWN.code()) {
+            } else if (errorCode == Errors.UNKNOWN.code()) {
                 log.warn("Unknown error fetching data for topic-partition {}", tp);
             } else {
-                throw new IllegalStateException("Unexpected error code " + partition.errorCode + " while fetching data");
+                throw new IllegalStateException("Unexpected error code " + errorCode + " while fetching data");
             }
         }
         this.sensors.bytesFetched.record(totalBytes);
-        this.sensors.recordsFetched.record(totalCount);
-        this.sensors.fetchThrottleTimeSensor.record(response.getThrottleTime());
+        this.sensors.fetchThrottleTimeSensor.record(response.throttleTime());
         this.sensors.fetchLatency.record(resp.requestLatencyMs());
     }
 
+    /**
+     * Parse and deserialize the next buffered records of a partition, starting at its fetch offset
+     *
+     * @param part The buffered records of the partition
+     * @param maxRecords The maximum number of records to parse
+     * @param maxBytes The maximum size of the parsed records
+     * @param returnOversized Whether to parse the next record even if it is larger than maxBytes
+     * @param parsed The list to add the parsed records to
+     * @return The size of the parsed records
+     */
+    private int parseRecords(PartitionRecords part, int maxRecords, long maxBytes, boolean returnOversized,
+                             List<ConsumerRecord<K, V>> parsed) {
+        if (part.entries == null) {
+            // validate all records of the partition at once, before any of them is parsed
+            if (this.checkCrcs) {
+                try {
+                    part.records.ensureValid();
+                } catch (InvalidRecordException e) {
+                    throw new KafkaException("Corrupt record fetched for partition " + part.partition, e);
+                }
+            }
+            // skip the messages earlier than current position, without de-compressing them if possible
+            part.entries = part.records.iterator(part.fetchOffset);
+        }
+
+        int bytes = 0;
+        int count = 0;
+        while (count < maxRecords && part.hasNext()) {
+            int size = part.peek().size();
+            if (bytes + size > maxBytes && !(returnOversized && count == 0))
+                break;
+            LogEntry entry = part.next();
+            RecordTrace trace = null;
+            if (part.traced) {
+                // only the first record returned from a sampled record set carries the trace
+                part.traced = false;
+                trace = new RecordTrace(part.traceReceivedTimeNanos, part.traceFetchedTimeNanos, time.nanoseconds());
+            }
+            parsed.add(parseRecord(part.partition, entry, trace));
+            bytes += size;
+            count++;
+        }
+
+        if (count > 0)
+            this.sensors.recordsFetchLag.record(part.highWatermark - parsed.get(parsed.size() - 1).offset());
+        this.sensors.recordTopicFetchMetrics(part.partition.topic(), bytes, count);
+        return bytes;
+    }
+
+    /**
+     * Check whether the record set just fetched for the partition is sampled for latency tracing, which is the case
+     * for every traceSampleInterval-th record set of the partition
+     */
+    private boolean sampleTrace(TopicPartition partition) {
+        Integer remaining = this.recordSetsUntilTrace.get(partition);
+        if (remaining == null || remaining <= 1) {
+            this.recordSetsUntilTrace.put(partition, this.traceSampleInterval);
+            return true;
+        }
+        this.recordSetsUntilTrace.put(partition, remaining - 1);
+        return false;
+    }
+
     /**
      * Parse the record entry, deserializing the key / value fields if necessary
      */
-    private ConsumerRecord<K, V> parseRecord(TopicPartition partition, LogEntry logEntry) {
+    private ConsumerRecord<K, V> parseRecord(TopicPartition partition, LogEntry logEntry, RecordTrace trace) {
         try {
-            if (this.checkCrcs)
-                logEntry.record().ensureValid();
             long offset = logEntry.offset();
             ByteBuffer keyBytes = logEntry.record().key();
             K key = keyBytes == null ? null : this.keyDeserializer.deserialize(partition.topic(), Utils.toArray(keyBytes));
             ByteBuffer valueBytes = logEntry.record().value();
             V value = valueBytes == null ? null : this.valueDeserializer.deserialize(partition.topic(), Utils.toArray(valueBytes));
 
-            return new ConsumerRecord<>(partition.topic(), partition.partition(), offset, key, value);
+            return new ConsumerRecord<>(partition.topic(), partition.partition(), offset, key, value, trace);
         } catch (KafkaException e) {
             throw e;
         } catch (RuntimeException e) {
@@ -629,15 +777,50 @@ public class Fetcher<K, V> {
         }
     }
 
-    private static class PartitionRecords<K, V> {
+    /**
+     * The fetched record set of a partition, which is parsed when its records are returned. The records may be
+     * returned over several polls, in which case the fetch offset is advanced to the next record to return.
+     */
+    private static class PartitionRecords {
         public long fetchOffset;
         public TopicPartition partition;
-        public List<ConsumerRecord<K, V>> records;
-
-        public PartitionRecords(long fetchOffset, TopicPartition partition, List<ConsumerRecord<K, V>> records) {
+        public MemoryRecords records;
+        public long highWatermark;
+        // the entries which have not been returned yet, created when the first records are returned
+        public Iterator<LogEntry> entries;
+        private LogEntry nextEntry;
+        // whether the first record returned from this record set is traced, and the times it was received and fetched
+        public boolean traced;
+        public long traceReceivedTimeNanos;
+        public long traceFetchedTimeNanos;
+
+        public PartitionRecords(long fetchOffset, TopicPartition partition, MemoryRecords records, long highWatermark) {
             this.fetchOffset = fetchOffset;
             this.partition = partition;
             this.records = records;
+            this.highWatermark = highWatermark;
+        }
+
+        public void trace(long receivedTimeNanos, long fetchedTimeNanos) {
+            this.traced = true;
+            this.traceReceivedTimeNanos = receivedTimeNanos;
+            this.traceFetchedTimeNanos = fetchedTimeNanos;
+        }
+
+        public boolean hasNext() {
+            return nextEntry != null || entries == null || entries.hasNext();
+        }
+
+        public LogEntry peek() {
+            if (nextEntry == null)
+                nextEntry = entries.next();
+            return nextEntry;
+        }
+
+        public LogEntry next() {
+            LogEntry entry = peek();
+            nextEntry = null;
+            return entry;
         }
     }
 
@@ -689,6 +872,23 @@ public class Fetcher<K, V> {
                 this.metricGrpName,
                 "The max time taken for any fetch request.",
                 tags), new Max());
+            this.fetchLatency.add(new HdrPercentiles(MAX_TRACKED_LATENCY_MS,
+                new Percentile(new MetricName("fetch-latency-p50",
+                    this.metricGrpName,
+                    "The median time taken for a fetch request.",
+                    tags), 50.0),
+                new Percentile(new MetricName("fetch-latency-p99",
+                    this.metricGrpName,
+                    "The 99th percentile of the time taken for a fetch request.",
+                    tags), 99.0),
+                new Percentile(new MetricName("fetch-latency-p999",
+                    this.metricGrpName,
+                    "The 99.9th percentile of the time taken for a fetch request.",
+                    tags), 99.9),
+                new Percentile(new MetricName("fetch-latency-p9999",
+                    this.metricGrpName,
+                    "The 99.99th percentile of the time taken for a fetch request.",
+                    tags), 99.99)));
             this.fetchLatency.add(new MetricName("fetch-rate",
                 this.metricGrpName,
                 "The number of fetch requests per second.",
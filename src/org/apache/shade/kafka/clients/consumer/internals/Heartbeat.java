@@ -13,7 +13,8 @@
 package org.apache.shade.kafka.clients.consumer.internals;
 
 /**
- * A helper class for managing the heartbeat to the coordinator
+ * A helper class for managing the heartbeat to the coordinator. It is shared by the consumer's thread and
+ * the background heartbeat thread, so all methods are synchronized.
  */
 public final class Heartbeat {
     private final long timeout;
@@ -22,6 +23,7 @@ public final class Heartbeat {
     private long lastHeartbeatSend;
     private long lastHeartbeatReceive;
     private long lastSessionReset;
+    private long lastPoll;
 
     public Heartbeat(long timeout,
                      long interval,
@@ -32,25 +34,34 @@ public final class Heartbeat {
         this.timeout = timeout;
         this.interval = interval;
         this.lastSessionReset = now;
+        this.lastPoll = now;
     }
 
-    public void sentHeartbeat(long now) {
+    public synchronized void poll(long now) {
+        this.lastPoll = now;
+    }
+
+    public synchronized long timeSinceLastPoll(long now) {
+        return now - lastPoll;
+    }
+
+    public synchronized void sentHeartbeat(long now) {
         this.lastHeartbeatSend = now;
     }
 
-    public void receiveHeartbeat(long now) {
+    public synchronized void receiveHeartbeat(long now) {
         this.lastHeartbeatReceive = now;
     }
 
-    public boolean shouldHeartbeat(long now) {
+    public synchronized boolean shouldHeartbeat(long now) {
         return timeToNextHeartbeat(now) == 0;
     }
     
-    public long lastHeartbeatSend() {
+    public synchronized long lastHeartbeatSend() {
         return this.lastHeartbeatSend;
     }
 
-    public long timeToNextHeartbeat(long now) {
+    public synchronized long timeToNextHeartbeat(long now) {
         long timeSinceLastHeartbeat = now - Math.max(lastHeartbeatSend, lastSessionReset);
 
         if (timeSinceLastHeartbeat > interval)
@@ -59,7 +70,7 @@ public final class Heartbeat {
             return interval - timeSinceLastHeartbeat;
     }
 
-    public boolean sessionTimeoutExpired(long now) {
+    public synchronized boolean sessionTimeoutExpired(long now) {
         return now - Math.max(lastSessionReset, lastHeartbeatReceive) > timeout;
     }
 
@@ -67,7 +78,7 @@ public final class Heartbeat {
         return interval;
     }
 
-    public void resetSessionTimeout(long now) {
+    public synchronized void resetSessionTimeout(long now) {
         this.lastSessionReset = now;
     }
 
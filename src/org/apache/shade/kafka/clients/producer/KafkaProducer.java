@@ -49,6 +49,7 @@ import org.apache.shade.kafka.common.record.Records;
 import org.apache.shade.kafka.common.serialization.ByteArraySerializer;
 import org.apache.shade.kafka.common.serialization.Serializer;
 import org.apache.shade.kafka.common.utils.AppInfoParser;
+import org.apache.shade.kafka.common.utils.CachedTime;
 import org.apache.shade.kafka.common.utils.KafkaThread;
 import org.apache.shade.kafka.common.utils.SystemTime;
 import org.apache.shade.kafka.common.utils.Time;
@@ -140,6 +141,7 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
     private final CompressionType compressionType;
     private final Sensor errors;
     private final Time time;
+    private final CachedTime cachedTime;
     private final Serializer<K> keySerializer;
     private final Serializer<V> valueSerializer;
     private final ProducerConfig producerConfig;
@@ -203,7 +205,11 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
             log.trace("Starting the Kafka producer");
             Map<String, Object> userProvidedConfigs = config.originals();
             this.producerConfig = config;
-            this.time = new SystemTime();
+            long clockTickMs = config.getLong(ProducerConfig.CLOCK_TICK_MS_CONFIG);
+            this.cachedTime = clockTickMs > 0 ? CachedTime.acquire(clockTickMs) : null;
+            this.time = cachedTime != null ? cachedTime : new SystemTime();
+            // the receive times of responses are read precisely, so that request latencies are not quantized by the tick
+            Time preciseTime = cachedTime != null ? cachedTime.precise() : time;
 
             MetricConfig metricConfig = new MetricConfig().samples(config.getInt(ProducerConfig.METRICS_NUM_SAMPLES_CONFIG))
                     .timeWindow(config.getLong(ProducerConfig.METRICS_SAMPLE_WINDOW_MS_CONFIG),
@@ -279,7 +285,7 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
                     config.getLong(ProducerConfig.RECONNECT_BACKOFF_MS_CONFIG),
                     config.getInt(ProducerConfig.SEND_BUFFER_CONFIG),
                     config.getInt(ProducerConfig.RECEIVE_BUFFER_CONFIG),
-                    this.requestTimeoutMs, time);
+                    this.requestTimeoutMs, preciseTime);
             this.sender = new Sender(client,
                     this.metadata,
                     this.accumulator,
@@ -287,7 +293,7 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
                     (short) parseAcks(config.getString(ProducerConfig.ACKS_CONFIG)),
                     config.getInt(ProducerConfig.RETRIES_CONFIG),
                     this.metrics,
-                    new SystemTime(),
+                    time,
                     clientId,
                     this.requestTimeoutMs);
             String ioThreadName = "kafka-producer-network-thread" + (clientId.length() > 0 ? " | " + clientId : "");
@@ -652,6 +658,7 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
         ClientUtils.closeQuietly(metrics, "producer metrics", firstException);
         ClientUtils.closeQuietly(keySerializer, "producer keySerializer", firstException);
         ClientUtils.closeQuietly(valueSerializer, "producer valueSerializer", firstException);
+        ClientUtils.closeQuietly(cachedTime, "producer clock", firstException);
         AppInfoParser.unregisterAppInfo(JMX_PREFIX, clientId);
         log.debug("The Kafka producer has closed.");
         if (firstException.get() != null && !swallowException)
@@ -163,6 +163,9 @@ public class ProducerConfig extends AbstractConfig {
     /** <code>metrics.sample.window.ms</code> */
     public static final String METRICS_SAMPLE_WINDOW_MS_CONFIG = CommonClientConfigs.METRICS_SAMPLE_WINDOW_MS_CONFIG;
 
+    /** <code>clock.tick.ms</code> */
+    public static final String CLOCK_TICK_MS_CONFIG = CommonClientConfigs.CLOCK_TICK_MS_CONFIG;
+
     /** <code>metrics.num.samples</code> */
     public static final String METRICS_NUM_SAMPLES_CONFIG = CommonClientConfigs.METRICS_NUM_SAMPLES_CONFIG;
 
@@ -253,6 +256,7 @@ public class ProducerConfig extends AbstractConfig {
                                         Importance.LOW,
                                         CommonClientConfigs.METRICS_SAMPLE_WINDOW_MS_DOC)
                                 .define(METRICS_NUM_SAMPLES_CONFIG, Type.INT, 2, atLeast(1), Importance.LOW, CommonClientConfigs.METRICS_NUM_SAMPLES_DOC)
+                                .define(CLOCK_TICK_MS_CONFIG, Type.LONG, 0, atLeast(0), Importance.LOW, CommonClientConfigs.CLOCK_TICK_MS_DOC)
                                 .define(MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION,
                                         Type.INT,
                                         5,
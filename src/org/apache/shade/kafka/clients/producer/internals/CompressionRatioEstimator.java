@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.shade.kafka.clients.producer.internals;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.shade.kafka.common.record.CompressionCodecs;
+import org.apache.shade.kafka.common.record.CompressionType;
+
+/**
+ * Estimates the compression rate (compressed size / uncompressed size) of the batches of each topic, based on the
+ * rates observed for the previous batches of the topic.
+ * <p>
+ * The estimate quickly increases when a batch compresses worse than estimated, since the buffer of a batch has to be
+ * expanded when more bytes are written than estimated; it only slowly decreases when batches compress better, which
+ * leaves batches a little less full. Topics without any observed batch use the estimate of the compression codec.
+ */
+public final class CompressionRatioEstimator {
+
+    private static final float COMPRESSION_RATE_IMPROVING_STEP = 0.005f;
+    private static final float COMPRESSION_RATE_DETERIORATING_STEP = 0.05f;
+
+    private final CompressionType type;
+    private final ConcurrentMap<String, Float> estimates;
+
+    public CompressionRatioEstimator(CompressionType type) {
+        this.type = type;
+        this.estimates = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The estimated compression rate of the next batch of the given topic
+     */
+    public float estimate(String topic) {
+        if (type == CompressionType.NONE)
+            return 1.0f;
+        Float estimate = estimates.get(topic);
+        return estimate != null ? estimate : CompressionCodecs.codec(type).estimatedCompressionRate();
+    }
+
+    /**
+     * Update the estimate of the given topic with the rate observed for a closed batch of that topic
+     *
+     * @return The estimate that the batch was created with
+     */
+    public float update(String topic, float observedRate) {
+        float estimate = estimate(topic);
+        if (type == CompressionType.NONE)
+            return estimate;
+
+        float newEstimate;
+        if (observedRate > estimate)
+            newEstimate = Math.max(estimate + COMPRESSION_RATE_DETERIORATING_STEP, observedRate);
+        else
+            newEstimate = Math.max(estimate - COMPRESSION_RATE_IMPROVING_STEP, observedRate);
+        // batches of a topic are closed by the sender thread only, so there are no concurrent updates
+        estimates.put(topic, newEstimate);
+        return estimate;
+    }
+}
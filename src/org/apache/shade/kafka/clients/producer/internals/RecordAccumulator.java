@@ -23,8 +23,12 @@ import org.apache.shade.kafka.common.metrics.Measurable;
 import org.apache.shade.kafka.common.metrics.MetricConfig;
 import org.apache.shade.kafka.common.metrics.Metrics;
 import org.apache.shade.kafka.common.metrics.Sensor;
+import org.apache.shade.kafka.common.metrics.stats.Avg;
+import org.apache.shade.kafka.common.metrics.stats.Max;
 import org.apache.shade.kafka.common.metrics.stats.Rate;
+import org.apache.shade.kafka.common.metrics.stats.Total;
 import org.apache.shade.kafka.common.record.CompressionType;
+import org.apache.shade.kafka.common.record.Compressor;
 import org.apache.shade.kafka.common.record.MemoryRecords;
 import org.apache.shade.kafka.common.record.Record;
 import org.apache.shade.kafka.common.record.Records;
@@ -70,6 +74,9 @@ public final class RecordAccumulator {
     private final Time time;
     private final ConcurrentMap<TopicPartition, Deque<org.apache.shade.kafka.clients.producer.internals.RecordBatch>> batches;
     private final IncompleteRecordBatches incomplete;
+    private final CompressionRatioEstimator compressionRatioEstimator;
+    private Sensor compressionRateEstimateErrorSensor;
+    private Sensor batchBufferExpansionSensor;
 
 
     /**
@@ -107,6 +114,7 @@ public final class RecordAccumulator {
         String metricGrpName = "producer-metrics";
         this.free = new BufferPool(totalSize, batchSize, metrics, time , metricGrpName , metricTags);
         this.incomplete = new IncompleteRecordBatches();
+        this.compressionRatioEstimator = new CompressionRatioEstimator(compression);
         this.time = time;
         registerMetrics(metrics, metricGrpName, metricTags);
     }
@@ -139,6 +147,18 @@ public final class RecordAccumulator {
         Sensor bufferExhaustedRecordSensor = metrics.sensor("buffer-exhausted-records");
         metricName = new MetricName("buffer-exhausted-rate", metricGrpName, "The average per-second number of record sends that are dropped due to buffer exhaustion", metricTags);
         bufferExhaustedRecordSensor.add(metricName, new Rate());
+
+        this.compressionRateEstimateErrorSensor = metrics.sensor("compression-rate-estimate-error");
+        metricName = new MetricName("compression-rate-estimate-error-avg", metricGrpName, "The average relative error of the compression rate estimated for a batch when it was created, compared to the rate of the batch when it was closed", metricTags);
+        this.compressionRateEstimateErrorSensor.add(metricName, new Avg());
+        metricName = new MetricName("compression-rate-estimate-error-max", metricGrpName, "The maximum relative error of the compression rate estimated for a batch when it was created, compared to the rate of the batch when it was closed", metricTags);
+        this.compressionRateEstimateErrorSensor.add(metricName, new Max());
+
+        this.batchBufferExpansionSensor = metrics.sensor("batch-buffer-expansions");
+        metricName = new MetricName("batch-buffer-expansion-rate", metricGrpName, "The average per-second number of batches whose buffer had to be expanded because the records compressed worse than estimated", metricTags);
+        this.batchBufferExpansionSensor.add(metricName, new Rate());
+        metricName = new MetricName("batch-buffer-expansion-total", metricGrpName, "The total number of batches whose buffer had to be expanded because the records compressed worse than estimated", metricTags);
+        this.batchBufferExpansionSensor.add(metricName, new Total());
     }
 
     /**
@@ -172,7 +192,11 @@ public final class RecordAccumulator {
             }
 
             // we don't have an in-progress record batch try to allocate a new batch
-            int size = Math.max(this.batchSize, Records.LOG_OVERHEAD + Record.recordSize(key, value));
+            // size the buffer with the compression rate of the topic's previous batches, so that a single
+            // large record does not have to expand it while it is compressed
+            float estimatedCompressionRate = compressionRatioEstimator.estimate(tp.topic());
+            int size = Math.max(this.batchSize, Compressor.estimateSizeInBytes(compression, estimatedCompressionRate,
+                Records.LOG_OVERHEAD + Record.recordSize(key, value)));
             log.trace("Allocating a new {} byte message buffer for topic {} partition {}", size, tp.topic(), tp.partition());
             ByteBuffer buffer = free.allocate(size, maxTimeToBlock);
             synchronized (dq) {
@@ -188,7 +212,7 @@ public final class RecordAccumulator {
                         return new RecordAppendResult(future, dq.size() > 1 || last.records.isFull(), false);
                     }
                 }
-                MemoryRecords records = MemoryRecords.emptyRecords(buffer, compression, this.batchSize);
+                MemoryRecords records = MemoryRecords.emptyRecords(buffer, compression, this.batchSize, estimatedCompressionRate);
                 org.apache.shade.kafka.clients.producer.internals.RecordBatch batch = new org.apache.shade.kafka.clients.producer.internals.RecordBatch(tp, records, time.milliseconds());
                 org.apache.shade.kafka.clients.producer.internals.FutureRecordMetadata future = Utils.notNull(batch.tryAppend(key, value, callback, time.milliseconds()));
 
@@ -357,7 +381,10 @@ public final class RecordAccumulator {
                                     break;
                                 } else {
                                     org.apache.shade.kafka.clients.producer.internals.RecordBatch batch = deque.pollFirst();
+                                    boolean closing = batch.attempts == 0;
                                     batch.records.close();
+                                    if (closing)
+                                        recordCompressionRate(batch);
                                     size += batch.records.sizeInBytes();
                                     ready.add(batch);
                                     batch.drainedMs = now;
@@ -373,6 +400,20 @@ public final class RecordAccumulator {
         return batches;
     }
 
+    /**
+     * Feed the compression rate of a batch that was just closed back to the estimate of its topic
+     */
+    private void recordCompressionRate(org.apache.shade.kafka.clients.producer.internals.RecordBatch batch) {
+        if (compression == CompressionType.NONE)
+            return;
+        float observedRate = (float) batch.records.compressionRate();
+        float estimatedRate = compressionRatioEstimator.update(batch.topicPartition.topic(), observedRate);
+        if (observedRate > 0)
+            compressionRateEstimateErrorSensor.record(Math.abs(estimatedRate - observedRate) / observedRate);
+        if (batch.records.buffer().capacity() > batch.records.initialCapacity())
+            batchBufferExpansionSensor.record();
+    }
+
     /**
      * Get the deque for the given topic-partition, creating it if necessary.
      */
@@ -37,7 +37,9 @@ import org.apache.shade.kafka.common.MetricName;
 import org.apache.shade.kafka.common.metrics.Metrics;
 import org.apache.shade.kafka.common.metrics.Sensor;
 import org.apache.shade.kafka.common.metrics.stats.Avg;
+import org.apache.shade.kafka.common.metrics.stats.HdrPercentiles;
 import org.apache.shade.kafka.common.metrics.stats.Max;
+import org.apache.shade.kafka.common.metrics.stats.Percentile;
 import org.apache.shade.kafka.common.metrics.stats.Rate;
 import org.apache.shade.kafka.common.protocol.ApiKeys;
 import org.apache.shade.kafka.common.protocol.Errors;
@@ -57,6 +59,9 @@ public class Sender implements Runnable {
 
     private static final Logger log = LoggerFactory.getLogger(Sender.class);
 
+    /* the highest latency that the latency percentiles distinguish */
+    private static final long MAX_TRACKED_LATENCY_MS = 60 * 60 * 1000L;
+
     /* the state of each nodes connection */
     private final KafkaClient client;
 
@@ -250,7 +255,7 @@ public class Sender implements Runnable {
                       correlationId);
             // if we have a response, parse it
             if (response.hasResponse()) {
-                ProduceResponse produceResponse = new ProduceResponse(response.responseBody());
+                ProduceResponse produceResponse = ProduceResponse.parse(response.responsePayload(), response.apiVersion());
                 for (Map.Entry<TopicPartition, ProduceResponse.PartitionResponse> entry : produceResponse.responses()
                                                                                                          .entrySet()) {
                     TopicPartition tp = entry.getKey();
@@ -336,7 +341,7 @@ public class Sender implements Runnable {
         ProduceRequest request = new ProduceRequest(acks, timeout, produceRecordsByPartition);
         RequestSend send = new RequestSend(Integer.toString(destination),
                                            this.client.nextRequestHeader(ApiKeys.PRODUCE),
-                                           request.toStruct());
+                                           request);
         RequestCompletionHandler callback = new RequestCompletionHandler() {
             public void onComplete(ClientResponse response) {
                 handleProduceResponse(response, recordsByPartition, time.milliseconds());
@@ -395,6 +400,11 @@ public class Sender implements Runnable {
             this.requestTimeSensor.add(m, new Avg());
             m = new MetricName("request-latency-max", metricGrpName, "The maximum request latency in ms", metricTags);
             this.requestTimeSensor.add(m, new Max());
+            this.requestTimeSensor.add(new HdrPercentiles(MAX_TRACKED_LATENCY_MS,
+                new Percentile(new MetricName("request-latency-p50", metricGrpName, "The median request latency in ms", metricTags), 50.0),
+                new Percentile(new MetricName("request-latency-p99", metricGrpName, "The 99th percentile request latency in ms", metricTags), 99.0),
+                new Percentile(new MetricName("request-latency-p999", metricGrpName, "The 99.9th percentile request latency in ms", metricTags), 99.9),
+                new Percentile(new MetricName("request-latency-p9999", metricGrpName, "The 99.99th percentile request latency in ms", metricTags), 99.99)));
 
             this.produceThrottleTimeSensor = metrics.sensor("produce-throttle-time");
             m = new MetricName("produce-throttle-time-avg", metricGrpName, "The average throttle time in ms", metricTags);
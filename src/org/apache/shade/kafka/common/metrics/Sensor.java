@@ -17,6 +17,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.shade.kafka.common.MetricName;
@@ -28,6 +29,10 @@ import org.apache.shade.kafka.common.utils.Utils;
  * A sensor applies a continuous sequence of numerical values to a set of associated metrics. For example a sensor on
  * message size would record a sequence of message sizes using the {@link #record(double)} api and would maintain a set
  * of metrics about request sizes such as the average or max.
+ * <p>
+ * Stats are recorded while holding the lock of the sensor, except for {@link ConcurrentStat}s. A sensor whose stats
+ * are all concurrent, like the {@link org.apache.shade.kafka.common.metrics.stats.ConcurrentSampledStat} stats, records
+ * values and checks its quotas without taking any lock.
  */
 public final class Sensor {
 
@@ -35,6 +40,8 @@ public final class Sensor {
     private final String name;
     private final Sensor[] parents;
     private final List<Stat> stats;
+    private final List<ConcurrentStat> concurrentStats;
+    private volatile boolean lockFree;
     private final List<org.apache.shade.kafka.common.metrics.KafkaMetric> metrics;
     private final org.apache.shade.kafka.common.metrics.MetricConfig config;
     private final Time time;
@@ -46,8 +53,10 @@ public final class Sensor {
         this.registry = registry;
         this.name = Utils.notNull(name);
         this.parents = parents == null ? new Sensor[0] : parents;
-        this.metrics = new ArrayList<>();
+        this.metrics = new CopyOnWriteArrayList<>();
         this.stats = new ArrayList<>();
+        this.concurrentStats = new CopyOnWriteArrayList<>();
+        this.lockFree = true;
         this.config = config;
         this.time = time;
         this.inactiveSensorExpirationTimeMs = TimeUnit.MILLISECONDS.convert(inactiveSensorExpirationTimeSeconds, TimeUnit.SECONDS);
@@ -96,12 +105,22 @@ public final class Sensor {
      *         bound
      */
     public void record(double value, long timeMs) {
-        this.lastRecordTime = time.milliseconds();
-        synchronized (this) {
-            // increment all the stats
-            for (int i = 0; i < this.stats.size(); i++)
-                this.stats.get(i).record(config, value, timeMs);
+        // avoid writing the shared field more than once per millisecond
+        if (this.lastRecordTime != timeMs)
+            this.lastRecordTime = timeMs;
+        // the concurrent stats are recorded without the lock, but before the quotas are checked
+        for (ConcurrentStat stat : this.concurrentStats)
+            stat.record(config, value, timeMs);
+        if (this.lockFree) {
+            // all stats can be measured concurrently, so the quotas can be checked without the lock as well
             checkQuotas(timeMs);
+        } else {
+            synchronized (this) {
+                // increment all the stats
+                for (int i = 0; i < this.stats.size(); i++)
+                    this.stats.get(i).record(config, value, timeMs);
+                checkQuotas(timeMs);
+            }
         }
         for (int i = 0; i < parents.length; i++)
             parents[i].record(value, timeMs);
@@ -145,7 +164,7 @@ public final class Sensor {
      *        sensor.
      */
     public synchronized void add(CompoundStat stat, org.apache.shade.kafka.common.metrics.MetricConfig config) {
-        this.stats.add(Utils.notNull(stat));
+        addStat(Utils.notNull(stat));
         for (NamedMeasurable m : stat.stats()) {
             org.apache.shade.kafka.common.metrics.KafkaMetric metric = new org.apache.shade.kafka.common.metrics.KafkaMetric(this, m.name(), m.stat(), config == null ? this.config : config, time);
             this.registry.registerMetric(metric);
@@ -176,7 +195,16 @@ public final class Sensor {
                                              time);
         this.registry.registerMetric(metric);
         this.metrics.add(metric);
-        this.stats.add(stat);
+        addStat(stat);
+    }
+
+    private void addStat(Stat stat) {
+        if (stat instanceof ConcurrentStat)
+            this.concurrentStats.add((ConcurrentStat) stat);
+        else {
+            this.stats.add(stat);
+            this.lockFree = false;
+        }
     }
 
     /**
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.metrics.stats;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.shade.kafka.common.metrics.MetricConfig;
+
+/**
+ * A {@link ConcurrentSampledStat} that maintains a simple count of what it has seen.
+ */
+public class ConcurrentCount extends ConcurrentSampledStat {
+
+    @Override
+    protected Window newWindow(long startMs) {
+        return new CountWindow(startMs);
+    }
+
+    @Override
+    public double combine(List<Window> windows, MetricConfig config, long now) {
+        double total = 0.0;
+        for (int i = 0; i < windows.size(); i++)
+            total += ((CountWindow) windows.get(i)).count.sum();
+        return total;
+    }
+
+    private static class CountWindow extends Window {
+        private final LongAdder count = new LongAdder();
+
+        private CountWindow(long startMs) {
+            super(startMs);
+        }
+
+        @Override
+        protected void record(double value) {
+            count.increment();
+        }
+    }
+
+}
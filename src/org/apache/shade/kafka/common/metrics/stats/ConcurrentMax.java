@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.metrics.stats;
+
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.function.DoubleBinaryOperator;
+
+import org.apache.shade.kafka.common.metrics.MetricConfig;
+
+/**
+ * A {@link ConcurrentSampledStat} that gives the max over its windows.
+ */
+public final class ConcurrentMax extends ConcurrentSampledStat {
+
+    private static final DoubleBinaryOperator MAX = new DoubleBinaryOperator() {
+        @Override
+        public double applyAsDouble(double left, double right) {
+            return Math.max(left, right);
+        }
+    };
+
+    @Override
+    protected Window newWindow(long startMs) {
+        return new MaxWindow(startMs);
+    }
+
+    @Override
+    public double combine(List<Window> windows, MetricConfig config, long now) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < windows.size(); i++)
+            max = Math.max(max, ((MaxWindow) windows.get(i)).max.get());
+        return max;
+    }
+
+    private static class MaxWindow extends Window {
+        private final DoubleAccumulator max = new DoubleAccumulator(MAX, Double.NEGATIVE_INFINITY);
+
+        private MaxWindow(long startMs) {
+            super(startMs);
+        }
+
+        @Override
+        protected void record(double value) {
+            max.accumulate(value);
+        }
+    }
+
+}
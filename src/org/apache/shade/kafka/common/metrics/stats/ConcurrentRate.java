@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.metrics.stats;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import org.apache.shade.kafka.common.metrics.ConcurrentStat;
+import org.apache.shade.kafka.common.metrics.MeasurableStat;
+import org.apache.shade.kafka.common.metrics.MetricConfig;
+
+/**
+ * The rate of the given quantity, like a {@link Rate}, which can be recorded from several threads without locking.
+ * By default this is the total observed over the windows of a {@link ConcurrentSampledStat} divided by the elapsed
+ * time over the windows. A {@link ConcurrentCount} can be provided instead to record the rate of occurrences.
+ */
+public class ConcurrentRate implements MeasurableStat, ConcurrentStat {
+
+    private final TimeUnit unit;
+    private final ConcurrentSampledStat stat;
+
+    public ConcurrentRate() {
+        this(TimeUnit.SECONDS);
+    }
+
+    public ConcurrentRate(TimeUnit unit) {
+        this(unit, new ConcurrentSampledTotal());
+    }
+
+    public ConcurrentRate(ConcurrentSampledStat stat) {
+        this(TimeUnit.SECONDS, stat);
+    }
+
+    public ConcurrentRate(TimeUnit unit, ConcurrentSampledStat stat) {
+        this.stat = stat;
+        this.unit = unit;
+    }
+
+    @Override
+    public void record(MetricConfig config, double value, long timeMs) {
+        this.stat.record(config, value, timeMs);
+    }
+
+    @Override
+    public double measure(MetricConfig config, long now) {
+        double value = stat.measure(config, now);
+        return value / Rate.convert(unit, windowSize(config, now));
+    }
+
+    public long windowSize(MetricConfig config, long now) {
+        // as in Rate, the elapsed time is at least N-1 complete windows plus the elapsed part of the current window
+        long totalElapsedTimeMs = now - stat.oldestWindowMs(config, now);
+        int numFullWindows = (int) (totalElapsedTimeMs / config.timeWindowMs());
+        int minFullWindows = config.samples() - 1;
+
+        if (numFullWindows < minFullWindows)
+            totalElapsedTimeMs += (minFullWindows - numFullWindows) * config.timeWindowMs();
+
+        return totalElapsedTimeMs;
+    }
+
+    public static class ConcurrentSampledTotal extends ConcurrentSampledStat {
+
+        @Override
+        protected Window newWindow(long startMs) {
+            return new TotalWindow(startMs);
+        }
+
+        @Override
+        public double combine(List<Window> windows, MetricConfig config, long now) {
+            double total = 0.0;
+            for (int i = 0; i < windows.size(); i++)
+                total += ((TotalWindow) windows.get(i)).total.sum();
+            return total;
+        }
+
+        private static class TotalWindow extends Window {
+            private final DoubleAdder total = new DoubleAdder();
+
+            private TotalWindow(long startMs) {
+                super(startMs);
+            }
+
+            @Override
+            protected void record(double value) {
+                total.add(value);
+            }
+        }
+    }
+}
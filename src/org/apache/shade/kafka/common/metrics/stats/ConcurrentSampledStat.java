@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.metrics.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.shade.kafka.common.metrics.ConcurrentStat;
+import org.apache.shade.kafka.common.metrics.MeasurableStat;
+import org.apache.shade.kafka.common.metrics.MetricConfig;
+
+/**
+ * A windowed stat that can be recorded from several threads without locking, as an alternative to a
+ * {@link SampledStat} for sensors on hot paths.
+ * <p>
+ * The windows are aligned to multiples of the time window, and the stat keeps one slot for each of the
+ * {@link MetricConfig#samples()} windows. A slot is replaced by a new window when a value is first recorded in a
+ * window that the slot does not hold yet. Windows older than the samples times the time window are skipped when the
+ * stat is measured, so windows are rolled over lazily and never reset or purged. The values of a window are kept in
+ * striped adders. A value recorded by a thread while another thread replaces its window may be lost.
+ * <p>
+ * Unlike the samples of a {@link SampledStat}, the windows are not completed by the
+ * {@link MetricConfig#eventWindow() event window}.
+ */
+public abstract class ConcurrentSampledStat implements MeasurableStat, ConcurrentStat {
+
+    private final Object lock = new Object();
+    private volatile AtomicReferenceArray<Window> windows;
+    private volatile Window latest;
+
+    @Override
+    public void record(MetricConfig config, double value, long timeMs) {
+        Window latest = this.latest;
+        if (latest != null && timeMs >= latest.startMs && timeMs - latest.startMs < config.timeWindowMs()) {
+            latest.record(value);
+            return;
+        }
+
+        AtomicReferenceArray<Window> windows = windows(config);
+        long epoch = Math.floorDiv(timeMs, config.timeWindowMs());
+        long startMs = epoch * config.timeWindowMs();
+        int slot = (int) Math.floorMod(epoch, (long) windows.length());
+
+        Window window = windows.get(slot);
+        // a value of an older window than the slot holds is recorded in the newer window
+        while (window == null || window.startMs < startMs) {
+            Window created = newWindow(startMs);
+            if (windows.compareAndSet(slot, window, created))
+                window = created;
+            else
+                window = windows.get(slot);
+        }
+        if (latest == null || window.startMs > latest.startMs)
+            this.latest = window;
+        window.record(value);
+    }
+
+    @Override
+    public double measure(MetricConfig config, long now) {
+        return combine(currentWindows(config, now), config, now);
+    }
+
+    /**
+     * Get the start of the oldest window that is not obsolete, or the given time if there is none
+     */
+    public long oldestWindowMs(MetricConfig config, long now) {
+        long oldest = now;
+        for (Window window : currentWindows(config, now))
+            oldest = Math.min(oldest, window.startMs);
+        return oldest;
+    }
+
+    protected abstract Window newWindow(long startMs);
+
+    public abstract double combine(List<Window> windows, MetricConfig config, long now);
+
+    private List<Window> currentWindows(MetricConfig config, long now) {
+        List<Window> current = new ArrayList<Window>(config.samples());
+        AtomicReferenceArray<Window> windows = this.windows;
+        if (windows == null)
+            return current;
+        long expireAge = config.samples() * config.timeWindowMs();
+        for (int i = 0; i < windows.length(); i++) {
+            Window window = windows.get(i);
+            if (window != null && now - window.startMs < expireAge)
+                current.add(window);
+        }
+        return current;
+    }
+
+    private AtomicReferenceArray<Window> windows(MetricConfig config) {
+        AtomicReferenceArray<Window> windows = this.windows;
+        if (windows != null)
+            return windows;
+        synchronized (lock) {
+            if (this.windows == null)
+                this.windows = new AtomicReferenceArray<Window>(Math.max(1, config.samples()));
+            return this.windows;
+        }
+    }
+
+    /**
+     * The values recorded in one time window
+     */
+    protected abstract static class Window {
+        public final long startMs;
+
+        protected Window(long startMs) {
+            this.startMs = startMs;
+        }
+
+        protected abstract void record(double value);
+    }
+
+}
@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.metrics.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.shade.kafka.common.metrics.CompoundStat;
+import org.apache.shade.kafka.common.metrics.ConcurrentStat;
+import org.apache.shade.kafka.common.metrics.Measurable;
+import org.apache.shade.kafka.common.metrics.MetricConfig;
+
+/**
+ * A compound stat that reports one or more percentiles from a log-linear histogram in the style of HdrHistogram,
+ * which can be recorded from several threads without locking.
+ * <p>
+ * Values are rounded to non-negative integers, so they should be recorded in the unit of the required resolution.
+ * Values below 2^precisionBits are counted exactly. Larger values are counted in buckets whose width is a power of
+ * two, with 2^(precisionBits - 1) buckets for each power of two, so a reported percentile is within a relative error of
+ * 2^-(precisionBits - 1) of the recorded value. Values above the highest trackable value are counted as that value.
+ * <p>
+ * Like a {@link SampledStat}, the stat keeps {@link MetricConfig#samples()} windows, each of which is complete once
+ * its time window or its event window has passed, and merges all windows that are younger than the samples times the
+ * time window. The counters of a window are striped by thread, so that threads recording at the same time do not
+ * contend on the same cache lines. Only starting a new window takes a lock.
+ */
+public class HdrPercentiles implements CompoundStat, ConcurrentStat {
+
+    /** The default precision, which keeps the relative error below 1.6% */
+    public static final int DEFAULT_PRECISION_BITS = 7;
+
+    private static final int MAX_STRIPES = 4;
+
+    /* the number of longs in a cache line, to which the stripes are aligned */
+    private static final int CACHE_LINE_LONGS = 8;
+
+    private final Percentile[] percentiles;
+    private final long highestTrackableValue;
+    private final int precisionBits;
+    private final int buckets;
+    private final int stripes;
+    private final int stride;
+    private final Object lock = new Object();
+    private volatile Window[] windows;
+    private volatile int current = 0;
+
+    public HdrPercentiles(long highestTrackableValue, Percentile... percentiles) {
+        this(highestTrackableValue, DEFAULT_PRECISION_BITS, percentiles);
+    }
+
+    public HdrPercentiles(long highestTrackableValue, int precisionBits, Percentile... percentiles) {
+        if (highestTrackableValue < 1)
+            throw new IllegalArgumentException("The highest trackable value must be positive.");
+        if (precisionBits < 2 || precisionBits > 16)
+            throw new IllegalArgumentException("The precision must be between 2 and 16 bits.");
+        this.percentiles = percentiles;
+        this.highestTrackableValue = highestTrackableValue;
+        this.precisionBits = precisionBits;
+        this.buckets = bucketIndex(highestTrackableValue) + 1;
+        this.stripes = Integer.highestOneBit(Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES) * 2 - 1);
+        // each stripe holds its event count, which is only used for the event window, followed by its bucket counts
+        this.stride = (buckets + CACHE_LINE_LONGS) / CACHE_LINE_LONGS * CACHE_LINE_LONGS;
+    }
+
+    @Override
+    public List<NamedMeasurable> stats() {
+        List<NamedMeasurable> ms = new ArrayList<NamedMeasurable>(this.percentiles.length);
+        for (Percentile percentile : this.percentiles) {
+            final double pct = percentile.percentile();
+            ms.add(new NamedMeasurable(percentile.name(), new Measurable() {
+                public double measure(MetricConfig config, long now) {
+                    return value(config, now, pct / 100.0);
+                }
+            }));
+        }
+        return ms;
+    }
+
+    @Override
+    public void record(MetricConfig config, double value, long timeMs) {
+        Window[] windows = this.windows;
+        if (windows == null)
+            windows = init(config, timeMs);
+        Window window = windows[this.current];
+        if (window.isComplete(config, timeMs))
+            window = advance(config, timeMs);
+
+        long rounded = value > 0.0 ? Math.min(Math.round(value), highestTrackableValue) : 0L;
+        int base = (int) (Thread.currentThread().getId() & (stripes - 1)) * stride;
+        window.counts.incrementAndGet(base);
+        window.counts.incrementAndGet(base + 1 + bucketIndex(rounded));
+    }
+
+    /**
+     * Get the value at the given quantile of the values recorded in the current windows
+     *
+     * @param quantile The quantile, between 0.0 and 1.0
+     * @return The highest value that is counted in the same bucket as the value at the quantile, or NaN if no values
+     *         were recorded
+     */
+    public double value(MetricConfig config, long now, double quantile) {
+        Window[] windows = this.windows;
+        if (windows == null)
+            return Double.NaN;
+
+        long expireAge = config.samples() * config.timeWindowMs();
+        long[] counts = new long[buckets];
+        long total = 0;
+        for (Window window : windows) {
+            if (now - window.startMs >= expireAge)
+                continue;
+            for (int s = 0; s < stripes; s++) {
+                int base = s * stride;
+                for (int b = 0; b < buckets; b++)
+                    counts[b] += window.counts.get(base + 1 + b);
+            }
+        }
+        // the total is taken from the buckets read, not from the event counts, which may already count the values
+        // that are being recorded concurrently but are not in their buckets yet
+        for (long count : counts)
+            total += count;
+        if (total == 0)
+            return Double.NaN;
+
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long sum = 0;
+        for (int b = 0; b < buckets; b++) {
+            sum += counts[b];
+            if (sum >= rank)
+                return Math.min(highestEquivalentValue(b), highestTrackableValue);
+        }
+        return highestTrackableValue;
+    }
+
+    private Window[] init(MetricConfig config, long timeMs) {
+        synchronized (lock) {
+            if (this.windows == null) {
+                Window[] windows = new Window[Math.max(1, config.samples())];
+                for (int i = 0; i < windows.length; i++)
+                    windows[i] = new Window(stripes * stride, timeMs);
+                this.windows = windows;
+            }
+            return this.windows;
+        }
+    }
+
+    private Window advance(MetricConfig config, long timeMs) {
+        synchronized (lock) {
+            Window[] windows = this.windows;
+            Window window = windows[this.current];
+            // another thread may have started a new window in the meantime
+            if (!window.isComplete(config, timeMs))
+                return window;
+            int next = (this.current + 1) % windows.length;
+            window = windows[next];
+            window.reset(timeMs);
+            this.current = next;
+            return window;
+        }
+    }
+
+    /* the bucket of a value: the value itself below 2^precisionBits, and otherwise its precisionBits most significant
+     * bits, offset by 2^(precisionBits - 1) buckets for each bit that is dropped */
+    private int bucketIndex(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (precisionBits - 1));
+        return (int) (((long) shift << (precisionBits - 1)) + (value >>> shift));
+    }
+
+    private long highestEquivalentValue(int index) {
+        int shift = Math.max(0, (index >>> (precisionBits - 1)) - 1);
+        long bucket = index - ((long) shift << (precisionBits - 1));
+        return ((bucket + 1) << shift) - 1;
+    }
+
+    private final class Window {
+        private final AtomicLongArray counts;
+        private volatile long startMs;
+
+        private Window(int size, long startMs) {
+            this.counts = new AtomicLongArray(size);
+            this.startMs = startMs;
+        }
+
+        private boolean isComplete(MetricConfig config, long timeMs) {
+            if (timeMs - startMs >= config.timeWindowMs())
+                return true;
+            if (config.eventWindow() == Long.MAX_VALUE)
+                return false;
+            long count = 0;
+            for (int s = 0; s < stripes; s++)
+                count += counts.get(s * stride);
+            return count >= config.eventWindow();
+        }
+
+        private void reset(long timeMs) {
+            for (int i = 0; i < counts.length(); i++)
+                counts.set(i, 0L);
+            this.startMs = timeMs;
+        }
+    }
+
+}
@@ -59,7 +59,7 @@ public class Rate implements MeasurableStat {
     @Override
     public double measure(MetricConfig config, long now) {
         double value = stat.measure(config, now);
-        return value / convert(windowSize(config, now));
+        return value / convert(unit, windowSize(config, now));
     }
 
     public long windowSize(MetricConfig config, long now) {
@@ -89,7 +89,7 @@ public class Rate implements MeasurableStat {
         return totalElapsedTimeMs;
     }
 
-    private double convert(long timeMs) {
+    static double convert(TimeUnit unit, long timeMs) {
         switch (unit) {
             case NANOSECONDS:
                 return timeMs * 1000.0 * 1000.0;
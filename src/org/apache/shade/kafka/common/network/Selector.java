@@ -27,10 +27,10 @@ import org.apache.shade.kafka.common.metrics.Metrics;
 import org.apache.shade.kafka.common.metrics.Sensor;
 import org.apache.shade.kafka.common.utils.SystemTime;
 import org.apache.shade.kafka.common.utils.Time;
-import org.apache.shade.kafka.common.metrics.stats.Avg;
-import org.apache.shade.kafka.common.metrics.stats.Count;
-import org.apache.shade.kafka.common.metrics.stats.Max;
-import org.apache.shade.kafka.common.metrics.stats.Rate;
+import org.apache.shade.kafka.common.metrics.stats.ConcurrentAvg;
+import org.apache.shade.kafka.common.metrics.stats.ConcurrentCount;
+import org.apache.shade.kafka.common.metrics.stats.ConcurrentMax;
+import org.apache.shade.kafka.common.metrics.stats.ConcurrentRate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -569,45 +569,45 @@ public class Selector implements Selectable {
 
             this.connectionClosed = sensor("connections-closed:" + tagsSuffix.toString());
             MetricName metricName = new MetricName("connection-close-rate", metricGrpName, "Connections closed per second in the window.", metricTags);
-            this.connectionClosed.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate());
+            this.connectionClosed.add(metricName, new ConcurrentRate());
 
             this.connectionCreated = sensor("connections-created:" + tagsSuffix.toString());
             metricName = new MetricName("connection-creation-rate", metricGrpName, "New connections established per second in the window.", metricTags);
-            this.connectionCreated.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate());
+            this.connectionCreated.add(metricName, new ConcurrentRate());
 
             this.bytesTransferred = sensor("bytes-sent-received:" + tagsSuffix.toString());
             metricName = new MetricName("network-io-rate", metricGrpName, "The average number of network operations (reads or writes) on all connections per second.", metricTags);
-            bytesTransferred.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate(new org.apache.shade.kafka.common.metrics.stats.Count()));
+            bytesTransferred.add(metricName, new ConcurrentRate(new ConcurrentCount()));
 
             this.bytesSent = sensor("bytes-sent:" + tagsSuffix.toString(), bytesTransferred);
             metricName = new MetricName("outgoing-byte-rate", metricGrpName, "The average number of outgoing bytes sent per second to all servers.", metricTags);
-            this.bytesSent.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate());
+            this.bytesSent.add(metricName, new ConcurrentRate());
             metricName = new MetricName("request-rate", metricGrpName, "The average number of requests sent per second.", metricTags);
-            this.bytesSent.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate(new org.apache.shade.kafka.common.metrics.stats.Count()));
+            this.bytesSent.add(metricName, new ConcurrentRate(new ConcurrentCount()));
             metricName = new MetricName("request-size-avg", metricGrpName, "The average size of all requests in the window..", metricTags);
-            this.bytesSent.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Avg());
+            this.bytesSent.add(metricName, new ConcurrentAvg());
             metricName = new MetricName("request-size-max", metricGrpName, "The maximum size of any request sent in the window.", metricTags);
-            this.bytesSent.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Max());
+            this.bytesSent.add(metricName, new ConcurrentMax());
 
             this.bytesReceived = sensor("bytes-received:" + tagsSuffix.toString(), bytesTransferred);
             metricName = new MetricName("incoming-byte-rate", metricGrpName, "Bytes/second read off all sockets", metricTags);
-            this.bytesReceived.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate());
+            this.bytesReceived.add(metricName, new ConcurrentRate());
             metricName = new MetricName("response-rate", metricGrpName, "Responses received sent per second.", metricTags);
-            this.bytesReceived.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate(new org.apache.shade.kafka.common.metrics.stats.Count()));
+            this.bytesReceived.add(metricName, new ConcurrentRate(new ConcurrentCount()));
 
             this.selectTime = sensor("select-time:" + tagsSuffix.toString());
             metricName = new MetricName("select-rate", metricGrpName, "Number of times the I/O layer checked for new I/O to perform per second", metricTags);
-            this.selectTime.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate(new org.apache.shade.kafka.common.metrics.stats.Count()));
+            this.selectTime.add(metricName, new ConcurrentRate(new ConcurrentCount()));
             metricName = new MetricName("io-wait-time-ns-avg", metricGrpName, "The average length of time the I/O thread spent waiting for a socket ready for reads or writes in nanoseconds.", metricTags);
-            this.selectTime.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Avg());
+            this.selectTime.add(metricName, new ConcurrentAvg());
             metricName = new MetricName("io-wait-ratio", metricGrpName, "The fraction of time the I/O thread spent waiting.", metricTags);
-            this.selectTime.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate(TimeUnit.NANOSECONDS));
+            this.selectTime.add(metricName, new ConcurrentRate(TimeUnit.NANOSECONDS));
 
             this.ioTime = sensor("io-time:" + tagsSuffix.toString());
             metricName = new MetricName("io-time-ns-avg", metricGrpName, "The average length of time for I/O per select call in nanoseconds.", metricTags);
-            this.ioTime.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Avg());
+            this.ioTime.add(metricName, new ConcurrentAvg());
             metricName = new MetricName("io-ratio", metricGrpName, "The fraction of time the I/O thread spent doing I/O", metricTags);
-            this.ioTime.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate(TimeUnit.NANOSECONDS));
+            this.ioTime.add(metricName, new ConcurrentRate(TimeUnit.NANOSECONDS));
 
             metricName = new MetricName("connection-count", metricGrpName, "The current number of active connections.", metricTags);
             topLevelMetricNames.add(metricName);
@@ -638,27 +638,27 @@ public class Selector implements Selectable {
 
                     nodeRequest = sensor(nodeRequestName);
                     MetricName metricName = new MetricName("outgoing-byte-rate", metricGrpName, tags);
-                    nodeRequest.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate());
+                    nodeRequest.add(metricName, new ConcurrentRate());
                     metricName = new MetricName("request-rate", metricGrpName, "The average number of requests sent per second.", tags);
-                    nodeRequest.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate(new org.apache.shade.kafka.common.metrics.stats.Count()));
+                    nodeRequest.add(metricName, new ConcurrentRate(new ConcurrentCount()));
                     metricName = new MetricName("request-size-avg", metricGrpName, "The average size of all requests in the window..", tags);
-                    nodeRequest.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Avg());
+                    nodeRequest.add(metricName, new ConcurrentAvg());
                     metricName = new MetricName("request-size-max", metricGrpName, "The maximum size of any request sent in the window.", tags);
-                    nodeRequest.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Max());
+                    nodeRequest.add(metricName, new ConcurrentMax());
 
                     String nodeResponseName = "node-" + connectionId + ".bytes-received";
                     Sensor nodeResponse = sensor(nodeResponseName);
                     metricName = new MetricName("incoming-byte-rate", metricGrpName, tags);
-                    nodeResponse.add(metricName, new org.apache.shade.kafka.common.metrics.stats.Rate());
+                    nodeResponse.add(metricName, new ConcurrentRate());
                     metricName = new MetricName("response-rate", metricGrpName, "The average number of responses received per second.", tags);
-                    nodeResponse.add(metricName, new Rate(new Count()));
+                    nodeResponse.add(metricName, new ConcurrentRate(new ConcurrentCount()));
 
                     String nodeTimeName = "node-" + connectionId + ".latency";
                     Sensor nodeRequestTime = sensor(nodeTimeName);
                     metricName = new MetricName("request-latency-avg", metricGrpName, tags);
-                    nodeRequestTime.add(metricName, new Avg());
+                    nodeRequestTime.add(metricName, new ConcurrentAvg());
                     metricName = new MetricName("request-latency-max", metricGrpName, tags);
-                    nodeRequestTime.add(metricName, new Max());
+                    nodeRequestTime.add(metricName, new ConcurrentMax());
                 }
             }
         }
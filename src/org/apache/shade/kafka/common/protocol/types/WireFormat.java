@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.protocol.types;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.apache.shade.kafka.common.utils.Utils;
+
+/**
+ * Helpers for the typed request and response codecs that read and write the wire format directly, without going
+ * through a {@link Struct}. The encodings are the same as those of the corresponding {@link Type}s.
+ * <p>
+ * Integers are read and written with the plain {@link ByteBuffer} accessors, so only the variable length types have
+ * helpers here.
+ */
+public final class WireFormat {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private WireFormat() {
+    }
+
+    /**
+     * Read the size of an array, checking that the remaining buffer can hold at least one byte per element
+     */
+    public static int readArraySize(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        if (size < 0 || size > buffer.remaining())
+            throw new SchemaException("Error reading array of size " + size + ", only " + buffer.remaining() + " bytes available");
+        return size;
+    }
+
+    /**
+     * Read a string in the encoding of {@link Type#STRING}
+     */
+    public static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0 || length > buffer.remaining())
+            throw new SchemaException("Error reading string of length " + length + ", only " + buffer.remaining() + " bytes available");
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            value = new String(bytes, UTF8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Read a byte array in the encoding of {@link Type#BYTES}. The returned buffer is a view of the given buffer.
+     */
+    public static ByteBuffer readBytes(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        if (size < 0 || size > buffer.remaining())
+            throw new SchemaException("Error reading bytes of size " + size + ", only " + buffer.remaining() + " bytes available");
+        ByteBuffer value = buffer.slice();
+        value.limit(size);
+        buffer.position(buffer.position() + size);
+        return value;
+    }
+
+    /**
+     * The serialized size of a string in the encoding of {@link Type#STRING}
+     */
+    public static int sizeOfString(String value) {
+        return 2 + Utils.utf8Length(value);
+    }
+
+    /**
+     * Write a string in the encoding of {@link Type#STRING}
+     */
+    public static void writeString(ByteBuffer buffer, String value) {
+        Type.STRING.write(buffer, value);
+    }
+
+    /**
+     * The serialized size of a byte array in the encoding of {@link Type#BYTES}
+     */
+    public static int sizeOfBytes(ByteBuffer value) {
+        return 4 + value.remaining();
+    }
+
+    /**
+     * Write the remaining bytes of the given buffer in the encoding of {@link Type#BYTES}, without changing its
+     * position
+     */
+    public static void writeBytes(ByteBuffer buffer, ByteBuffer value) {
+        buffer.putInt(value.remaining());
+        buffer.put(value.duplicate());
+    }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.shade.kafka.common.record;
+
+/**
+ * Base class for codecs that estimates the compression rate as a moving average of the observed rates.
+ */
+public abstract class AbstractCompressionCodec implements CompressionCodec {
+
+    private static final float COMPRESSION_RATE_DAMPING_FACTOR = 0.9f;
+
+    private final CompressionType type;
+    private final int defaultBufferSize;
+
+    // updated without synchronization, since concurrent updates only lose an observation
+    private volatile float estimatedCompressionRate;
+
+    protected AbstractCompressionCodec(CompressionType type, int defaultBufferSize, float initialCompressionRate) {
+        if (defaultBufferSize <= 0)
+            throw new IllegalArgumentException("The default buffer size must be positive: " + defaultBufferSize);
+        this.type = type;
+        this.defaultBufferSize = defaultBufferSize;
+        this.estimatedCompressionRate = initialCompressionRate;
+    }
+
+    @Override
+    public CompressionType type() {
+        return type;
+    }
+
+    @Override
+    public int defaultBufferSize() {
+        return defaultBufferSize;
+    }
+
+    @Override
+    public float estimatedCompressionRate() {
+        return estimatedCompressionRate;
+    }
+
+    @Override
+    public void updateCompressionRate(float observedRate) {
+        estimatedCompressionRate = estimatedCompressionRate * COMPRESSION_RATE_DAMPING_FACTOR +
+            observedRate * (1 - COMPRESSION_RATE_DAMPING_FACTOR);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(type = " + type.name + ", defaultBufferSize = " + defaultBufferSize + ")";
+    }
+}
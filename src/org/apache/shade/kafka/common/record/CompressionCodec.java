@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.shade.kafka.common.record;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The implementation of a {@link CompressionType}.
+ *
+ * The compression type of a message set is part of the message format, so a codec cannot introduce a new compression
+ * type; it provides the implementation of an existing one, e.g. with a faster or differently tuned library that
+ * produces compatible output. Codecs are looked up in {@link CompressionCodecs}, where they can be registered
+ * programmatically or as a {@link java.util.ServiceLoader service} to replace the built-in codec of their type.
+ */
+public interface CompressionCodec {
+
+    /**
+     * The compression type implemented by this codec
+     */
+    CompressionType type();
+
+    /**
+     * Wrap the given stream, so that everything written to the returned stream is compressed into it
+     *
+     * @param out The stream to write the compressed data to
+     * @param bufferSize The size of the buffer used for compression, for codecs that support it
+     */
+    OutputStream wrapForOutput(OutputStream out, int bufferSize) throws IOException;
+
+    /**
+     * Wrap the given stream of compressed data, so that the returned stream decompresses it
+     */
+    InputStream wrapForInput(InputStream in) throws IOException;
+
+    /**
+     * The buffer size to use for compression if none is given explicitly
+     */
+    int defaultBufferSize();
+
+    /**
+     * The estimated ratio of compressed to uncompressed size, used to estimate the size of message sets while they
+     * are written
+     */
+    float estimatedCompressionRate();
+
+    /**
+     * Update the estimated compression rate with the rate observed for a completed message set
+     */
+    void updateCompressionRate(float observedRate);
+}
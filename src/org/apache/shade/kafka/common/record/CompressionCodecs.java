@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.shade.kafka.common.record;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.shade.kafka.common.KafkaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The registry of the {@link CompressionCodec codecs} used for each {@link CompressionType}.
+ *
+ * The built-in codecs can be replaced with {@link #register(CompressionCodec)}, or by codecs that are available
+ * as a {@link ServiceLoader service} of {@link CompressionCodec} when this class is initialized.
+ */
+public final class CompressionCodecs {
+
+    private static final Logger log = LoggerFactory.getLogger(CompressionCodecs.class);
+
+    static private final int COMPRESSION_DEFAULT_BUFFER_SIZE = 1024;
+
+    // dynamically load the snappy and lz4 classes to avoid runtime dependency if we are not using compression
+    // caching constructors to avoid invoking of Class.forName method for each batch
+    private static MemoizingConstructorSupplier snappyOutputStreamSupplier = new MemoizingConstructorSupplier(new ConstructorSupplier() {
+        @Override
+        public Constructor get() throws ClassNotFoundException, NoSuchMethodException {
+            return Class.forName("org.xerial.snappy.SnappyOutputStream")
+                .getConstructor(OutputStream.class, Integer.TYPE);
+        }
+    });
+
+    private static MemoizingConstructorSupplier lz4OutputStreamSupplier = new MemoizingConstructorSupplier(new ConstructorSupplier() {
+        @Override
+        public Constructor get() throws ClassNotFoundException, NoSuchMethodException {
+            return Class.forName("org.apache.shade.kafka.common.record.KafkaLZ4BlockOutputStream")
+                .getConstructor(OutputStream.class);
+        }
+    });
+
+    private static MemoizingConstructorSupplier snappyInputStreamSupplier = new MemoizingConstructorSupplier(new ConstructorSupplier() {
+        @Override
+        public Constructor get() throws ClassNotFoundException, NoSuchMethodException {
+            return Class.forName("org.xerial.snappy.SnappyInputStream")
+                .getConstructor(InputStream.class);
+        }
+    });
+
+    private static MemoizingConstructorSupplier lz4InputStreamSupplier = new MemoizingConstructorSupplier(new ConstructorSupplier() {
+        @Override
+        public Constructor get() throws ClassNotFoundException, NoSuchMethodException {
+            return Class.forName("org.apache.shade.kafka.common.record.KafkaLZ4BlockInputStream")
+                .getConstructor(InputStream.class);
+        }
+    });
+
+    // the codecs by compression type id; replaced as a whole when a codec is registered
+    private static volatile CompressionCodec[] codecs;
+
+    static {
+        int maxTypeId = -1;
+        for (CompressionType type : CompressionType.values())
+            maxTypeId = Math.max(maxTypeId, type.id);
+        codecs = new CompressionCodec[maxTypeId + 1];
+
+        register(new NoCompressionCodec());
+        register(new GzipCodec(COMPRESSION_DEFAULT_BUFFER_SIZE));
+        register(new SnappyCodec(COMPRESSION_DEFAULT_BUFFER_SIZE));
+        register(new LZ4Codec());
+
+        Iterator<CompressionCodec> services = ServiceLoader.load(CompressionCodec.class, CompressionCodec.class.getClassLoader()).iterator();
+        while (true) {
+            try {
+                if (!services.hasNext())
+                    break;
+                CompressionCodec codec = services.next();
+                log.info("Using compression codec {} for compression type {}", codec, codec.type().name);
+                register(codec);
+            } catch (ServiceConfigurationError e) {
+                log.warn("Failed to load a compression codec service", e);
+            }
+        }
+    }
+
+    private CompressionCodecs() {
+    }
+
+    /**
+     * Get the codec for the given compression type
+     */
+    public static CompressionCodec codec(CompressionType type) {
+        return codecs[type.id];
+    }
+
+    /**
+     * Register a codec, replacing the codec that was previously used for its compression type. Message sets that are
+     * already being written or read keep using the previous codec
+     */
+    public static synchronized void register(CompressionCodec codec) {
+        CompressionCodec[] newCodecs = Arrays.copyOf(codecs, codecs.length);
+        newCodecs[codec.type().id] = codec;
+        codecs = newCodecs;
+    }
+
+    // ------------------------------------------------------------------------------------------------------------------
+    // built-in codecs
+    // ------------------------------------------------------------------------------------------------------------------
+
+    private static final class NoCompressionCodec extends AbstractCompressionCodec {
+        NoCompressionCodec() {
+            super(CompressionType.NONE, COMPRESSION_DEFAULT_BUFFER_SIZE, CompressionType.NONE.rate);
+        }
+
+        @Override
+        public OutputStream wrapForOutput(OutputStream out, int bufferSize) {
+            return out;
+        }
+
+        @Override
+        public InputStream wrapForInput(InputStream in) {
+            return in;
+        }
+
+        @Override
+        public void updateCompressionRate(float observedRate) {
+            // the size of uncompressed message sets is known exactly
+        }
+    }
+
+    /**
+     * The GZIP codec of the JDK, with a configurable default buffer size
+     */
+    public static final class GzipCodec extends AbstractCompressionCodec {
+        public GzipCodec(int defaultBufferSize) {
+            super(CompressionType.GZIP, defaultBufferSize, CompressionType.GZIP.rate);
+        }
+
+        @Override
+        public OutputStream wrapForOutput(OutputStream out, int bufferSize) throws IOException {
+            return new GZIPOutputStream(out, bufferSize);
+        }
+
+        @Override
+        public InputStream wrapForInput(InputStream in) throws IOException {
+            return new GZIPInputStream(in);
+        }
+    }
+
+    /**
+     * The snappy-java codec, with a configurable default block size
+     */
+    public static final class SnappyCodec extends AbstractCompressionCodec {
+        public SnappyCodec(int defaultBufferSize) {
+            super(CompressionType.SNAPPY, defaultBufferSize, CompressionType.SNAPPY.rate);
+        }
+
+        @Override
+        public OutputStream wrapForOutput(OutputStream out, int bufferSize) {
+            try {
+                return (OutputStream) snappyOutputStreamSupplier.get().newInstance(out, bufferSize);
+            } catch (Exception e) {
+                throw new KafkaException(e);
+            }
+        }
+
+        @Override
+        public InputStream wrapForInput(InputStream in) {
+            try {
+                return (InputStream) snappyInputStreamSupplier.get().newInstance(in);
+            } catch (Exception e) {
+                throw new KafkaException(e);
+            }
+        }
+    }
+
+    private static final class LZ4Codec extends AbstractCompressionCodec {
+        LZ4Codec() {
+            super(CompressionType.LZ4, COMPRESSION_DEFAULT_BUFFER_SIZE, CompressionType.LZ4.rate);
+        }
+
+        @Override
+        public OutputStream wrapForOutput(OutputStream out, int bufferSize) {
+            // the block size is part of the frame format, so the buffer size does not apply
+            try {
+                return (OutputStream) lz4OutputStreamSupplier.get().newInstance(out);
+            } catch (Exception e) {
+                throw new KafkaException(e);
+            }
+        }
+
+        @Override
+        public InputStream wrapForInput(InputStream in) {
+            try {
+                return (InputStream) lz4InputStreamSupplier.get().newInstance(in);
+            } catch (Exception e) {
+                throw new KafkaException(e);
+            }
+        }
+    }
+
+    private interface ConstructorSupplier {
+        Constructor get() throws ClassNotFoundException, NoSuchMethodException;
+    }
+
+    // this code is based on Guava's @see{com.google.common.base.Suppliers.MemoizingSupplier}
+    private static class MemoizingConstructorSupplier {
+        final ConstructorSupplier delegate;
+        transient volatile boolean initialized;
+        transient Constructor value;
+
+        public MemoizingConstructorSupplier(ConstructorSupplier delegate) {
+            this.delegate = delegate;
+        }
+
+        public Constructor get() throws NoSuchMethodException, ClassNotFoundException {
+            if (!initialized) {
+                synchronized (this) {
+                    if (!initialized) {
+                        Constructor constructor = delegate.get();
+                        value = constructor;
+                        initialized = true;
+                        return constructor;
+                    }
+                }
+            }
+            return value;
+        }
+    }
+}
@@ -16,72 +16,20 @@
  */
 package org.apache.shade.kafka.common.record;
 
-import java.lang.reflect.Constructor;
 import org.apache.shade.kafka.common.KafkaException;
 import org.apache.shade.kafka.common.utils.Utils;
 
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class Compressor {
 
-    static private final float COMPRESSION_RATE_DAMPING_FACTOR = 0.9f;
     static private final float COMPRESSION_RATE_ESTIMATION_FACTOR = 1.05f;
-    static private final int COMPRESSION_DEFAULT_BUFFER_SIZE = 1024;
-
-    private static final float[] TYPE_TO_RATE;
-
-    static {
-        int maxTypeId = -1;
-        for (CompressionType type : CompressionType.values())
-            maxTypeId = Math.max(maxTypeId, type.id);
-        TYPE_TO_RATE = new float[maxTypeId + 1];
-        for (CompressionType type : CompressionType.values()) {
-            TYPE_TO_RATE[type.id] = type.rate;
-        }
-    }
-
-    // dynamically load the snappy and lz4 classes to avoid runtime dependency if we are not using compression
-    // caching constructors to avoid invoking of Class.forName method for each batch
-    private static MemoizingConstructorSupplier snappyOutputStreamSupplier = new MemoizingConstructorSupplier(new ConstructorSupplier() {
-        @Override
-        public Constructor get() throws ClassNotFoundException, NoSuchMethodException {
-            return Class.forName("org.xerial.snappy.SnappyOutputStream")
-                .getConstructor(OutputStream.class, Integer.TYPE);
-        }
-    });
-
-    private static MemoizingConstructorSupplier lz4OutputStreamSupplier = new MemoizingConstructorSupplier(new ConstructorSupplier() {
-        @Override
-        public Constructor get() throws ClassNotFoundException, NoSuchMethodException {
-            return Class.forName("org.apache.shade.kafka.common.record.KafkaLZ4BlockOutputStream")
-                .getConstructor(OutputStream.class);
-        }
-    });
-
-    private static MemoizingConstructorSupplier snappyInputStreamSupplier = new MemoizingConstructorSupplier(new ConstructorSupplier() {
-        @Override
-        public Constructor get() throws ClassNotFoundException, NoSuchMethodException {
-            return Class.forName("org.xerial.snappy.SnappyInputStream")
-                .getConstructor(InputStream.class);
-        }
-    });
-
-    private static MemoizingConstructorSupplier lz4InputStreamSupplier = new MemoizingConstructorSupplier(new ConstructorSupplier() {
-        @Override
-        public Constructor get() throws ClassNotFoundException, NoSuchMethodException {
-            return Class.forName("org.apache.shade.kafka.common.record.KafkaLZ4BlockInputStream")
-                .getConstructor(InputStream.class);
-        }
-    });
 
     private final CompressionType type;
+    private final CompressionCodec codec;
     private final DataOutputStream appendStream;
     private final ByteBufferOutputStream bufferStream;
     private final int initPos;
@@ -89,10 +37,25 @@ public class Compressor {
     public long writtenUncompressed;
     public long numRecords;
     public float compressionRate;
+    private final float estimatedCompressionRate;
 
     public Compressor(ByteBuffer buffer, CompressionType type, int blockSize) {
+        this(buffer, type, CompressionCodecs.codec(type), blockSize, CompressionCodecs.codec(type).estimatedCompressionRate());
+    }
+
+    public Compressor(ByteBuffer buffer, CompressionType type) {
+        this(buffer, type, CompressionCodecs.codec(type).estimatedCompressionRate());
+    }
+
+    public Compressor(ByteBuffer buffer, CompressionType type, float estimatedCompressionRate) {
+        this(buffer, type, CompressionCodecs.codec(type), CompressionCodecs.codec(type).defaultBufferSize(), estimatedCompressionRate);
+    }
+
+    private Compressor(ByteBuffer buffer, CompressionType type, CompressionCodec codec, int blockSize, float estimatedCompressionRate) {
         this.type = type;
+        this.codec = codec;
         this.initPos = buffer.position();
+        this.estimatedCompressionRate = estimatedCompressionRate;
 
         this.numRecords = 0;
         this.writtenUncompressed = 0;
@@ -106,11 +69,7 @@ public class Compressor {
 
         // create the stream
         bufferStream = new ByteBufferOutputStream(buffer);
-        appendStream = wrapForOutput(bufferStream, type, blockSize);
-    }
-
-    public Compressor(ByteBuffer buffer, CompressionType type) {
-        this(buffer, type, COMPRESSION_DEFAULT_BUFFER_SIZE);
+        appendStream = wrapForOutput(bufferStream, codec, blockSize);
     }
 
     public ByteBuffer buffer() {
@@ -150,8 +109,7 @@ public class Compressor {
 
             // update the compression ratio
             this.compressionRate = (float) buffer.position() / this.writtenUncompressed;
-            TYPE_TO_RATE[type.id] = TYPE_TO_RATE[type.id] * COMPRESSION_RATE_DAMPING_FACTOR +
-                compressionRate * (1 - COMPRESSION_RATE_DAMPING_FACTOR);
+            codec.updateCompressionRate(compressionRate);
         }
     }
 
@@ -228,36 +186,34 @@ public class Compressor {
             return bufferStream.buffer().position();
         } else {
             // estimate the written bytes to the underlying byte buffer based on uncompressed written bytes
-            return (long) (writtenUncompressed * TYPE_TO_RATE[type.id] * COMPRESSION_RATE_ESTIMATION_FACTOR);
+            return (long) (writtenUncompressed * estimatedCompressionRate * COMPRESSION_RATE_ESTIMATION_FACTOR);
         }
     }
 
+    /**
+     * Estimate the size of the buffer that the given number of uncompressed bytes are written to
+     */
+    public int estimatedSizeInBytes(int uncompressedBytes) {
+        return estimateSizeInBytes(type, estimatedCompressionRate, uncompressedBytes);
+    }
+
+    public static int estimateSizeInBytes(CompressionType type, float estimatedCompressionRate, int uncompressedBytes) {
+        if (type == CompressionType.NONE)
+            return uncompressedBytes;
+        // the shallow message of a compressed message set is not compressed
+        return Records.LOG_OVERHEAD + Record.RECORD_OVERHEAD
+            + (int) (uncompressedBytes * estimatedCompressionRate * COMPRESSION_RATE_ESTIMATION_FACTOR);
+    }
+
     // the following two functions also need to be public since they are used in MemoryRecords.iteration
 
     static public DataOutputStream wrapForOutput(ByteBufferOutputStream buffer, CompressionType type, int bufferSize) {
+        return wrapForOutput(buffer, CompressionCodecs.codec(type), bufferSize);
+    }
+
+    static private DataOutputStream wrapForOutput(ByteBufferOutputStream buffer, CompressionCodec codec, int bufferSize) {
         try {
-            switch (type) {
-                case NONE:
-                    return new DataOutputStream(buffer);
-                case GZIP:
-                    return new DataOutputStream(new GZIPOutputStream(buffer, bufferSize));
-                case SNAPPY:
-                    try {
-                        OutputStream stream = (OutputStream) snappyOutputStreamSupplier.get().newInstance(buffer, bufferSize);
-                        return new DataOutputStream(stream);
-                    } catch (Exception e) {
-                        throw new KafkaException(e);
-                    }
-                case LZ4:
-                    try {
-                        OutputStream stream = (OutputStream) lz4OutputStreamSupplier.get().newInstance(buffer);
-                        return new DataOutputStream(stream);
-                    } catch (Exception e) {
-                        throw new KafkaException(e);
-                    }
-                default:
-                    throw new IllegalArgumentException("Unknown compression type: " + type);
-            }
+            return new DataOutputStream(codec.wrapForOutput(buffer, bufferSize));
         } catch (IOException e) {
             throw new KafkaException(e);
         }
@@ -265,59 +221,9 @@ public class Compressor {
 
     static public DataInputStream wrapForInput(ByteBufferInputStream buffer, CompressionType type) {
         try {
-            switch (type) {
-                case NONE:
-                    return new DataInputStream(buffer);
-                case GZIP:
-                    return new DataInputStream(new GZIPInputStream(buffer));
-                case SNAPPY:
-                    try {
-                        InputStream stream = (InputStream) snappyInputStreamSupplier.get().newInstance(buffer);
-                        return new DataInputStream(stream);
-                    } catch (Exception e) {
-                        throw new KafkaException(e);
-                    }
-                case LZ4:
-                    try {
-                        InputStream stream = (InputStream) lz4InputStreamSupplier.get().newInstance(buffer);
-                        return new DataInputStream(stream);
-                    } catch (Exception e) {
-                        throw new KafkaException(e);
-                    }
-                default:
-                    throw new IllegalArgumentException("Unknown compression type: " + type);
-            }
+            return new DataInputStream(CompressionCodecs.codec(type).wrapForInput(buffer));
         } catch (IOException e) {
             throw new KafkaException(e);
         }
     }
-
-    private interface ConstructorSupplier {
-        Constructor get() throws ClassNotFoundException, NoSuchMethodException;
-    }
-
-    // this code is based on Guava's @see{com.google.common.base.Suppliers.MemoizingSupplier}
-    private static class MemoizingConstructorSupplier {
-        final ConstructorSupplier delegate;
-        transient volatile boolean initialized;
-        transient Constructor value;
-
-        public MemoizingConstructorSupplier(ConstructorSupplier delegate) {
-            this.delegate = delegate;
-        }
-
-        public Constructor get() throws NoSuchMethodException, ClassNotFoundException {
-            if (!initialized) {
-                synchronized (this) {
-                    if (!initialized) {
-                        Constructor constructor = delegate.get();
-                        value = constructor;
-                        initialized = true;
-                        return constructor;
-                    }
-                }
-            }
-            return value;
-        }
-    }
 }
@@ -42,11 +42,33 @@ public final class KafkaLZ4BlockInputStream extends FilterInputStream {
     public static final String BLOCK_HASH_MISMATCH = "Block checksum mismatch";
     public static final String DESCRIPTOR_HASH_MISMATCH = "Stream frame descriptor corrupted";
 
+    /**
+     * The decompressor and checksum are stateless and shared by all streams. The Java decompressor avoids the JNI
+     * overhead for the typically small blocks, and uses sun.misc.Unsafe if available
+     */
+    private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestJavaInstance().safeDecompressor();
+    private static final XXHash32 CHECKSUM = XXHashFactory.fastestInstance().hash32();
+
+    /**
+     * The largest block size whose buffers are cached, which is the block size that the Kafka producer writes. The
+     * cache is kept for the lifetime of the thread, so the buffers of larger blocks, up to 4 MB each, are not
+     * retained by pooled threads
+     */
+    static final int MAX_CACHED_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The buffers of the last stream that was finished on this thread, which are reused by the next stream on this
+     * thread instead of allocating new ones. Each thread retains at most two buffers of
+     * {@link #MAX_CACHED_BLOCK_SIZE} bytes. A stream that is not read until its end does not return its buffers
+     */
+    private static final ThreadLocal<BlockBuffers> CACHED_BUFFERS = new ThreadLocal<>();
+
     private final LZ4SafeDecompressor decompressor;
     private final XXHash32 checksum;
-    private final byte[] buffer;
-    private final byte[] compressedBuffer;
     private final int maxBlockSize;
+    private BlockBuffers blockBuffers;
+    private byte[] buffer;
+    private byte[] compressedBuffer;
     private KafkaLZ4BlockOutputStream.FLG flg;
     private KafkaLZ4BlockOutputStream.BD bd;
     private int bufferOffset;
@@ -61,12 +83,14 @@ public final class KafkaLZ4BlockInputStream extends FilterInputStream {
      */
     public KafkaLZ4BlockInputStream(InputStream in) throws IOException {
         super(in);
-        decompressor = LZ4Factory.fastestInstance().safeDecompressor();
-        checksum = XXHashFactory.fastestInstance().hash32();
+        decompressor = DECOMPRESSOR;
+        checksum = CHECKSUM;
+        blockBuffers = BlockBuffers.acquire();
         readHeader();
         maxBlockSize = bd.getBlockMaximumSize();
-        buffer = new byte[maxBlockSize];
-        compressedBuffer = new byte[maxBlockSize];
+        blockBuffers.ensureCapacity(maxBlockSize);
+        buffer = blockBuffers.buffer;
+        compressedBuffer = blockBuffers.compressedBuffer;
         bufferOffset = 0;
         bufferSize = 0;
         finished = false;
@@ -78,7 +102,7 @@ public final class KafkaLZ4BlockInputStream extends FilterInputStream {
      * @throws IOException
      */
     private void readHeader() throws IOException {
-        byte[] header = new byte[KafkaLZ4BlockOutputStream.LZ4_MAX_HEADER_LENGTH];
+        byte[] header = blockBuffers.header;
 
         // read first 6 bytes into buffer to check magic and FLG/BD descriptor flags
         bufferOffset = 6;
@@ -104,50 +128,61 @@ public final class KafkaLZ4BlockInputStream extends FilterInputStream {
 
     /**
      * Decompresses (if necessary) buffered data, optionally computes and validates a XXHash32 checksum, and writes the
-     * result to a buffer.
+     * result to the given target array, which must have room for {@link #maxBlockSize} bytes. If the target is the
+     * internal buffer, the buffer is reset to hold the block.
      * 
+     * @return the number of bytes written to the target
      * @throws IOException
      */
-    private void readBlock() throws IOException {
+    private int readBlock(byte[] target, int targetOffset) throws IOException {
         int blockSize = Utils.readUnsignedIntLE(in);
 
         // Check for EndMark
         if (blockSize == 0) {
             finished = true;
             // TODO implement content checksum, update flg.validate()
-            return;
-        } else if (blockSize > maxBlockSize) {
-            throw new IOException(String.format("Block size %s exceeded max: %s", blockSize, maxBlockSize));
+            releaseBuffers();
+            return 0;
         }
 
         boolean compressed = (blockSize & KafkaLZ4BlockOutputStream.LZ4_FRAME_INCOMPRESSIBLE_MASK) == 0;
         byte[] bufferToRead;
+        int bufferToReadOffset;
         if (compressed) {
             bufferToRead = compressedBuffer;
+            bufferToReadOffset = 0;
         } else {
             blockSize &= ~KafkaLZ4BlockOutputStream.LZ4_FRAME_INCOMPRESSIBLE_MASK;
-            bufferToRead = buffer;
-            bufferSize = blockSize;
+            bufferToRead = target;
+            bufferToReadOffset = targetOffset;
+        }
+        if (blockSize > maxBlockSize) {
+            throw new IOException(String.format("Block size %s exceeded max: %s", blockSize, maxBlockSize));
         }
 
-        if (in.read(bufferToRead, 0, blockSize) != blockSize) {
+        if (in.read(bufferToRead, bufferToReadOffset, blockSize) != blockSize) {
             throw new IOException(PREMATURE_EOS);
         }
 
         // verify checksum
-        if (flg.isBlockChecksumSet() && Utils.readUnsignedIntLE(in) != checksum.hash(bufferToRead, 0, blockSize, 0)) {
+        if (flg.isBlockChecksumSet() && Utils.readUnsignedIntLE(in) != checksum.hash(bufferToRead, bufferToReadOffset, blockSize, 0)) {
             throw new IOException(BLOCK_HASH_MISMATCH);
         }
 
+        int size = blockSize;
         if (compressed) {
             try {
-                bufferSize = decompressor.decompress(compressedBuffer, 0, blockSize, buffer, 0, maxBlockSize);
+                size = decompressor.decompress(compressedBuffer, 0, blockSize, target, targetOffset, maxBlockSize);
             } catch (LZ4Exception e) {
                 throw new IOException(e);
             }
         }
 
-        bufferOffset = 0;
+        if (target == buffer) {
+            bufferOffset = 0;
+            bufferSize = size;
+        }
+        return size;
     }
 
     @Override
@@ -156,7 +191,7 @@ public final class KafkaLZ4BlockInputStream extends FilterInputStream {
             return -1;
         }
         if (available() == 0) {
-            readBlock();
+            readBlock(buffer, 0);
         }
         if (finished) {
             return -1;
@@ -173,7 +208,12 @@ public final class KafkaLZ4BlockInputStream extends FilterInputStream {
             return -1;
         }
         if (available() == 0) {
-            readBlock();
+            if (len >= maxBlockSize) {
+                // the whole block fits, so it is decompressed directly into the target
+                int read = readBlock(b, off);
+                return finished ? -1 : read;
+            }
+            readBlock(buffer, 0);
         }
         if (finished) {
             return -1;
@@ -190,7 +230,7 @@ public final class KafkaLZ4BlockInputStream extends FilterInputStream {
             return 0;
         }
         if (available() == 0) {
-            readBlock();
+            readBlock(buffer, 0);
         }
         if (finished) {
             return 0;
@@ -207,6 +247,10 @@ public final class KafkaLZ4BlockInputStream extends FilterInputStream {
 
     @Override
     public void close() throws IOException {
+        if (!finished) {
+            finished = true;
+            releaseBuffers();
+        }
         in.close();
     }
 
@@ -225,4 +269,48 @@ public final class KafkaLZ4BlockInputStream extends FilterInputStream {
         return false;
     }
 
+    /**
+     * Returns the buffers of this stream for reuse, once the stream does not need them anymore
+     */
+    private void releaseBuffers() {
+        BlockBuffers.release(blockBuffers);
+        blockBuffers = null;
+        buffer = null;
+        compressedBuffer = null;
+        bufferOffset = 0;
+        bufferSize = 0;
+    }
+
+    /**
+     * The header and block buffers of a stream, which are cached per thread
+     */
+    private static final class BlockBuffers {
+        private final byte[] header = new byte[KafkaLZ4BlockOutputStream.LZ4_MAX_HEADER_LENGTH];
+        private byte[] buffer = new byte[0];
+        private byte[] compressedBuffer = new byte[0];
+
+        static BlockBuffers acquire() {
+            BlockBuffers cached = CACHED_BUFFERS.get();
+            if (cached == null)
+                return new BlockBuffers();
+            CACHED_BUFFERS.set(null);
+            return cached;
+        }
+
+        static void release(BlockBuffers buffers) {
+            if (buffers.buffer.length > MAX_CACHED_BLOCK_SIZE)
+                return;
+            // keep the larger buffers, if another stream on this thread returned its buffers in the meantime
+            BlockBuffers cached = CACHED_BUFFERS.get();
+            if (cached == null || cached.buffer.length < buffers.buffer.length)
+                CACHED_BUFFERS.set(buffers);
+        }
+
+        void ensureCapacity(int maxBlockSize) {
+            if (buffer.length < maxBlockSize) {
+                buffer = new byte[maxBlockSize];
+                compressedBuffer = new byte[maxBlockSize];
+            }
+        }
+    }
 }
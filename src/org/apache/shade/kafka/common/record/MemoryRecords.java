@@ -20,6 +20,7 @@ import java.util.Iterator;
 
 import org.apache.shade.kafka.common.KafkaException;
 import org.apache.shade.kafka.common.utils.AbstractIterator;
+import org.apache.shade.kafka.common.utils.Utils;
 
 /**
  * A {@link Records} implementation backed by a ByteBuffer.
@@ -45,12 +46,16 @@ public class MemoryRecords implements Records {
 
     // Construct a writable memory records
     private MemoryRecords(ByteBuffer buffer, org.apache.shade.kafka.common.record.CompressionType type, boolean writable, int writeLimit) {
+        this(buffer, type, writable, writeLimit, CompressionCodecs.codec(type).estimatedCompressionRate());
+    }
+
+    private MemoryRecords(ByteBuffer buffer, org.apache.shade.kafka.common.record.CompressionType type, boolean writable, int writeLimit, float estimatedCompressionRate) {
         this.writable = writable;
         this.writeLimit = writeLimit;
         this.initialCapacity = buffer.capacity();
         if (this.writable) {
             this.buffer = null;
-            this.compressor = new org.apache.shade.kafka.common.record.Compressor(buffer, type);
+            this.compressor = new org.apache.shade.kafka.common.record.Compressor(buffer, type, estimatedCompressionRate);
         } else {
             this.buffer = buffer;
             this.compressor = null;
@@ -61,6 +66,10 @@ public class MemoryRecords implements Records {
         return new MemoryRecords(buffer, type, true, writeLimit);
     }
 
+    public static MemoryRecords emptyRecords(ByteBuffer buffer, org.apache.shade.kafka.common.record.CompressionType type, int writeLimit, float estimatedCompressionRate) {
+        return new MemoryRecords(buffer, type, true, writeLimit, estimatedCompressionRate);
+    }
+
     public static MemoryRecords emptyRecords(ByteBuffer buffer, org.apache.shade.kafka.common.record.CompressionType type) {
         // use the buffer capacity as the default write limit
         return emptyRecords(buffer, type, buffer.capacity());
@@ -113,7 +122,7 @@ public class MemoryRecords implements Records {
      */
     public boolean hasRoomFor(byte[] key, byte[] value) {
         return this.writable && this.compressor.numRecordsWritten() == 0 ?
-            this.initialCapacity >= Records.LOG_OVERHEAD + Record.recordSize(key, value) :
+            this.initialCapacity >= this.compressor.estimatedSizeInBytes(Records.LOG_OVERHEAD + Record.recordSize(key, value)) :
             this.writeLimit >= this.compressor.estimatedBytesWritten() + Records.LOG_OVERHEAD + Record.recordSize(key, value);
     }
 
@@ -177,14 +186,75 @@ public class MemoryRecords implements Records {
         return buffer.duplicate();
     }
 
+    /**
+     * Check whether the buffer holds at least one complete log entry, without parsing it. A fetch returns only a
+     * partial entry if the first entry is larger than the fetch size.
+     */
+    public boolean hasCompleteEntry() {
+        if (writable)
+            throw new IllegalStateException("The memory records must not be writable any more before reading them");
+
+        int position = buffer.position();
+        int remaining = buffer.limit() - position;
+        if (remaining < Records.LOG_OVERHEAD)
+            return false;
+        int size = buffer.getInt(position + Records.OFFSET_LENGTH);
+        return size >= 0 && size <= remaining - Records.LOG_OVERHEAD;
+    }
+
+    /**
+     * Validate the checksums of all records in a single pass over the buffer, without materializing the records, and
+     * throw an InvalidRecordException for the first corrupt one.
+     *
+     * Compressed message sets are validated through the checksum of their wrapper record, which covers the compressed
+     * inner records. A partial record at the end of the buffer, as it may be returned by a fetch, is not validated.
+     */
+    public void ensureValid() {
+        if (writable)
+            throw new IllegalStateException("The memory records must not be writable any more before validating them");
+
+        int position = buffer.position();
+        int limit = buffer.limit();
+        while (limit - position >= Records.LOG_OVERHEAD) {
+            long offset = buffer.getLong(position);
+            int size = buffer.getInt(position + Records.OFFSET_LENGTH);
+            if (size < 0)
+                throw new IllegalStateException("Record with size " + size);
+
+            int recordPosition = position + Records.LOG_OVERHEAD;
+            if (size > limit - recordPosition)
+                break;
+            if (size < Record.RECORD_OVERHEAD)
+                throw new InvalidRecordException("Record at offset " + offset + " is corrupt (size = " + size + ")");
+
+            long storedCrc = Utils.readUnsignedInt(buffer, recordPosition + Record.CRC_OFFSET);
+            long computedCrc = Record.computeChecksum(buffer, recordPosition + Record.MAGIC_OFFSET, size - Record.MAGIC_OFFSET);
+            if (storedCrc != computedCrc)
+                throw new InvalidRecordException("Record at offset " + offset + " is corrupt (stored crc = " + storedCrc
+                                                 + ", computed crc = "
+                                                 + computedCrc
+                                                 + ")");
+
+            position = recordPosition + size;
+        }
+    }
+
     @Override
     public Iterator<org.apache.shade.kafka.common.record.LogEntry> iterator() {
+        return iterator(0L);
+    }
+
+    /**
+     * Get an iterator over the entries with an offset of at least the given start offset. Compressed message sets that
+     * only contain entries below the start offset are skipped without de-compressing them.
+     */
+    public Iterator<org.apache.shade.kafka.common.record.LogEntry> iterator(long startOffset) {
         if (writable) {
             // flip on a duplicate buffer for reading
-            return new RecordsIterator((ByteBuffer) this.buffer.duplicate().flip(), org.apache.shade.kafka.common.record.CompressionType.NONE, false);
+            return new RecordsIterator((ByteBuffer) this.buffer.duplicate().flip(), org.apache.shade.kafka.common.record.CompressionType.NONE, false, startOffset);
         } else {
             // do not need to flip for non-writable buffer
-            return new RecordsIterator(this.buffer.duplicate(), org.apache.shade.kafka.common.record.CompressionType.NONE, false);
+            return new RecordsIterator(this.buffer.duplicate(), org.apache.shade.kafka.common.record.CompressionType.NONE, false, startOffset);
         }
     }
     
@@ -209,16 +279,26 @@ public class MemoryRecords implements Records {
 
     public static class RecordsIterator extends AbstractIterator<org.apache.shade.kafka.common.record.LogEntry> {
         private final ByteBuffer buffer;
-        private final DataInputStream stream;
         private final org.apache.shade.kafka.common.record.CompressionType type;
         private final boolean shallow;
+        private final long startOffset;
+        private DataInputStream stream;
         private RecordsIterator innerIter;
 
         public RecordsIterator(ByteBuffer buffer, org.apache.shade.kafka.common.record.CompressionType type, boolean shallow) {
+            this(buffer, type, shallow, 0L);
+        }
+
+        /**
+         * Create an iterator that only returns the entries with an offset of at least the given start offset. Since the
+         * offset of a compressed wrapper message is the offset of its last inner message, wrappers that lie entirely
+         * below the start offset are skipped without de-compressing them.
+         */
+        public RecordsIterator(ByteBuffer buffer, org.apache.shade.kafka.common.record.CompressionType type, boolean shallow, long startOffset) {
             this.type = type;
             this.buffer = buffer;
             this.shallow = shallow;
-            this.stream = Compressor.wrapForInput(new ByteBufferInputStream(this.buffer), type);
+            this.startOffset = startOffset;
         }
 
         /*
@@ -232,41 +312,56 @@ public class MemoryRecords implements Records {
         protected org.apache.shade.kafka.common.record.LogEntry makeNext() {
             if (innerDone()) {
                 try {
-                    // read the offset
-                    long offset = stream.readLong();
-                    // read record size
-                    int size = stream.readInt();
-                    if (size < 0)
-                        throw new IllegalStateException("Record with size " + size);
-                    // read the record, if compression is used we cannot depend on size
-                    // and hence has to do extra copy
-                    ByteBuffer rec;
-                    if (type == org.apache.shade.kafka.common.record.CompressionType.NONE) {
-                        rec = buffer.slice();
-                        int newPos = buffer.position() + size;
-                        if (newPos > buffer.limit())
-                            return allDone();
-                        buffer.position(newPos);
-                        rec.limit(size);
-                    } else {
-                        byte[] recordBuffer = new byte[size];
-                        stream.readFully(recordBuffer, 0, size);
-                        rec = ByteBuffer.wrap(recordBuffer);
-                    }
-                    org.apache.shade.kafka.common.record.LogEntry entry = new LogEntry(offset, new Record(rec));
-
-                    // decide whether to go shallow or deep iteration if it is compressed
-                    org.apache.shade.kafka.common.record.CompressionType compression = entry.record().compressionType();
-                    if (compression == CompressionType.NONE || shallow) {
-                        return entry;
-                    } else {
-                        // init the inner iterator with the value payload of the message,
-                        // which will de-compress the payload to a set of messages;
-                        // since we assume nested compression is not allowed, the deep iterator
-                        // would not try to further decompress underlying messages
-                        ByteBuffer value = entry.record().value();
-                        innerIter = new RecordsIterator(value, compression, true);
-                        return innerIter.next();
+                    // the (de-compressing) stream is only created once the first record is read
+                    if (stream == null)
+                        stream = Compressor.wrapForInput(new ByteBufferInputStream(this.buffer), type);
+
+                    while (true) {
+                        // read the offset
+                        long offset = stream.readLong();
+                        // read record size
+                        int size = stream.readInt();
+                        if (size < 0)
+                            throw new IllegalStateException("Record with size " + size);
+
+                        if (offset < startOffset) {
+                            // skip the record, and all inner records if it is a compressed wrapper
+                            if (!skip(size))
+                                return allDone();
+                            continue;
+                        }
+
+                        // read the record, if compression is used we cannot depend on size
+                        // and hence has to do extra copy
+                        ByteBuffer rec;
+                        if (type == org.apache.shade.kafka.common.record.CompressionType.NONE) {
+                            rec = buffer.slice();
+                            int newPos = buffer.position() + size;
+                            if (newPos > buffer.limit())
+                                return allDone();
+                            buffer.position(newPos);
+                            rec.limit(size);
+                        } else {
+                            byte[] recordBuffer = new byte[size];
+                            stream.readFully(recordBuffer, 0, size);
+                            rec = ByteBuffer.wrap(recordBuffer);
+                        }
+                        org.apache.shade.kafka.common.record.LogEntry entry = new LogEntry(offset, new Record(rec));
+
+                        // decide whether to go shallow or deep iteration if it is compressed
+                        org.apache.shade.kafka.common.record.CompressionType compression = entry.record().compressionType();
+                        if (compression == CompressionType.NONE || shallow) {
+                            return entry;
+                        } else {
+                            // init the inner iterator with the value payload of the message,
+                            // which will de-compress the payload to a set of messages;
+                            // since we assume nested compression is not allowed, the deep iterator
+                            // would not try to further decompress underlying messages
+                            ByteBuffer value = entry.record().value();
+                            innerIter = new RecordsIterator(value, compression, true, startOffset);
+                            if (!innerDone())
+                                return innerIter.next();
+                        }
                     }
                 } catch (EOFException e) {
                     return allDone();
@@ -281,5 +376,27 @@ public class MemoryRecords implements Records {
         private boolean innerDone() {
             return innerIter == null || !innerIter.hasNext();
         }
+
+        /**
+         * Skip the given number of bytes of the stream, returning false if the end of the stream is reached first
+         */
+        private boolean skip(int size) throws IOException {
+            if (type == org.apache.shade.kafka.common.record.CompressionType.NONE) {
+                int newPos = buffer.position() + size;
+                if (newPos > buffer.limit())
+                    return false;
+                buffer.position(newPos);
+                return true;
+            }
+
+            int remaining = size;
+            while (remaining > 0) {
+                int skipped = stream.skipBytes(remaining);
+                if (skipped <= 0)
+                    return false;
+                remaining -= skipped;
+            }
+            return true;
+        }
     }
 }
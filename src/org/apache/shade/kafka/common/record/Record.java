@@ -163,9 +163,7 @@ public final class Record {
      * Compute the checksum of the record from the record contents
      */
     public static long computeChecksum(ByteBuffer buffer, int position, int size) {
-        Crc32 crc = new Crc32();
-        crc.update(buffer.array(), buffer.arrayOffset() + position, size);
-        return crc.getValue();
+        return Crc32.crc32(buffer, position, size);
     }
 
     /**
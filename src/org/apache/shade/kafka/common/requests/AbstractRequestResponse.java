@@ -17,6 +17,7 @@ import org.apache.shade.kafka.common.protocol.types.Struct;
 import java.nio.ByteBuffer;
 
 public abstract class AbstractRequestResponse {
+    /* null for objects that were decoded directly from the wire format, which build their struct on demand */
     protected final org.apache.shade.kafka.common.protocol.types.Struct struct;
 
 
@@ -32,24 +33,24 @@ public abstract class AbstractRequestResponse {
      * Get the serialized size of this object
      */
     public int sizeOf() {
-        return struct.sizeOf();
+        return toStruct().sizeOf();
     }
 
     /**
      * Write this object to a buffer
      */
     public void writeTo(ByteBuffer buffer) {
-        struct.writeTo(buffer);
+        toStruct().writeTo(buffer);
     }
 
     @Override
     public String toString() {
-        return struct.toString();
+        return toStruct().toString();
     }
 
     @Override
     public int hashCode() {
-        return struct.hashCode();
+        return toStruct().hashCode();
     }
 
     @Override
@@ -61,6 +62,6 @@ public abstract class AbstractRequestResponse {
         if (getClass() != obj.getClass())
             return false;
         AbstractRequestResponse other = (AbstractRequestResponse) obj;
-        return struct.equals(other.struct);
+        return toStruct().equals(other.toStruct());
     }
 }
@@ -25,6 +25,7 @@ import org.apache.shade.kafka.common.protocol.ProtoUtils;
 import org.apache.shade.kafka.common.utils.CollectionUtils;
 import org.apache.shade.kafka.common.protocol.types.Schema;
 import org.apache.shade.kafka.common.protocol.types.Struct;
+import org.apache.shade.kafka.common.protocol.types.WireFormat;
 
 public class FetchRequest extends AbstractRequest {
     
@@ -48,6 +49,8 @@ public class FetchRequest extends AbstractRequest {
     private final int maxWait;
     private final int minBytes;
     private final Map<TopicPartition, PartitionData> fetchData;
+    /* the fetch data grouped by topic, for requests that are written directly to the wire format */
+    private final Map<String, Map<Integer, PartitionData>> fetchDataByTopic;
 
     public static final class PartitionData {
         public final long offset;
@@ -70,33 +73,12 @@ public class FetchRequest extends AbstractRequest {
      * Create a replica fetch request
      */
     public FetchRequest(int replicaId, int maxWait, int minBytes, Map<TopicPartition, PartitionData> fetchData) {
-        super(new org.apache.shade.kafka.common.protocol.types.Struct(CURRENT_SCHEMA));
-        Map<String, Map<Integer, PartitionData>> topicsData = CollectionUtils.groupDataByTopic(fetchData);
-
-        struct.set(REPLICA_ID_KEY_NAME, replicaId);
-        struct.set(MAX_WAIT_KEY_NAME, maxWait);
-        struct.set(MIN_BYTES_KEY_NAME, minBytes);
-        List<org.apache.shade.kafka.common.protocol.types.Struct> topicArray = new ArrayList<org.apache.shade.kafka.common.protocol.types.Struct>();
-        for (Map.Entry<String, Map<Integer, PartitionData>> topicEntry : topicsData.entrySet()) {
-            org.apache.shade.kafka.common.protocol.types.Struct topicData = struct.instance(TOPICS_KEY_NAME);
-            topicData.set(TOPIC_KEY_NAME, topicEntry.getKey());
-            List<org.apache.shade.kafka.common.protocol.types.Struct> partitionArray = new ArrayList<org.apache.shade.kafka.common.protocol.types.Struct>();
-            for (Map.Entry<Integer, PartitionData> partitionEntry : topicEntry.getValue().entrySet()) {
-                PartitionData fetchPartitionData = partitionEntry.getValue();
-                org.apache.shade.kafka.common.protocol.types.Struct partitionData = topicData.instance(PARTITIONS_KEY_NAME);
-                partitionData.set(PARTITION_KEY_NAME, partitionEntry.getKey());
-                partitionData.set(FETCH_OFFSET_KEY_NAME, fetchPartitionData.offset);
-                partitionData.set(MAX_BYTES_KEY_NAME, fetchPartitionData.maxBytes);
-                partitionArray.add(partitionData);
-            }
-            topicData.set(PARTITIONS_KEY_NAME, partitionArray.toArray());
-            topicArray.add(topicData);
-        }
-        struct.set(TOPICS_KEY_NAME, topicArray.toArray());
+        super(null);
         this.replicaId = replicaId;
         this.maxWait = maxWait;
         this.minBytes = minBytes;
         this.fetchData = fetchData;
+        this.fetchDataByTopic = CollectionUtils.groupDataByTopic(fetchData);
     }
 
     public FetchRequest(org.apache.shade.kafka.common.protocol.types.Struct struct) {
@@ -117,6 +99,69 @@ public class FetchRequest extends AbstractRequest {
                 fetchData.put(new TopicPartition(topic, partition), partitionData);
             }
         }
+        fetchDataByTopic = null;
+    }
+
+    @Override
+    public Struct toStruct() {
+        if (struct != null)
+            return struct;
+
+        Struct requestStruct = new Struct(CURRENT_SCHEMA);
+        requestStruct.set(REPLICA_ID_KEY_NAME, replicaId);
+        requestStruct.set(MAX_WAIT_KEY_NAME, maxWait);
+        requestStruct.set(MIN_BYTES_KEY_NAME, minBytes);
+        List<Struct> topicArray = new ArrayList<Struct>();
+        for (Map.Entry<String, Map<Integer, PartitionData>> topicEntry : fetchDataByTopic.entrySet()) {
+            Struct topicData = requestStruct.instance(TOPICS_KEY_NAME);
+            topicData.set(TOPIC_KEY_NAME, topicEntry.getKey());
+            List<Struct> partitionArray = new ArrayList<Struct>();
+            for (Map.Entry<Integer, PartitionData> partitionEntry : topicEntry.getValue().entrySet()) {
+                PartitionData fetchPartitionData = partitionEntry.getValue();
+                Struct partitionData = topicData.instance(PARTITIONS_KEY_NAME);
+                partitionData.set(PARTITION_KEY_NAME, partitionEntry.getKey());
+                partitionData.set(FETCH_OFFSET_KEY_NAME, fetchPartitionData.offset);
+                partitionData.set(MAX_BYTES_KEY_NAME, fetchPartitionData.maxBytes);
+                partitionArray.add(partitionData);
+            }
+            topicData.set(PARTITIONS_KEY_NAME, partitionArray.toArray());
+            topicArray.add(topicData);
+        }
+        requestStruct.set(TOPICS_KEY_NAME, topicArray.toArray());
+        return requestStruct;
+    }
+
+    @Override
+    public int sizeOf() {
+        if (struct != null)
+            return struct.sizeOf();
+
+        int size = 16;
+        for (Map.Entry<String, Map<Integer, PartitionData>> topicEntry : fetchDataByTopic.entrySet())
+            size += WireFormat.sizeOfString(topicEntry.getKey()) + 4 + 16 * topicEntry.getValue().size();
+        return size;
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        if (struct != null) {
+            struct.writeTo(buffer);
+            return;
+        }
+
+        buffer.putInt(replicaId);
+        buffer.putInt(maxWait);
+        buffer.putInt(minBytes);
+        buffer.putInt(fetchDataByTopic.size());
+        for (Map.Entry<String, Map<Integer, PartitionData>> topicEntry : fetchDataByTopic.entrySet()) {
+            WireFormat.writeString(buffer, topicEntry.getKey());
+            buffer.putInt(topicEntry.getValue().size());
+            for (Map.Entry<Integer, PartitionData> partitionEntry : topicEntry.getValue().entrySet()) {
+                buffer.putInt(partitionEntry.getKey());
+                buffer.putLong(partitionEntry.getValue().offset);
+                buffer.putInt(partitionEntry.getValue().maxBytes);
+            }
+        }
     }
 
     @Override
@@ -21,8 +21,11 @@ import org.apache.shade.kafka.common.protocol.ApiKeys;
 import org.apache.shade.kafka.common.protocol.ProtoUtils;
 import org.apache.shade.kafka.common.utils.CollectionUtils;
 import org.apache.shade.kafka.common.protocol.types.Schema;
+import org.apache.shade.kafka.common.protocol.types.SchemaException;
 import org.apache.shade.kafka.common.protocol.types.Struct;
+import org.apache.shade.kafka.common.protocol.types.WireFormat;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -67,6 +70,7 @@ public class FetchResponse extends AbstractRequestResponse {
 
     private final Map<TopicPartition, PartitionData> responseData;
     private final int throttleTime;
+    private final int version;
 
     public static final class PartitionData {
         public final short errorCode;
@@ -89,6 +93,7 @@ public class FetchResponse extends AbstractRequestResponse {
         initCommonFields(responseData);
         this.responseData = responseData;
         this.throttleTime = DEFAULT_THROTTLE_TIME;
+        this.version = 0;
     }
 
   /**
@@ -102,6 +107,15 @@ public class FetchResponse extends AbstractRequestResponse {
         struct.set(THROTTLE_TIME_KEY_NAME, throttleTime);
         this.responseData = responseData;
         this.throttleTime = throttleTime;
+        this.version = 1;
+    }
+
+    /* constructor for responses decoded from the wire format, see parse(ByteBuffer, int) */
+    private FetchResponse(Map<TopicPartition, PartitionData> responseData, int throttleTime, int version) {
+        super(null);
+        this.responseData = responseData;
+        this.throttleTime = throttleTime;
+        this.version = version;
     }
 
     public FetchResponse(org.apache.shade.kafka.common.protocol.types.Struct struct) {
@@ -121,6 +135,7 @@ public class FetchResponse extends AbstractRequestResponse {
             }
         }
         this.throttleTime = struct.hasField(THROTTLE_TIME_KEY_NAME) ? struct.getInt(THROTTLE_TIME_KEY_NAME) : DEFAULT_THROTTLE_TIME;
+        this.version = struct.hasField(THROTTLE_TIME_KEY_NAME) ? 1 : 0;
     }
 
     private void initCommonFields(Map<TopicPartition, PartitionData> responseData) {
@@ -147,6 +162,13 @@ public class FetchResponse extends AbstractRequestResponse {
     }
 
 
+    @Override
+    public Struct toStruct() {
+        if (struct != null)
+            return struct;
+        return version == 0 ? new FetchResponse(responseData).toStruct() : new FetchResponse(responseData, throttleTime).toStruct();
+    }
+
     public Map<TopicPartition, PartitionData> responseData() {
         return responseData;
     }
@@ -159,7 +181,96 @@ public class FetchResponse extends AbstractRequestResponse {
         return new FetchResponse((org.apache.shade.kafka.common.protocol.types.Struct) CURRENT_SCHEMA.read(buffer));
     }
 
+    /**
+     * Decode a response of the given version directly from the wire format, without building a struct
+     */
     public static FetchResponse parse(ByteBuffer buffer, int version) {
-        return new FetchResponse((Struct) ProtoUtils.responseSchema(ApiKeys.FETCH.id, version).read(buffer));
+        Reader reader = reader(buffer, version);
+        Map<TopicPartition, PartitionData> responseData = new HashMap<TopicPartition, PartitionData>();
+        while (reader.next())
+            responseData.put(reader.partition(), new PartitionData(reader.errorCode(), reader.highWatermark(), reader.recordSet()));
+        return new FetchResponse(responseData, reader.throttleTime(), version);
+    }
+
+    /**
+     * Create a reader that decodes the partitions of a response of the given version one at a time, in the order in
+     * which they were written
+     */
+    public static Reader reader(ByteBuffer buffer, int version) {
+        // fails for unsupported versions
+        ProtoUtils.responseSchema(ApiKeys.FETCH.id, version);
+        return new Reader(buffer, version);
+    }
+
+    /**
+     * A cursor over the partitions of a serialized fetch response. Each call to {@link #next()} decodes the header of
+     * the next partition, whose fields are then available until the following call. The record sets are views of the
+     * response buffer, so no partition data is copied.
+     */
+    public static final class Reader {
+        private final ByteBuffer buffer;
+        private final int throttleTime;
+        private int remainingTopics;
+        private int remainingPartitions;
+        private String topic;
+        private TopicPartition partition;
+        private short errorCode;
+        private long highWatermark;
+        private ByteBuffer recordSet;
+
+        private Reader(ByteBuffer buffer, int version) {
+            this.buffer = buffer;
+            try {
+                this.throttleTime = version >= 1 ? buffer.getInt() : DEFAULT_THROTTLE_TIME;
+                this.remainingTopics = WireFormat.readArraySize(buffer);
+            } catch (BufferUnderflowException e) {
+                throw new SchemaException("Error reading fetch response: buffer underflow");
+            }
+        }
+
+        /**
+         * Advance to the next partition of the response
+         *
+         * @return false if all partitions have been read
+         */
+        public boolean next() {
+            try {
+                while (remainingPartitions == 0) {
+                    if (remainingTopics == 0)
+                        return false;
+                    topic = WireFormat.readString(buffer);
+                    remainingPartitions = WireFormat.readArraySize(buffer);
+                    remainingTopics--;
+                }
+                partition = new TopicPartition(topic, buffer.getInt());
+                errorCode = buffer.getShort();
+                highWatermark = buffer.getLong();
+                recordSet = WireFormat.readBytes(buffer);
+                remainingPartitions--;
+                return true;
+            } catch (BufferUnderflowException e) {
+                throw new SchemaException("Error reading fetch response: buffer underflow");
+            }
+        }
+
+        public int throttleTime() {
+            return throttleTime;
+        }
+
+        public TopicPartition partition() {
+            return partition;
+        }
+
+        public short errorCode() {
+            return errorCode;
+        }
+
+        public long highWatermark() {
+            return highWatermark;
+        }
+
+        public ByteBuffer recordSet() {
+            return recordSet;
+        }
     }
 }
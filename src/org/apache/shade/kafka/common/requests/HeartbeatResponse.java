@@ -15,8 +15,10 @@ package org.apache.shade.kafka.common.requests;
 import org.apache.shade.kafka.common.protocol.ApiKeys;
 import org.apache.shade.kafka.common.protocol.ProtoUtils;
 import org.apache.shade.kafka.common.protocol.types.Schema;
+import org.apache.shade.kafka.common.protocol.types.SchemaException;
 import org.apache.shade.kafka.common.protocol.types.Struct;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 
 public class HeartbeatResponse extends AbstractRequestResponse {
@@ -47,6 +49,19 @@ public class HeartbeatResponse extends AbstractRequestResponse {
         errorCode = struct.getShort(ERROR_CODE_KEY_NAME);
     }
 
+    /* constructor for responses decoded from the wire format, which pass a null struct, see parse(ByteBuffer, int) */
+    private HeartbeatResponse(Struct struct, short errorCode) {
+        super(struct);
+        this.errorCode = errorCode;
+    }
+
+    @Override
+    public Struct toStruct() {
+        if (struct != null)
+            return struct;
+        return new HeartbeatResponse(errorCode).toStruct();
+    }
+
     public short errorCode() {
         return errorCode;
     }
@@ -54,4 +69,17 @@ public class HeartbeatResponse extends AbstractRequestResponse {
     public static HeartbeatResponse parse(ByteBuffer buffer) {
         return new HeartbeatResponse((Struct) CURRENT_SCHEMA.read(buffer));
     }
+
+    /**
+     * Decode a response of the given version directly from the wire format, without building a struct
+     */
+    public static HeartbeatResponse parse(ByteBuffer buffer, int version) {
+        // fails for unsupported versions
+        ProtoUtils.responseSchema(ApiKeys.HEARTBEAT.id, version);
+        try {
+            return new HeartbeatResponse(null, buffer.getShort());
+        } catch (BufferUnderflowException e) {
+            throw new SchemaException("Error reading heartbeat response: buffer underflow");
+        }
+    }
 }
\ No newline at end of file
@@ -17,8 +17,11 @@ import org.apache.shade.kafka.common.protocol.ApiKeys;
 import org.apache.shade.kafka.common.protocol.ProtoUtils;
 import org.apache.shade.kafka.common.utils.CollectionUtils;
 import org.apache.shade.kafka.common.protocol.types.Schema;
+import org.apache.shade.kafka.common.protocol.types.SchemaException;
 import org.apache.shade.kafka.common.protocol.types.Struct;
+import org.apache.shade.kafka.common.protocol.types.WireFormat;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -93,6 +96,19 @@ public class OffsetCommitResponse extends AbstractRequestResponse {
         }
     }
 
+    /* constructor for responses decoded from the wire format, which pass a null struct, see parse(ByteBuffer, int) */
+    private OffsetCommitResponse(Struct struct, Map<TopicPartition, Short> responseData) {
+        super(struct);
+        this.responseData = responseData;
+    }
+
+    @Override
+    public Struct toStruct() {
+        if (struct != null)
+            return struct;
+        return new OffsetCommitResponse(responseData).toStruct();
+    }
+
     public Map<TopicPartition, Short> responseData() {
         return responseData;
     }
@@ -100,4 +116,28 @@ public class OffsetCommitResponse extends AbstractRequestResponse {
     public static OffsetCommitResponse parse(ByteBuffer buffer) {
         return new OffsetCommitResponse((Struct) CURRENT_SCHEMA.read(buffer));
     }
+
+    /**
+     * Decode a response of the given version directly from the wire format, without building a struct
+     */
+    public static OffsetCommitResponse parse(ByteBuffer buffer, int version) {
+        // fails for unsupported versions
+        ProtoUtils.responseSchema(ApiKeys.OFFSET_COMMIT.id, version);
+        try {
+            int numTopics = WireFormat.readArraySize(buffer);
+            Map<TopicPartition, Short> responseData = new HashMap<TopicPartition, Short>();
+            for (int i = 0; i < numTopics; i++) {
+                String topic = WireFormat.readString(buffer);
+                int numPartitions = WireFormat.readArraySize(buffer);
+                for (int j = 0; j < numPartitions; j++) {
+                    int partition = buffer.getInt();
+                    short errorCode = buffer.getShort();
+                    responseData.put(new TopicPartition(topic, partition), errorCode);
+                }
+            }
+            return new OffsetCommitResponse(null, responseData);
+        } catch (BufferUnderflowException e) {
+            throw new SchemaException("Error reading offset commit response: buffer underflow");
+        }
+    }
 }
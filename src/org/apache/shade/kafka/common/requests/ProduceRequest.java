@@ -20,6 +20,7 @@ import org.apache.shade.kafka.common.protocol.ProtoUtils;
 import org.apache.shade.kafka.common.utils.CollectionUtils;
 import org.apache.shade.kafka.common.protocol.types.Schema;
 import org.apache.shade.kafka.common.protocol.types.Struct;
+import org.apache.shade.kafka.common.protocol.types.WireFormat;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -45,31 +46,15 @@ public class ProduceRequest extends AbstractRequest {
     private final short acks;
     private final int timeout;
     private final Map<TopicPartition, ByteBuffer> partitionRecords;
+    /* the records grouped by topic, for requests that are written directly to the wire format */
+    private final Map<String, Map<Integer, ByteBuffer>> recordsByTopic;
 
     public ProduceRequest(short acks, int timeout, Map<TopicPartition, ByteBuffer> partitionRecords) {
-        super(new org.apache.shade.kafka.common.protocol.types.Struct(CURRENT_SCHEMA));
-        Map<String, Map<Integer, ByteBuffer>> recordsByTopic = CollectionUtils.groupDataByTopic(partitionRecords);
-        struct.set(ACKS_KEY_NAME, acks);
-        struct.set(TIMEOUT_KEY_NAME, timeout);
-        List<org.apache.shade.kafka.common.protocol.types.Struct> topicDatas = new ArrayList<org.apache.shade.kafka.common.protocol.types.Struct>(recordsByTopic.size());
-        for (Map.Entry<String, Map<Integer, ByteBuffer>> entry : recordsByTopic.entrySet()) {
-            org.apache.shade.kafka.common.protocol.types.Struct topicData = struct.instance(TOPIC_DATA_KEY_NAME);
-            topicData.set(TOPIC_KEY_NAME, entry.getKey());
-            List<org.apache.shade.kafka.common.protocol.types.Struct> partitionArray = new ArrayList<org.apache.shade.kafka.common.protocol.types.Struct>();
-            for (Map.Entry<Integer, ByteBuffer> partitionEntry : entry.getValue().entrySet()) {
-                ByteBuffer buffer = partitionEntry.getValue().duplicate();
-                org.apache.shade.kafka.common.protocol.types.Struct part = topicData.instance(PARTITION_DATA_KEY_NAME)
-                                       .set(PARTITION_KEY_NAME, partitionEntry.getKey())
-                                       .set(RECORD_SET_KEY_NAME, buffer);
-                partitionArray.add(part);
-            }
-            topicData.set(PARTITION_DATA_KEY_NAME, partitionArray.toArray());
-            topicDatas.add(topicData);
-        }
-        struct.set(TOPIC_DATA_KEY_NAME, topicDatas.toArray());
+        super(null);
         this.acks = acks;
         this.timeout = timeout;
         this.partitionRecords = partitionRecords;
+        this.recordsByTopic = CollectionUtils.groupDataByTopic(partitionRecords);
     }
 
     public ProduceRequest(org.apache.shade.kafka.common.protocol.types.Struct struct) {
@@ -87,6 +72,68 @@ public class ProduceRequest extends AbstractRequest {
         }
         acks = struct.getShort(ACKS_KEY_NAME);
         timeout = struct.getInt(TIMEOUT_KEY_NAME);
+        recordsByTopic = null;
+    }
+
+    @Override
+    public Struct toStruct() {
+        if (struct != null)
+            return struct;
+
+        Struct requestStruct = new Struct(CURRENT_SCHEMA);
+        requestStruct.set(ACKS_KEY_NAME, acks);
+        requestStruct.set(TIMEOUT_KEY_NAME, timeout);
+        List<Struct> topicDatas = new ArrayList<Struct>(recordsByTopic.size());
+        for (Map.Entry<String, Map<Integer, ByteBuffer>> entry : recordsByTopic.entrySet()) {
+            Struct topicData = requestStruct.instance(TOPIC_DATA_KEY_NAME);
+            topicData.set(TOPIC_KEY_NAME, entry.getKey());
+            List<Struct> partitionArray = new ArrayList<Struct>();
+            for (Map.Entry<Integer, ByteBuffer> partitionEntry : entry.getValue().entrySet()) {
+                ByteBuffer buffer = partitionEntry.getValue().duplicate();
+                Struct part = topicData.instance(PARTITION_DATA_KEY_NAME)
+                                       .set(PARTITION_KEY_NAME, partitionEntry.getKey())
+                                       .set(RECORD_SET_KEY_NAME, buffer);
+                partitionArray.add(part);
+            }
+            topicData.set(PARTITION_DATA_KEY_NAME, partitionArray.toArray());
+            topicDatas.add(topicData);
+        }
+        requestStruct.set(TOPIC_DATA_KEY_NAME, topicDatas.toArray());
+        return requestStruct;
+    }
+
+    @Override
+    public int sizeOf() {
+        if (struct != null)
+            return struct.sizeOf();
+
+        int size = 10;
+        for (Map.Entry<String, Map<Integer, ByteBuffer>> entry : recordsByTopic.entrySet()) {
+            size += WireFormat.sizeOfString(entry.getKey()) + 4;
+            for (ByteBuffer records : entry.getValue().values())
+                size += 4 + WireFormat.sizeOfBytes(records);
+        }
+        return size;
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        if (struct != null) {
+            struct.writeTo(buffer);
+            return;
+        }
+
+        buffer.putShort(acks);
+        buffer.putInt(timeout);
+        buffer.putInt(recordsByTopic.size());
+        for (Map.Entry<String, Map<Integer, ByteBuffer>> entry : recordsByTopic.entrySet()) {
+            WireFormat.writeString(buffer, entry.getKey());
+            buffer.putInt(entry.getValue().size());
+            for (Map.Entry<Integer, ByteBuffer> partitionEntry : entry.getValue().entrySet()) {
+                buffer.putInt(partitionEntry.getKey());
+                WireFormat.writeBytes(buffer, partitionEntry.getValue());
+            }
+        }
     }
 
     @Override
@@ -17,8 +17,11 @@ import org.apache.shade.kafka.common.protocol.ApiKeys;
 import org.apache.shade.kafka.common.protocol.ProtoUtils;
 import org.apache.shade.kafka.common.utils.CollectionUtils;
 import org.apache.shade.kafka.common.protocol.types.Schema;
+import org.apache.shade.kafka.common.protocol.types.SchemaException;
 import org.apache.shade.kafka.common.protocol.types.Struct;
+import org.apache.shade.kafka.common.protocol.types.WireFormat;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -55,6 +58,7 @@ public class ProduceResponse extends AbstractRequestResponse {
 
     private final Map<TopicPartition, PartitionResponse> responses;
     private final int throttleTime;
+    private final int version;
 
     /**
      * Constructor for Version 0
@@ -65,6 +69,7 @@ public class ProduceResponse extends AbstractRequestResponse {
         initCommonFields(responses);
         this.responses = responses;
         this.throttleTime = DEFAULT_THROTTLE_TIME;
+        this.version = 0;
     }
 
     /**
@@ -78,6 +83,15 @@ public class ProduceResponse extends AbstractRequestResponse {
         struct.set(THROTTLE_TIME_KEY_NAME, throttleTime);
         this.responses = responses;
         this.throttleTime = throttleTime;
+        this.version = 1;
+    }
+
+    /* constructor for responses decoded from the wire format, see parse(ByteBuffer, int) */
+    private ProduceResponse(Map<TopicPartition, PartitionResponse> responses, int throttleTime, int version) {
+        super(null);
+        this.responses = responses;
+        this.throttleTime = throttleTime;
+        this.version = version;
     }
 
     public ProduceResponse(org.apache.shade.kafka.common.protocol.types.Struct struct) {
@@ -95,7 +109,8 @@ public class ProduceResponse extends AbstractRequestResponse {
                 responses.put(tp, new PartitionResponse(errorCode, offset));
             }
         }
-        this.throttleTime = struct.getInt(THROTTLE_TIME_KEY_NAME);
+        this.throttleTime = struct.hasField(THROTTLE_TIME_KEY_NAME) ? struct.getInt(THROTTLE_TIME_KEY_NAME) : DEFAULT_THROTTLE_TIME;
+        this.version = struct.hasField(THROTTLE_TIME_KEY_NAME) ? 1 : 0;
     }
 
     private void initCommonFields(Map<TopicPartition, PartitionResponse> responses) {
@@ -118,6 +133,13 @@ public class ProduceResponse extends AbstractRequestResponse {
         struct.set(RESPONSES_KEY_NAME, topicDatas.toArray());
     }
 
+    @Override
+    public Struct toStruct() {
+        if (struct != null)
+            return struct;
+        return version == 0 ? new ProduceResponse(responses).toStruct() : new ProduceResponse(responses, throttleTime).toStruct();
+    }
+
     public Map<TopicPartition, PartitionResponse> responses() {
         return this.responses;
     }
@@ -151,4 +173,30 @@ public class ProduceResponse extends AbstractRequestResponse {
     public static ProduceResponse parse(ByteBuffer buffer) {
         return new ProduceResponse((Struct) CURRENT_SCHEMA.read(buffer));
     }
+
+    /**
+     * Decode a response of the given version directly from the wire format, without building a struct
+     */
+    public static ProduceResponse parse(ByteBuffer buffer, int version) {
+        // fails for unsupported versions
+        ProtoUtils.responseSchema(ApiKeys.PRODUCE.id, version);
+        try {
+            int numTopics = WireFormat.readArraySize(buffer);
+            Map<TopicPartition, PartitionResponse> responses = new HashMap<TopicPartition, PartitionResponse>();
+            for (int i = 0; i < numTopics; i++) {
+                String topic = WireFormat.readString(buffer);
+                int numPartitions = WireFormat.readArraySize(buffer);
+                for (int j = 0; j < numPartitions; j++) {
+                    int partition = buffer.getInt();
+                    short errorCode = buffer.getShort();
+                    long offset = buffer.getLong();
+                    responses.put(new TopicPartition(topic, partition), new PartitionResponse(errorCode, offset));
+                }
+            }
+            int throttleTime = version >= 1 ? buffer.getInt() : DEFAULT_THROTTLE_TIME;
+            return new ProduceResponse(responses, throttleTime, version);
+        } catch (BufferUnderflowException e) {
+            throw new SchemaException("Error reading produce response: buffer underflow");
+        }
+    }
 }
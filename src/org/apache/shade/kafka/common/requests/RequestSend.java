@@ -24,11 +24,24 @@ public class RequestSend extends NetworkSend {
 
     private final org.apache.shade.kafka.common.requests.RequestHeader header;
     private final org.apache.shade.kafka.common.protocol.types.Struct body;
+    private final AbstractRequest request;
 
     public RequestSend(String destination, org.apache.shade.kafka.common.requests.RequestHeader header, org.apache.shade.kafka.common.protocol.types.Struct body) {
         super(destination, serialize(header, body));
         this.header = header;
         this.body = body;
+        this.request = null;
+    }
+
+    /**
+     * Create a send for the given request, which is written with its own codec. Requests that support it are
+     * serialized directly, without building a struct.
+     */
+    public RequestSend(String destination, org.apache.shade.kafka.common.requests.RequestHeader header, AbstractRequest request) {
+        super(destination, serialize(header, request));
+        this.header = header;
+        this.body = null;
+        this.request = request;
     }
 
     private static ByteBuffer serialize(org.apache.shade.kafka.common.requests.RequestHeader header, org.apache.shade.kafka.common.protocol.types.Struct body) {
@@ -39,17 +52,25 @@ public class RequestSend extends NetworkSend {
         return buffer;
     }
 
+    private static ByteBuffer serialize(org.apache.shade.kafka.common.requests.RequestHeader header, AbstractRequest request) {
+        ByteBuffer buffer = ByteBuffer.allocate(header.sizeOf() + request.sizeOf());
+        header.writeTo(buffer);
+        request.writeTo(buffer);
+        buffer.rewind();
+        return buffer;
+    }
+
     public RequestHeader header() {
         return this.header;
     }
 
     public Struct body() {
-        return body;
+        return body != null ? body : request.toStruct();
     }
 
     @Override
     public String toString() {
-        return "RequestSend(header=" + header.toString() + ", body=" + body.toString() + ")";
+        return "RequestSend(header=" + header.toString() + ", body=" + body().toString() + ")";
     }
 
 }
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.utils;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A time implementation whose {@link #milliseconds()} returns the system clock as last read by a shared ticker
+ * thread, which updates it once per tick. This makes reading the wall clock on the hot paths of the clients as cheap
+ * as reading a volatile field, at the cost of lagging behind the system clock by up to a tick, or longer if the ticker
+ * thread is not scheduled in time. The cached time never runs ahead of the system clock.
+ * <p>
+ * The {@link #nanoseconds()} are read from the system on every call, so durations measured with them stay precise.
+ * Code that needs a precise wall clock time, such as the receive time from which request latencies are computed, can
+ * use the {@link #precise()} time instead.
+ * <p>
+ * All instances with the same tick share one daemon ticker thread, which is stopped when the last of them is closed.
+ */
+public final class CachedTime implements Time, Closeable {
+
+    private static final Time PRECISE = new SystemTime();
+
+    /* the ticker threads by tick, guarded by their own lock */
+    private static final Map<Long, Ticker> TICKERS = new HashMap<>();
+
+    private final Ticker ticker;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private CachedTime(Ticker ticker) {
+        this.ticker = ticker;
+    }
+
+    /**
+     * Get a cached time that is updated at the given tick, starting the ticker thread for the tick if necessary. The
+     * returned instance must be closed once it is no longer used.
+     *
+     * @param tickMs The interval at which the time is updated, in milliseconds
+     */
+    public static CachedTime acquire(long tickMs) {
+        if (tickMs <= 0)
+            throw new IllegalArgumentException("The tick of a cached time must be positive, but was " + tickMs);
+        synchronized (TICKERS) {
+            Ticker ticker = TICKERS.get(tickMs);
+            if (ticker == null) {
+                ticker = new Ticker(tickMs);
+                TICKERS.put(tickMs, ticker);
+                ticker.thread.start();
+            }
+            ticker.references++;
+            return new CachedTime(ticker);
+        }
+    }
+
+    @Override
+    public long milliseconds() {
+        return ticker.milliseconds;
+    }
+
+    @Override
+    public long nanoseconds() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long ms) {
+        PRECISE.sleep(ms);
+    }
+
+    /**
+     * The time which reads the system clock on every call
+     */
+    public Time precise() {
+        return PRECISE;
+    }
+
+    /**
+     * The interval at which this time is updated, in milliseconds
+     */
+    public long tickMs() {
+        return ticker.tickMs;
+    }
+
+    /**
+     * Release the ticker thread of this time. The time keeps returning the last cached value if the thread stops.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true))
+            return;
+        synchronized (TICKERS) {
+            if (--ticker.references == 0) {
+                TICKERS.remove(ticker.tickMs);
+                ticker.running = false;
+                ticker.thread.interrupt();
+            }
+        }
+    }
+
+    private static final class Ticker implements Runnable {
+        private final long tickMs;
+        private final Thread thread;
+        private volatile long milliseconds;
+        private volatile boolean running = true;
+        private int references = 0;
+
+        private Ticker(long tickMs) {
+            this.tickMs = tickMs;
+            this.milliseconds = System.currentTimeMillis();
+            this.thread = new KafkaThread("kafka-clock-ticker-" + tickMs + "ms", this, true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                milliseconds = System.currentTimeMillis();
+                try {
+                    Thread.sleep(tickMs);
+                } catch (InterruptedException e) {
+                    // closed, or woken up early
+                }
+            }
+        }
+    }
+
+}
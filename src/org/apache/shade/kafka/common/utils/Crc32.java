@@ -12,6 +12,8 @@
  */
 package org.apache.shade.kafka.common.utils;
 
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
 /**
@@ -24,10 +26,22 @@ import java.util.zip.Checksum;
  * 
  * The current version is ~10x to 1.8x as fast as Sun's native java.util.zip.CRC32 in Java 1.6
  * 
+ * The static methods checksum whole byte ranges at once and use java.util.zip.CRC32 instead, which is an intrinsic
+ * since Java 8 and considerably faster than this implementation for all but the smallest inputs. They also work on
+ * direct buffers, and do not allocate.
+ * 
  * @see java.util.zip.CRC32
  */
 public class Crc32 implements Checksum {
 
+    /** Per-thread instances of the intrinsified JDK implementation, used by the static methods */
+    private static final ThreadLocal<CRC32> JDK_CRC32 = new ThreadLocal<CRC32>() {
+        @Override
+        protected CRC32 initialValue() {
+            return new CRC32();
+        }
+    };
+
     /**
      * Compute the CRC32 of the byte array
      * 
@@ -47,11 +61,41 @@ public class Crc32 implements Checksum {
      * @return The CRC32
      */
     public static long crc32(byte[] bytes, int offset, int size) {
-        Crc32 crc = new Crc32();
+        CRC32 crc = JDK_CRC32.get();
+        crc.reset();
         crc.update(bytes, offset, size);
         return crc.getValue();
     }
 
+    /**
+     * Compute the CRC32 of the segment of the buffer given by the specified size and absolute offset. The buffer may
+     * be a heap or a direct buffer. Its position and limit are temporarily changed for direct buffers, but are the same
+     * as before when this method returns, so the buffer must not be accessed concurrently.
+     * 
+     * @param buffer The buffer to checksum
+     * @param offset the absolute offset in the buffer at which to begin checksumming
+     * @param size the number of bytes to checksum
+     * @return The CRC32
+     */
+    public static long crc32(ByteBuffer buffer, int offset, int size) {
+        if (buffer.hasArray())
+            return crc32(buffer.array(), buffer.arrayOffset() + offset, size);
+
+        int position = buffer.position();
+        int limit = buffer.limit();
+        CRC32 crc = JDK_CRC32.get();
+        crc.reset();
+        try {
+            buffer.limit(offset + size);
+            buffer.position(offset);
+            crc.update(buffer);
+        } finally {
+            buffer.limit(limit);
+            buffer.position(position);
+        }
+        return crc.getValue();
+    }
+
     /** the current CRC value, bit-flipped */
     private int crc;
 
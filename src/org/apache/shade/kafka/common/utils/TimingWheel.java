@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.utils;
+
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel with a resolution of one millisecond, used by the clients for delayed tasks and
+ * request timeouts.
+ * <p>
+ * The wheel has five levels of 64 slots each. A timeout is kept at the level of the most significant 6-bit group in
+ * which its deadline differs from the current time, in the slot given by that group of the deadline. When the current
+ * time reaches the start of a slot, the timeouts of the slot are moved down to the lower levels, until they reach the
+ * slot of their deadline at the lowest level and expire. Deadlines further away than the top level can hold (about
+ * 12 days) are kept on an overflow list, which is re-examined whenever the top level wraps.
+ * <p>
+ * Scheduling and cancelling a timeout take constant time. Advancing the wheel jumps directly to the next occupied
+ * slot using a bitmap per level, so the cost of an advance does not depend on the elapsed time. This class is not
+ * thread-safe.
+ */
+public final class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 5;
+    private static final int DUE = LEVELS * SLOTS;
+    private static final int OVERFLOW = DUE + 1;
+    private static final int UNSCHEDULED = -1;
+
+    // the heads of the doubly linked slot lists, indexed by level * SLOTS + slot, followed by the lists
+    // of the timeouts which are due and of those beyond the top level
+    private final Timeout<T>[] heads;
+    private final long[] occupied = new long[LEVELS];
+    private long currentTime;
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long now) {
+        this.heads = (Timeout<T>[]) new Timeout<?>[OVERFLOW + 1];
+        this.currentTime = now;
+    }
+
+    /**
+     * Schedule a timeout for the given item. A deadline which is not after the current time of the wheel expires on
+     * the next {@link #advance(long, List)}.
+     *
+     * @param item The item to expire
+     * @param deadline The time at which the item expires
+     * @return The timeout, which can be passed to {@link #cancel(Timeout)}
+     */
+    public Timeout<T> schedule(T item, long deadline) {
+        Timeout<T> timeout = new Timeout<>(item, deadline);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Cancel a scheduled timeout. This is a no-op if the timeout has already expired or been cancelled.
+     *
+     * @return true if the timeout was cancelled as a result of this call
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.index == UNSCHEDULED)
+            return false;
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * The number of scheduled timeouts
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the time at which the wheel next needs to be advanced. This is the deadline of the next timeout if it
+     * is at the lowest level, and otherwise the time at which the next timeouts are moved down from a higher level,
+     * which is no later than their deadlines.
+     *
+     * @return The time of the next event, or Long.MAX_VALUE if no timeouts are scheduled
+     */
+    public long nextEventTime() {
+        if (size == 0)
+            return Long.MAX_VALUE;
+        if (heads[DUE] != null)
+            return currentTime;
+        for (int level = 0; level < LEVELS; level++) {
+            long slots = occupied[level];
+            if (slots != 0) {
+                // all occupied slots of a level are after the slot of the current time
+                int shift = (level + 1) * SLOT_BITS;
+                long base = (currentTime >>> shift) << shift;
+                return base | ((long) Long.numberOfTrailingZeros(slots) << (level * SLOT_BITS));
+            }
+        }
+        int shift = LEVELS * SLOT_BITS;
+        return ((currentTime >>> shift) + 1) << shift;
+    }
+
+    /**
+     * Advance the wheel to the given time and remove all timeouts with a deadline up to that time
+     *
+     * @param now The current time
+     * @param expired The list to add the expired timeouts to, in the order of their deadlines
+     */
+    public void advance(long now, List<Timeout<T>> expired) {
+        while (true) {
+            for (Timeout<T> timeout = heads[DUE]; timeout != null; timeout = heads[DUE]) {
+                unlink(timeout);
+                size--;
+                expired.add(timeout);
+            }
+
+            long next = nextEventTime();
+            if (next > now) {
+                currentTime = Math.max(currentTime, now);
+                return;
+            }
+            currentTime = next;
+
+            // move the timeouts of the slots starting now down, from the top level to the lowest level,
+            // where they become due
+            if ((currentTime & ((1L << (LEVELS * SLOT_BITS)) - 1)) == 0)
+                cascade(OVERFLOW);
+            for (int level = LEVELS - 1; level >= 0; level--) {
+                int shift = level * SLOT_BITS;
+                if ((currentTime & ((1L << shift) - 1)) == 0)
+                    cascade(level * SLOTS + (int) ((currentTime >>> shift) & (SLOTS - 1)));
+            }
+        }
+    }
+
+    private void cascade(int index) {
+        Timeout<T> timeout = heads[index];
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            unlink(timeout);
+            place(timeout);
+            timeout = next;
+        }
+    }
+
+    private void place(Timeout<T> timeout) {
+        long deadline = timeout.deadline;
+        int index;
+        if (deadline <= currentTime) {
+            index = DUE;
+        } else {
+            int level = (63 - Long.numberOfLeadingZeros(deadline ^ currentTime)) / SLOT_BITS;
+            if (level >= LEVELS)
+                index = OVERFLOW;
+            else
+                index = level * SLOTS + (int) ((deadline >>> (level * SLOT_BITS)) & (SLOTS - 1));
+        }
+
+        Timeout<T> head = heads[index];
+        timeout.index = index;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null)
+            head.prev = timeout;
+        heads[index] = timeout;
+        if (index < DUE)
+            occupied[index / SLOTS] |= 1L << (index % SLOTS);
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        int index = timeout.index;
+        if (timeout.prev != null)
+            timeout.prev.next = timeout.next;
+        else
+            heads[index] = timeout.next;
+        if (timeout.next != null)
+            timeout.next.prev = timeout.prev;
+        if (index < DUE && heads[index] == null)
+            occupied[index / SLOTS] &= ~(1L << (index % SLOTS));
+        timeout.index = UNSCHEDULED;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    /**
+     * A scheduled timeout of an item
+     */
+    public static final class Timeout<T> {
+        private final T item;
+        private final long deadline;
+        private int index = UNSCHEDULED;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        public T item() {
+            return item;
+        }
+
+        public long deadline() {
+            return deadline;
+        }
+
+        /**
+         * Check whether the timeout is still scheduled, i.e. it has neither expired nor been cancelled
+         */
+        public boolean isScheduled() {
+            return index != UNSCHEDULED;
+        }
+    }
+
+}
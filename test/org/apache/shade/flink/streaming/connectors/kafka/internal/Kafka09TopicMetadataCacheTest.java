@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaTopicPartition;
+
+import org.apache.shade.kafka.clients.consumer.KafkaConsumer;
+import org.apache.shade.kafka.common.PartitionInfo;
+import org.apache.shade.kafka.common.errors.WakeupException;
+import org.apache.shade.kafka.common.serialization.ByteArrayDeserializer;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link Kafka09TopicMetadataCache}.
+ */
+public class Kafka09TopicMetadataCacheTest {
+
+	@Test
+	public void testCacheIsSharedByEffectiveProperties() {
+		final Properties defaults = new Properties();
+		defaults.setProperty("bootstrap.servers", "localhost:9092");
+		final Properties withDefaults = new Properties(defaults);
+		final Properties explicit = new Properties();
+		explicit.setProperty("bootstrap.servers", "localhost:9092");
+		final Properties other = new Properties();
+		other.setProperty("bootstrap.servers", "otherhost:9092");
+
+		final Kafka09TopicMetadataCache first = Kafka09TopicMetadataCache.acquire(withDefaults);
+		final Kafka09TopicMetadataCache second = Kafka09TopicMetadataCache.acquire(explicit);
+		final Kafka09TopicMetadataCache third = Kafka09TopicMetadataCache.acquire(other);
+		try {
+			assertSame(first, second);
+			assertTrue(first != third);
+		} finally {
+			first.release(null);
+			second.release(null);
+			third.release(null);
+		}
+	}
+
+	@Test
+	public void testConcurrentCallersShareOneFetch() throws Exception {
+		final Kafka09TopicMetadataCache cache = Kafka09TopicMetadataCache.acquire(properties("shared-fetch"));
+		// acquired by both discoverers
+		assertSame(cache, Kafka09TopicMetadataCache.acquire(properties("shared-fetch")));
+		final BlockingConsumer fetching = new BlockingConsumer();
+		final BlockingConsumer waiting = new BlockingConsumer();
+		try {
+			final CompletableFuture<Map<String, List<KafkaTopicPartition>>> first = getAsync(cache, fetching);
+			assertTrue(fetching.listing.await(10, TimeUnit.SECONDS));
+			final CompletableFuture<Map<String, List<KafkaTopicPartition>>> second = getAsync(cache, waiting);
+
+			fetching.release.countDown();
+			assertEquals(2, first.get().get("topic").size());
+			assertSame(first.get(), second.get());
+			assertEquals(1, fetching.fetches.get());
+			assertEquals(0, waiting.fetches.get());
+		} finally {
+			fetching.release.countDown();
+			cache.release(fetching);
+			cache.release(waiting);
+		}
+	}
+
+	@Test
+	public void testWaitingCallerIsWokenUp() throws Exception {
+		final Kafka09TopicMetadataCache cache = Kafka09TopicMetadataCache.acquire(properties("wakeup"));
+		// acquired by both discoverers
+		assertSame(cache, Kafka09TopicMetadataCache.acquire(properties("wakeup")));
+		final BlockingConsumer fetching = new BlockingConsumer();
+		final BlockingConsumer waiting = new BlockingConsumer();
+		try {
+			final CompletableFuture<Map<String, List<KafkaTopicPartition>>> first = getAsync(cache, fetching);
+			assertTrue(fetching.listing.await(10, TimeUnit.SECONDS));
+			final CompletableFuture<Map<String, List<KafkaTopicPartition>>> second = getAsync(cache, waiting);
+
+			// wake up the waiting caller, until it is actually waiting
+			while (!second.isDone()) {
+				cache.wakeup(waiting);
+				Thread.sleep(1);
+			}
+			try {
+				second.get();
+				fail("Expected a WakeupException");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof WakeupException);
+			}
+
+			// the fetch of the other caller is not affected
+			assertTrue(!first.isDone());
+			fetching.release.countDown();
+			assertEquals(2, first.get().get("topic").size());
+		} finally {
+			fetching.release.countDown();
+			cache.release(fetching);
+			cache.release(waiting);
+		}
+	}
+
+	@Test
+	public void testWaitingCallerFetchesIfTheFetchFails() throws Exception {
+		final Kafka09TopicMetadataCache cache = Kafka09TopicMetadataCache.acquire(properties("failure"));
+		// acquired by both discoverers
+		assertSame(cache, Kafka09TopicMetadataCache.acquire(properties("failure")));
+		final BlockingConsumer failing = new BlockingConsumer();
+		failing.failure = new RuntimeException("expected");
+		final BlockingConsumer waiting = new BlockingConsumer();
+		waiting.release.countDown();
+		try {
+			final CompletableFuture<Map<String, List<KafkaTopicPartition>>> first = getAsync(cache, failing);
+			assertTrue(failing.listing.await(10, TimeUnit.SECONDS));
+			final CompletableFuture<Map<String, List<KafkaTopicPartition>>> second = getAsync(cache, waiting);
+
+			failing.release.countDown();
+			try {
+				first.get();
+				fail("Expected the fetch to fail");
+			} catch (ExecutionException e) {
+				assertSame(failing.failure, e.getCause());
+			}
+			assertEquals(2, second.get().get("topic").size());
+			assertEquals(1, waiting.fetches.get());
+		} finally {
+			failing.release.countDown();
+			cache.release(failing);
+			cache.release(waiting);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static Properties properties(String groupId) {
+		final Properties properties = new Properties();
+		properties.setProperty("bootstrap.servers", "localhost:9092");
+		properties.setProperty("group.id", groupId);
+		return properties;
+	}
+
+	private static CompletableFuture<Map<String, List<KafkaTopicPartition>>> getAsync(
+			Kafka09TopicMetadataCache cache,
+			KafkaConsumer<?, ?> consumer) {
+
+		final CompletableFuture<Map<String, List<KafkaTopicPartition>>> result = new CompletableFuture<>();
+		final Thread thread = new Thread(() -> {
+			try {
+				result.complete(cache.getTopicPartitions(consumer, Long.MAX_VALUE));
+			} catch (Throwable t) {
+				result.completeExceptionally(t);
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return result;
+	}
+
+	/**
+	 * A consumer whose metadata fetch blocks until it is released.
+	 */
+	private static final class BlockingConsumer extends KafkaConsumer<byte[], byte[]> {
+
+		private final CountDownLatch listing = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private final AtomicInteger fetches = new AtomicInteger();
+		private volatile RuntimeException failure;
+
+		BlockingConsumer() {
+			super(properties("blocking"), new ByteArrayDeserializer(), new ByteArrayDeserializer());
+		}
+
+		@Override
+		public Map<String, List<PartitionInfo>> listTopics() {
+			fetches.incrementAndGet();
+			listing.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return Collections.singletonMap("topic", java.util.Arrays.asList(
+				new PartitionInfo("topic", 0, null, null, null),
+				new PartitionInfo("topic", 1, null, null, null)));
+		}
+	}
+}
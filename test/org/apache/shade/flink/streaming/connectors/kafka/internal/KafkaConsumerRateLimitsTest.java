@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.apache.shade.flink.streaming.connectors.kafka.FlinkKafkaConsumer09;
+
+import org.apache.shade.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link KafkaConsumerRateLimits}.
+ */
+public class KafkaConsumerRateLimitsTest {
+
+	private static final long SECOND = 1_000_000_000L;
+
+	private static final TopicPartition TP0 = new TopicPartition("topic", 0);
+	private static final TopicPartition TP1 = new TopicPartition("topic", 1);
+	private static final TopicPartition OTHER = new TopicPartition("other", 0);
+
+	@Test
+	public void testNoLimits() {
+		assertNull(KafkaConsumerRateLimits.create(new Properties(), 0));
+	}
+
+	@Test
+	public void testConsumerLimitRefillsOverTime() {
+		final Properties properties = new Properties();
+		properties.setProperty(FlinkKafkaConsumer09.KEY_RATE_LIMIT_BYTES_PER_SECOND, "1000");
+		final KafkaConsumerRateLimits rateLimits = KafkaConsumerRateLimits.create(properties, 0);
+
+		assertFalse(rateLimits.isThrottled(TP0, 0));
+		rateLimits.recordFetchedBytes(TP0, 2000, 0);
+		assertTrue(rateLimits.isThrottled(TP0, 0));
+		assertTrue(rateLimits.isThrottled(OTHER, 0));
+
+		// the 1000 bytes of debt are refilled after a second
+		assertTrue(rateLimits.isThrottled(TP0, SECOND));
+		assertFalse(rateLimits.isThrottled(TP0, SECOND + SECOND / 100));
+		rateLimits.close();
+	}
+
+	@Test
+	public void testBurstCap() {
+		final Properties properties = new Properties();
+		properties.setProperty(FlinkKafkaConsumer09.KEY_RATE_LIMIT_BYTES_PER_SECOND, "1000");
+		properties.setProperty(FlinkKafkaConsumer09.KEY_RATE_LIMIT_BURST_MILLIS, "500");
+		final KafkaConsumerRateLimits rateLimits = KafkaConsumerRateLimits.create(properties, 0);
+
+		// after a quiet period, only half a second of the rate can be fetched at once
+		rateLimits.recordFetchedBytes(TP0, 500, 60 * SECOND);
+		assertTrue(rateLimits.isThrottled(TP0, 60 * SECOND));
+		rateLimits.close();
+	}
+
+	@Test
+	public void testTopicAndPartitionLimits() {
+		final Properties properties = new Properties();
+		properties.setProperty(FlinkKafkaConsumer09.KEY_RATE_LIMIT_TOPIC_PREFIX + "topic"
+			+ FlinkKafkaConsumer09.KEY_RATE_LIMIT_TOPIC_BYTES_PER_SECOND_SUFFIX, "1000");
+		properties.setProperty(FlinkKafkaConsumer09.KEY_RATE_LIMIT_PARTITION_BYTES_PER_SECOND, "600");
+		final KafkaConsumerRateLimits rateLimits = KafkaConsumerRateLimits.create(properties, 0);
+
+		// the partition budget of 600 is exhausted by the first partition alone
+		rateLimits.recordFetchedBytes(TP0, 600, 0);
+		assertTrue(rateLimits.isThrottled(TP0, 0));
+		assertFalse(rateLimits.isThrottled(TP1, 0));
+
+		// the topic budget of 1000 is exhausted by both partitions together
+		rateLimits.recordFetchedBytes(TP1, 399, 0);
+		assertFalse(rateLimits.isThrottled(TP1, 0));
+		rateLimits.recordFetchedBytes(TP1, 1, 0);
+		assertTrue(rateLimits.isThrottled(TP1, 0));
+		assertFalse(rateLimits.isThrottled(OTHER, 0));
+		rateLimits.close();
+	}
+
+	@Test
+	public void testSharedBudgetIsReleasedOnClose() {
+		final Properties properties = new Properties();
+		properties.setProperty(FlinkKafkaConsumer09.KEY_RATE_LIMIT_BYTES_PER_SECOND, "1000");
+		properties.setProperty(FlinkKafkaConsumer09.KEY_RATE_LIMIT_SHARED_BUDGET, "testSharedBudgetIsReleasedOnClose");
+
+		final KafkaConsumerRateLimits first = KafkaConsumerRateLimits.create(properties, 0);
+		final KafkaConsumerRateLimits second = KafkaConsumerRateLimits.create(properties, 0);
+		first.recordFetchedBytes(TP0, 1000, 0);
+		assertTrue(second.isThrottled(OTHER, 0));
+
+		// the budget stays shared as long as one consumer holds it
+		first.close();
+		final KafkaConsumerRateLimits third = KafkaConsumerRateLimits.create(properties, 0);
+		assertTrue(third.isThrottled(OTHER, 0));
+
+		// closing twice does not release the budget of the other consumers
+		first.close();
+		second.close();
+		assertTrue(third.isThrottled(OTHER, 0));
+
+		// once all consumers released it, a new consumer starts with a full budget
+		third.close();
+		final KafkaConsumerRateLimits fourth = KafkaConsumerRateLimits.create(properties, 0);
+		assertFalse(fourth.isThrottled(OTHER, 0));
+		fourth.close();
+	}
+
+	@Test
+	public void testUnsharedBudgetsAreIndependent() {
+		final Properties properties = new Properties();
+		properties.setProperty(FlinkKafkaConsumer09.KEY_RATE_LIMIT_BYTES_PER_SECOND, "1000");
+
+		final KafkaConsumerRateLimits first = KafkaConsumerRateLimits.create(properties, 0);
+		final KafkaConsumerRateLimits second = KafkaConsumerRateLimits.create(properties, 0);
+		first.recordFetchedBytes(TP0, 1000, 0);
+		assertTrue(first.isThrottled(TP0, 0));
+		assertFalse(second.isThrottled(TP0, 0));
+		first.close();
+		second.close();
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.apache.shade.flink.streaming.connectors.kafka.internals.KafkaCommitCallback;
+
+import org.apache.shade.kafka.clients.consumer.MockConsumer;
+import org.apache.shade.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.shade.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.shade.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.shade.kafka.common.TopicPartition;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link KafkaOffsetCommitter}.
+ */
+public class KafkaOffsetCommitterTest {
+
+	private static final TopicPartition TP0 = new TopicPartition("topic", 0);
+	private static final TopicPartition TP1 = new TopicPartition("topic", 1);
+
+	private final List<String> completions = new ArrayList<>();
+
+	private final StubConsumer consumer = new StubConsumer();
+
+	@Test
+	public void testCoalescesWhileMaxCommitsInFlight() {
+		final KafkaOffsetCommitter committer = new KafkaOffsetCommitter(LoggerFactory.getLogger(getClass()), 1, null);
+
+		assertFalse(committer.add(offsets(TP0, 1), callback("a")));
+		committer.maybeCommit(consumer);
+		assertEquals(1, committer.getNumCommitsInFlight());
+
+		assertFalse(committer.add(offsets(TP0, 2), callback("b")));
+		assertTrue(committer.add(offsets(TP0, 3, TP1, 5), callback("c")));
+		committer.maybeCommit(consumer);
+		assertEquals(1, consumer.commits.size());
+
+		consumer.complete(0, null);
+		assertEquals(Collections.singletonList("a"), completions);
+		assertEquals(0, committer.getNumCommitsInFlight());
+
+		// the coalesced requests are sent as one commit with the latest offset of every partition
+		committer.maybeCommit(consumer);
+		assertEquals(2, consumer.commits.size());
+		assertEquals(offsets(TP0, 3, TP1, 5), consumer.commits.get(1).offsets);
+
+		consumer.complete(1, null);
+		assertEquals(Arrays.asList("a", "b", "c"), completions);
+
+		// nothing is left to send
+		committer.maybeCommit(consumer);
+		assertEquals(2, consumer.commits.size());
+	}
+
+	@Test
+	public void testCompletesCommitsInSendOrder() {
+		final KafkaOffsetCommitter committer = new KafkaOffsetCommitter(LoggerFactory.getLogger(getClass()), 3, null);
+		final List<String> names = Arrays.asList("a", "b", "c");
+		for (int i = 0; i < names.size(); i++) {
+			committer.add(offsets(TP0, i), callback(names.get(i)));
+			committer.maybeCommit(consumer);
+		}
+		assertEquals(3, consumer.commits.size());
+		assertEquals(3, committer.getNumCommitsInFlight());
+
+		consumer.complete(2, null);
+		assertTrue(completions.isEmpty());
+
+		consumer.complete(0, new RuntimeException("expected"));
+		assertEquals(Collections.singletonList("a failed"), completions);
+		assertEquals(2, committer.getNumCommitsInFlight());
+
+		consumer.complete(1, null);
+		assertEquals(Arrays.asList("a failed", "b", "c"), completions);
+		assertEquals(0, committer.getNumCommitsInFlight());
+	}
+
+	@Test
+	public void testFailedCommitKeepsLaterOffsets() {
+		final KafkaOffsetCommitter committer = new KafkaOffsetCommitter(LoggerFactory.getLogger(getClass()), 2, null);
+		committer.add(offsets(TP0, 1), callback("a"));
+		committer.maybeCommit(consumer);
+		committer.add(offsets(TP0, 2), callback("b"));
+		committer.maybeCommit(consumer);
+		committer.add(offsets(TP1, 3), callback("c"));
+		committer.maybeCommit(consumer);
+		assertEquals(2, consumer.commits.size());
+
+		consumer.complete(0, new RuntimeException("expected"));
+		assertEquals(Collections.singletonList("a failed"), completions);
+
+		// the commits after the failed one still carry their offsets
+		committer.maybeCommit(consumer);
+		assertEquals(3, consumer.commits.size());
+		assertEquals(offsets(TP0, 2), consumer.commits.get(1).offsets);
+		assertEquals(offsets(TP1, 3), consumer.commits.get(2).offsets);
+
+		consumer.complete(1, null);
+		consumer.complete(2, null);
+		assertEquals(Arrays.asList("a failed", "b", "c"), completions);
+	}
+
+	private KafkaCommitCallback callback(final String name) {
+		return new KafkaCommitCallback() {
+			@Override
+			public void onSuccess() {
+				completions.add(name);
+			}
+
+			@Override
+			public void onException(Throwable cause) {
+				completions.add(name + " failed");
+			}
+		};
+	}
+
+	private static Map<TopicPartition, OffsetAndMetadata> offsets(Object... partitionsAndOffsets) {
+		final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+		for (int i = 0; i < partitionsAndOffsets.length; i += 2) {
+			offsets.put(
+				(TopicPartition) partitionsAndOffsets[i],
+				new OffsetAndMetadata(((Number) partitionsAndOffsets[i + 1]).longValue()));
+		}
+		return offsets;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/** A consumer whose commits stay in flight until the test completes them. */
+	private static final class StubConsumer extends MockConsumer<byte[], byte[]> {
+
+		private final List<SentCommit> commits = new ArrayList<>();
+
+		StubConsumer() {
+			super(OffsetResetStrategy.NONE);
+		}
+
+		@Override
+		public void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+			commits.add(new SentCommit(offsets, callback));
+		}
+
+		void complete(int index, Exception exception) {
+			final SentCommit commit = commits.get(index);
+			commit.callback.onComplete(commit.offsets, exception);
+		}
+	}
+
+	private static final class SentCommit {
+
+		private final Map<TopicPartition, OffsetAndMetadata> offsets;
+
+		private final OffsetCommitCallback callback;
+
+		SentCommit(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+			this.offsets = offsets;
+			this.callback = callback;
+		}
+	}
+}
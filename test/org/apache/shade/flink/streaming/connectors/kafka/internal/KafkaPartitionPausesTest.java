@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.apache.shade.kafka.clients.consumer.MockConsumer;
+import org.apache.shade.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.shade.kafka.common.TopicPartition;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link KafkaPartitionPauses}.
+ */
+public class KafkaPartitionPausesTest {
+
+	private static final TopicPartition TP0 = new TopicPartition("topic", 0);
+	private static final TopicPartition TP1 = new TopicPartition("topic", 1);
+
+	private final MockConsumer<byte[], byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.NONE);
+
+	private final KafkaPartitionPauses pauses = new KafkaPartitionPauses(LoggerFactory.getLogger(getClass()));
+
+	@Test
+	public void testRateLimitDoesNotResumeOtherPauses() {
+		consumer.assign(Arrays.asList(TP0, TP1));
+		pauses.setPaused(TP0, KafkaPartitionPauses.ALIGNMENT, true);
+		pauses.setPaused(TP1, KafkaPartitionPauses.FLOW_CONTROL, true);
+		pauses.apply(consumer, "test");
+		assertEquals(new HashSet<>(Arrays.asList(TP0, TP1)), consumer.paused());
+
+		pauses.setPaused(TP0, KafkaPartitionPauses.RATE_LIMIT, true);
+		pauses.setPaused(TP1, KafkaPartitionPauses.RATE_LIMIT, true);
+		pauses.setPaused(TP0, KafkaPartitionPauses.RATE_LIMIT, false);
+		pauses.setPaused(TP1, KafkaPartitionPauses.RATE_LIMIT, false);
+		pauses.apply(consumer, "test");
+		assertEquals(new HashSet<>(Arrays.asList(TP0, TP1)), consumer.paused());
+		assertTrue(pauses.isPaused(TP0, KafkaPartitionPauses.ALIGNMENT));
+		assertFalse(pauses.isPaused(TP0, KafkaPartitionPauses.RATE_LIMIT));
+		assertTrue(pauses.isPaused(TP1, KafkaPartitionPauses.FLOW_CONTROL));
+
+		// a partition is resumed once its last reason is gone
+		pauses.setPaused(TP1, KafkaPartitionPauses.RATE_LIMIT, true);
+		pauses.setPaused(TP1, KafkaPartitionPauses.FLOW_CONTROL, false);
+		pauses.apply(consumer, "test");
+		assertEquals(new HashSet<>(Arrays.asList(TP0, TP1)), consumer.paused());
+		pauses.setPaused(TP1, KafkaPartitionPauses.RATE_LIMIT, false);
+		pauses.apply(consumer, "test");
+		assertEquals(Collections.singleton(TP0), consumer.paused());
+	}
+
+	@Test
+	public void testPartitionsPausedForReason() {
+		pauses.setPaused(TP0, KafkaPartitionPauses.ALIGNMENT, true);
+		pauses.setPaused(TP0, KafkaPartitionPauses.RATE_LIMIT, true);
+		pauses.setPaused(TP1, KafkaPartitionPauses.RATE_LIMIT, true);
+
+		assertEquals(Collections.singletonList(TP0), pauses.getPartitionsPausedFor(KafkaPartitionPauses.ALIGNMENT));
+		assertEquals(
+			new HashSet<>(Arrays.asList(TP0, TP1)),
+			new HashSet<>(pauses.getPartitionsPausedFor(KafkaPartitionPauses.RATE_LIMIT)));
+		assertTrue(pauses.getPartitionsPausedFor(KafkaPartitionPauses.FLOW_CONTROL).isEmpty());
+	}
+
+	@Test
+	public void testRepeatedReasonIsAppliedOnce() {
+		consumer.assign(Collections.singletonList(TP0));
+		pauses.setPaused(TP0, KafkaPartitionPauses.RATE_LIMIT, true);
+		pauses.apply(consumer, "test");
+		assertEquals(Collections.singleton(TP0), consumer.paused());
+
+		// a reason that is set again does not need to be removed twice
+		pauses.setPaused(TP0, KafkaPartitionPauses.RATE_LIMIT, true);
+		pauses.setPaused(TP0, KafkaPartitionPauses.RATE_LIMIT, false);
+		pauses.apply(consumer, "test");
+		assertTrue(consumer.paused().isEmpty());
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TokenBucket}.
+ */
+public class TokenBucketTest {
+
+	private static final long SECOND = 1_000_000_000L;
+
+	@Test
+	public void testRefillsOverTime() {
+		final TokenBucket bucket = new TokenBucket(1000, 1000, 0);
+		bucket.consume(1500, 0);
+		assertFalse(bucket.hasTokens(0));
+
+		// 500 bytes of debt are refilled in half a second
+		assertFalse(bucket.hasTokens(SECOND / 2));
+		assertTrue(bucket.hasTokens(SECOND / 2 + SECOND / 1000));
+
+		bucket.consume(1, SECOND / 2 + SECOND / 1000);
+		assertFalse(bucket.hasTokens(SECOND / 2 + SECOND / 1000));
+		assertTrue(bucket.hasTokens(SECOND));
+	}
+
+	@Test
+	public void testBurstIsCappedByCapacity() {
+		final TokenBucket bucket = new TokenBucket(1000, 2000, 0);
+
+		// a long quiet period does not accumulate more than the capacity
+		assertTrue(bucket.hasTokens(100 * SECOND));
+		bucket.consume(2000, 100 * SECOND);
+		assertFalse(bucket.hasTokens(100 * SECOND));
+
+		assertTrue(bucket.hasTokens(101 * SECOND));
+		bucket.consume(1001, 101 * SECOND);
+		assertFalse(bucket.hasTokens(101 * SECOND));
+	}
+
+	@Test
+	public void testTimeGoingBackwardsDoesNotRefill() {
+		final TokenBucket bucket = new TokenBucket(1000, 1000, SECOND);
+		bucket.consume(1000, SECOND);
+		assertFalse(bucket.hasTokens(0));
+		assertFalse(bucket.hasTokens(SECOND));
+		assertTrue(bucket.hasTokens(SECOND + SECOND / 100));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsNonPositiveRate() {
+		new TokenBucket(0, 1000, 0);
+	}
+}
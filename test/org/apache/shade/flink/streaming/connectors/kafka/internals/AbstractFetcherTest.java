@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.flink.metrics.groups.UnregisteredMetricsGroup;
+import org.apache.flink.streaming.api.functions.AssignerWithPeriodicWatermarks;
+import org.apache.flink.streaming.api.functions.source.SourceFunction.SourceContext;
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.flink.streaming.runtime.tasks.TestProcessingTimeService;
+import org.apache.flink.util.SerializedValue;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link AbstractFetcher}.
+ */
+public class AbstractFetcherTest {
+
+	private static final long WATERMARK_INTERVAL = 10L;
+
+	private static final long MAX_WATERMARK_DRIFT = 100L;
+
+	@Test
+	public void testPeriodicWatermarkEmitterStartsWithFetchLoop() throws Exception {
+		final TestProcessingTimeService timerService = new TestProcessingTimeService();
+		final TestFetcher fetcher = new TestFetcher(timerService);
+
+		// the emitter must not call back into the fetcher before it is fully constructed
+		assertEquals(0, timerService.getNumActiveTimers());
+
+		fetcher.runFetchLoop();
+		assertEquals(1, timerService.getNumActiveTimers());
+	}
+
+	@Test
+	public void testPartitionsAheadOfWatermarkArePaused() throws Exception {
+		final TestProcessingTimeService timerService = new TestProcessingTimeService();
+		final TestFetcher fetcher = new TestFetcher(timerService);
+		fetcher.runFetchLoop();
+
+		final List<KafkaTopicPartitionState<Object>> partitions = fetcher.subscribedPartitionStates();
+		fetcher.emitRecordWithTimestamp(1000L, partitions.get(0), 1L, 1000L);
+		fetcher.emitRecordWithTimestamp(10L, partitions.get(1), 1L, 10L);
+
+		// the first round emits the watermark, the second one pauses the partition that is too far ahead
+		timerService.setCurrentTime(WATERMARK_INTERVAL);
+		timerService.setCurrentTime(2 * WATERMARK_INTERVAL);
+		assertEquals(1, fetcher.pausedForAlignment.size());
+		assertEquals(Collections.singletonList(partitions.get(0)), fetcher.pausedForAlignment.get(0));
+
+		// the partition is resumed once the slow partition catches up
+		fetcher.emitRecordWithTimestamp(950L, partitions.get(1), 2L, 950L);
+		timerService.setCurrentTime(3 * WATERMARK_INTERVAL);
+		timerService.setCurrentTime(4 * WATERMARK_INTERVAL);
+		assertEquals(2, fetcher.pausedForAlignment.size());
+		assertEquals(Collections.emptyList(), fetcher.pausedForAlignment.get(1));
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static final class TestFetcher extends AbstractFetcher<Long, Object> {
+
+		/** Assigned after the super constructor, like the consumer thread of the Kafka fetcher. */
+		private final List<List<KafkaTopicPartitionState<Object>>> pausedForAlignment;
+
+		TestFetcher(TestProcessingTimeService timerService) throws Exception {
+			super(
+					new NoOpSourceContext(),
+					seedPartitions(),
+					new SerializedValue<AssignerWithPeriodicWatermarks<Long>>(new MaxTimestampAssigner()),
+					null,
+					timerService,
+					WATERMARK_INTERVAL,
+					AbstractFetcher.DISABLED,
+					MAX_WATERMARK_DRIFT,
+					AbstractFetcherTest.class.getClassLoader(),
+					new UnregisteredMetricsGroup(),
+					false);
+			this.pausedForAlignment = new ArrayList<>();
+		}
+
+		@Override
+		public void runFetchLoop() {
+			startPeriodicWatermarkEmitter();
+		}
+
+		@Override
+		public void cancel() {
+		}
+
+		@Override
+		protected void doCommitInternalOffsetsToKafka(
+				Map<KafkaTopicPartition, Long> offsets,
+				@Nonnull KafkaCommitCallback commitCallback) {
+		}
+
+		@Override
+		protected Object createKafkaPartitionHandle(KafkaTopicPartition partition) {
+			return new Object();
+		}
+
+		@Override
+		protected void setPartitionsPausedForAlignment(List<KafkaTopicPartitionState<Object>> pausedPartitions) {
+			pausedForAlignment.add(pausedPartitions);
+		}
+
+		private static Map<KafkaTopicPartition, Long> seedPartitions() {
+			final Map<KafkaTopicPartition, Long> partitions = new HashMap<>();
+			partitions.put(new KafkaTopicPartition("topic", 0), 0L);
+			partitions.put(new KafkaTopicPartition("topic", 1), 0L);
+			return partitions;
+		}
+	}
+
+	private static final class MaxTimestampAssigner implements AssignerWithPeriodicWatermarks<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		private long maxTimestamp = Long.MIN_VALUE;
+
+		@Override
+		public long extractTimestamp(Long element, long previousElementTimestamp) {
+			maxTimestamp = Math.max(maxTimestamp, element);
+			return element;
+		}
+
+		@Nullable
+		@Override
+		public Watermark getCurrentWatermark() {
+			return new Watermark(maxTimestamp);
+		}
+	}
+
+	private static final class NoOpSourceContext implements SourceContext<Long> {
+
+		private final Object lock = new Object();
+
+		@Override
+		public void collect(Long element) {
+		}
+
+		@Override
+		public void collectWithTimestamp(Long element, long timestamp) {
+		}
+
+		@Override
+		public void emitWatermark(Watermark mark) {
+		}
+
+		@Override
+		public void markAsTemporarilyIdle() {
+		}
+
+		@Override
+		public Object getCheckpointLock() {
+			return lock;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
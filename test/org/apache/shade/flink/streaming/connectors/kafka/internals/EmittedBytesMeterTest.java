@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.flink.metrics.View;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link AbstractFetcher.EmittedBytesMeter}.
+ */
+public class EmittedBytesMeterTest {
+
+	private static final int UPDATES_PER_TIME_SPAN =
+		AbstractFetcher.EMITTED_BYTES_RATE_TIME_SPAN_SECONDS / View.UPDATE_INTERVAL_SECONDS;
+
+	@Test
+	public void testRateOverTimeSpan() {
+		final KafkaTopicPartitionState<Object> partition =
+			new KafkaTopicPartitionState<>(new KafkaTopicPartition("topic", 0), new Object());
+		final AbstractFetcher.EmittedBytesMeter meter = new AbstractFetcher.EmittedBytesMeter(partition);
+		assertEquals(0.0, meter.getRate(), 0.0);
+
+		// a constant rate of 100 bytes per second, until the whole time span is covered
+		for (int i = 0; i < UPDATES_PER_TIME_SPAN; i++) {
+			partition.addEmittedBytes(100 * View.UPDATE_INTERVAL_SECONDS);
+			meter.update();
+		}
+		assertEquals(100.0, meter.getRate(), 1e-9);
+		assertEquals(100L * AbstractFetcher.EMITTED_BYTES_RATE_TIME_SPAN_SECONDS, meter.getCount());
+
+		// nothing emitted for a whole time span
+		for (int i = 0; i < UPDATES_PER_TIME_SPAN; i++) {
+			meter.update();
+		}
+		assertEquals(0.0, meter.getRate(), 0.0);
+	}
+
+	@Test
+	public void testMarkEventDoesNotCountBytes() {
+		final KafkaTopicPartitionState<Object> partition =
+			new KafkaTopicPartitionState<>(new KafkaTopicPartition("topic", 0), new Object());
+		final AbstractFetcher.EmittedBytesMeter meter = new AbstractFetcher.EmittedBytesMeter(partition);
+
+		partition.addEmittedBytes(10);
+		meter.markEvent();
+		meter.markEvent(5);
+		assertEquals(10, meter.getCount());
+	}
+}
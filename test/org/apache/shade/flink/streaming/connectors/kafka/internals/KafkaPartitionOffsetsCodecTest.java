@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link KafkaPartitionOffsetsCodec}.
+ */
+public class KafkaPartitionOffsetsCodecTest {
+
+	private static final int ASSIGNMENT_ID = 42;
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		final Map<KafkaTopicPartition, Long> offsets = new LinkedHashMap<>();
+		// interleaved topics, descending partition ids, negative sentinel offsets and large offsets
+		offsets.put(new KafkaTopicPartition("topic-a", 3), 17L);
+		offsets.put(new KafkaTopicPartition("topic-b", 0), Long.MAX_VALUE);
+		offsets.put(new KafkaTopicPartition("topic-a", 1), KafkaTopicPartitionStateSentinel.EARLIEST_OFFSET);
+		offsets.put(new KafkaTopicPartition("topic-a", 2000), 0L);
+		offsets.put(new KafkaTopicPartition("topic-b", 7), KafkaTopicPartitionStateSentinel.GROUP_OFFSET);
+		offsets.put(new KafkaTopicPartition("ümläut", 0), 1L << 40);
+
+		final byte[] serialized = KafkaPartitionOffsetsCodec.serialize(
+			1, 4, ASSIGNMENT_ID, KafkaTopicPartitionOffsetsSnapshot.of(offsets));
+
+		final Map<KafkaTopicPartition, Long> restored = new HashMap<>();
+		assertTrue(KafkaPartitionOffsetsCodec.deserialize(serialized, 1, 4, ASSIGNMENT_ID, restored));
+		assertEquals(offsets, restored);
+	}
+
+	@Test
+	public void testRoundTripEmpty() throws Exception {
+		final byte[] serialized = KafkaPartitionOffsetsCodec.serialize(
+			0, 2, ASSIGNMENT_ID, KafkaTopicPartitionOffsetsSnapshot.of(new HashMap<KafkaTopicPartition, Long>()));
+
+		final Map<KafkaTopicPartition, Long> restored = new HashMap<>();
+		assertTrue(KafkaPartitionOffsetsCodec.deserialize(serialized, 0, 2, ASSIGNMENT_ID, restored));
+		assertTrue(restored.isEmpty());
+	}
+
+	@Test
+	public void testSkipsSnapshotsOfOtherSubtasks() throws Exception {
+		final Map<KafkaTopicPartition, Long> offsets = new HashMap<>();
+		offsets.put(new KafkaTopicPartition("topic", 5), 100L);
+		final byte[] serialized = KafkaPartitionOffsetsCodec.serialize(
+			2, 4, ASSIGNMENT_ID, KafkaTopicPartitionOffsetsSnapshot.of(offsets));
+
+		final Map<KafkaTopicPartition, Long> restored = new HashMap<>();
+		assertFalse(KafkaPartitionOffsetsCodec.deserialize(serialized, 1, 4, ASSIGNMENT_ID, restored));
+		assertTrue(restored.isEmpty());
+	}
+
+	@Test
+	public void testDecodesAllSnapshotsOnRescale() throws Exception {
+		final Map<KafkaTopicPartition, Long> offsets = new HashMap<>();
+		offsets.put(new KafkaTopicPartition("topic", 5), 100L);
+		final byte[] serialized = KafkaPartitionOffsetsCodec.serialize(
+			2, 4, ASSIGNMENT_ID, KafkaTopicPartitionOffsetsSnapshot.of(offsets));
+
+		// a different parallelism re-assigns the partitions
+		final Map<KafkaTopicPartition, Long> rescaled = new HashMap<>();
+		assertTrue(KafkaPartitionOffsetsCodec.deserialize(serialized, 1, 8, ASSIGNMENT_ID, rescaled));
+		assertEquals(offsets, rescaled);
+
+		// as does a different assignment strategy
+		final Map<KafkaTopicPartition, Long> reassigned = new HashMap<>();
+		assertTrue(KafkaPartitionOffsetsCodec.deserialize(serialized, 1, 4, ASSIGNMENT_ID + 1, reassigned));
+		assertEquals(offsets, reassigned);
+	}
+
+	@Test
+	public void testReadsVersion1AsAssignmentIdZero() throws Exception {
+		final Map<KafkaTopicPartition, Long> offsets = new HashMap<>();
+		offsets.put(new KafkaTopicPartition("topic", 2), 300L);
+		offsets.put(new KafkaTopicPartition("topic", 3), -2L);
+		final byte[] v1 = serializeVersion1(1, 2, "topic", new int[] {2, 3}, new long[] {300L, -2L});
+
+		// the snapshot of another subtask with the round-robin assignment is still owned by that subtask
+		final Map<KafkaTopicPartition, Long> skipped = new HashMap<>();
+		assertFalse(KafkaPartitionOffsetsCodec.deserialize(v1, 0, 2, 0, skipped));
+		assertTrue(skipped.isEmpty());
+
+		final Map<KafkaTopicPartition, Long> own = new HashMap<>();
+		assertTrue(KafkaPartitionOffsetsCodec.deserialize(v1, 1, 2, 0, own));
+		assertEquals(offsets, own);
+
+		// with another assignment, the snapshots of all subtasks are decoded
+		final Map<KafkaTopicPartition, Long> migrated = new HashMap<>();
+		assertTrue(KafkaPartitionOffsetsCodec.deserialize(v1, 0, 2, ASSIGNMENT_ID, migrated));
+		assertEquals(offsets, migrated);
+	}
+
+	@Test
+	public void testRejectsUnknownVersion() throws Exception {
+		try {
+			KafkaPartitionOffsetsCodec.deserialize(new byte[] {3, 1, 0, 0}, 0, 1, 0, new HashMap<KafkaTopicPartition, Long>());
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Writes a snapshot of a single topic in the first version of the format, which has no assignment id.
+	 */
+	private static byte[] serializeVersion1(
+			int indexOfThisSubtask,
+			int numParallelSubtasks,
+			String topic,
+			int[] partitions,
+			long[] offsets) throws IOException {
+
+		final DataOutputSerializer out = new DataOutputSerializer(64);
+		out.writeByte(1);
+		out.writeByte(numParallelSubtasks);
+		out.writeByte(indexOfThisSubtask);
+		out.writeByte(1);
+		out.writeUTF(topic);
+		out.writeByte(partitions.length);
+		int previousPartition = 0;
+		for (int i = 0; i < partitions.length; i++) {
+			out.writeByte(partitions[i] - previousPartition);
+			// all offsets of the test fit into a single zig-zag varint byte or two
+			final long zigZag = (offsets[i] << 1) ^ (offsets[i] >> 63);
+			if (zigZag < 0x80) {
+				out.writeByte((int) zigZag);
+			} else {
+				out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+				out.writeByte((int) (zigZag >>> 7));
+			}
+			previousPartition = partitions[i];
+		}
+		return out.getCopyOfBuffer();
+	}
+}
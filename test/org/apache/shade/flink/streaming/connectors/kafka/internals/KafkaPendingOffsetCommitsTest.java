@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.commons.collections.map.LinkedMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link KafkaPendingOffsetCommits}.
+ */
+public class KafkaPendingOffsetCommitsTest {
+
+	private static final KafkaTopicPartition P0 = new KafkaTopicPartition("topic", 0);
+	private static final KafkaTopicPartition P1 = new KafkaTopicPartition("topic", 1);
+	private static final KafkaTopicPartition P2 = new KafkaTopicPartition("topic", 2);
+
+	/** Reused across checkpoints, like the snapshot of the fetcher. */
+	private final KafkaTopicPartitionOffsetsSnapshot snapshot = new KafkaTopicPartitionOffsetsSnapshot();
+
+	@Test
+	public void testCommitReturnsFullOffsets() {
+		final KafkaPendingOffsetCommits pending = new KafkaPendingOffsetCommits(10);
+		pending.add(1L, snapshot(P0, 10L, P1, 20L));
+		pending.add(2L, snapshot(P0, 11L, P1, 20L));
+		pending.add(3L, snapshot(P0, 11L, P1, 25L));
+		assertEquals(3, pending.size());
+
+		assertEquals(offsets(P0, 11L, P1, 20L), pending.commit(2L));
+		assertEquals(1, pending.size());
+		assertEquals(offsets(P0, 11L, P1, 25L), pending.commit(3L));
+		assertEquals(0, pending.size());
+	}
+
+	@Test
+	public void testCommitAfterOlderCheckpointsWereTruncated() {
+		final KafkaPendingOffsetCommits pending = new KafkaPendingOffsetCommits(1);
+		pending.add(1L, snapshot(P0, 10L, P1, 20L));
+		pending.add(2L, snapshot(P0, 11L, P1, 20L));
+		pending.add(3L, snapshot(P0, 11L, P1, 21L));
+
+		// checkpoints 1 and 2 were folded into the committed base, without being returned
+		assertEquals(1, pending.size());
+		assertFalse(pending.contains(1L));
+		assertFalse(pending.contains(2L));
+		assertNull(pending.commit(2L));
+
+		assertEquals(offsets(P0, 11L, P1, 21L), pending.commit(3L));
+
+		// the next delta builds on the committed base
+		pending.add(4L, snapshot(P0, 12L, P1, 21L));
+		assertEquals(offsets(P0, 12L, P1, 21L), pending.commit(4L));
+	}
+
+	@Test
+	public void testNewPartitionsAreAppended() {
+		final KafkaPendingOffsetCommits pending = new KafkaPendingOffsetCommits(10);
+		pending.add(1L, snapshot(P0, 10L));
+		pending.add(2L, snapshot(P0, 10L, P1, 20L));
+		pending.add(3L, snapshot(P0, 10L, P1, 21L, P2, 30L));
+
+		assertEquals(offsets(P0, 10L), pending.commit(1L));
+		assertEquals(offsets(P0, 10L, P1, 21L, P2, 30L), pending.commit(3L));
+	}
+
+	@Test
+	public void testLayoutChangeBetweenCheckpoints() {
+		final KafkaPendingOffsetCommits pending = new KafkaPendingOffsetCommits(10);
+		pending.add(1L, snapshot(P0, 10L, P1, 20L));
+		// the partition at a known index changes
+		pending.add(2L, snapshot(P1, 21L, P0, 10L));
+		// a partition disappears
+		pending.add(3L, snapshot(P2, 30L));
+		// the same layout again, with unchanged offsets
+		pending.add(4L, snapshot(P2, 30L));
+
+		assertEquals(offsets(P0, 10L, P1, 20L), pending.commit(1L));
+		assertEquals(offsets(P0, 10L, P1, 21L), pending.commit(2L));
+		assertEquals(offsets(P2, 30L), pending.commit(4L));
+
+		// the layout changes again after the base was committed
+		pending.add(5L, snapshot(P0, 11L, P1, 22L));
+		assertEquals(offsets(P0, 11L, P1, 22L), pending.commit(5L));
+	}
+
+	@Test
+	public void testLayoutChangeFoldedIntoCommittedBase() {
+		final KafkaPendingOffsetCommits pending = new KafkaPendingOffsetCommits(2);
+		pending.add(1L, snapshot(P0, 10L, P1, 20L, P2, 30L));
+		pending.add(2L, snapshot(P1, 21L));
+		pending.add(3L, snapshot(P1, 22L, P0, 11L));
+
+		assertEquals(offsets(P1, 21L), pending.commit(2L));
+		assertEquals(offsets(P1, 22L, P0, 11L), pending.commit(3L));
+	}
+
+	@Test
+	public void testUnknownAndSubsumedCheckpoints() {
+		final KafkaPendingOffsetCommits pending = new KafkaPendingOffsetCommits(10);
+		assertNull(pending.commit(1L));
+
+		pending.add(2L, snapshot(P0, 10L));
+		pending.add(4L, snapshot(P0, 11L));
+		pending.add(6L, snapshot(P0, 12L));
+
+		assertNull(pending.commit(1L));
+		assertNull(pending.commit(3L));
+		assertNull(pending.commit(7L));
+		assertEquals(3, pending.size());
+
+		assertEquals(offsets(P0, 11L), pending.commit(4L));
+
+		// checkpoint 2 was subsumed, and 4 was already committed
+		assertNull(pending.commit(2L));
+		assertNull(pending.commit(4L));
+		assertEquals(1, pending.size());
+		assertTrue(pending.contains(6L));
+	}
+
+	@Test
+	public void testEmptyCheckpoint() {
+		final KafkaPendingOffsetCommits pending = new KafkaPendingOffsetCommits(10);
+		pending.add(1L, snapshot());
+		assertEquals(Collections.emptyMap(), pending.commit(1L));
+	}
+
+	/**
+	 * Checks random checkpoints and commits against the {@link LinkedMap} of full offset maps that
+	 * the consumer kept before the offsets were delta encoded.
+	 */
+	@Test
+	public void testMatchesLinkedMapOfFullOffsets() {
+		final Random random = new Random(42);
+		for (int iteration = 0; iteration < 100; iteration++) {
+			final int maxPending = 1 + random.nextInt(5);
+			final KafkaPendingOffsetCommits pending = new KafkaPendingOffsetCommits(maxPending);
+			final LinkedMap expected = new LinkedMap();
+
+			final List<KafkaTopicPartition> partitions = new ArrayList<>();
+			final List<Long> offsets = new ArrayList<>();
+			long checkpointId = 0;
+
+			for (int step = 0; step < 200; step++) {
+				if (random.nextInt(3) > 0) {
+					changeOffsets(random, partitions, offsets);
+					checkpointId += 1 + random.nextInt(2);
+
+					final Map<KafkaTopicPartition, Long> offsetsMap = new HashMap<>();
+					for (int i = 0; i < partitions.size(); i++) {
+						offsetsMap.put(partitions.get(i), offsets.get(i));
+					}
+					pending.add(checkpointId, snapshot(partitions, offsets));
+					expected.put(checkpointId, offsetsMap);
+					while (expected.size() > maxPending) {
+						expected.remove(0);
+					}
+				} else {
+					// commit a pending, subsumed or unknown checkpoint
+					final long commitId = Math.max(0, checkpointId - random.nextInt(maxPending + 2));
+					assertEquals(commitLinkedMap(expected, commitId), pending.commit(commitId));
+				}
+				assertEquals(expected.size(), pending.size());
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/** The commit of the consumer before the offsets were delta encoded. */
+	private static Object commitLinkedMap(LinkedMap pending, long checkpointId) {
+		final int posInMap = pending.indexOf(checkpointId);
+		if (posInMap == -1) {
+			return null;
+		}
+		final Object offsets = pending.remove(posInMap);
+		for (int i = 0; i < posInMap; i++) {
+			pending.remove(0);
+		}
+		return offsets;
+	}
+
+	private static void changeOffsets(Random random, List<KafkaTopicPartition> partitions, List<Long> offsets) {
+		switch (random.nextInt(10)) {
+			case 0:
+				// a partition is discovered
+				partitions.add(new KafkaTopicPartition("topic", partitions.size()));
+				offsets.add((long) random.nextInt(100));
+				break;
+			case 1:
+				// the partitions are reordered, e.g. after a restore
+				final long seed = random.nextLong();
+				Collections.shuffle(partitions, new Random(seed));
+				Collections.shuffle(offsets, new Random(seed));
+				break;
+			case 2:
+				// a partition is removed
+				if (!partitions.isEmpty()) {
+					final int index = random.nextInt(partitions.size());
+					partitions.remove(index);
+					offsets.remove(index);
+				}
+				break;
+			default:
+				for (int i = 0; i < offsets.size(); i++) {
+					if (random.nextBoolean()) {
+						offsets.set(i, offsets.get(i) + random.nextInt(10));
+					}
+				}
+		}
+	}
+
+	private KafkaTopicPartitionOffsetsSnapshot snapshot(Object... partitionsAndOffsets) {
+		final List<KafkaTopicPartition> partitions = new ArrayList<>();
+		final List<Long> offsets = new ArrayList<>();
+		for (int i = 0; i < partitionsAndOffsets.length; i += 2) {
+			partitions.add((KafkaTopicPartition) partitionsAndOffsets[i]);
+			offsets.add((Long) partitionsAndOffsets[i + 1]);
+		}
+		return snapshot(partitions, offsets);
+	}
+
+	private KafkaTopicPartitionOffsetsSnapshot snapshot(List<KafkaTopicPartition> partitions, List<Long> offsets) {
+		final List<KafkaTopicPartitionState<Object>> states = new ArrayList<>(partitions.size());
+		for (int i = 0; i < partitions.size(); i++) {
+			final KafkaTopicPartitionState<Object> state = new KafkaTopicPartitionState<>(partitions.get(i), new Object());
+			state.setOffset(offsets.get(i));
+			states.add(state);
+		}
+		snapshot.update(states);
+		return snapshot;
+	}
+
+	private static Map<KafkaTopicPartition, Long> offsets(Object... partitionsAndOffsets) {
+		final Map<KafkaTopicPartition, Long> offsets = new HashMap<>();
+		for (int i = 0; i < partitionsAndOffsets.length; i += 2) {
+			offsets.put((KafkaTopicPartition) partitionsAndOffsets[i], (Long) partitionsAndOffsets[i + 1]);
+		}
+		return offsets;
+	}
+}
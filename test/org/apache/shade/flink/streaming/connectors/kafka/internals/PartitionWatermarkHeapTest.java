@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link PartitionWatermarkHeap}.
+ */
+public class PartitionWatermarkHeapTest {
+
+	@Test
+	public void testEmptyHeap() {
+		final PartitionWatermarkHeap heap = new PartitionWatermarkHeap();
+		assertEquals(Long.MAX_VALUE, heap.getMinWatermark());
+		assertEquals(-1, heap.getMinWatermarkPartition());
+		assertEquals(0, heap.size());
+	}
+
+	@Test
+	public void testAddReturnsConsecutiveIndexes() {
+		final PartitionWatermarkHeap heap = new PartitionWatermarkHeap();
+		for (int i = 0; i < 40; i++) {
+			assertEquals(i, heap.add(100 - i));
+			assertEquals(100 - i, heap.getMinWatermark());
+			assertEquals(i, heap.getMinWatermarkPartition());
+		}
+		assertEquals(40, heap.size());
+	}
+
+	@Test
+	public void testMatchesLinearScanUnderRandomUpdates() {
+		final Random random = new Random(3);
+		final PartitionWatermarkHeap heap = new PartitionWatermarkHeap();
+		final List<Long> model = new ArrayList<>();
+
+		for (int i = 0; i < 50_000; i++) {
+			final long watermark = random.nextInt(1000) - 500;
+			if (model.isEmpty() || random.nextInt(50) == 0) {
+				assertEquals(model.size(), heap.add(watermark));
+				model.add(watermark);
+			} else {
+				final int partition = random.nextInt(model.size());
+				model.set(partition, watermark);
+				assertEquals((long) Collections.min(model), heap.update(partition, watermark));
+				assertEquals(watermark, heap.getWatermark(partition));
+			}
+
+			assertEquals((long) Collections.min(model), heap.getMinWatermark());
+			assertEquals(heap.getMinWatermark(), (long) model.get(heap.getMinWatermarkPartition()));
+		}
+		assertEquals(model.size(), heap.size());
+	}
+}
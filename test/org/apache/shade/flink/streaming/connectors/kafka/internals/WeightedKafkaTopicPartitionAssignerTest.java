@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shade.flink.streaming.connectors.kafka.internals;
+
+import org.apache.flink.api.common.serialization.SimpleStringSchema;
+import org.apache.flink.util.InstantiationUtil;
+import org.apache.shade.flink.streaming.connectors.kafka.FlinkKafkaConsumer09;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link WeightedKafkaTopicPartitionAssigner}.
+ */
+public class WeightedKafkaTopicPartitionAssignerTest {
+
+	@Test
+	public void testBalancesWeightsAcrossSubtasks() {
+		final Map<KafkaTopicPartition, Long> weights = new HashMap<>();
+		long totalWeight = 0;
+		for (int i = 0; i < 12; i++) {
+			// a few heavy partitions and many light ones
+			final long weight = i < 3 ? 1000 : 10 + i;
+			weights.put(new KafkaTopicPartition("topic", i), weight);
+			totalWeight += weight;
+		}
+
+		final WeightedKafkaTopicPartitionAssigner assigner = new WeightedKafkaTopicPartitionAssigner(weights);
+		for (int parallelism = 1; parallelism <= 6; parallelism++) {
+			final long[] loads = new long[parallelism];
+			for (Map.Entry<KafkaTopicPartition, Long> weight : weights.entrySet()) {
+				final int subtask = assigner.assign(weight.getKey(), parallelism);
+				assertTrue(subtask >= 0 && subtask < parallelism);
+				loads[subtask] += weight.getValue();
+			}
+
+			// a subtask only exceeds the allowed imbalance by at most one partition
+			final double capacity = (double) totalWeight / parallelism * (1 + WeightedKafkaTopicPartitionAssigner.DEFAULT_MAX_IMBALANCE);
+			final double bound = Math.max(capacity, (double) totalWeight / parallelism + 1000);
+			for (long load : loads) {
+				assertTrue("Load " + load + " exceeds " + bound + " with parallelism " + parallelism, load <= bound);
+			}
+		}
+	}
+
+	@Test
+	public void testBalancesEqualWeightsEvenly() {
+		final Map<KafkaTopicPartition, Long> weights = new HashMap<>();
+		for (int i = 0; i < 24; i++) {
+			weights.put(new KafkaTopicPartition("topic-" + (i % 5), i), 7L);
+		}
+
+		final WeightedKafkaTopicPartitionAssigner assigner = new WeightedKafkaTopicPartitionAssigner(weights, 0.0);
+		for (int parallelism : new int[] {2, 3, 4, 6, 8}) {
+			final int[] counts = new int[parallelism];
+			for (KafkaTopicPartition partition : weights.keySet()) {
+				counts[assigner.assign(partition, parallelism)]++;
+			}
+			for (int count : counts) {
+				assertEquals(24 / parallelism, count);
+			}
+		}
+	}
+
+	@Test
+	public void testUnweightedPartitionsAreAssignedRoundRobin() {
+		final WeightedKafkaTopicPartitionAssigner assigner = new WeightedKafkaTopicPartitionAssigner(
+			Collections.singletonMap(new KafkaTopicPartition("topic", 0), 100L));
+
+		for (int i = 1; i < 10; i++) {
+			final KafkaTopicPartition partition = new KafkaTopicPartition("other-topic", i);
+			assertEquals(KafkaTopicPartitionAssigner.assign(partition, 4), assigner.assign(partition, 4));
+		}
+	}
+
+	@Test
+	public void testAssignmentIsIndependentOfWeightOrder() {
+		final Map<KafkaTopicPartition, Long> ascending = new LinkedHashMap<>();
+		final Map<KafkaTopicPartition, Long> descending = new LinkedHashMap<>();
+		for (int i = 0; i < 20; i++) {
+			ascending.put(new KafkaTopicPartition("topic", i), 5L);
+			descending.put(new KafkaTopicPartition("topic", 19 - i), 5L);
+		}
+
+		final WeightedKafkaTopicPartitionAssigner first = new WeightedKafkaTopicPartitionAssigner(ascending);
+		final WeightedKafkaTopicPartitionAssigner second = new WeightedKafkaTopicPartitionAssigner(descending);
+		assertEquals(first.getAssignmentId(), second.getAssignmentId());
+		for (KafkaTopicPartition partition : ascending.keySet()) {
+			assertEquals(first.assign(partition, 3), second.assign(partition, 3));
+		}
+
+		final Map<KafkaTopicPartition, Long> changed = new HashMap<>(ascending);
+		changed.put(new KafkaTopicPartition("topic", 7), 6L);
+		assertNotEquals(first.getAssignmentId(), new WeightedKafkaTopicPartitionAssigner(changed).getAssignmentId());
+		assertNotEquals(0, first.getAssignmentId());
+	}
+
+	@Test
+	public void testSerializedAssignerComputesTheSameAssignment() throws Exception {
+		final Map<KafkaTopicPartition, Long> weights = new HashMap<>();
+		for (int i = 0; i < 16; i++) {
+			weights.put(new KafkaTopicPartition(i % 2 == 0 ? "even" : "odd", i), (long) (i * i));
+		}
+		final WeightedKafkaTopicPartitionAssigner assigner = new WeightedKafkaTopicPartitionAssigner(weights, 0.2);
+		// compute an assignment before serializing, which must not be part of the serialized form
+		assigner.assign(new KafkaTopicPartition("even", 0), 3);
+
+		final WeightedKafkaTopicPartitionAssigner copy = InstantiationUtil.clone(assigner);
+
+		assertEquals(assigner.getAssignmentId(), copy.getAssignmentId());
+		for (int parallelism = 1; parallelism <= 5; parallelism++) {
+			for (KafkaTopicPartition partition : weights.keySet()) {
+				assertEquals(assigner.assign(partition, parallelism), copy.assign(partition, parallelism));
+			}
+		}
+	}
+
+	@Test
+	public void testConsumerWithWeightsIsSerializable() throws Exception {
+		final Properties properties = new Properties();
+		properties.setProperty("bootstrap.servers", "localhost:9092");
+		properties.setProperty("group.id", "test");
+
+		final FlinkKafkaConsumer09<String> consumer =
+			new FlinkKafkaConsumer09<>("topic", new SimpleStringSchema(), properties);
+		consumer.setPartitionWeights(Collections.singletonMap(new KafkaTopicPartition("topic", 0), 10L));
+
+		InstantiationUtil.clone(consumer);
+	}
+}
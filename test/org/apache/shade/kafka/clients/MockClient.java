@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.clients;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.shade.kafka.common.Node;
+import org.apache.shade.kafka.common.protocol.ApiKeys;
+import org.apache.shade.kafka.common.protocol.ProtoUtils;
+import org.apache.shade.kafka.common.protocol.types.Struct;
+import org.apache.shade.kafka.common.requests.RequestHeader;
+
+/**
+ * A {@link KafkaClient} which answers the requests sent to it with the responses prepared per api, without any
+ * network IO. Requests of an api without a prepared response stay in flight until one is prepared. Responses are
+ * delivered by the next {@link #poll(long, long)}, which never blocks.
+ * <p>
+ * The client may be prepared and inspected by another thread than the one using it.
+ */
+public class MockClient implements KafkaClient {
+
+    private final Node node;
+    private final Map<ApiKeys, Struct> responses = new EnumMap<>(ApiKeys.class);
+    private final Map<ApiKeys, Integer> requestCounts = new EnumMap<>(ApiKeys.class);
+    private final Map<ApiKeys, Struct> lastRequests = new EnumMap<>(ApiKeys.class);
+    private final List<ClientRequest> inFlight = new ArrayList<>();
+    private final Set<String> disconnected = new HashSet<>();
+    private int correlation = 0;
+
+    public MockClient(Node node) {
+        this.node = node;
+    }
+
+    /**
+     * Answer all the current and future requests of the api with the response, until another one is prepared
+     * @param api The api of the requests
+     * @param response The response, or null to leave the requests in flight
+     */
+    public synchronized void respond(ApiKeys api, Struct response) {
+        if (response == null)
+            responses.remove(api);
+        else
+            responses.put(api, response);
+    }
+
+    /**
+     * Get the number of requests of the api which have been sent so far
+     */
+    public synchronized int requestCount(ApiKeys api) {
+        Integer count = requestCounts.get(api);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Get the body of the last request of the api which has been sent, or null if there was none
+     */
+    public synchronized Struct lastRequest(ApiKeys api) {
+        return lastRequests.get(api);
+    }
+
+    /**
+     * Fail the connection to the node, which fails its requests in flight
+     */
+    public synchronized void disconnect(Node node) {
+        disconnected.add(node.idString());
+    }
+
+    @Override
+    public synchronized boolean isReady(Node node, long now) {
+        return !disconnected.contains(node.idString());
+    }
+
+    @Override
+    public synchronized boolean ready(Node node, long now) {
+        disconnected.remove(node.idString());
+        return true;
+    }
+
+    @Override
+    public long connectionDelay(Node node, long now) {
+        return 0;
+    }
+
+    @Override
+    public synchronized boolean connectionFailed(Node node) {
+        return disconnected.contains(node.idString());
+    }
+
+    @Override
+    public synchronized void send(ClientRequest request, long now) {
+        ApiKeys api = ApiKeys.forId(request.request().header().apiKey());
+        requestCounts.put(api, requestCount(api) + 1);
+        lastRequests.put(api, request.request().body());
+        request.setSendTimeMs(now);
+        inFlight.add(request);
+    }
+
+    @Override
+    public synchronized List<ClientResponse> poll(long timeout, long now) {
+        List<ClientResponse> completed = new ArrayList<>();
+        Iterator<ClientRequest> iterator = inFlight.iterator();
+        while (iterator.hasNext()) {
+            ClientRequest request = iterator.next();
+            ClientResponse response;
+            if (disconnected.contains(request.request().destination())) {
+                response = new ClientResponse(request, now, true, null);
+            } else {
+                Struct body = responses.get(ApiKeys.forId(request.request().header().apiKey()));
+                if (body == null)
+                    continue;
+                response = new ClientResponse(request, now, false, body);
+            }
+            iterator.remove();
+            completed.add(response);
+        }
+        for (ClientResponse response : completed) {
+            if (response.request().hasCallback())
+                response.request().callback().onComplete(response);
+        }
+        return completed;
+    }
+
+    @Override
+    public synchronized void close(String nodeId) {
+    }
+
+    @Override
+    public Node leastLoadedNode(long now) {
+        return node;
+    }
+
+    @Override
+    public synchronized int inFlightRequestCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public synchronized int inFlightRequestCount(String nodeId) {
+        int count = 0;
+        for (ClientRequest request : inFlight) {
+            if (request.request().destination().equals(nodeId))
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public RequestHeader nextRequestHeader(ApiKeys key) {
+        return nextRequestHeader(key, ProtoUtils.latestVersion(key.id));
+    }
+
+    @Override
+    public synchronized RequestHeader nextRequestHeader(ApiKeys key, short version) {
+        return new RequestHeader(key.id, version, "mock", correlation++);
+    }
+
+    @Override
+    public void wakeup() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.clients.consumer.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.shade.kafka.clients.Metadata;
+import org.apache.shade.kafka.clients.MockClient;
+import org.apache.shade.kafka.common.Node;
+import org.apache.shade.kafka.common.metrics.Metrics;
+import org.apache.shade.kafka.common.protocol.ApiKeys;
+import org.apache.shade.kafka.common.protocol.Errors;
+import org.apache.shade.kafka.common.protocol.types.Struct;
+import org.apache.shade.kafka.common.requests.GroupCoordinatorResponse;
+import org.apache.shade.kafka.common.requests.HeartbeatResponse;
+import org.apache.shade.kafka.common.requests.JoinGroupRequest.ProtocolMetadata;
+import org.apache.shade.kafka.common.requests.JoinGroupResponse;
+import org.apache.shade.kafka.common.requests.SyncGroupResponse;
+import org.apache.shade.kafka.common.utils.MockTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the background heartbeat thread of the {@link AbstractCoordinator}. The thread waits for real time while
+ * it reads the mock clock, so the tests advance the clock and then wait for the thread to catch up.
+ */
+public class AbstractCoordinatorTest {
+
+    private static final int SESSION_TIMEOUT_MS = 1000;
+    private static final int HEARTBEAT_INTERVAL_MS = 100;
+    private static final long MAX_POLL_INTERVAL_MS = 500;
+    private static final long RETRY_BACKOFF_MS = 10;
+    private static final long WAIT_MS = 5000;
+
+    private final Node node = new Node(0, "localhost", 9092);
+    private MockTime time;
+    private MockClient client;
+    private ConsumerNetworkClient consumerClient;
+    private DummyCoordinator coordinator;
+
+    @Before
+    public void setup() {
+        time = new MockTime();
+        client = new MockClient(node);
+        consumerClient = new ConsumerNetworkClient(client, new Metadata(), time, RETRY_BACKOFF_MS);
+        coordinator = new DummyCoordinator(consumerClient, time);
+
+        client.respond(ApiKeys.GROUP_COORDINATOR, new GroupCoordinatorResponse(Errors.NONE.code(), node).toStruct());
+        client.respond(ApiKeys.JOIN_GROUP, joinGroupResponse(1));
+        client.respond(ApiKeys.SYNC_GROUP, new SyncGroupResponse(Errors.NONE.code(), ByteBuffer.allocate(0)).toStruct());
+        client.respond(ApiKeys.HEARTBEAT, heartbeatResponse(Errors.NONE));
+    }
+
+    @After
+    public void teardown() {
+        coordinator.close();
+    }
+
+    @Test
+    public void testHeartbeatsContinueWithoutConsumerPolls() throws Exception {
+        coordinator.ensureActiveGroup();
+        assertEquals(0, client.requestCount(ApiKeys.HEARTBEAT));
+
+        // the session would expire after 10 intervals without heartbeats
+        for (int i = 1; i <= 20; i++) {
+            coordinator.pollHeartbeat(time.milliseconds());
+            time.sleep(HEARTBEAT_INTERVAL_MS);
+            awaitHeartbeats(i);
+        }
+        assertFalse(coordinator.coordinatorUnknown());
+        assertFalse(coordinator.needRejoin());
+    }
+
+    @Test
+    public void testHeartbeatsStopAfterMaxPollInterval() throws Exception {
+        coordinator.ensureActiveGroup();
+        time.sleep(HEARTBEAT_INTERVAL_MS);
+        awaitHeartbeats(1);
+
+        time.sleep(MAX_POLL_INTERVAL_MS);
+        assertNoHeartbeatsSent();
+
+        // heartbeats resume once the consumer is polled again
+        coordinator.pollHeartbeat(time.milliseconds());
+        awaitHeartbeats(2);
+    }
+
+    @Test
+    public void testHeartbeatThreadPausesOnHeartbeatError() throws Exception {
+        client.respond(ApiKeys.HEARTBEAT, heartbeatResponse(Errors.REBALANCE_IN_PROGRESS));
+        coordinator.ensureActiveGroup();
+        time.sleep(HEARTBEAT_INTERVAL_MS);
+        awaitHeartbeats(1);
+
+        assertNoHeartbeatsSent();
+
+        // the error is only handled once the consumer polls
+        assertFalse(coordinator.needRejoin());
+        consumerClient.poll(0);
+        assertTrue(coordinator.needRejoin());
+    }
+
+    @Test
+    public void testHeartbeatThreadPausesWhileRejoining() throws Exception {
+        coordinator.ensureActiveGroup();
+        time.sleep(HEARTBEAT_INTERVAL_MS);
+        awaitHeartbeats(1);
+
+        // leave the join request of the rejoin in flight
+        client.respond(ApiKeys.JOIN_GROUP, null);
+        coordinator.forceRejoin = true;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread consumerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    coordinator.ensureActiveGroup();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        consumerThread.start();
+        awaitRequests(ApiKeys.JOIN_GROUP, 2);
+
+        assertNoHeartbeatsSent();
+
+        client.respond(ApiKeys.JOIN_GROUP, joinGroupResponse(2));
+        consumerThread.join(WAIT_MS);
+        assertFalse(consumerThread.isAlive());
+        assertEquals(null, failure.get());
+        assertEquals(2, coordinator.generation);
+
+        // heartbeats of the new generation are sent in the background again
+        coordinator.pollHeartbeat(time.milliseconds());
+        time.sleep(HEARTBEAT_INTERVAL_MS);
+        awaitHeartbeats(2);
+    }
+
+    /**
+     * Advance the clock by several heartbeat intervals, giving the heartbeat thread the time to send heartbeats,
+     * and check that it did not
+     */
+    private void assertNoHeartbeatsSent() throws InterruptedException {
+        int heartbeats = client.requestCount(ApiKeys.HEARTBEAT);
+        for (int i = 0; i < 3; i++) {
+            time.sleep(HEARTBEAT_INTERVAL_MS);
+            Thread.sleep(2 * HEARTBEAT_INTERVAL_MS);
+        }
+        assertEquals(heartbeats, client.requestCount(ApiKeys.HEARTBEAT));
+    }
+
+    private void awaitHeartbeats(int count) throws InterruptedException {
+        awaitRequests(ApiKeys.HEARTBEAT, count);
+    }
+
+    private void awaitRequests(ApiKeys api, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (client.requestCount(api) < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(count, client.requestCount(api));
+    }
+
+    private static Struct heartbeatResponse(Errors error) {
+        return new HeartbeatResponse(error.code()).toStruct();
+    }
+
+    private static Struct joinGroupResponse(int generation) {
+        return new JoinGroupResponse(Errors.NONE.code(), generation, "dummy", "member", "leader",
+                Collections.<String, ByteBuffer>emptyMap()).toStruct();
+    }
+
+    private static class DummyCoordinator extends AbstractCoordinator {
+
+        // rejoin the group even though the coordinator did not ask for it, like a consumer whose subscription changed
+        private volatile boolean forceRejoin = false;
+
+        DummyCoordinator(ConsumerNetworkClient client, MockTime time) {
+            super(client, "group", SESSION_TIMEOUT_MS, HEARTBEAT_INTERVAL_MS, true, MAX_POLL_INTERVAL_MS,
+                    new Metrics(time), "consumer", new HashMap<String, String>(), time, RETRY_BACKOFF_MS);
+        }
+
+        @Override
+        protected String protocolType() {
+            return "dummy";
+        }
+
+        @Override
+        protected List<ProtocolMetadata> metadata() {
+            return Collections.singletonList(new ProtocolMetadata("dummy", ByteBuffer.allocate(0)));
+        }
+
+        @Override
+        protected void onJoinPrepare(int generation, String memberId) {
+        }
+
+        @Override
+        protected Map<String, ByteBuffer> performAssignment(String leaderId, String protocol,
+                                                            Map<String, ByteBuffer> allMemberMetadata) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        protected void onJoinComplete(int generation, String memberId, String protocol, ByteBuffer memberAssignment) {
+            forceRejoin = false;
+        }
+
+        @Override
+        protected boolean needRejoin() {
+            return super.needRejoin() || forceRejoin;
+        }
+    }
+}
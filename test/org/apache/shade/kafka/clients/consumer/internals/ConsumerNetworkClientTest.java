@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.clients.consumer.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.shade.kafka.clients.ClientResponse;
+import org.apache.shade.kafka.clients.Metadata;
+import org.apache.shade.kafka.clients.MockClient;
+import org.apache.shade.kafka.common.Node;
+import org.apache.shade.kafka.common.errors.WakeupException;
+import org.apache.shade.kafka.common.protocol.ApiKeys;
+import org.apache.shade.kafka.common.protocol.Errors;
+import org.apache.shade.kafka.common.requests.HeartbeatRequest;
+import org.apache.shade.kafka.common.requests.HeartbeatResponse;
+import org.apache.shade.kafka.common.utils.MockTime;
+import org.junit.Test;
+
+public class ConsumerNetworkClientTest {
+
+    private final MockTime time = new MockTime();
+    private final Node node = new Node(0, "localhost", 9092);
+    private final MockClient client = new MockClient(node);
+    private final ConsumerNetworkClient consumerClient = new ConsumerNetworkClient(client, new Metadata(), time, 100);
+
+    @Test
+    public void testFuturesAreOnlyCompletedByPoll() throws Exception {
+        client.respond(ApiKeys.HEARTBEAT, new HeartbeatResponse(Errors.NONE.code()).toStruct());
+        final RequestFuture<ClientResponse> future = send();
+        final AtomicReference<Thread> completingThread = new AtomicReference<>();
+        future.addListener(new RequestFutureListener<ClientResponse>() {
+            @Override
+            public void onSuccess(ClientResponse value) {
+                completingThread.set(Thread.currentThread());
+            }
+
+            @Override
+            public void onFailure(RuntimeException e) {
+                completingThread.set(Thread.currentThread());
+            }
+        });
+
+        // the response is received by another thread, but the future is left for the polling thread
+        Thread heartbeatThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consumerClient.pollNoWakeup();
+            }
+        });
+        heartbeatThread.start();
+        heartbeatThread.join();
+
+        assertEquals(1, client.requestCount(ApiKeys.HEARTBEAT));
+        assertTrue(((ConsumerNetworkClient.RequestFutureCompletionHandler) future).hasCompleted());
+        assertFalse(future.isDone());
+        assertEquals(1, consumerClient.pendingRequestCount(node));
+        assertEquals(1, consumerClient.pendingRequestCount());
+
+        consumerClient.poll(0);
+        assertTrue(future.succeeded());
+        assertSame(Thread.currentThread(), completingThread.get());
+        assertEquals(0, consumerClient.pendingRequestCount());
+    }
+
+    @Test
+    public void testPollNoWakeupLeavesRequestsInFlight() {
+        RequestFuture<ClientResponse> future = send();
+
+        consumerClient.pollNoWakeup();
+        assertEquals(1, client.requestCount(ApiKeys.HEARTBEAT));
+        assertFalse(((ConsumerNetworkClient.RequestFutureCompletionHandler) future).hasCompleted());
+        assertEquals(1, consumerClient.pendingRequestCount(node));
+
+        client.respond(ApiKeys.HEARTBEAT, new HeartbeatResponse(Errors.NONE.code()).toStruct());
+        consumerClient.poll(future);
+        assertTrue(future.succeeded());
+    }
+
+    @Test
+    public void testPollNoWakeupIgnoresWakeup() {
+        RequestFuture<ClientResponse> future = send();
+
+        consumerClient.wakeup();
+        consumerClient.pollNoWakeup();
+        assertFalse(future.isDone());
+
+        try {
+            consumerClient.poll(0);
+            fail("Expected the pending wakeup to be raised by the poll of the consumer's thread");
+        } catch (WakeupException e) {
+            // expected
+        }
+    }
+
+    private RequestFuture<ClientResponse> send() {
+        return consumerClient.send(node, ApiKeys.HEARTBEAT, new HeartbeatRequest("group", 1, "member"));
+    }
+}
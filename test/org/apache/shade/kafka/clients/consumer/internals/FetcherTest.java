@@ -0,0 +1,293 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.clients.consumer.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.shade.kafka.clients.Metadata;
+import org.apache.shade.kafka.clients.MockClient;
+import org.apache.shade.kafka.clients.consumer.ConsumerRecord;
+import org.apache.shade.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.shade.kafka.common.Cluster;
+import org.apache.shade.kafka.common.Node;
+import org.apache.shade.kafka.common.PartitionInfo;
+import org.apache.shade.kafka.common.TopicPartition;
+import org.apache.shade.kafka.common.errors.SerializationException;
+import org.apache.shade.kafka.common.metrics.Metrics;
+import org.apache.shade.kafka.common.protocol.ApiKeys;
+import org.apache.shade.kafka.common.protocol.Errors;
+import org.apache.shade.kafka.common.record.CompressionType;
+import org.apache.shade.kafka.common.record.MemoryRecords;
+import org.apache.shade.kafka.common.requests.FetchRequest;
+import org.apache.shade.kafka.common.requests.FetchResponse;
+import org.apache.shade.kafka.common.serialization.StringDeserializer;
+import org.apache.shade.kafka.common.utils.MockTime;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FetcherTest {
+
+    private static final String BAD_VALUE = "bad";
+
+    private final String topic = "test";
+    private final TopicPartition tp0 = new TopicPartition(topic, 0);
+    private final TopicPartition tp1 = new TopicPartition(topic, 1);
+    private final Node node = new Node(0, "localhost", 9092);
+    private final Cluster cluster = new Cluster(Collections.singletonList(node),
+            Arrays.asList(new PartitionInfo(topic, 0, node, new Node[] {node}, new Node[] {node}),
+                    new PartitionInfo(topic, 1, node, new Node[] {node}, new Node[] {node})),
+            Collections.<String>emptySet());
+
+    private MockTime time;
+    private MockClient client;
+    private Metadata metadata;
+    private ConsumerNetworkClient consumerClient;
+    private SubscriptionState subscriptions;
+    private Fetcher<String, String> fetcher;
+
+    @Before
+    public void setup() {
+        time = new MockTime();
+        client = new MockClient(node);
+        metadata = new Metadata();
+        metadata.update(cluster, time.milliseconds());
+        consumerClient = new ConsumerNetworkClient(client, metadata, time, 100);
+        subscriptions = new SubscriptionState(OffsetResetStrategy.NONE);
+        fetcher = createFetcher(100, 1024 * 1024);
+    }
+
+    @Test
+    public void testParseFailureOfFirstRecordThrowsWithoutAdvancingPosition() {
+        assign(tp1);
+        fetch(Collections.singletonMap(tp1, records(BAD_VALUE, "b")));
+
+        try {
+            fetcher.fetchedRecords();
+            fail("Expected the records of the partition to fail to parse");
+        } catch (SerializationException e) {
+            // expected
+        }
+        assertEquals(0L, (long) subscriptions.position(tp1));
+
+        // the partition is fetched again from the same position
+        assertTrue(fetcher.fetchedRecords().isEmpty());
+        assertEquals(0L, (long) subscriptions.position(tp1));
+    }
+
+    @Test
+    public void testRecordsParsedBeforeFailureInSamePartitionAreReturned() {
+        assign(tp0, tp1);
+        Map<TopicPartition, ByteBuffer> recordSets = new HashMap<>();
+        recordSets.put(tp0, records("a", "b", "c"));
+        recordSets.put(tp1, records("a", BAD_VALUE, "c"));
+        fetch(recordSets);
+
+        Map<TopicPartition, List<Long>> returned = new HashMap<>();
+        assertEquals(1, drain(returned));
+
+        assertEquals(Arrays.asList(0L, 1L, 2L), returned.get(tp0));
+        assertEquals(Collections.singletonList(0L), returned.get(tp1));
+        assertEquals(3L, (long) subscriptions.position(tp0));
+        assertEquals(1L, (long) subscriptions.position(tp1));
+    }
+
+    @Test
+    public void testRecordsDrainedBeforeFailureInLaterPartitionAreReturned() {
+        assign(tp0, tp1);
+        Map<TopicPartition, ByteBuffer> recordSets = new HashMap<>();
+        recordSets.put(tp0, records("a", "b", "c"));
+        recordSets.put(tp1, records(BAD_VALUE, "b"));
+        fetch(recordSets);
+
+        Map<TopicPartition, List<Long>> returned = new HashMap<>();
+        assertEquals(1, drain(returned));
+
+        // whichever partition is drained first, the records of tp0 are returned once and none of tp1
+        assertEquals(Arrays.asList(0L, 1L, 2L), returned.get(tp0));
+        assertEquals(null, returned.get(tp1));
+        assertEquals(3L, (long) subscriptions.position(tp0));
+        assertEquals(0L, (long) subscriptions.position(tp1));
+    }
+
+    @Test
+    public void testPartitionsShareMaxPollRecords() {
+        fetcher = createFetcher(4, 1024 * 1024);
+        assign(tp0, tp1);
+        Map<TopicPartition, ByteBuffer> recordSets = new HashMap<>();
+        recordSets.put(tp0, records("a", "b", "c", "d", "e", "f"));
+        recordSets.put(tp1, records("a", "b", "c", "d", "e", "f"));
+        fetch(recordSets);
+
+        for (int i = 0; i < 3; i++) {
+            Map<TopicPartition, List<ConsumerRecord<String, String>>> records = fetcher.fetchedRecords();
+            assertEquals(2, records.get(tp0).size());
+            assertEquals(2, records.get(tp1).size());
+        }
+        assertTrue(fetcher.fetchedRecords().isEmpty());
+        assertEquals(6L, (long) subscriptions.position(tp0));
+        assertEquals(6L, (long) subscriptions.position(tp1));
+    }
+
+    @Test
+    public void testPartitionWithoutTurnIsDrainedFirstOnNextPoll() {
+        fetcher = createFetcher(3, 1024 * 1024);
+        assign(tp0, tp1);
+        Map<TopicPartition, ByteBuffer> recordSets = new HashMap<>();
+        recordSets.put(tp0, records("a", "b", "c"));
+        recordSets.put(tp1, records("a", "b", "c"));
+        fetch(recordSets);
+
+        // the odd record of the first poll goes to one partition, and the one of the second poll to the other
+        Map<TopicPartition, List<ConsumerRecord<String, String>>> first = fetcher.fetchedRecords();
+        Map<TopicPartition, List<ConsumerRecord<String, String>>> second = fetcher.fetchedRecords();
+        assertEquals(3, first.get(tp0).size() + first.get(tp1).size());
+        assertEquals(3, first.get(tp0).size() + second.get(tp0).size());
+        assertEquals(3, first.get(tp1).size() + second.get(tp1).size());
+        assertEquals(3L, (long) subscriptions.position(tp0));
+        assertEquals(3L, (long) subscriptions.position(tp1));
+    }
+
+    @Test
+    public void testMaxPollBytesStopsAfterOversizedFirstRecord() {
+        fetcher = createFetcher(100, 100);
+        assign(tp0);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+            large.append('x');
+        fetch(Collections.singletonMap(tp0, records("a", large.toString(), "b", "c")));
+
+        // the large record does not fit after another one, but is returned alone as the first record of a poll
+        assertEquals(Collections.singletonList(0L), offsets(fetcher.fetchedRecords().get(tp0)));
+        assertEquals(Collections.singletonList(1L), offsets(fetcher.fetchedRecords().get(tp0)));
+        assertEquals(Arrays.asList(2L, 3L), offsets(fetcher.fetchedRecords().get(tp0)));
+        assertEquals(4L, (long) subscriptions.position(tp0));
+    }
+
+    @Test
+    public void testPartiallyDrainedPartitionIsNotFetchedAgain() {
+        fetcher = createFetcher(2, 1024 * 1024);
+        assign(tp0, tp1);
+        Map<TopicPartition, ByteBuffer> recordSets = new HashMap<>();
+        recordSets.put(tp0, records("a", "b", "c", "d", "e"));
+        recordSets.put(tp1, records("a"));
+        fetch(recordSets);
+
+        Map<TopicPartition, List<Long>> returned = new HashMap<>();
+        for (Map.Entry<TopicPartition, List<ConsumerRecord<String, String>>> entry : fetcher.fetchedRecords().entrySet())
+            returned.put(entry.getKey(), offsets(entry.getValue()));
+        assertEquals(Collections.singletonList(0L), returned.get(tp0));
+        assertEquals(Collections.singletonList(0L), returned.get(tp1));
+
+        // only the drained partition is fetched, the other one is still buffered
+        fetcher.initFetches(cluster);
+        consumerClient.poll(0);
+        assertEquals(2, client.requestCount(ApiKeys.FETCH));
+        assertEquals(Collections.singleton(tp1), new FetchRequest(client.lastRequest(ApiKeys.FETCH)).fetchData().keySet());
+
+        assertEquals(Arrays.asList(1L, 2L), offsets(fetcher.fetchedRecords().get(tp0)));
+        assertEquals(Arrays.asList(3L, 4L), offsets(fetcher.fetchedRecords().get(tp0)));
+        assertTrue(fetcher.fetchedRecords().isEmpty());
+
+        // once drained, the partition is fetched again from its position
+        client.respond(ApiKeys.FETCH, new FetchResponse(Collections.<TopicPartition, FetchResponse.PartitionData>emptyMap(), 0).toStruct());
+        consumerClient.poll(0);
+        client.respond(ApiKeys.FETCH, null);
+        fetcher.initFetches(cluster);
+        consumerClient.poll(0);
+        FetchRequest request = new FetchRequest(client.lastRequest(ApiKeys.FETCH));
+        assertEquals(5L, request.fetchData().get(tp0).offset);
+        assertEquals(1L, request.fetchData().get(tp1).offset);
+    }
+
+    private Fetcher<String, String> createFetcher(int maxPollRecords, int maxPollBytes) {
+        return new Fetcher<>(consumerClient, 1, 500, 1024 * 1024, maxPollRecords, maxPollBytes, 0, true,
+                new StringDeserializer(), new FailingDeserializer(), metadata, subscriptions,
+                new Metrics(time), "consumer", new HashMap<String, String>(), time, 100);
+    }
+
+    private void assign(TopicPartition... partitions) {
+        subscriptions.assignFromUser(Arrays.asList(partitions));
+        for (TopicPartition partition : partitions)
+            subscriptions.seek(partition, 0);
+    }
+
+    private void fetch(Map<TopicPartition, ByteBuffer> recordSets) {
+        Map<TopicPartition, FetchResponse.PartitionData> responseData = new HashMap<>();
+        for (Map.Entry<TopicPartition, ByteBuffer> entry : recordSets.entrySet())
+            responseData.put(entry.getKey(), new FetchResponse.PartitionData(Errors.NONE.code(), 100L, entry.getValue()));
+        client.respond(ApiKeys.FETCH, new FetchResponse(responseData, 0).toStruct());
+        fetcher.initFetches(cluster);
+        consumerClient.poll(0);
+        client.respond(ApiKeys.FETCH, null);
+    }
+
+    /**
+     * Call fetchedRecords() until the buffered records are drained, collecting the offsets of the returned records
+     *
+     * @return The number of calls which failed
+     */
+    private int drain(Map<TopicPartition, List<Long>> returned) {
+        int failures = 0;
+        for (int i = 0; i < 10; i++) {
+            try {
+                for (Map.Entry<TopicPartition, List<ConsumerRecord<String, String>>> entry : fetcher.fetchedRecords().entrySet()) {
+                    List<Long> offsets = returned.get(entry.getKey());
+                    if (offsets == null) {
+                        offsets = new ArrayList<>();
+                        returned.put(entry.getKey(), offsets);
+                    }
+                    for (ConsumerRecord<String, String> record : entry.getValue())
+                        offsets.add(record.offset());
+                }
+            } catch (SerializationException e) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private static List<Long> offsets(List<ConsumerRecord<String, String>> records) {
+        List<Long> offsets = new ArrayList<>();
+        for (ConsumerRecord<String, String> record : records)
+            offsets.add(record.offset());
+        return offsets;
+    }
+
+    private static ByteBuffer records(String... values) {
+        MemoryRecords records = MemoryRecords.emptyRecords(ByteBuffer.allocate(1024), CompressionType.NONE);
+        for (int i = 0; i < values.length; i++)
+            records.append(i, null, values[i].getBytes());
+        records.close();
+        return records.buffer();
+    }
+
+    private static class FailingDeserializer extends StringDeserializer {
+        @Override
+        public String deserialize(String topic, byte[] data) {
+            String value = super.deserialize(topic, data);
+            if (BAD_VALUE.equals(value))
+                throw new SerializationException("Cannot deserialize " + value);
+            return value;
+        }
+    }
+}
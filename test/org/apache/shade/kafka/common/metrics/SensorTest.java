@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.shade.kafka.common.MetricName;
+import org.apache.shade.kafka.common.metrics.stats.ConcurrentCount;
+import org.apache.shade.kafka.common.metrics.stats.ConcurrentRate;
+import org.apache.shade.kafka.common.metrics.stats.ConcurrentTotal;
+import org.apache.shade.kafka.common.metrics.stats.Max;
+import org.apache.shade.kafka.common.utils.MockTime;
+import org.junit.After;
+import org.junit.Test;
+
+public class SensorTest {
+
+    private final MockTime time = new MockTime();
+    private final MetricConfig config = new MetricConfig().samples(2).timeWindow(1, TimeUnit.SECONDS);
+    private final Metrics metrics = new Metrics(config, new ArrayList<MetricsReporter>(0), time);
+
+    @After
+    public void tearDown() {
+        metrics.close();
+    }
+
+    @Test
+    public void testConcurrentRecords() throws Exception {
+        final Sensor parent = metrics.sensor("parent");
+        parent.add(name("parent-total"), new ConcurrentTotal());
+        final Sensor sensor = metrics.sensor("sensor", parent);
+        sensor.add(name("count"), new ConcurrentCount());
+        sensor.add(name("total"), new ConcurrentTotal());
+
+        final long now = time.milliseconds();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++)
+                        sensor.record(2.0, now);
+                }
+            });
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(40000.0, value("count"), 0.0);
+        assertEquals(80000.0, value("total"), 0.0);
+        assertEquals(80000.0, value("parent-total"), 0.0);
+    }
+
+    @Test
+    public void testQuotaViolationWithoutLock() throws Exception {
+        final Sensor sensor = metrics.sensor("sensor", new MetricConfig().quota(Quota.upperBound(10.0)));
+        sensor.add(name("total"), new ConcurrentTotal());
+        sensor.record(6.0);
+
+        // a sensor with only concurrent stats records and checks its quota while another thread holds its lock
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread recorder = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    sensor.record(5.0);
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        };
+        synchronized (sensor) {
+            recorder.start();
+            recorder.join(10000);
+            assertFalse("The sensor took its lock", recorder.isAlive());
+        }
+        assertTrue(error.get() instanceof QuotaViolationException);
+        assertEquals(11.0, value("total"), 0.0);
+    }
+
+    @Test
+    public void testRateQuotaViolationWithoutLock() {
+        Sensor sensor = metrics.sensor("sensor", new MetricConfig().samples(2).timeWindow(1, TimeUnit.SECONDS)
+                .quota(Quota.upperBound(10.0)));
+        sensor.add(name("rate"), new ConcurrentRate(TimeUnit.SECONDS));
+        // at the start of a window the rate is taken over the one full window that is assumed before it
+        long now = 1000000;
+        sensor.record(4.0, now);
+        sensor.record(6.0, now);
+        try {
+            sensor.record(1.0, now);
+            fail("Should have violated the quota");
+        } catch (QuotaViolationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMixedStats() throws Exception {
+        final Sensor sensor = metrics.sensor("sensor", new MetricConfig().quota(Quota.upperBound(100.0)));
+        sensor.add(name("count"), new ConcurrentCount());
+        sensor.add(name("max"), new Max());
+        sensor.record(5.0);
+        sensor.record(50.0);
+        assertEquals(2.0, value("count"), 0.0);
+        assertEquals(50.0, value("max"), 0.0);
+
+        // a sensor with a locked stat waits for its lock
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread recorder = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    sensor.record(200.0);
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        };
+        synchronized (sensor) {
+            recorder.start();
+            recorder.join(100);
+            assertTrue("The sensor recorded without its lock", recorder.isAlive());
+        }
+        recorder.join();
+
+        // the quota on the locked stat is checked, and both stats have the value
+        assertTrue(error.get() instanceof QuotaViolationException);
+        assertEquals(3.0, value("count"), 0.0);
+        assertEquals(200.0, value("max"), 0.0);
+    }
+
+    private double value(String name) {
+        return metrics.metrics().get(name(name)).value(time.milliseconds());
+    }
+
+    private static MetricName name(String name) {
+        return new MetricName(name, "group");
+    }
+}
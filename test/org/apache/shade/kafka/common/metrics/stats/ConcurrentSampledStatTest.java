@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.metrics.stats;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.shade.kafka.common.metrics.MetricConfig;
+import org.junit.Test;
+
+public class ConcurrentSampledStatTest {
+
+    private static final long WINDOW_MS = 1000;
+
+    private final MetricConfig config = new MetricConfig().samples(3).timeWindow(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+    @Test
+    public void testNoValues() {
+        ConcurrentCount count = new ConcurrentCount();
+        assertEquals(0.0, count.measure(config, 0), 0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, new ConcurrentMax().measure(config, 0), 0.0);
+        assertEquals(5000, count.oldestWindowMs(config, 5000));
+    }
+
+    @Test
+    public void testWindowRollover() {
+        ConcurrentCount count = new ConcurrentCount();
+        ConcurrentMax max = new ConcurrentMax();
+        record(count, max, 100, 0);
+        record(count, max, 50, 999);
+        record(count, max, 10, 1000);
+        record(count, max, 20, 2500);
+        assertEquals(4.0, count.measure(config, 2999), 0.0);
+        assertEquals(100.0, max.measure(config, 2999), 0.0);
+        assertEquals(0, count.oldestWindowMs(config, 2999));
+
+        // the fourth window takes the slot of the first one
+        record(count, max, 30, 3000);
+        assertEquals(3.0, count.measure(config, 3000), 0.0);
+        assertEquals(30.0, max.measure(config, 3000), 0.0);
+        assertEquals(1000, count.oldestWindowMs(config, 3000));
+
+        // a late value of a window that was already replaced goes to the newer window
+        record(count, max, 500, 100);
+        assertEquals(4.0, count.measure(config, 3000), 0.0);
+        assertEquals(500.0, max.measure(config, 3000), 0.0);
+    }
+
+    @Test
+    public void testWindowsExpireAfterSamplesTimesTimeWindow() {
+        ConcurrentCount count = new ConcurrentCount();
+        ConcurrentMax max = new ConcurrentMax();
+        record(count, max, 100, 1000);
+        record(count, max, 10, 2000);
+
+        long expireAge = config.samples() * WINDOW_MS;
+        assertEquals(2.0, count.measure(config, 1000 + expireAge - 1), 0.0);
+        assertEquals(100.0, max.measure(config, 1000 + expireAge - 1), 0.0);
+        assertEquals(1.0, count.measure(config, 1000 + expireAge), 0.0);
+        assertEquals(10.0, max.measure(config, 1000 + expireAge), 0.0);
+        assertEquals(0.0, count.measure(config, 2000 + expireAge), 0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, max.measure(config, 2000 + expireAge), 0.0);
+        assertEquals(2000 + expireAge, count.oldestWindowMs(config, 2000 + expireAge));
+
+        // the expired slots are replaced by new windows as values come in
+        record(count, max, 1, 10000);
+        assertEquals(1.0, count.measure(config, 10000), 0.0);
+        assertEquals(1.0, max.measure(config, 10000), 0.0);
+    }
+
+    @Test
+    public void testRateMatchesLockedRate() {
+        // values recorded at the start of each window, so that the samples of the Rate are aligned like the windows
+        long[] times = {0, 0, 1000, 2000, 2000, 3000, 5000, 6000, 7000, 7000, 8000};
+        Rate rate = new Rate(TimeUnit.SECONDS);
+        ConcurrentRate concurrentRate = new ConcurrentRate(TimeUnit.SECONDS);
+        for (int i = 0; i < times.length; i++) {
+            rate.record(config, i + 1, times[i]);
+            concurrentRate.record(config, i + 1, times[i]);
+            for (long now = times[i]; now < times[i] + WINDOW_MS; now += 250) {
+                assertEquals("window size at " + now, rate.windowSize(config, now), concurrentRate.windowSize(config, now));
+                assertEquals("rate at " + now, rate.measure(config, now), concurrentRate.measure(config, now), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testRateOfOccurrences() {
+        ConcurrentRate rate = new ConcurrentRate(TimeUnit.SECONDS, new ConcurrentCount());
+        for (int i = 0; i < 30; i++)
+            rate.record(config, 1000, i * 100);
+        // 30 values over two full windows plus the 999ms elapsed in the current one
+        assertEquals(30 / 2.999, rate.measure(config, 2999), 1e-9);
+    }
+
+    private void record(ConcurrentCount count, ConcurrentMax max, double value, long timeMs) {
+        count.record(config, value, timeMs);
+        max.record(config, value, timeMs);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.metrics.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.shade.kafka.common.MetricName;
+import org.apache.shade.kafka.common.metrics.MetricConfig;
+import org.junit.Test;
+
+public class HdrPercentilesTest {
+
+    private static final long HIGHEST_TRACKABLE_VALUE = 1000000L;
+
+    private final MetricConfig config = new MetricConfig().samples(2).timeWindow(30, TimeUnit.SECONDS);
+
+    @Test
+    public void testNoValues() {
+        HdrPercentiles percentiles = new HdrPercentiles(HIGHEST_TRACKABLE_VALUE);
+        assertTrue(Double.isNaN(percentiles.value(config, 0, 0.5)));
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+        HdrPercentiles percentiles = new HdrPercentiles(HIGHEST_TRACKABLE_VALUE, percentile("p50", 50), percentile("p99", 99));
+        for (int i = 1; i <= 100000; i++)
+            percentiles.record(config, i, 0);
+
+        double relativeError = 1.0 / (1 << (HdrPercentiles.DEFAULT_PRECISION_BITS - 1));
+        assertEquals(50000, percentiles.value(config, 0, 0.5), 50000 * relativeError);
+        assertEquals(99000, percentiles.value(config, 0, 0.99), 99000 * relativeError);
+        assertEquals(100000, percentiles.value(config, 0, 1.0), 100000 * relativeError);
+        assertEquals(2, percentiles.stats().size());
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        HdrPercentiles percentiles = new HdrPercentiles(HIGHEST_TRACKABLE_VALUE);
+        for (int i = 0; i < 100; i++)
+            percentiles.record(config, i, 0);
+        assertEquals(49.0, percentiles.value(config, 0, 0.5), 0.0);
+        assertEquals(99.0, percentiles.value(config, 0, 1.0), 0.0);
+    }
+
+    @Test
+    public void testValuesAboveHighestTrackableValue() {
+        HdrPercentiles percentiles = new HdrPercentiles(HIGHEST_TRACKABLE_VALUE);
+        percentiles.record(config, HIGHEST_TRACKABLE_VALUE * 10, 0);
+        assertEquals(HIGHEST_TRACKABLE_VALUE, percentiles.value(config, 0, 0.5), 0.0);
+    }
+
+    @Test
+    public void testExpiredWindowsAreIgnored() {
+        HdrPercentiles percentiles = new HdrPercentiles(HIGHEST_TRACKABLE_VALUE);
+        percentiles.record(config, 1000, 0);
+        percentiles.record(config, 10, 30000);
+        assertEquals(1000, percentiles.value(config, 30000, 1.0), 1000.0 / 64);
+        assertEquals(10.0, percentiles.value(config, 60000, 1.0), 0.0);
+    }
+
+    /**
+     * A percentile read while other threads record must only reflect values which were recorded, and never fall back
+     * to the highest trackable value
+     */
+    @Test
+    public void testConcurrentRecordAndRead() throws Exception {
+        final HdrPercentiles percentiles = new HdrPercentiles(HIGHEST_TRACKABLE_VALUE);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (!done.get())
+                        percentiles.record(config, 1.0, 0);
+                }
+            });
+            threads[t].start();
+        }
+        try {
+            long deadline = System.currentTimeMillis() + 500;
+            while (System.currentTimeMillis() < deadline) {
+                double value = percentiles.value(config, 0, 1.0);
+                assertTrue("Unexpected percentile " + value, Double.isNaN(value) || value == 1.0);
+            }
+        } finally {
+            done.set(true);
+            for (Thread thread : threads)
+                thread.join();
+        }
+    }
+
+    private static Percentile percentile(String name, double percentile) {
+        return new Percentile(new MetricName(name, "test"), percentile);
+    }
+}
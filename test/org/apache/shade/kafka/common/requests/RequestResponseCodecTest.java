@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.requests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.shade.kafka.common.TopicPartition;
+import org.apache.shade.kafka.common.protocol.ApiKeys;
+import org.apache.shade.kafka.common.protocol.Errors;
+import org.apache.shade.kafka.common.protocol.ProtoUtils;
+import org.apache.shade.kafka.common.protocol.types.Struct;
+import org.junit.Test;
+
+public class RequestResponseCodecTest {
+
+    private static final TopicPartition TP0 = new TopicPartition("topic", 0);
+    private static final TopicPartition TP1 = new TopicPartition("topic", 1);
+    private static final TopicPartition OTHER = new TopicPartition("other", 3);
+
+    @Test
+    public void testFetchRequest() {
+        Map<TopicPartition, FetchRequest.PartitionData> fetchData = new HashMap<TopicPartition, FetchRequest.PartitionData>();
+        fetchData.put(TP0, new FetchRequest.PartitionData(10L, 1024));
+        fetchData.put(TP1, new FetchRequest.PartitionData(0L, 2048));
+        fetchData.put(OTHER, new FetchRequest.PartitionData(Long.MAX_VALUE, 1));
+        FetchRequest request = new FetchRequest(5, 100, 1, fetchData);
+
+        byte[] structBytes = assertDirectMatchesStruct(request);
+        for (int version = 0; version <= ProtoUtils.latestVersion(ApiKeys.FETCH.id); version++) {
+            FetchRequest parsed = FetchRequest.parse(ByteBuffer.wrap(structBytes), version);
+            assertEquals(request.replicaId(), parsed.replicaId());
+            assertEquals(request.maxWait(), parsed.maxWait());
+            assertEquals(request.minBytes(), parsed.minBytes());
+            assertEquals(fetchData.keySet(), parsed.fetchData().keySet());
+            for (Map.Entry<TopicPartition, FetchRequest.PartitionData> entry : fetchData.entrySet()) {
+                FetchRequest.PartitionData partitionData = parsed.fetchData().get(entry.getKey());
+                assertEquals(entry.getValue().offset, partitionData.offset);
+                assertEquals(entry.getValue().maxBytes, partitionData.maxBytes);
+            }
+        }
+    }
+
+    @Test
+    public void testProduceRequest() {
+        Map<TopicPartition, ByteBuffer> partitionRecords = new HashMap<TopicPartition, ByteBuffer>();
+        partitionRecords.put(TP0, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        partitionRecords.put(TP1, ByteBuffer.allocate(0));
+        partitionRecords.put(OTHER, ByteBuffer.wrap(new byte[] {4, 5, 6, 7, 8}, 1, 3));
+        ProduceRequest request = new ProduceRequest((short) -1, 30000, partitionRecords);
+
+        byte[] structBytes = assertDirectMatchesStruct(request);
+        for (int version = 0; version <= ProtoUtils.latestVersion(ApiKeys.PRODUCE.id); version++) {
+            ProduceRequest parsed = ProduceRequest.parse(ByteBuffer.wrap(structBytes), version);
+            assertEquals(request.acks(), parsed.acks());
+            assertEquals(request.timeout(), parsed.timeout());
+            assertEquals(partitionRecords, parsed.partitionRecords());
+        }
+        // writing must not consume the caller's record sets
+        assertEquals(3, partitionRecords.get(OTHER).remaining());
+    }
+
+    @Test
+    public void testFetchResponse() {
+        Map<TopicPartition, FetchResponse.PartitionData> responseData = new HashMap<TopicPartition, FetchResponse.PartitionData>();
+        responseData.put(TP0, new FetchResponse.PartitionData(Errors.NONE.code(), 100L, ByteBuffer.wrap(new byte[] {1, 2, 3})));
+        responseData.put(TP1, new FetchResponse.PartitionData(Errors.NOT_LEADER_FOR_PARTITION.code(),
+                FetchResponse.INVALID_HIGHWATERMARK, FetchResponse.EMPTY_RECORD_SET));
+        responseData.put(OTHER, new FetchResponse.PartitionData(Errors.NONE.code(), 7L, ByteBuffer.wrap(new byte[] {4})));
+
+        for (int version = 0; version <= ProtoUtils.latestVersion(ApiKeys.FETCH.id); version++) {
+            FetchResponse response = version == 0 ? new FetchResponse(responseData) : new FetchResponse(responseData, 25);
+            byte[] structBytes = write(response.toStruct());
+
+            FetchResponse parsed = FetchResponse.parse(ByteBuffer.wrap(structBytes), version);
+            FetchResponse structParsed = new FetchResponse(ProtoUtils.parseResponse(ApiKeys.FETCH.id, version, ByteBuffer.wrap(structBytes)));
+            assertEquals(structParsed.getThrottleTime(), parsed.getThrottleTime());
+            assertEquals(version == 0 ? 0 : 25, parsed.getThrottleTime());
+            assertEquals(structParsed.responseData().keySet(), parsed.responseData().keySet());
+            for (Map.Entry<TopicPartition, FetchResponse.PartitionData> entry : structParsed.responseData().entrySet()) {
+                FetchResponse.PartitionData partitionData = parsed.responseData().get(entry.getKey());
+                assertEquals(entry.getValue().errorCode, partitionData.errorCode);
+                assertEquals(entry.getValue().highWatermark, partitionData.highWatermark);
+                assertEquals(entry.getValue().recordSet, partitionData.recordSet);
+                assertEquals(responseData.get(entry.getKey()).recordSet, partitionData.recordSet);
+            }
+            assertArrayEquals(structBytes, assertSizeMatchesWritten(parsed));
+        }
+    }
+
+    @Test
+    public void testProduceResponse() {
+        Map<TopicPartition, ProduceResponse.PartitionResponse> responses = new HashMap<TopicPartition, ProduceResponse.PartitionResponse>();
+        responses.put(TP0, new ProduceResponse.PartitionResponse(Errors.NONE.code(), 10000L));
+        responses.put(TP1, new ProduceResponse.PartitionResponse(Errors.NOT_LEADER_FOR_PARTITION.code(), -1L));
+        responses.put(OTHER, new ProduceResponse.PartitionResponse(Errors.NONE.code(), 0L));
+
+        for (int version = 0; version <= ProtoUtils.latestVersion(ApiKeys.PRODUCE.id); version++) {
+            ProduceResponse response = version == 0 ? new ProduceResponse(responses) : new ProduceResponse(responses, 25);
+            byte[] structBytes = write(response.toStruct());
+
+            ProduceResponse parsed = ProduceResponse.parse(ByteBuffer.wrap(structBytes), version);
+            ProduceResponse structParsed = new ProduceResponse(ProtoUtils.parseResponse(ApiKeys.PRODUCE.id, version, ByteBuffer.wrap(structBytes)));
+            assertEquals(structParsed.getThrottleTime(), parsed.getThrottleTime());
+            assertEquals(version == 0 ? 0 : 25, parsed.getThrottleTime());
+            assertEquals(structParsed.responses().keySet(), parsed.responses().keySet());
+            for (Map.Entry<TopicPartition, ProduceResponse.PartitionResponse> entry : structParsed.responses().entrySet()) {
+                ProduceResponse.PartitionResponse partitionResponse = parsed.responses().get(entry.getKey());
+                assertEquals(entry.getValue().errorCode, partitionResponse.errorCode);
+                assertEquals(entry.getValue().baseOffset, partitionResponse.baseOffset);
+            }
+            assertArrayEquals(structBytes, assertSizeMatchesWritten(parsed));
+        }
+    }
+
+    @Test
+    public void testHeartbeatResponse() {
+        HeartbeatResponse response = new HeartbeatResponse(Errors.REBALANCE_IN_PROGRESS.code());
+        byte[] structBytes = write(response.toStruct());
+
+        for (int version = 0; version <= ProtoUtils.latestVersion(ApiKeys.HEARTBEAT.id); version++) {
+            HeartbeatResponse parsed = HeartbeatResponse.parse(ByteBuffer.wrap(structBytes), version);
+            HeartbeatResponse structParsed = new HeartbeatResponse(ProtoUtils.parseResponse(ApiKeys.HEARTBEAT.id, version, ByteBuffer.wrap(structBytes)));
+            assertEquals(structParsed.errorCode(), parsed.errorCode());
+            assertEquals(Errors.REBALANCE_IN_PROGRESS.code(), parsed.errorCode());
+            assertArrayEquals(structBytes, assertSizeMatchesWritten(parsed));
+        }
+    }
+
+    @Test
+    public void testOffsetCommitResponse() {
+        Map<TopicPartition, Short> responseData = new HashMap<TopicPartition, Short>();
+        responseData.put(TP0, Errors.NONE.code());
+        responseData.put(TP1, Errors.OFFSET_METADATA_TOO_LARGE.code());
+        responseData.put(OTHER, Errors.UNKNOWN_MEMBER_ID.code());
+        OffsetCommitResponse response = new OffsetCommitResponse(responseData);
+        byte[] structBytes = write(response.toStruct());
+
+        for (int version = 0; version <= ProtoUtils.latestVersion(ApiKeys.OFFSET_COMMIT.id); version++) {
+            OffsetCommitResponse parsed = OffsetCommitResponse.parse(ByteBuffer.wrap(structBytes), version);
+            OffsetCommitResponse structParsed = new OffsetCommitResponse(ProtoUtils.parseResponse(ApiKeys.OFFSET_COMMIT.id, version, ByteBuffer.wrap(structBytes)));
+            assertEquals(structParsed.responseData(), parsed.responseData());
+            assertEquals(responseData, parsed.responseData());
+            assertArrayEquals(structBytes, assertSizeMatchesWritten(parsed));
+        }
+    }
+
+    /* checks that the direct encoding of a request matches its struct encoding, and returns the struct encoding */
+    private static byte[] assertDirectMatchesStruct(AbstractRequest request) {
+        byte[] directBytes = assertSizeMatchesWritten(request);
+        byte[] structBytes = write(request.toStruct());
+        assertArrayEquals(structBytes, directBytes);
+        return structBytes;
+    }
+
+    private static byte[] assertSizeMatchesWritten(AbstractRequestResponse requestResponse) {
+        int size = requestResponse.sizeOf();
+        ByteBuffer buffer = ByteBuffer.allocate(size + 16);
+        requestResponse.writeTo(buffer);
+        assertEquals(size, buffer.position());
+        return copy(buffer);
+    }
+
+    private static byte[] write(Struct struct) {
+        ByteBuffer buffer = ByteBuffer.allocate(struct.sizeOf());
+        struct.writeTo(buffer);
+        return copy(buffer);
+    }
+
+    private static byte[] copy(ByteBuffer buffer) {
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shade.kafka.common.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.shade.kafka.common.utils.TimingWheel.Timeout;
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    private static final long START = 1600000000000L;
+
+    @Test
+    public void testExpiresAtDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(START);
+        Timeout<String> timeout = wheel.schedule("a", START + 100);
+        assertEquals(1, wheel.size());
+
+        List<Timeout<String>> expired = new ArrayList<>();
+        wheel.advance(START + 99, expired);
+        assertTrue(expired.isEmpty());
+        assertTrue(timeout.isScheduled());
+
+        wheel.advance(START + 100, expired);
+        assertEquals(1, expired.size());
+        assertEquals("a", expired.get(0).item());
+        assertFalse(timeout.isScheduled());
+        assertEquals(0, wheel.size());
+        assertEquals(Long.MAX_VALUE, wheel.nextEventTime());
+    }
+
+    @Test
+    public void testPastDeadlineExpiresOnNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(START);
+        wheel.schedule("a", START - 10);
+        assertEquals(START, wheel.nextEventTime());
+
+        List<Timeout<String>> expired = new ArrayList<>();
+        wheel.advance(START, expired);
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void testCancel() {
+        TimingWheel<String> wheel = new TimingWheel<>(START);
+        Timeout<String> timeout = wheel.schedule("a", START + 100);
+        assertTrue(wheel.cancel(timeout));
+        assertFalse(wheel.cancel(timeout));
+        assertEquals(0, wheel.size());
+
+        List<Timeout<String>> expired = new ArrayList<>();
+        wheel.advance(START + 1000, expired);
+        assertTrue(expired.isEmpty());
+    }
+
+    @Test
+    public void testDeadlineBeyondTopLevel() {
+        TimingWheel<String> wheel = new TimingWheel<>(START);
+        long deadline = START + 30L * 24 * 60 * 60 * 1000;
+        wheel.schedule("a", deadline);
+
+        List<Timeout<String>> expired = new ArrayList<>();
+        while (expired.isEmpty()) {
+            long next = wheel.nextEventTime();
+            assertTrue(next <= deadline);
+            wheel.advance(next, expired);
+        }
+        assertEquals(deadline, expired.get(0).deadline());
+    }
+
+    /**
+     * Check random schedules, cancels and advances against a plain map of the scheduled timeouts
+     */
+    @Test
+    public void testRandomOperationsAgainstModel() {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 50; iteration++) {
+            long now = START + random.nextInt(1 << 30);
+            TimingWheel<Integer> wheel = new TimingWheel<>(now);
+            Map<Integer, Timeout<Integer>> scheduled = new HashMap<>();
+            List<Timeout<Integer>> expired = new ArrayList<>();
+            int id = 0;
+            for (int step = 0; step < 2000; step++) {
+                int op = random.nextInt(10);
+                if (op < 5) {
+                    long deadline;
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            deadline = now + random.nextInt(100);
+                            break;
+                        case 1:
+                            deadline = now + random.nextInt(100000);
+                            break;
+                        case 2:
+                            deadline = now + (long) random.nextInt(Integer.MAX_VALUE) * 8;
+                            break;
+                        default:
+                            deadline = now - random.nextInt(10);
+                            break;
+                    }
+                    scheduled.put(id, wheel.schedule(id, deadline));
+                    id++;
+                } else if (op < 7 && !scheduled.isEmpty()) {
+                    Iterator<Timeout<Integer>> iterator = scheduled.values().iterator();
+                    Timeout<Integer> timeout = iterator.next();
+                    iterator.remove();
+                    assertTrue(wheel.cancel(timeout));
+                } else {
+                    long next = wheel.nextEventTime();
+                    long target;
+                    if (random.nextInt(50) == 0)
+                        target = now + (long) random.nextInt(Integer.MAX_VALUE) * 16;
+                    else if (random.nextBoolean() || next == Long.MAX_VALUE)
+                        target = now + random.nextInt(5000);
+                    else
+                        target = Math.max(now, next + random.nextInt(3));
+
+                    expired.clear();
+                    wheel.advance(target, expired);
+                    now = target;
+                    for (Timeout<Integer> timeout : expired) {
+                        assertNotNull("Unknown timeout expired", scheduled.remove(timeout.item()));
+                        assertTrue("Timeout expired early", timeout.deadline() <= now);
+                        assertFalse(timeout.isScheduled());
+                    }
+
+                    long nextEventTime = wheel.nextEventTime();
+                    for (Timeout<Integer> timeout : scheduled.values()) {
+                        assertTrue("Timeout missed", timeout.deadline() > now);
+                        assertTrue("Next event after a deadline", nextEventTime <= timeout.deadline());
+                    }
+                }
+                assertEquals(scheduled.size(), wheel.size());
+            }
+        }
+    }
+}